@@ -0,0 +1,51 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.msgs.modes.AltitudeReply;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Decoding of 13-bit altitude codes (25 ft increments and Gillham code).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AltitudeBenchmark {
+
+	// Q bit set (25 ft increments) and Gillham code (100 ft increments)
+	@Param({"0x0C38", "0x0A82"})
+	public String code;
+
+	private short altitudeCode;
+
+	@Setup
+	public void setup() {
+		altitudeCode = Short.decode(code);
+	}
+
+	@Benchmark
+	public Integer decodeAltitude() {
+		return AltitudeReply.decodeAltitude(altitudeCode);
+	}
+}
@@ -0,0 +1,158 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.AirportDatabase;
+import de.serosystems.lib1090.CompactPositionReporting;
+import de.serosystems.lib1090.CompactPositionReporting.CPREncodedPosition;
+import de.serosystems.lib1090.CompactPositionReporting.ReceiverPosition;
+import de.serosystems.lib1090.CompactPositionReporting.StatefulPositionDecoder;
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.adsb.AirbornePositionV0Msg;
+import de.serosystems.lib1090.msgs.adsb.SurfacePositionV0Msg;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Global and local CPR decoding of airborne and surface positions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompactPositionReportingBenchmark {
+
+	private CPREncodedPosition airborneEven, airborneOdd;
+	private CPREncodedPosition surfaceEven, surfaceOdd;
+	private Position airborneReference, surfaceReference;
+	private ReceiverPosition airborneReceiver, surfaceReceiver;
+	private CPREncodedPosition[] landing;
+
+	@Setup
+	public void setup() throws BadFormatException, UnspecifiedFormatError {
+		airborneEven = new AirbornePositionV0Msg(Frames.AIRBORNE_POSITION_EVEN, 0L).getCPREncodedPosition();
+		airborneOdd = new AirbornePositionV0Msg(Frames.AIRBORNE_POSITION_ODD, 1000L).getCPREncodedPosition();
+		surfaceEven = new SurfacePositionV0Msg(Frames.SURFACE_POSITION_EVEN, 0L).getCPREncodedPosition();
+		surfaceOdd = new SurfacePositionV0Msg(Frames.SURFACE_POSITION_ODD, 1000L).getCPREncodedPosition();
+		airborneReference = new Position(3.9, 52.3, null);
+		surfaceReference = new Position(4.375, 51.99, null);
+		airborneReceiver = new ReceiverPosition(airborneReference);
+		surfaceReceiver = new ReceiverPosition(surfaceReference);
+
+		// approach to Amsterdam and taxiing after a coverage gap; the transponder keeps sending some airborne
+		// positions after touchdown
+		landing = new CPREncodedPosition[120];
+		for (int i = 0; i < landing.length; ++i) {
+			boolean surface = i >= 60 && i % 3 != 2;
+			long timestamp = i * 500L + (i >= 60 ? 300_000L : 0L);
+			double lat = i < 60 ? 52.9 - i * 0.001 : 52.3086 + i * 0.00001;
+			double lon = i < 60 ? 6.2 - i * 0.002 : 4.7639;
+			landing[i] = encode(lat, lon, i % 2 == 1, surface, timestamp);
+		}
+	}
+
+	/**
+	 * Position encoding according to DO-260B, A.1.7.5
+	 */
+	private static CPREncodedPosition encode(double lat, double lon, boolean odd, boolean surface, long timestamp) {
+		int i = odd ? 1 : 0;
+		double angle = surface ? 90.0 : 360.0;
+		double dLat = angle / (60 - i);
+		double yz = Math.floor((1 << 17) * ((lat % dLat + dLat) % dLat) / dLat + 0.5);
+		double rLat = dLat * (yz / (1 << 17) + Math.floor(lat / dLat));
+		double nl = Math.floor(2 * Math.PI / Math.acos(1 - (1 - Math.cos(Math.PI / 30)) /
+				Math.pow(Math.cos(Math.toRadians(Math.abs(rLat))), 2)));
+		double dLon = angle / Math.max(nl - i, 1);
+		double xz = Math.floor((1 << 17) * ((lon % dLon + dLon) % dLon) / dLon + 0.5);
+		return new CPREncodedPosition(odd, (int) yz & 0x1FFFF, (int) xz & 0x1FFFF, 17, surface, timestamp);
+	}
+
+	@Benchmark
+	public Position globalAirborne() {
+		return CompactPositionReporting.decodeGlobalPosition(airborneOdd, airborneEven, null);
+	}
+
+	@Benchmark
+	public Position globalSurface() {
+		return CompactPositionReporting.decodeGlobalPosition(surfaceOdd, surfaceEven, surfaceReference);
+	}
+
+	/**
+	 * Reference for surface decoding without receiver location
+	 */
+	@Benchmark
+	public Position surfaceReferenceFromAirports() {
+		return CompactPositionReporting.findSurfaceReference(surfaceOdd, surfaceEven, AirportDatabase.getDefault());
+	}
+
+	@Benchmark
+	public Position localAirborne() {
+		return CompactPositionReporting.decodeLocalPosition(airborneOdd, airborneReference);
+	}
+
+	@Benchmark
+	public Position localSurface() {
+		return CompactPositionReporting.decodeLocalPosition(surfaceOdd, surfaceReference);
+	}
+
+	/**
+	 * Local decoding with precomputed zones of a fixed receiver
+	 */
+	@Benchmark
+	public Position localAirborneReceiver() {
+		return CompactPositionReporting.decodeLocalPosition(airborneOdd, airborneReceiver);
+	}
+
+	@Benchmark
+	public Position localSurfaceReceiver() {
+		return CompactPositionReporting.decodeLocalPosition(surfaceOdd, surfaceReceiver);
+	}
+
+	/**
+	 * Global and local decoding including all reasonableness tests
+	 */
+	@Benchmark
+	public Position decodeAirborne() {
+		return airborneOdd.decodePosition(airborneEven, airborneReference);
+	}
+
+	@Benchmark
+	public Position decodeSurface() {
+		return surfaceOdd.decodePosition(surfaceEven, surfaceReference);
+	}
+
+	/**
+	 * Stateful decoding of a landing with interleaved airborne and surface positions
+	 * @return number of reasonable positions
+	 */
+	@Benchmark
+	public int statefulLanding() {
+		StatefulPositionDecoder decoder = new StatefulPositionDecoder();
+		int reasonable = 0;
+		for (CPREncodedPosition cpr : landing) {
+			Position pos = decoder.decodePosition(cpr, null);
+			if (pos != null && pos.isReasonable()) ++reasonable;
+		}
+		return reasonable;
+	}
+}
@@ -0,0 +1,104 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Stateful decoding per message type and for a realistic mix of frames.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+
+	@Param({
+			Frames.AIRBORNE_POSITION_EVEN,
+			Frames.SURFACE_POSITION_EVEN,
+			Frames.VELOCITY,
+			Frames.AIRSPEED,
+			Frames.IDENTIFICATION,
+			Frames.OPERATIONAL_STATUS,
+			Frames.TARGET_STATE_AND_STATUS,
+			Frames.ALL_CALL_REPLY,
+			Frames.SHORT_ACAS,
+			Frames.ALTITUDE_REPLY,
+			Frames.IDENTIFY_REPLY,
+			Frames.COMM_B_ALTITUDE_REPLY,
+			Frames.COMM_B_IDENTIFY_REPLY
+	})
+	public String frame;
+
+	private StatefulModeSDecoder decoder;
+	private byte[] raw;
+	private long timestamp;
+
+	@Setup
+	public void setup() {
+		decoder = new StatefulModeSDecoder();
+		raw = Frames.toBytes(frame)[0];
+	}
+
+	@Benchmark
+	public ModeSDownlinkMsg decode() throws BadFormatException, UnspecifiedFormatError {
+		return decoder.decode(raw, timestamp += 10);
+	}
+
+	@Benchmark
+	public ModeSDownlinkMsg decodeHex() throws BadFormatException, UnspecifiedFormatError {
+		return decoder.decode(frame, timestamp += 10);
+	}
+
+	/**
+	 * Decoding of a realistic mix of frames; separate state so it does not run once per frame parameter.
+	 */
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(1)
+	@State(Scope.Thread)
+	public static class Mix {
+
+		private StatefulModeSDecoder decoder;
+		private byte[][] mix;
+		private int next;
+		private long timestamp;
+
+		@Setup
+		public void setup() {
+			decoder = new StatefulModeSDecoder();
+			mix = Frames.toBytes(Frames.MIX);
+		}
+
+		@Benchmark
+		public ModeSDownlinkMsg decodeMix() throws BadFormatException, UnspecifiedFormatError {
+			if (next == mix.length) next = 0;
+			return decoder.decode(mix[next++], timestamp += 10);
+		}
+	}
+}
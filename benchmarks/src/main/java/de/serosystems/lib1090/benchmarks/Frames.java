@@ -0,0 +1,71 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Tools;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Frames recorded in the wild which are used by the benchmarks.
+ */
+public final class Frames {
+
+	private Frames() { }
+
+	// airborne position (even and odd format of the same aircraft)
+	public static final String AIRBORNE_POSITION_EVEN = "8d40621d58c382d690c8ac2863a7";
+	public static final String AIRBORNE_POSITION_ODD = "8d40621d58c386435cc412692ad6";
+
+	// surface position (even and odd format of the same aircraft)
+	public static final String SURFACE_POSITION_EVEN = "8c4841753aab238733c8cd4020b1";
+	public static final String SURFACE_POSITION_ODD = "8c4841753a9a153237aef0f275be";
+
+	public static final String VELOCITY = "8d485020994409940838175b284f";
+	public static final String AIRSPEED = "8da05f219b06b6af189400cbc33f";
+	public static final String IDENTIFICATION = "8d4840d6202cc371c32ce0576098";
+	public static final String OPERATIONAL_STATUS = "8d4d0131f8210002004900209514";
+	public static final String TARGET_STATE_AND_STATUS = "8da08f94ea1b785e8f3c088ab467";
+	public static final String ALL_CALL_REPLY = "5d506c28000000";
+	public static final String SHORT_ACAS = "02e197bf5db8dd";
+	public static final String ALTITUDE_REPLY = "200001b4f0f71d";
+	public static final String IDENTIFY_REPLY = "28001a1f2c1d77";
+	public static final String COMM_B_ALTITUDE_REPLY = "a0001838ca3e51f0a8000047a36a";
+	public static final String COMM_B_IDENTIFY_REPLY = "a800199a8bb80030a8000065c5fa";
+
+	/**
+	 * Mix of frames resembling the traffic of a ground station with Mode S radar coverage: mostly
+	 * extended squitters (positions and velocities dominate) plus surveillance replies.
+	 */
+	public static final String[] MIX = {
+			AIRBORNE_POSITION_EVEN, VELOCITY, ALL_CALL_REPLY, ALTITUDE_REPLY, AIRBORNE_POSITION_ODD,
+			COMM_B_ALTITUDE_REPLY, VELOCITY, SHORT_ACAS, AIRBORNE_POSITION_EVEN, ALL_CALL_REPLY,
+			IDENTIFY_REPLY, AIRSPEED, AIRBORNE_POSITION_ODD, COMM_B_IDENTIFY_REPLY, IDENTIFICATION,
+			ALTITUDE_REPLY, VELOCITY, SURFACE_POSITION_EVEN, TARGET_STATE_AND_STATUS, ALL_CALL_REPLY,
+			AIRBORNE_POSITION_EVEN, SHORT_ACAS, SURFACE_POSITION_ODD, OPERATIONAL_STATUS,
+	};
+
+	/**
+	 * @param hex frames in hex representation
+	 * @return frames as byte arrays
+	 */
+	public static byte[][] toBytes(String... hex) {
+		byte[][] frames = new byte[hex.length][];
+		for (int i = 0; i < hex.length; ++i)
+			frames[i] = Tools.hexStringToByteArray(hex[i]);
+		return frames;
+	}
+}
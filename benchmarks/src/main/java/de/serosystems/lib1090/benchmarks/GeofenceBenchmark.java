@@ -0,0 +1,89 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.tracking.Geofence;
+import de.serosystems.lib1090.tracking.GeofenceEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Position updates against 300 irregular sector polygons with 64 vertices each, spread over 20 x 30 degrees.
+ * The baseline tests each position against all polygons with the crossing number algorithm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GeofenceBenchmark {
+
+	private static final int FENCES = 300, VERTICES = 64, POSITIONS = 4096;
+
+	private final GeofenceEngine engine = new GeofenceEngine();
+	private final double[][] fenceLatitudes = new double[FENCES][VERTICES];
+	private final double[][] fenceLongitudes = new double[FENCES][VERTICES];
+	private final double[] latitudes = new double[POSITIONS];
+	private final double[] longitudes = new double[POSITIONS];
+	private int next;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		for (int f = 0; f < FENCES; ++f) {
+			double lat = 40 + random.nextDouble() * 20, lon = -5 + random.nextDouble() * 30;
+			for (int v = 0; v < VERTICES; ++v) {
+				double r = 0.3 + random.nextDouble() * 0.7, angle = 2 * Math.PI * v / VERTICES;
+				fenceLatitudes[f][v] = lat + r * Math.sin(angle);
+				fenceLongitudes[f][v] = lon + r * Math.cos(angle) * 1.5;
+			}
+			engine.addFence(Geofence.polygon(f, fenceLatitudes[f], fenceLongitudes[f]));
+		}
+		for (int i = 0; i < POSITIONS; ++i) {
+			latitudes[i] = 40 + random.nextDouble() * 20;
+			longitudes[i] = -5 + random.nextDouble() * 30;
+		}
+		engine.update(0, 0, 0, 0L);
+	}
+
+	@Benchmark
+	public int engine() {
+		int i = next++ & (POSITIONS - 1);
+		engine.update(i, latitudes[i], longitudes[i], next);
+		return engine.size();
+	}
+
+	@Benchmark
+	public int crossingNumber() {
+		int i = next++ & (POSITIONS - 1), inside = 0;
+		double lat = latitudes[i], lon = longitudes[i];
+		for (int f = 0; f < FENCES; ++f) {
+			double[] lats = fenceLatitudes[f], lons = fenceLongitudes[f];
+			boolean in = false;
+			for (int a = 0, b = VERTICES - 1; a < VERTICES; b = a++)
+				if ((lats[a] > lat) != (lats[b] > lat) &&
+						lon < lons[a] + (lat - lats[a]) * (lons[b] - lons[a]) / (lats[b] - lats[a]))
+					in = !in;
+			if (in) ++inside;
+		}
+		return inside;
+	}
+}
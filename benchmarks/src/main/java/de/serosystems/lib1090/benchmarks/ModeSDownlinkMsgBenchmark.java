@@ -0,0 +1,73 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Construction of the generic Mode S message and CRC calculation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ModeSDownlinkMsgBenchmark {
+
+	@Param({Frames.AIRBORNE_POSITION_EVEN, Frames.ALL_CALL_REPLY, Frames.COMM_B_ALTITUDE_REPLY})
+	public String frame;
+
+	private byte[] raw;
+	private byte[] withoutParity;
+	private ModeSDownlinkMsg msg;
+
+	@Setup
+	public void setup() throws BadFormatException, UnspecifiedFormatError {
+		raw = Tools.hexStringToByteArray(frame);
+		withoutParity = Arrays.copyOf(raw, raw.length - 3);
+		msg = new ModeSDownlinkMsg(raw);
+	}
+
+	@Benchmark
+	public ModeSDownlinkMsg construct() throws BadFormatException, UnspecifiedFormatError {
+		return new ModeSDownlinkMsg(raw);
+	}
+
+	@Benchmark
+	public ModeSDownlinkMsg constructFromHex() throws BadFormatException, UnspecifiedFormatError {
+		return new ModeSDownlinkMsg(frame);
+	}
+
+	@Benchmark
+	public int calcParity() {
+		return msg.calcParity();
+	}
+
+	@Benchmark
+	public byte[] calcParityStatic() {
+		return ModeSDownlinkMsg.calcParity(withoutParity);
+	}
+}
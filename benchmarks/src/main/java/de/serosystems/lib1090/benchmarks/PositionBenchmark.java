@@ -0,0 +1,58 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Position;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Distance calculations and coordinate transformations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionBenchmark {
+
+	private Position a, b;
+
+	@Setup
+	public void setup() {
+		a = new Position(8.5492, 50.0379, 1200.0, Position.AltitudeType.ABOVE_WGS84_ELLIPSOID);
+		b = new Position(11.7861, 48.3538, 36000.0, Position.AltitudeType.ABOVE_WGS84_ELLIPSOID);
+	}
+
+	@Benchmark
+	public Double haversine() {
+		return a.haversine(b);
+	}
+
+	@Benchmark
+	public double[] toECEF() {
+		return a.toECEF();
+	}
+
+	@Benchmark
+	public Double distance3d() {
+		return a.distance3d(b);
+	}
+}
@@ -0,0 +1,86 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.tracking.StateVector;
+import de.serosystems.lib1090.tracking.StateVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Dead reckoning of a whole fleet of 10,000 aircraft, e.g., to refresh a map display.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PredictionBenchmark {
+
+	private static final int AIRCRAFT = 10000;
+
+	private final StateVectorStore store = new StateVectorStore(AIRCRAFT);
+	private final double[] latitudes = new double[AIRCRAFT];
+	private final double[] longitudes = new double[AIRCRAFT];
+	private int count;
+	private long now = 5000L;
+
+	private final Consumer<StateVector> refresh = sv -> {
+		latitudes[count] = sv.predictLatitude(now);
+		longitudes[count++] = sv.predictLongitude(now);
+	};
+
+	@Setup
+	public void setup() throws Exception {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		decoder.setStateVectorStore(store);
+		byte[] velocity = Tools.hexStringToByteArray("8d485020994409940838175b284f");
+		Random random = new Random(42);
+		for (int i = 0; i < AIRCRAFT; ++i) {
+			Position position = new Position(random.nextDouble() * 20, 40 + random.nextDouble() * 20, null);
+			store.updatePosition(i, ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24, position, 0L);
+			velocity[1] = (byte) (i >>> 16);
+			velocity[2] = (byte) (i >>> 8);
+			velocity[3] = (byte) i;
+			decoder.decode(velocity, 1000L);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(AIRCRAFT)
+	public int refreshFleet() {
+		count = 0;
+		now += 100;
+		store.forEachActive(now, Long.MAX_VALUE, refresh);
+		return count;
+	}
+
+	@Benchmark
+	public Position predictPosition() {
+		now += 100;
+		return store.predictPosition((int) (now % AIRCRAFT), now);
+	}
+}
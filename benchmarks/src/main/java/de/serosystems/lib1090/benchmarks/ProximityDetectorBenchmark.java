@@ -0,0 +1,97 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.tracking.ProximityDetector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Replay of dense airspace: aircraft cruise within a 6 x 6 degree area (roughly central Europe) and report
+ * their positions in turns. Each operation processes one position with the proximity detector or with a
+ * linear scan over all other aircraft.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProximityDetectorBenchmark {
+
+	@Param({"1000", "5000", "20000"})
+	public int aircraft;
+
+	private double[] latitudes, longitudes, altitudes, dLat, dLon;
+	private ProximityDetector detector;
+	private int next;
+	private long time;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		latitudes = new double[aircraft];
+		longitudes = new double[aircraft];
+		altitudes = new double[aircraft];
+		dLat = new double[aircraft];
+		dLon = new double[aircraft];
+		detector = new ProximityDetector();
+		for (int i = 0; i < aircraft; ++i) {
+			latitudes[i] = 47 + random.nextDouble() * 6;
+			longitudes[i] = 5 + random.nextDouble() * 6;
+			altitudes[i] = 1000 + random.nextInt(40) * 1000;
+			double track = random.nextDouble() * 2 * Math.PI;
+			// about 250 m/s, one position per aircraft and second
+			dLat[i] = Math.cos(track) * 0.00225;
+			dLon[i] = Math.sin(track) * 0.0035;
+			detector.update(i, latitudes[i], longitudes[i], altitudes[i], 0L);
+		}
+	}
+
+	private int move() {
+		int i = next;
+		if (++next == aircraft) next = 0;
+		latitudes[i] += dLat[i];
+		longitudes[i] += dLon[i];
+		if (latitudes[i] < 47 || latitudes[i] > 53) dLat[i] = -dLat[i];
+		if (longitudes[i] < 5 || longitudes[i] > 11) dLon[i] = -dLon[i];
+		return i;
+	}
+
+	@Benchmark
+	public int detector() {
+		int i = move();
+		detector.update(i, latitudes[i], longitudes[i], altitudes[i], ++time);
+		return detector.getPairCount();
+	}
+
+	@Benchmark
+	public int linearScan() {
+		int i = move(), close = 0;
+		for (int j = 0; j < aircraft; ++j) {
+			if (j != i && Math.abs(altitudes[i] - altitudes[j]) <= ProximityDetector.DEFAULT_VERTICAL_DISTANCE &&
+					Position.haversine(latitudes[i], longitudes[i], latitudes[j], longitudes[j]) <=
+							ProximityDetector.DEFAULT_HORIZONTAL_DISTANCE)
+				++close;
+		}
+		return close;
+	}
+}
@@ -0,0 +1,59 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.io.SbsEncoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Encoding of decoded messages as SBS-1/BaseStation lines into a reused buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SbsEncoderBenchmark {
+
+	@Param({Frames.AIRBORNE_POSITION_EVEN, Frames.VELOCITY, Frames.IDENTIFICATION, Frames.ALTITUDE_REPLY,
+			Frames.IDENTIFY_REPLY})
+	public String frame;
+
+	private final SbsEncoder encoder = new SbsEncoder();
+	private final ByteBuffer buffer = ByteBuffer.allocate(SbsEncoder.MAX_LINE_LENGTH);
+	private final Position position = new Position(3.91937, 52.25720, 38000.);
+	private ModeSDownlinkMsg msg;
+
+	@Setup
+	public void setup() throws Exception {
+		msg = new StatefulModeSDecoder().decode(frame, 1564654542123L);
+	}
+
+	@Benchmark
+	public int encode() {
+		buffer.clear();
+		return encoder.encode(msg, 1564654542123L, position, buffer);
+	}
+}
@@ -0,0 +1,123 @@
+package de.serosystems.lib1090.benchmarks;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.MessageCodec;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Round trip (write and read) of a decoded message with {@link MessageCodec}, Java serialization (which
+ * uses MessageCodec through the serialization proxy) and Kryo's default field serializer. Run {@link #main}
+ * to print the encoded sizes, e.g. with
+ * <pre>java -cp target/benchmarks.jar de.serosystems.lib1090.benchmarks.SerializationBenchmark</pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+	@Param({Frames.AIRBORNE_POSITION_EVEN, Frames.VELOCITY, Frames.IDENTIFICATION, Frames.ALTITUDE_REPLY})
+	public String frame;
+
+	private ModeSDownlinkMsg msg;
+
+	private final MessageCodec codec = new MessageCodec();
+	private final ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.MAX_LENGTH);
+
+	private final Kryo kryo = new Kryo();
+	private final Output output = new Output(4096);
+	private final Input input = new Input();
+
+	@Setup
+	public void setup() throws Exception {
+		msg = new StatefulModeSDecoder().decode(frame, 1564654542123L);
+		kryo.setRegistrationRequired(false);
+		kryo.setReferences(false);
+		// some nested classes (e.g. CPREncodedPosition) have no no-arg constructor
+		kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+	}
+
+	@Benchmark
+	public ModeSDownlinkMsg codec() throws Exception {
+		buffer.clear();
+		codec.write(msg, buffer);
+		buffer.flip();
+		return codec.read(buffer);
+	}
+
+	@Benchmark
+	public Object java() throws Exception {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSerialize(msg)))) {
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object kryo() {
+		int length = kryoSerialize(msg);
+		input.setBuffer(output.getBuffer(), 0, length);
+		return kryo.readClassAndObject(input);
+	}
+
+	/**
+	 * Prints the encoded size of each benchmarked message
+	 * @param args ignored
+	 * @throws Exception if a frame cannot be decoded or encoded
+	 */
+	public static void main(String[] args) throws Exception {
+		for (String frame : SerializationBenchmark.class.getField("frame").getAnnotation(Param.class).value()) {
+			SerializationBenchmark benchmark = new SerializationBenchmark();
+			benchmark.frame = frame;
+			benchmark.setup();
+			System.out.printf("%s: codec %d bytes, java %d bytes, kryo %d bytes%n", benchmark.msg.getType(),
+					benchmark.codec.write(benchmark.msg, benchmark.buffer), javaSerialize(benchmark.msg).length,
+					benchmark.kryoSerialize(benchmark.msg));
+		}
+	}
+
+	private static byte[] javaSerialize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.toByteArray();
+	}
+
+	private int kryoSerialize(Object o) {
+		output.reset();
+		kryo.writeClassAndObject(output, o);
+		return output.position();
+	}
+}
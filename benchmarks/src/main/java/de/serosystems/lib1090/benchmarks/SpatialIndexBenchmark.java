@@ -0,0 +1,94 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.tracking.SpatialIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Distance calculations and coordinate transformations.
+ */
+
+/**
+ * Range and nearest neighbour queries over 50,000 aircraft with the grid index vs. a linear scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SpatialIndexBenchmark {
+
+	private static final int AIRCRAFT = 50000;
+	private static final double RADIUS = 250000.0;
+
+	private final double[] latitudes = new double[AIRCRAFT];
+	private final double[] longitudes = new double[AIRCRAFT];
+	private final SpatialIndex index = new SpatialIndex();
+	private final int[] ids = new int[10];
+	private final double[] distances = new double[10];
+	private int query;
+
+	@Setup
+	public void setup() {
+		// traffic concentrated in a band of latitudes like real air traffic
+		Random random = new Random(42);
+		for (int i = 0; i < AIRCRAFT; ++i) {
+			latitudes[i] = 20 + random.nextDouble() * 45;
+			longitudes[i] = random.nextDouble() * 360 - 180;
+			index.update(i, latitudes[i], longitudes[i]);
+		}
+	}
+
+	@Benchmark
+	public int radiusIndex(Blackhole bh) {
+		int i = query++ % AIRCRAFT;
+		return index.queryRadius(latitudes[i], longitudes[i], RADIUS, (id, lat, lon) -> bh.consume(id));
+	}
+
+	@Benchmark
+	public int radiusScan(Blackhole bh) {
+		int i = query++ % AIRCRAFT, found = 0;
+		for (int j = 0; j < AIRCRAFT; ++j) {
+			if (Position.haversine(latitudes[i], longitudes[i], latitudes[j], longitudes[j]) <= RADIUS) {
+				bh.consume(j);
+				++found;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int nearestIndex() {
+		int i = query++ % AIRCRAFT;
+		return index.nearest(latitudes[i], longitudes[i], ids.length, ids, distances);
+	}
+
+	@Benchmark
+	public int update() {
+		int i = query++ % AIRCRAFT;
+		index.update(i, latitudes[i] + 0.01, longitudes[i]);
+		index.update(i, latitudes[i], longitudes[i]);
+		return i;
+	}
+}
@@ -0,0 +1,75 @@
+package de.serosystems.lib1090.benchmarks;
+
+import de.serosystems.lib1090.tracking.TrackFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Filter updates and extrapolation with 10,000 tracks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TrackFilterBenchmark {
+
+	private static final int TRACKS = 10000;
+
+	private final TrackFilter filter = new TrackFilter();
+	private final double[] latitudes = new double[TRACKS];
+	private final double[] longitudes = new double[TRACKS];
+	private final double[] result = new double[3];
+	private int next;
+	private long time;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		for (int i = 0; i < TRACKS; ++i) {
+			latitudes[i] = 40 + random.nextDouble() * 20;
+			longitudes[i] = random.nextDouble() * 20;
+			filter.updatePosition(i, latitudes[i], longitudes[i], 0L);
+			filter.updateVelocity(i, 450, random.nextDouble() * 360, 0L);
+			filter.updateAltitude(i, 35000, 0L);
+		}
+	}
+
+	@Benchmark
+	public boolean updatePosition() {
+		int i = next;
+		if (++next == TRACKS) {
+			next = 0;
+			time += 1000;
+		}
+		return filter.updatePosition(i, latitudes[i], longitudes[i], time);
+	}
+
+	@Benchmark
+	public double[] extrapolate() {
+		int i = next;
+		if (++next == TRACKS) next = 0;
+		filter.extrapolate(i, 5000L, result);
+		return result;
+	}
+}
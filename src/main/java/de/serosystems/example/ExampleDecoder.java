@@ -22,14 +22,18 @@ import de.serosystems.lib1090.StatefulModeSDecoder;
 import de.serosystems.lib1090.Tools;
 import de.serosystems.lib1090.exceptions.BadFormatException;
 import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.io.CsvReader;
+import de.serosystems.lib1090.io.FrameHandler;
 import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
 import de.serosystems.lib1090.msgs.adsb.*;
 import de.serosystems.lib1090.msgs.modes.*;
 
-import java.util.Scanner;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
- * ADS-B decoder example: It reads STDIN line-by-line. It should be fed with
+ * ADS-B decoder example: It reads STDIN (or the file given as first argument) line-by-line. It should be fed with
  * comma-separated timestamp, receiver latitude, receiver longitude and the
  * raw Mode S/ADS-B message. Receiver coordinates can be omitted. In that
  * case, surface position messages cannot be decoded properly and plausibility
@@ -61,9 +65,22 @@ public class ExampleDecoder {
 	 * @param receiver the location of the receiver for sanity checks on decoded positions (optional)
 	 */
 	public void decodeMsg(long timestamp, String raw, Position receiver) {
+		byte[] frame = Tools.hexStringToByteArray(raw);
+		decodeMsg(timestamp, frame, 0, frame.length, receiver);
+	}
+
+	/**
+	 *
+	 * @param timestamp in milliseconds since epoch
+	 * @param buffer buffer containing the raw Mode S message
+	 * @param offset index of the first byte of the message in buffer
+	 * @param length length of the message in bytes
+	 * @param receiver the location of the receiver for sanity checks on decoded positions (optional)
+	 */
+	public void decodeMsg(long timestamp, byte[] buffer, int offset, int length, Position receiver) {
 		ModeSDownlinkMsg msg;
 		try {
-			msg = decoder.decode(raw, timestamp);
+			msg = decoder.decode(buffer, offset, length, timestamp);
 		} catch (BadFormatException e) {
 			System.out.println("Malformed message! Skipping it. Message: "+e.getMessage());
 			return;
@@ -400,28 +417,25 @@ public class ExampleDecoder {
 	}
 
 	public static void main(String[] args) throws Exception {
-		// iterate over STDIN
-		Scanner sc = new Scanner(System.in, "UTF-8");
+		// iterate over the file given as argument or STDIN
 		ExampleDecoder dec = new ExampleDecoder();
+		CsvReader reader = new CsvReader();
 		Position rec = new Position(0., 0., 0.);
-		while(sc.hasNext()) {
-		  String[] values = sc.nextLine().split(",");
-
-		  if (values.length == 5) {
-			  // time,serial,lat,lon,msg
-			  rec.setLatitude(Double.parseDouble(values[2]));
-			  rec.setLongitude(Double.parseDouble(values[3]));
-			  dec.decodeMsg((long) Double.parseDouble(values[0])*1000, values[4], rec);
-		  } else if (values.length == 4) {
-			  // time,lat,lon,msg
-			  rec.setLatitude(Double.parseDouble(values[1]));
-			  rec.setLongitude(Double.parseDouble(values[2]));
-			  dec.decodeMsg((long) Double.parseDouble(values[0])*1000, values[3], rec);
-		  } else if (values.length == 2) {
-			  // time,msg
-			  dec.decodeMsg((long) Double.parseDouble(values[0])*1000, values[1], null);
-		  }
+		FrameHandler handler = frame -> {
+			if (reader.hasReceiverPosition()) {
+				rec.setLatitude(reader.getReceiverLatitude());
+				rec.setLongitude(reader.getReceiverLongitude());
+			}
+			dec.decodeMsg(frame.getTimestamp(), frame.getBuffer(), frame.getOffset(), frame.getLength(),
+					reader.hasReceiverPosition() ? rec : null);
+		};
+
+		if (args.length > 0) {
+			try (FileChannel in = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+				reader.read(in, handler);
+			}
+		} else {
+			reader.read(System.in, handler);
 		}
-		sc.close();
 	}
 }
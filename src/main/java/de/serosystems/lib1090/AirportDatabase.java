@@ -0,0 +1,218 @@
+package de.serosystems.lib1090;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reference points of airports. Surface positions can only be decoded with a reference position within 45 NM
+ * (see {@link CompactPositionReporting#decodeLocalPosition}), and aircraft on the surface are at airports, so the
+ * nearest airport is a reference when the receiver location is unknown (see
+ * {@link CompactPositionReporting#findSurfaceReference}). The airports are indexed in a grid of one degree cells,
+ * so finding the nearest one only involves the airports of the neighbouring cells.<br>
+ * The built-in database ({@link #getDefault()}) contains the major airports of the world. Use
+ * {@link #read(InputStream)} for a more complete one.
+ */
+public class AirportDatabase {
+
+	private static final String RESOURCE = "airports.csv";
+
+	private final String[] idents;
+	private final double[] latitudes;
+	private final double[] longitudes;
+
+	// airports sorted by grid cell; airports of cell c are at cellStart[c] to cellStart[c + 1] - 1
+	private final int[] cellStart;
+	private final int[] airports;
+
+	private static final class DefaultHolder {
+		static final AirportDatabase INSTANCE;
+
+		static {
+			InputStream in = AirportDatabase.class.getResourceAsStream(RESOURCE);
+			if (in == null) throw new IllegalStateException("Missing resource " + RESOURCE);
+			try {
+				INSTANCE = read(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * @param idents identifiers of the airports, e.g., ICAO location indicators
+	 * @param latitudes latitudes of the reference points in degrees
+	 * @param longitudes longitudes of the reference points in degrees
+	 */
+	public AirportDatabase(String[] idents, double[] latitudes, double[] longitudes) {
+		if (idents.length != latitudes.length || idents.length != longitudes.length)
+			throw new IllegalArgumentException("Arrays must have the same length");
+		for (int i = 0; i < idents.length; ++i)
+			if (!(abs(latitudes[i]) <= 90) || !(longitudes[i] >= -180 && longitudes[i] <= 180))
+				throw new IllegalArgumentException("Invalid position of " + idents[i]);
+
+		this.idents = idents.clone();
+		this.latitudes = latitudes.clone();
+		this.longitudes = longitudes.clone();
+
+		// counting sort by cell
+		cellStart = new int[180 * 360 + 1];
+		for (int i = 0; i < idents.length; ++i)
+			++cellStart[cell(latitudes[i], longitudes[i]) + 1];
+		for (int c = 0; c < 180 * 360; ++c)
+			cellStart[c + 1] += cellStart[c];
+		airports = new int[idents.length];
+		int[] next = cellStart.clone();
+		for (int i = 0; i < idents.length; ++i)
+			airports[next[cell(latitudes[i], longitudes[i])]++] = i;
+	}
+
+	/**
+	 * @return the built-in database which is loaded on first use
+	 */
+	public static AirportDatabase getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Reads airports from comma-separated lines of identifier, latitude and longitude in degrees. Empty lines
+	 * and lines starting with # are ignored.
+	 * @param in the input; it is closed afterwards
+	 * @return the database
+	 * @throws IOException if reading fails or a line is malformed
+	 */
+	public static AirportDatabase read(InputStream in) throws IOException {
+		List<String> idents = new ArrayList<>();
+		List<double[]> positions = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split(",");
+				if (fields.length != 3)
+					throw new IOException("Malformed line: " + line);
+				try {
+					positions.add(new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed line: " + line, e);
+				}
+				idents.add(fields[0]);
+			}
+		}
+
+		double[] latitudes = new double[idents.size()], longitudes = new double[idents.size()];
+		for (int i = 0; i < latitudes.length; ++i) {
+			latitudes[i] = positions.get(i)[0];
+			longitudes[i] = positions.get(i)[1];
+		}
+		return new AirportDatabase(idents.toArray(new String[0]), latitudes, longitudes);
+	}
+
+	/**
+	 * @return number of airports
+	 */
+	public int size() {
+		return idents.length;
+	}
+
+	/**
+	 * @param airport index of the airport
+	 * @return its identifier
+	 */
+	public String getIdent(int airport) {
+		return idents[airport];
+	}
+
+	/**
+	 * @param airport index of the airport
+	 * @return latitude of its reference point in degrees
+	 */
+	public double getLatitude(int airport) {
+		return latitudes[airport];
+	}
+
+	/**
+	 * @param airport index of the airport
+	 * @return longitude of its reference point in degrees
+	 */
+	public double getLongitude(int airport) {
+		return longitudes[airport];
+	}
+
+	/**
+	 * @param airport index of the airport
+	 * @return its reference point
+	 */
+	public Position getPosition(int airport) {
+		return new Position(longitudes[airport], latitudes[airport], 0.0);
+	}
+
+	/**
+	 * Finds the nearest airport within a distance of up to 100 km
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @param maxDistance maximum distance in meters (at most 100 km)
+	 * @return index of the nearest airport or -1 if there is none within the distance
+	 */
+	public int nearest(double latitude, double longitude, double maxDistance) {
+		if (maxDistance > 100000)
+			throw new IllegalArgumentException("Maximum distance must not exceed 100 km");
+
+		int centerRow = row(latitude), centerColumn = column(longitude);
+		int nearest = -1;
+		double nearestDistance = maxDistance;
+		// one degree of latitude is 111 km, so neighbouring rows are enough; columns get narrower to the poles
+		int width = abs(latitude) > 80 ? 180 : (int) ceil(1 / cos(toRadians(abs(latitude) + 1)));
+		for (int row = max(0, centerRow - 1); row <= min(179, centerRow + 1); ++row) {
+			for (int dc = -width; dc <= width; ++dc) {
+				int c = row * 360 + floorMod(centerColumn + dc, 360);
+				for (int i = cellStart[c]; i < cellStart[c + 1]; ++i) {
+					int airport = airports[i];
+					double distance = Position.haversine(latitude, longitude, latitudes[airport], longitudes[airport]);
+					if (distance <= nearestDistance) {
+						nearest = airport;
+						nearestDistance = distance;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private static int row(double latitude) {
+		return min(179, max(0, (int) floor(latitude + 90)));
+	}
+
+	private static int column(double longitude) {
+		return floorMod((int) floor(longitude + 180), 360);
+	}
+
+	private static int cell(double latitude, double longitude) {
+		return row(latitude) * 360 + column(longitude);
+	}
+}
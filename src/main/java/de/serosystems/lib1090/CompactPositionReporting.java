@@ -17,6 +17,8 @@ package de.serosystems.lib1090;
  *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Arrays;
+
 import static java.lang.Math.abs;
 
 /**
@@ -156,16 +158,47 @@ public class CompactPositionReporting {
         }
     }
 
+    // NL_TRANSITIONS[i] is the lowest latitude with less than 59 - i longitude zones
+    private static final double[] NL_TRANSITIONS = new double[57];
+    static {
+        for (int i = 0; i < NL_TRANSITIONS.length; ++i) {
+            // bisection on the closed form of NL to get exactly the same transitions
+            double lo = 0.0, hi = 87.0;
+            while (Math.nextUp(lo) < hi) {
+                double mid = (lo + hi) / 2;
+                if (closedFormNL(mid) < 59 - i) hi = mid;
+                else lo = mid;
+            }
+            NL_TRANSITIONS[i] = hi;
+        }
+    }
+
     /**
      * @param Rlat Even or odd Rlat value (CPR internal)
      * @return the number of even longitude zones at a latitude
      */
     private static double NL(double Rlat) {
         if (Rlat == 0) return 59;
-        else if (Math.abs(Rlat) == 87) return 2;
-        else if (Math.abs(Rlat) > 87) return 1;
+        double lat = Math.abs(Rlat);
+        if (lat == 87) return 2;
+        else if (lat > 87) return 1;
+
+        // count transitions up to lat
+        int lo = 0, hi = NL_TRANSITIONS.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (NL_TRANSITIONS[mid] <= lat) lo = mid + 1;
+            else hi = mid;
+        }
+        return 59 - lo;
+    }
 
-        double tmp = 1-(1-Math.cos(Math.PI/(2.0*15.0)))/Math.pow(Math.cos(Math.PI/180.0*Math.abs(Rlat)), 2);
+    /**
+     * @param lat latitude between 0 and 87 degrees
+     * @return the number of even longitude zones according to A.1.7.2.d of DO-260B
+     */
+    private static double closedFormNL(double lat) {
+        double tmp = 1-(1-Math.cos(Math.PI/(2.0*15.0)))/Math.pow(Math.cos(Math.PI/180.0*lat), 2);
         return Math.floor(2*Math.PI/Math.acos(tmp));
     }
 
@@ -214,6 +247,12 @@ public class CompactPositionReporting {
         if (Rlat0 >= 270.0 && Rlat0 <= 360.0) Rlat0 -= 360.0;
         if (Rlat1 >= 270.0 && Rlat1 <= 360.0) Rlat1 -= 360.0;
 
+        // surface latitudes are ambiguous by 90 degrees: take the southern solution if the reference is closer to it
+        if (pos.surface && reference.getLatitude() < (pos.is_odd ? Rlat1 : Rlat0) - 45.0) {
+            Rlat0 -= 90.0;
+            Rlat1 -= 90.0;
+        }
+
         // ensure that the number of even longitude zones are equal
         if (NL(Rlat0) != NL(Rlat1)) return null; // position straddle
 
@@ -236,30 +275,70 @@ public class CompactPositionReporting {
         if (Rlon > 180.0 && Rlon < 360.0) Rlon -= 360.0;
 
         if (pos.surface) {
-            // check the 4 possible solutions of the surface decoding
-            Position candidate = new Position(Rlon, Rlat, 0.0);
-            for (int o : new int[] {90, 180, 270}) {
-                Position alternative = new Position(Rlon + o, Rlat, 0.0);
-                if (reference.haversine(alternative) < reference.haversine(candidate))
-                    candidate = alternative;
-            }
-            return candidate;
+            // of the 4 possible solutions (90 degrees apart), the one with the smallest difference in longitude
+            // is the closest to the reference
+            Rlon += 90.0 * Math.rint((reference.getLongitude() - Rlon) / 90.0);
+            if (Rlon >= 180.0) Rlon -= 360.0;
+            else if (Rlon < -180.0) Rlon += 360.0;
+            return new Position(Rlon, Rlat, 0.0);
         } else return new Position(Rlon, Rlat, null);
     }
 
+    // reference points for each of the eight solutions of global surface decoding
+    private static final Position[] QUADRANTS = {
+            new Position(-135.0, 45.0, null), new Position(-45.0, 45.0, null),
+            new Position(45.0, 45.0, null), new Position(135.0, 45.0, null),
+            new Position(-135.0, -45.0, null), new Position(-45.0, -45.0, null),
+            new Position(45.0, -45.0, null), new Position(135.0, -45.0, null)
+    };
+
+    // maximum distance between a surface position and the airport used as its reference
+    private static final double MAX_AIRPORT_DISTANCE = 45 * 1852.0;
+
+    /**
+     * Finds a reference for surface positions without knowing the receiver location. Global surface decoding
+     * yields eight solutions (two latitudes and four longitudes); the solution next to an airport is taken.
+     * @param pos surface position
+     * @param other surface position in the complementary format (even/odd)
+     * @param airports reference points of airports
+     * @return reference point of the airport within 45 NM of a solution or null if there is no such airport
+     */
+    public static Position findSurfaceReference(CPREncodedPosition pos, CPREncodedPosition other,
+                                                AirportDatabase airports) {
+        if (other == null || !pos.surface || !other.surface || pos.is_odd == other.is_odd) return null;
+
+        int nearest = -1;
+        double nearestDistance = MAX_AIRPORT_DISTANCE;
+        for (Position quadrant : QUADRANTS) {
+            Position candidate = decodeGlobalPosition(pos, other, quadrant);
+            if (candidate == null) continue;
+
+            int airport = airports.nearest(candidate.getLatitude(), candidate.getLongitude(), nearestDistance);
+            if (airport >= 0) {
+                nearest = airport;
+                nearestDistance = candidate.haversine(airports.getPosition(airport));
+            }
+        }
+        return nearest < 0 ? null : airports.getPosition(nearest);
+    }
+
     /**
      * This method uses a locally unambiguous decoding for airborne position messages. It
      * uses a reference position known to be within 180NM (= 333.36km) of the true target
      * airborne position and within 45NM for surface positions. The reference point may be
      * a previously decoded position that has been confirmed by global decoding (see
      * {@link #decodeGlobalPosition(CPREncodedPosition, CPREncodedPosition, Position)}) or
-     * the receiver position.
+     * the receiver position. Use a {@link ReceiverPosition} for fixed receivers.
      * @param pos CPR encoded position
      * @param ref reference position
      * @return decoded position (without altitude)
      */
     public static Position decodeLocalPosition(CPREncodedPosition pos, Position ref) {
         if (ref == null) return null;
+        if (ref instanceof ReceiverPosition && pos.nbits <= 17) {
+            Position decoded = ((ReceiverPosition) ref).decodeLocalPosition(pos);
+            if (decoded != null) return decoded;
+        }
 
         // latitude zone size
         double angle = pos.surface ? 90.0 : 360.0;
@@ -286,11 +365,187 @@ public class CompactPositionReporting {
     }
 
     /**
-     * Stateful decoder for positions. Use this one to decode positions.
+     * Position of a fixed receiver with precomputed local decoding (see
+     * {@link #decodeLocalPosition(CPREncodedPosition, Position)}). For each format, the latitude zone of the receiver,
+     * the number of longitude zones (NL) in it and its neighbours and the longitude zones of the receiver are
+     * computed once. Local decoding relative to the receiver then only needs integer arithmetic on the encoded
+     * latitude and longitude to find the zone indices. Use it wherever a receiver position is passed to the
+     * decoders, e.g., {@link StatefulModeSDecoder#extractPosition}. Decoded positions are the same as with a plain
+     * {@link Position}.<br>
+     * It behaves like any other position; if its coordinates are changed, the precomputed values are updated with
+     * the next decoded position.
+     */
+    public static class ReceiverPosition extends Position {
+        private static final long serialVersionUID = 4811585914862318264L;
+
+        // precomputed values for the current coordinates; replaced when they change
+        private transient volatile LocalDecoding local;
+
+        /**
+         * @param lon longitude of the receiver in decimal degrees
+         * @param lat latitude of the receiver in decimal degrees
+         * @param alt altitude of the receiver in feet (may be null)
+         */
+        public ReceiverPosition(double lon, double lat, Double alt) {
+            super(lon, lat, alt);
+            if (Math.abs(lat) > 90.0 || Math.abs(lon) > 180.0)
+                throw new IllegalArgumentException("Invalid receiver position " + lat + ", " + lon);
+
+            local = new LocalDecoding(lat, lon);
+        }
+
+        /**
+         * @param position position of the receiver
+         */
+        public ReceiverPosition(Position position) {
+            this(coordinate(position.getLongitude()), coordinate(position.getLatitude()), position.getAltitude());
+            setAltitudeType(position.getAltitudeType());
+        }
+
+        private static double coordinate(Double value) {
+            if (value == null)
+                throw new IllegalArgumentException("Receiver position must have latitude and longitude");
+            return value;
+        }
+
+        /**
+         * @param pos CPR encoded position with at most 17 bits
+         * @return decoded position (without altitude) or null if the receiver has no valid coordinates
+         */
+        private Position decodeLocalPosition(CPREncodedPosition pos) {
+            Double lat = getLatitude(), lon = getLongitude();
+            if (lat == null || lon == null || Math.abs(lat) > 90.0 || Math.abs(lon) > 180.0)
+                return null;
+
+            LocalDecoding l = local;
+            if (l == null || l.lat != lat || l.lon != lon)
+                local = l = new LocalDecoding(lat, lon);
+            return l.decode(pos);
+        }
+    }
+
+    /**
+     * Local decoding tables of {@link ReceiverPosition} for one pair of coordinates
+     */
+    private static final class LocalDecoding {
+        // fractions of zones are 30 bit fixed point numbers
+        private static final int FRACTION_BITS = 30;
+        private static final long HALF = 1L << (FRACTION_BITS - 1);
+
+        private final double lat, lon;
+
+        // per format (even/odd airborne, even/odd surface)
+        private final double[] Dlat = new double[4];
+        private final long[] latZone = new long[4]; // latitude zone of the receiver
+        private final long[] latFraction = new long[4]; // position of the receiver within that zone
+
+        // per format and section of constant NL; the sections are separated by the boundaries given
+        // as 17 bit encoded latitudes including the zone index
+        private final long[][] boundaries = new long[4][];
+        private final double[][] Dlon = new double[4][];
+        private final long[][] lonZone = new long[4][];
+        private final long[][] lonFraction = new long[4][];
+
+        LocalDecoding(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+            for (int format = 0; format < 4; ++format)
+                precompute(format, format >= 2 ? 90.0 : 360.0, (format & 1) == 1, lat, lon);
+        }
+
+        private void precompute(int format, double angle, boolean odd, double lat, double lon) {
+            Dlat[format] = odd ? angle / 59.0 : angle / 60.0;
+            latZone[format] = (long) Math.floor(lat / Dlat[format]);
+            latFraction[format] = fraction(mod(lat, Dlat[format]) / Dlat[format]);
+
+            // decoded latitudes are within the zone of the receiver or its neighbours
+            long first = (latZone[format] - 1) << 17, last = (latZone[format] + 2) << 17;
+            long[] candidates = new long[4 * (NL_TRANSITIONS.length + 1)];
+            int count = 0;
+            for (int i = 0; i <= NL_TRANSITIONS.length; ++i) {
+                double transition = i < NL_TRANSITIONS.length ? NL_TRANSITIONS[i] : 87.0;
+                for (double t : new double[] {transition, -transition}) {
+                    long q = (long) Math.floor(t / Dlat[format] * (1 << 17));
+                    // find the exact boundaries with the same rounding as in local decoding
+                    for (long b = Math.max(first + 1, q - 2); b <= Math.min(last - 1, q + 2); ++b)
+                        if (NL(latitude(format, b)) != NL(latitude(format, b - 1)))
+                            candidates[count++] = b;
+                }
+            }
+            Arrays.sort(candidates, 0, count);
+            int sections = 0;
+            for (int i = 0; i < count; ++i)
+                if (sections == 0 || candidates[sections - 1] != candidates[i])
+                    candidates[sections++] = candidates[i];
+
+            boundaries[format] = Arrays.copyOf(candidates, sections);
+            Dlon[format] = new double[sections + 1];
+            lonZone[format] = new long[sections + 1];
+            lonFraction[format] = new long[sections + 1];
+            for (int s = 0; s <= sections; ++s) {
+                double NL = NL(latitude(format, s == 0 ? first : boundaries[format][s - 1]));
+                double d = angle / Math.max(1.0, NL - (odd ? 1.0 : 0.0));
+                Dlon[format][s] = d;
+                lonZone[format][s] = (long) Math.floor(lon / d);
+                lonFraction[format][s] = fraction(mod(lon, d) / d);
+            }
+        }
+
+        /**
+         * @param q 17 bit encoded latitude including the zone index
+         * @return the latitude exactly as computed in local decoding
+         */
+        private double latitude(int format, long q) {
+            return Dlat[format] * (q / (double) (1 << 17));
+        }
+
+        private static long fraction(double x) {
+            return (long) Math.floor(x * (1L << FRACTION_BITS));
+        }
+
+        /**
+         * @param pos CPR encoded position with at most 17 bits
+         * @return decoded position (without altitude)
+         */
+        Position decode(CPREncodedPosition pos) {
+            int format = (pos.surface ? 2 : 0) + (pos.is_odd ? 1 : 0);
+            int shift = FRACTION_BITS - pos.nbits;
+
+            // latitude zone index: floor(0.5 + receiver fraction - encoded fraction)
+            long j = latZone[format] + ((HALF + latFraction[format] - ((long) pos.encoded_lat << shift)) >> FRACTION_BITS);
+            double Rlat = Dlat[format] * (j + ((double) pos.encoded_lat) / ((double) (1 << pos.nbits)));
+
+            // section with the NL of the decoded latitude
+            long q = (j << 17) + ((long) pos.encoded_lat << (17 - pos.nbits));
+            long[] b = boundaries[format];
+            int s = 0;
+            while (s < b.length && q >= b[s]) ++s;
+
+            long m = lonZone[format][s] + ((HALF + lonFraction[format][s] - ((long) pos.encoded_lon << shift)) >> FRACTION_BITS);
+            double Rlon = Dlon[format][s] * (m + ((double) pos.encoded_lon) / ((double) (1 << pos.nbits)));
+
+            return new Position(Rlon, Rlat, null);
+        }
+    }
+
+    /**
+     * Stateful decoder for positions. Use this one to decode positions.<br>
+     * Airborne and surface positions cannot be combined for global decoding, so the decoder keeps the most
+     * recent even and odd position of both kinds. It also tracks whether the aircraft is airborne or on the
+     * surface: after a transition, the last decoded position is only used as reference for local decoding as long
+     * as the aircraft cannot have moved out of the local decoding range since (at 1000 knots). Otherwise it waits
+     * for the first complementary pair and decodes it globally.
      */
     public static class StatefulPositionDecoder {
+        // modes of the decoder
+        private static final int UNKNOWN = 0, AIRBORNE = 1, SURFACE = 2;
+
         private CompactPositionReporting.CPREncodedPosition last_even_airborne;
         private CompactPositionReporting.CPREncodedPosition last_odd_airborne;
+        private CompactPositionReporting.CPREncodedPosition last_even_surface;
+        private CompactPositionReporting.CPREncodedPosition last_odd_surface;
+        private int mode = UNKNOWN; // mode of the last position message
+        private boolean confirmed; // reasonable position decoded since last transition
         private Position last_pos; // lat lon
         private Long last_time; // in ms
         private int num_reasonable; // number of successive reasonable msgs
@@ -298,10 +553,18 @@ public class CompactPositionReporting {
         // distance to receiver threshold
         private static final int MAX_DIST_TO_SENDER = 700000; // 700km
 
+        // maximum ground speed for reasonable positions in m/s (1000 knots)
+        private static final double MAX_SPEED = 514.4;
+
+        // time in ms after which a position of the other mode is not a valid reference for local decoding anymore
+        private static final long MAX_AIRBORNE_REFERENCE_AGE = (long) (175 * 1852 / MAX_SPEED * 1000);
+        private static final long MAX_SURFACE_REFERENCE_AGE = (long) (45 * 1852 / MAX_SPEED * 1000);
+
         /**
          * @param cpr CPR encoded position
          * @param receiver position of the receiver for surface decoding and to check if received position was more than 700km away;
-         *                 null disables checks and surface decoding
+         *                 null disables checks. Surface positions are then decoded with the nearest airport of the
+         *                 {@link AirportDatabase#getDefault() built-in airport database} as reference.
          * @param disableSpeedTest do not perform speed estimation for reasonableness testing (use this, e.g., when you are merging
          *                         data from different streams with different delays)
          * @return WGS84 coordinates with latitude and longitude in dec degrees, and altitude in feet. altitude might be null
@@ -311,15 +574,29 @@ public class CompactPositionReporting {
         public Position decodePosition(CompactPositionReporting.CPREncodedPosition cpr, Position receiver, boolean disableSpeedTest) {
             if (cpr == null) return null;
 
-            // get last position in complementary format for global decoding
-            CompactPositionReporting.CPREncodedPosition last_other =
-                    cpr.isOddFormat() ? last_even_airborne : last_odd_airborne;
+            int new_mode = cpr.surface ? SURFACE : AIRBORNE;
+            if (new_mode != mode) {
+                mode = new_mode;
+                confirmed = false;
+            }
 
-            // store position message for global decoding
-            if (cpr.isOddFormat()) last_odd_airborne = cpr;
-            else last_even_airborne = cpr;
+            // get last position in complementary format and same mode for global decoding
+            CompactPositionReporting.CPREncodedPosition last_other;
+            if (cpr.surface) {
+                last_other = cpr.isOddFormat() ? last_even_surface : last_odd_surface;
+                if (cpr.isOddFormat()) last_odd_surface = cpr;
+                else last_even_surface = cpr;
+            } else {
+                last_other = cpr.isOddFormat() ? last_even_airborne : last_odd_airborne;
+                if (cpr.isOddFormat()) last_odd_airborne = cpr;
+                else last_even_airborne = cpr;
+            }
 
-            Position new_pos = cpr.decodePosition(last_other, last_pos != null ? last_pos : receiver);
+            Position reference = isValidReference(cpr) ? last_pos : receiver;
+            if (reference == null && cpr.surface)
+                reference = findSurfaceReference(cpr, last_other, AirportDatabase.getDefault());
+
+            Position new_pos = cpr.decodePosition(last_other, reference);
 
             if (new_pos == null) return null;
 
@@ -330,11 +607,12 @@ public class CompactPositionReporting {
                 double td = abs((cpr.getTimestamp() - last_time) / 1_000.);
                 double groundSpeed = new_pos.haversine(last_pos) / td; // in meters per second
 
-                if (groundSpeed > 514.4) new_pos.setReasonable(false);
+                if (groundSpeed > MAX_SPEED) new_pos.setReasonable(false);
             }
 
             last_pos = new_pos;
             last_time = cpr.getTimestamp();
+            if (new_pos.isReasonable()) confirmed = true;
 
             if (!new_pos.isReasonable()) num_reasonable = 0; // reset
                 // at least n good msgs before we declare reasonable
@@ -349,12 +627,24 @@ public class CompactPositionReporting {
             return new_pos;
         }
 
+        /**
+         * @return true if the last position can be used as reference for local decoding of the given position
+         */
+        private boolean isValidReference(CompactPositionReporting.CPREncodedPosition cpr) {
+            if (last_pos == null) return false;
+            if (confirmed || last_time == null || cpr.getTimestamp() == null) return true;
+
+            // last position was decoded in the other mode or is not reasonable
+            return abs(cpr.getTimestamp() - last_time) <=
+                    (cpr.surface ? MAX_SURFACE_REFERENCE_AGE : MAX_AIRBORNE_REFERENCE_AGE);
+        }
+
         /**
          * Decodes position with speed estimation-based reasonableness test.
          *
          * @param cpr CPR encoded position
          * @param receiver position of the receiver for surface decoding and to check if received position was more than 700km away;
-         *                 null disables checks and surface decoding
+         *                 null disables checks
          * @return WGS84 coordinates with latitude and longitude in dec degrees, and altitude in feet. altitude might be null
          *         if unavailable. On error, the returned position is null. Check the .isReasonable() flag before using
          *         the position.
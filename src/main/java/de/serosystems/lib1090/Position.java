@@ -35,6 +35,8 @@ public class Position implements Serializable {
 	private final static double f = 1/298.257223563; // flattening
 	private final static double b = a*(1-f); // semi-minor axis
 	private final static double e2 = 2*f-f*f; // eccentricity squared
+	/** mean earth radius in meters as used for great circle distances */
+	public final static double EARTH_RADIUS = 6371000.0;
 
 	private Double longitude;
 	private Double latitude;
@@ -149,14 +151,25 @@ public class Position implements Serializable {
 	 * @return distance between the this and other position in meters
 	 */
 	public Double haversine(Position other) {
-		double lon0r = toRadians(this.longitude);
-		double lat0r = toRadians(this.latitude);
-		double lon1r = toRadians(other.longitude);
-		double lat1r = toRadians(other.latitude);
-		double a = pow(sin((lat1r - lat0r) / 2.0), 2);
-		double b = cos(lat0r) * cos(lat1r) * pow(sin((lon1r - lon0r) / 2.0), 2);
+		return haversine(this.latitude, this.longitude, other.latitude, other.longitude);
+	}
 
-		return 6371000.0 * 2 * asin(sqrt(a + b));
+	/**
+	 * Calculates the two-dimensional great circle distance (haversine) without creating position objects
+	 * @param lat0 latitude of the first position in degrees
+	 * @param lon0 longitude of the first position in degrees
+	 * @param lat1 latitude of the second position in degrees
+	 * @param lon1 longitude of the second position in degrees
+	 * @return distance between the two positions in meters
+	 */
+	public static double haversine(double lat0, double lon0, double lat1, double lon1) {
+		double lat0r = toRadians(lat0);
+		double lat1r = toRadians(lat1);
+		double sinLat = sin((lat1r - lat0r) / 2.0);
+		double sinLon = sin(toRadians(lon1 - lon0) / 2.0);
+		double a = sinLat * sinLat + cos(lat0r) * cos(lat1r) * sinLon * sinLon;
+
+		return EARTH_RADIUS * 2 * asin(sqrt(min(1.0, a)));
 	}
 
 	/**
@@ -2,6 +2,8 @@ package de.serosystems.lib1090;
 
 import de.serosystems.lib1090.exceptions.BadFormatException;
 import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.filter.AddressFilter;
+import de.serosystems.lib1090.filter.KnownAddressFilter;
 import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
 import de.serosystems.lib1090.msgs.PositionMsg;
 import de.serosystems.lib1090.msgs.adsb.*;
@@ -10,7 +12,9 @@ import de.serosystems.lib1090.msgs.tisb.CoarsePositionMsg;
 import de.serosystems.lib1090.msgs.tisb.FineAirbornePositionMsg;
 import de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg;
 import de.serosystems.lib1090.msgs.tisb.ManagementMessage;
+import de.serosystems.lib1090.tracking.StateVectorStore;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,6 +45,16 @@ public class StatefulModeSDecoder {
 	private final Map<ModeSDownlinkMsg.QualifiedAddress, DecoderData> decoderData = new HashMap<>();
 	private int afterLastCleanup;
 	private long latestTimestamp;
+	// message types which should be fully decoded; null means all
+	private EnumSet<ModeSDownlinkMsg.subtype> decodeMask;
+	// pre-decode filter on the 24-bit address; null means all
+	private AddressFilter addressFilter;
+	// addresses confirmed by clean DF11/DF17 frames; null disables validation of address/parity replies
+	private KnownAddressFilter knownAddresses;
+	// scratch state for decoding with given aircraft state
+	private DecoderData givenState;
+	// aircraft states updated from each decoded message; null if disabled
+	private StateVectorStore stateVectors;
 
 	private DecoderData getDecoderData (ModeSDownlinkMsg.QualifiedAddress address) {
 		DecoderData dd = decoderData.computeIfAbsent(address, a -> new DecoderData());
@@ -48,13 +62,198 @@ public class StatefulModeSDecoder {
 		return dd;
 	}
 
+	/**
+	 * Keep the current state of each aircraft in the given store. It is updated with every message returned by
+	 * the decode methods (except {@link #decode(ModeSDownlinkMsg, long, byte, boolean, boolean)}) and with every
+	 * reasonable position returned by {@link #extractPosition(ModeSDownlinkMsg.QualifiedAddress, PositionMsg, Position)}.
+	 * @param store the store or null to disable (default)
+	 */
+	public void setStateVectorStore(StateVectorStore store) {
+		this.stateVectors = store;
+	}
+
+	/**
+	 * @return the store of aircraft states or null if none has been set
+	 */
+	public StateVectorStore getStateVectorStore() {
+		return stateVectors;
+	}
+
+	/**
+	 * Restrict decoding to the given message types. Messages of all other types are classified from their
+	 * downlink format, format type code and subtype and then skipped without constructing the specialized
+	 * message, i.e., {@link #decode(ModeSDownlinkMsg, long)} returns null for them.<br>
+	 * Note that messages which carry decoder state (operational status, velocity and airspeed messages) are
+	 * always parsed to keep track of the ADS-B version, the NIC supplements and the difference between
+	 * geometric and barometric altitude. Hence, decoding results of the unmasked types do not depend on the mask.
+	 * @param mask the types which should be decoded or null to decode all types (default)
+	 */
+	public void setDecodeMask(EnumSet<ModeSDownlinkMsg.subtype> mask) {
+		this.decodeMask = mask == null ? null : EnumSet.copyOf(mask);
+	}
+
+	/**
+	 * @return the types which are decoded or null if all types are decoded
+	 * @see #setDecodeMask(EnumSet)
+	 */
+	public EnumSet<ModeSDownlinkMsg.subtype> getDecodeMask() {
+		return decodeMask == null ? null : EnumSet.copyOf(decodeMask);
+	}
+
+	/**
+	 * Only process frames of addresses accepted by the given filter. Frames of other addresses are dropped before
+	 * any message objects are built, i.e., the decode methods return null for them. For downlink formats
+	 * 11, 17, 18 and 19 (AF 0) the address is read directly from the raw bytes. For all other formats, the address
+	 * is recovered from the parity field and the filter is applied right after the CRC calculation.
+	 * @param filter the address filter or null to disable filtering (default)
+	 */
+	public void setAddressFilter(AddressFilter filter) {
+		this.addressFilter = filter;
+	}
+
+	/**
+	 * @return the address filter or null if none is used
+	 */
+	public AddressFilter getAddressFilter() {
+		return addressFilter;
+	}
+
+	/**
+	 * Validate addresses recovered from the address/parity field (DF 0, 4, 5, 16, 20, 21 and 24) against
+	 * addresses recently seen in all-call replies (DF 11) and extended squitters (DF 17) with a clean CRC.
+	 * Replies of unconfirmed addresses are most likely corrupted and dropped, i.e., the decode methods
+	 * return null for them. Use {@link KnownAddressFilter#getRejectionRate()} to monitor the filter.
+	 * @param filter the set of confirmed addresses or null to disable validation (default)
+	 */
+	public void setKnownAddressFilter(KnownAddressFilter filter) {
+		this.knownAddresses = filter;
+	}
+
+	/**
+	 * @return the set of confirmed addresses or null if address/parity replies are not validated
+	 */
+	public KnownAddressFilter getKnownAddressFilter() {
+		return knownAddresses;
+	}
+
+	/**
+	 * Confirms addresses of clean DF 11 and DF 17 frames and checks addresses recovered from
+	 * address/parity fields.
+	 * @param modes the Mode S reply
+	 * @param timestamp time of reception in milliseconds
+	 * @return true if the reply should be processed
+	 */
+	private boolean validateAddress(ModeSDownlinkMsg modes, long timestamp) {
+		int address = modes.getAddress().getAddress();
+		switch (modes.getDownlinkFormat()) {
+			case 11:
+			case 17:
+				// remainder of the CRC; DF 11 may contain the interrogator code in the lower 7 bits
+				int remainder = modes.isNoCRC() ? modes.getParity() : modes.calcParity() ^ modes.getParity();
+				if ((remainder & (modes.getDownlinkFormat() == 11 ? 0xFFFF80 : 0xFFFFFF)) == 0)
+					knownAddresses.confirm(address, timestamp);
+				return true;
+			case 0: case 4: case 5: case 16: case 20: case 21: case 24:
+				return knownAddresses.accepts(address, timestamp);
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Checks the address of raw frames which carry it in clear (DF 11, 17, 18 and 19 with AF 0).
+	 * @param raw_message the raw Mode S frame
+	 * @return true if the frame can be dropped without further decoding
+	 */
+	private boolean isFilteredOut(byte[] raw_message) {
+		return isFilteredOut(raw_message, 0, raw_message.length);
+	}
+
+	/**
+	 * @param buffer buffer containing the raw Mode S frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame
+	 * @return true if the frame can be dropped without further decoding
+	 */
+	private boolean isFilteredOut(byte[] buffer, int offset, int length) {
+		if (addressFilter == null || length < 4) return false;
+
+		int df = (buffer[offset] >>> 3) & 0x1F;
+		// DF 19 carries an address only with application field 0 (ADS-B)
+		if (df != 11 && df != 17 && df != 18 && (df != 19 || (buffer[offset] & 0x7) != 0)) return false;
+
+		int address = (buffer[offset+1] & 0xff) << 16 | (buffer[offset+2] & 0xff) << 8 | (buffer[offset+3] & 0xff);
+		return !addressFilter.accepts(address);
+	}
+
+	/**
+	 * @param type the type of a message
+	 * @return true if messages of this type should not be returned to the caller
+	 */
+	private boolean isMasked(ModeSDownlinkMsg.subtype type) {
+		return decodeMask != null && !decodeMask.contains(type);
+	}
+
+	/**
+	 * Classifies an ADS-B extended squitter from the format type code and subtype in its first ME byte. Velocity
+	 * and airspeed messages which are masked still update the difference between geometric and barometric altitude.
+	 * @param payload payload of the frame (address and ME field)
+	 * @param dd state of the aircraft
+	 * @return true if the message is masked and can be dropped without building it; operational status messages
+	 *         (FTC 31, any subtype) are never dropped here since they update the ADS-B version and NIC supplements
+	 */
+	private boolean isMaskedSquitter(byte[] payload, DecoderData dd) {
+		int ftc = (payload[3] >>> 3) & 0x1F;
+		int subtype = payload[3] & 0x7;
+
+		ModeSDownlinkMsg.subtype type = ModeSDownlinkMsg.subtype.EXTENDED_SQUITTER;
+		if (ftc >= 1 && ftc <= 4) {
+			type = ModeSDownlinkMsg.subtype.ADSB_IDENTIFICATION;
+		} else if (ftc >= 5 && ftc <= 8) {
+			type = dd.adsbVersion == 1 ? ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V1 :
+					dd.adsbVersion == 2 ? ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V2 :
+							ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V0;
+		} else if ((ftc >= 9 && ftc <= 18) || (ftc >= 20 && ftc <= 22)) {
+			type = dd.adsbVersion == 1 ? ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V1 :
+					dd.adsbVersion == 2 ? ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V2 :
+							ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V0;
+		} else if (ftc == 19 && subtype >= 1 && subtype <= 4) {
+			type = subtype <= 2 ? ModeSDownlinkMsg.subtype.ADSB_VELOCITY : ModeSDownlinkMsg.subtype.ADSB_AIRSPEED;
+		} else if (ftc == 24 && subtype == 1) {
+			type = ModeSDownlinkMsg.subtype.SURFACE_SYSTEM_STATUS;
+		} else if (ftc == 28 && subtype == 1) {
+			type = ModeSDownlinkMsg.subtype.ADSB_EMERGENCY;
+		} else if (ftc == 28 && subtype == 2) {
+			type = ModeSDownlinkMsg.subtype.ADSB_TCAS;
+		} else if (ftc == 29 && ((payload[3] >>> 1) & 0x3) == 1 && (dd.adsbVersion > 0 || (payload[4] & 0x20) == 0)) {
+			type = ModeSDownlinkMsg.subtype.ADSB_TARGET_STATE_AND_STATUS;
+		} else if (ftc == 31) {
+			return false;
+		}
+
+		if (!isMasked(type)) return false;
+
+		if (type == ModeSDownlinkMsg.subtype.ADSB_VELOCITY || type == ModeSDownlinkMsg.subtype.ADSB_AIRSPEED) {
+			// same as VelocityOverGroundMsg and AirspeedHeadingMsg; the latter has no "not available" value
+			int geoMinusBaro = payload[9] & 0x7F;
+			if (geoMinusBaro != 0 || type == ModeSDownlinkMsg.subtype.ADSB_AIRSPEED) {
+				geoMinusBaro = (geoMinusBaro - 1) * 25;
+				dd.geoMinusBaro = (payload[9] & 0x80) != 0 ? -geoMinusBaro : geoMinusBaro;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * This function decodes a half-decoded Mode S reply to its
 	 * deepest possible specialization. Use getType() to check its
 	 * actual type afterwards.
 	 * @param modes the incompletely decoded Mode S message
 	 * @param timestamp time of applicability (or reception) of the message in milliseconds
-	 * @return an instance of the most specialized ModeSReply possible
+	 * @return an instance of the most specialized ModeSReply possible or null if its type was
+	 *         excluded with {@link #setDecodeMask(EnumSet)} or its address was rejected by the
+	 *         {@link #setAddressFilter(AddressFilter) address filter} or the
+	 *         {@link #setKnownAddressFilter(KnownAddressFilter) known address filter}
 	 * @throws UnspecifiedFormatError if format is not specified
 	 * @throws BadFormatException if format contains error
 	 */
@@ -63,46 +262,91 @@ public class StatefulModeSDecoder {
 
 		latestTimestamp = timestamp;
 
+		ModeSDownlinkMsg msg = decode(modes, timestamp, null);
+		if (stateVectors != null && msg != null) stateVectors.update(msg, timestamp);
+		return msg;
+	}
+
+	/**
+	 * Decodes a message with the given aircraft state instead of the state tracked by this decoder, e.g., to
+	 * restore a message which has been stored as raw frame (see {@link de.serosystems.lib1090.msgs.MessageCodec}).
+	 * The tracked state is neither used nor updated. Filters and the decode mask still apply.
+	 * @param modes the Mode S message
+	 * @param timestamp time of applicability (or reception) of the message in milliseconds
+	 * @param adsbVersion the ADS-B version of the aircraft
+	 * @param nicSupplementA NIC supplement A as last reported in an operational status message
+	 * @param nicSupplementC NIC supplement C as last reported in a surface operational status message
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
+	 * @throws UnspecifiedFormatError if format is not specified
+	 * @throws BadFormatException if format contains error
+	 */
+	public ModeSDownlinkMsg decode(ModeSDownlinkMsg modes, long timestamp, byte adsbVersion, boolean nicSupplementA,
+								   boolean nicSupplementC) throws BadFormatException, UnspecifiedFormatError {
+		if (givenState == null) givenState = new DecoderData();
+		givenState.adsbVersion = adsbVersion;
+		givenState.nicSupplA = nicSupplementA;
+		givenState.nicSupplC = nicSupplementC;
+		return decode(modes, timestamp, givenState);
+	}
+
+	/**
+	 * @param state aircraft state to use or null to use (and update) the tracked state
+	 */
+	private ModeSDownlinkMsg decode(ModeSDownlinkMsg modes, long timestamp, DecoderData state) throws BadFormatException, UnspecifiedFormatError {
+		if (addressFilter != null && !addressFilter.accepts(modes.getAddress().getAddress()))
+			return null;
+
+		if (knownAddresses != null && !validateAddress(modes, timestamp))
+			return null;
+
 		switch (modes.getDownlinkFormat()) {
-			case 0: return new ShortACAS(modes);
-			case 4: return new AltitudeReply(modes);
-			case 5: return new IdentifyReply(modes);
-			case 11: return new AllCallReply(modes);
-			case 16: return new LongACAS(modes);
+			case 0: return isMasked(ModeSDownlinkMsg.subtype.SHORT_ACAS) ? null : new ShortACAS(modes);
+			case 4: return isMasked(ModeSDownlinkMsg.subtype.ALTITUDE_REPLY) ? null : new AltitudeReply(modes);
+			case 5: return isMasked(ModeSDownlinkMsg.subtype.IDENTIFY_REPLY) ? null : new IdentifyReply(modes);
+			case 11: return isMasked(ModeSDownlinkMsg.subtype.ALL_CALL_REPLY) ? null : new AllCallReply(modes);
+			case 16: return isMasked(ModeSDownlinkMsg.subtype.LONG_ACAS) ? null : new LongACAS(modes);
 			case 17: case 18: case 19:
 				// check whether this is an ADS-B message (see Figure 2-2, RTCA DO-260B)
 				if (modes.getDownlinkFormat() == 17 ||
 						modes.getDownlinkFormat() == 18 && modes.getFirstField() < 2 ||
 						modes.getDownlinkFormat() == 19 && modes.getFirstField() == 0) {
 
-					// interpret ME field as standard ADS-B
-					ExtendedSquitter es1090 = new ExtendedSquitter(modes);
-
 					// we need stateful decoding, because ADS-B version > 0 can only be assumed
 					// if matching version info in operational status has been found.
-					DecoderData dd = getDecoderData(modes.getAddress());
+					DecoderData dd = state != null ? state : getDecoderData(modes.getAddress());
+
+					// drop masked messages before they are built
+					if (decodeMask != null && isMaskedSquitter(modes.getPayload(), dd))
+						return null;
+
+					// interpret ME field as standard ADS-B
+					ExtendedSquitter es1090 = new ExtendedSquitter(modes);
 
 					// what kind of extended squitter?
 					byte ftc = es1090.getFormatTypeCode();
 
 					if (ftc >= 1 && ftc <= 4) // identification message
-						return new de.serosystems.lib1090.msgs.adsb.IdentificationMsg(es1090);
+						return isMasked(ModeSDownlinkMsg.subtype.ADSB_IDENTIFICATION) ? null :
+								new de.serosystems.lib1090.msgs.adsb.IdentificationMsg(es1090);
 
 					if (ftc >= 5 && ftc <= 8) {
 						// surface position message
 						switch(dd.adsbVersion) {
 							case 1:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V1)) return null;
 								SurfacePositionV1Msg s1 = new SurfacePositionV1Msg(es1090, timestamp);
 								s1.setNICSupplementA(dd.nicSupplA);
 								return s1;
 							case 2:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V2)) return null;
 								SurfacePositionV2Msg s2 = new SurfacePositionV2Msg(es1090, timestamp);
 								s2.setNICSupplementA(dd.nicSupplA);
 								s2.setNICSupplementC(dd.nicSupplC);
 								return s2;
 							default:
 								// implicit by version 0
-								return new SurfacePositionV0Msg(es1090, timestamp);
+								return isMasked(ModeSDownlinkMsg.subtype.ADSB_SURFACE_POSITION_V0) ? null :
+										new SurfacePositionV0Msg(es1090, timestamp);
 						}
 					}
 
@@ -110,16 +354,19 @@ public class StatefulModeSDecoder {
 						// airborne position message
 						switch(dd.adsbVersion) {
 							case 1:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V1)) return null;
 								AirbornePositionV1Msg a1 = new AirbornePositionV1Msg(es1090, timestamp);
 								a1.setNICSupplementA(dd.nicSupplA);
 								return a1;
 							case 2:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V2)) return null;
 								AirbornePositionV2Msg a2 = new AirbornePositionV2Msg(es1090, timestamp);
 								a2.setNICSupplementA(dd.nicSupplA);
 								return a2;
 							default:
 								// implicit by version 0
-								return new AirbornePositionV0Msg(es1090, timestamp);
+								return isMasked(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V0) ? null :
+										new AirbornePositionV0Msg(es1090, timestamp);
 						}
 					}
 
@@ -130,28 +377,28 @@ public class StatefulModeSDecoder {
 							de.serosystems.lib1090.msgs.adsb.VelocityOverGroundMsg velocity =
 									new de.serosystems.lib1090.msgs.adsb.VelocityOverGroundMsg(es1090);
 							if (velocity.hasGeoMinusBaroInfo()) dd.geoMinusBaro = velocity.getGeoMinusBaro();
-							return velocity;
+							return isMasked(velocity.getType()) ? null : velocity;
 						} else if (subtype == 3 || subtype == 4) {  // airspeed & heading
 							de.serosystems.lib1090.msgs.adsb.AirspeedHeadingMsg airspeed =
 									new de.serosystems.lib1090.msgs.adsb.AirspeedHeadingMsg(es1090);
 							if (airspeed.hasGeoMinusBaroInfo()) dd.geoMinusBaro = airspeed.getGeoMinusBaro();
-							return airspeed;
+							return isMasked(airspeed.getType()) ? null : airspeed;
 						}
 					}
 
 					if (ftc == 24) {
 						int subtype = es1090.getMessage()[0] & 0x7;
 						if (subtype == 1)
-							return new MLATSystemStatusMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.SURFACE_SYSTEM_STATUS) ? null : new MLATSystemStatusMsg(es1090);
 					}
 
 					if (ftc == 28) { // aircraft status message, check subtype
 						int subtype = es1090.getMessage()[0] & 0x7;
 
 						if (subtype == 1) // emergency/priority status
-							return new EmergencyOrPriorityStatusMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.ADSB_EMERGENCY) ? null : new EmergencyOrPriorityStatusMsg(es1090);
 						if (subtype == 2) // TCAS resolution advisory report
-							return new TCASResolutionAdvisoryMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.ADSB_TCAS) ? null : new TCASResolutionAdvisoryMsg(es1090);
 					}
 
 					if (ftc == 29) {
@@ -160,7 +407,7 @@ public class StatefulModeSDecoder {
 						boolean hasMe11Bit = (es1090.getMessage()[1]&0x20) != 0;
 
 						if (subtype == 1 && (dd.adsbVersion > 0 || !hasMe11Bit)) {
-							return new TargetStateAndStatusMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.ADSB_TARGET_STATE_AND_STATUS) ? null : new TargetStateAndStatusMsg(es1090);
 						}
 					}
 
@@ -172,15 +419,15 @@ public class StatefulModeSDecoder {
 							// airborne
 							switch (dd.adsbVersion) {
 								case 0:
-									return new OperationalStatusV0Msg(es1090);
+									return isMasked(ModeSDownlinkMsg.subtype.ADSB_STATUS_V0) ? null : new OperationalStatusV0Msg(es1090);
 								case 1:
 									AirborneOperationalStatusV1Msg s1 = new AirborneOperationalStatusV1Msg(es1090);
 									dd.nicSupplA = s1.hasNICSupplementA();
-									return s1;
+									return isMasked(s1.getType()) ? null : s1;
 								case 2:
 									AirborneOperationalStatusV2Msg s2 = new AirborneOperationalStatusV2Msg(es1090);
 									dd.nicSupplA = s2.hasNICSupplementA();
-									return s2;
+									return isMasked(s2.getType()) ? null : s2;
 								default:
 									throw new BadFormatException("Airborne operational status has invalid version: " + dd.adsbVersion);
 							}
@@ -188,24 +435,24 @@ public class StatefulModeSDecoder {
 							// surface
 							switch (dd.adsbVersion) {
 								case 0:
-									return new OperationalStatusV0Msg(es1090);
+									return isMasked(ModeSDownlinkMsg.subtype.ADSB_STATUS_V0) ? null : new OperationalStatusV0Msg(es1090);
 								case 1:
 									SurfaceOperationalStatusV1Msg s1 = new SurfaceOperationalStatusV1Msg(es1090);
 									dd.nicSupplA = s1.hasNICSupplementA();
 									dd.nicSupplC = s1.getNICSupplementC();
-									return s1;
+									return isMasked(s1.getType()) ? null : s1;
 								case 2:
 									SurfaceOperationalStatusV2Msg s2 = new SurfaceOperationalStatusV2Msg(es1090);
 									dd.nicSupplA = s2.hasNICSupplementA();
 									dd.nicSupplC = s2.getNICSupplementC();
-									return s2;
+									return isMasked(s2.getType()) ? null : s2;
 								default:
 									throw new BadFormatException("Surface operational status has invalid version: " + dd.adsbVersion);
 							}
 						}
 					}
 
-					return es1090; // unknown extended squitter
+					return isMasked(ModeSDownlinkMsg.subtype.EXTENDED_SQUITTER) ? null : es1090; // unknown extended squitter
 				} else if (modes.getDownlinkFormat() == 18 && modes.getFirstField() == 2 ||
 						modes.getDownlinkFormat() == 18 && modes.getFirstField() == 5) {
 
@@ -214,15 +461,15 @@ public class StatefulModeSDecoder {
 
 					// we need stateful decoding, because ADS-B version > 0 can only be assumed
 					// if matching version info in operational status has been found.
-					DecoderData dd = getDecoderData(modes.getAddress());
+					DecoderData dd = state != null ? state : getDecoderData(modes.getAddress());
 
 					// what kind of extended squitter?
 					byte ftc = es1090.getFormatTypeCode();
 
 					if ((ftc >= 9 && ftc <= 18) || (ftc >= 20 && ftc <= 22)) {
-						return new FineAirbornePositionMsg(es1090, timestamp);
+						return isMasked(ModeSDownlinkMsg.subtype.TISB_FINE_AIRBORNE_POSITION) ? null : new FineAirbornePositionMsg(es1090, timestamp);
 					} else if (ftc >= 5 && ftc <= 8) {
-						return new FineSurfacePositionMsg(es1090, timestamp);
+						return isMasked(ModeSDownlinkMsg.subtype.TISB_FINE_SURFACE_POSITION) ? null : new FineSurfacePositionMsg(es1090, timestamp);
 					} else if (ftc == 19) {
 						int subtype = es1090.getMessage()[0] & 0x7;
 						if (subtype == 1 || subtype == 2) {
@@ -230,25 +477,27 @@ public class StatefulModeSDecoder {
 									new de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg(es1090);
 							if (vog.hasGeoMinusBaroInfo())
 								dd.geoMinusBaro = vog.getGeoMinusBaro();
-							return vog;
+							return isMasked(vog.getType()) ? null : vog;
 						} else if (subtype == 3 || subtype == 4) {
 							de.serosystems.lib1090.msgs.tisb.AirspeedHeadingMsg ash =
 									new de.serosystems.lib1090.msgs.tisb.AirspeedHeadingMsg(es1090);
 							if (ash.hasGeoMinusBaroInfo())
 								dd.geoMinusBaro = ash.getGeoMinusBaro();
-							return ash;
+							return isMasked(ash.getType()) ? null : ash;
 						}
 					} else if (ftc >= 1 && ftc <= 4) {
-						return new de.serosystems.lib1090.msgs.tisb.IdentificationMsg(es1090);
+						return isMasked(ModeSDownlinkMsg.subtype.TISB_IDENTIFICATION) ? null :
+								new de.serosystems.lib1090.msgs.tisb.IdentificationMsg(es1090);
 					}
 
-					return es1090; // unknown TIS-B message
+					return isMasked(ModeSDownlinkMsg.subtype.EXTENDED_SQUITTER) ? null : es1090; // unknown TIS-B message
 				} else if (modes.getDownlinkFormat() == 18 && modes.getFirstField() == 3) {
+					if (isMasked(ModeSDownlinkMsg.subtype.TISB_COARSE_POSITION)) return null;
 					ExtendedSquitter es1090 = new ExtendedSquitter(modes);
 					return new CoarsePositionMsg(es1090, timestamp);
 				} else if (modes.getDownlinkFormat() == 18 && modes.getFirstField() == 4) {
 					// TIS-B or ADS-R Management Message
-					return new ManagementMessage(new ExtendedSquitter(modes));
+					return isMasked(ModeSDownlinkMsg.subtype.TISB_IDENTIFICATION) ? null : new ManagementMessage(new ExtendedSquitter(modes));
 				} else if (modes.getDownlinkFormat() == 18 && modes.getFirstField() == 6) {
 
 					// interpret ME field as ADS-R
@@ -256,23 +505,26 @@ public class StatefulModeSDecoder {
 
 					// we need stateful decoding, because ADS-R version > 0 can only be assumed
 					// if matching version info in operational status has been found.
-					DecoderData dd = getDecoderData(modes.getAddress());
+					DecoderData dd = state != null ? state : getDecoderData(modes.getAddress());
 
 					// what kind of extended squitter?
 					byte ftc = es1090.getFormatTypeCode();
 
 					if (ftc >= 1 && ftc <= 4) // identification message
-						return new de.serosystems.lib1090.msgs.adsr.IdentificationMsg(es1090);
+						return isMasked(ModeSDownlinkMsg.subtype.ADSR_IDENTIFICATION) ? null :
+								new de.serosystems.lib1090.msgs.adsr.IdentificationMsg(es1090);
 
 					if (ftc >= 5 && ftc <= 8) {
 						// surface position message
 						switch(dd.adsbVersion) {
 							case 1:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSR_SURFACE_POSITION_V1)) return null;
 								de.serosystems.lib1090.msgs.adsr.SurfacePositionV1Msg s1 =
 										new de.serosystems.lib1090.msgs.adsr.SurfacePositionV1Msg(es1090, timestamp);
 								s1.setNICSupplementA(dd.nicSupplA);
 								return s1;
 							case 2:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSR_SURFACE_POSITION_V2)) return null;
 								de.serosystems.lib1090.msgs.adsr.SurfacePositionV2Msg s2 =
 										new de.serosystems.lib1090.msgs.adsr.SurfacePositionV2Msg(es1090, timestamp);
 								s2.setNICSupplementA(dd.nicSupplA);
@@ -280,7 +532,8 @@ public class StatefulModeSDecoder {
 								return s2;
 							default:
 								// implicit by version 0
-								return new de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg(es1090, timestamp);
+								return isMasked(ModeSDownlinkMsg.subtype.ADSR_SURFACE_POSITION_V0) ? null :
+										new de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg(es1090, timestamp);
 						}
 					}
 
@@ -288,18 +541,21 @@ public class StatefulModeSDecoder {
 						// airborne position message
 						switch(dd.adsbVersion) {
 							case 1:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSR_AIRBORN_POSITION_V1)) return null;
 								de.serosystems.lib1090.msgs.adsr.AirbornePositionV1Msg a1 =
 										new de.serosystems.lib1090.msgs.adsr.AirbornePositionV1Msg(es1090, timestamp);
 								a1.setNICSupplementA(dd.nicSupplA);
 								return a1;
 							case 2:
+								if (isMasked(ModeSDownlinkMsg.subtype.ADSR_AIRBORN_POSITION_V2)) return null;
 								de.serosystems.lib1090.msgs.adsr.AirbornePositionV2Msg a2 =
 										new de.serosystems.lib1090.msgs.adsr.AirbornePositionV2Msg(es1090, timestamp);
 								a2.setNICSupplementA(dd.nicSupplA);
 								return a2;
 							default:
 								// implicit by version 0
-								return new de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg(es1090, timestamp);
+								return isMasked(ModeSDownlinkMsg.subtype.ADSR_AIRBORN_POSITION_V0) ? null :
+										new de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg(es1090, timestamp);
 						}
 					}
 
@@ -310,12 +566,12 @@ public class StatefulModeSDecoder {
 							de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg velocity =
 									new de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg(es1090);
 							if (velocity.hasGeoMinusBaroInfo()) dd.geoMinusBaro = velocity.getGeoMinusBaro();
-							return velocity;
+							return isMasked(velocity.getType()) ? null : velocity;
 						} else if (subtype == 3 || subtype == 4) {  // airspeed & heading
 							de.serosystems.lib1090.msgs.adsr.AirspeedHeadingMsg airspeed =
 									new de.serosystems.lib1090.msgs.adsr.AirspeedHeadingMsg(es1090);
 							if (airspeed.hasGeoMinusBaroInfo()) dd.geoMinusBaro = airspeed.getGeoMinusBaro();
-							return airspeed;
+							return isMasked(airspeed.getType()) ? null : airspeed;
 						}
 					}
 
@@ -323,7 +579,8 @@ public class StatefulModeSDecoder {
 						int subtype = es1090.getMessage()[0] & 0x7;
 
 						if (subtype == 1) // emergency/priority status
-							return new de.serosystems.lib1090.msgs.adsr.EmergencyOrPriorityStatusMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.ADSR_EMERGENCY) ? null :
+									new de.serosystems.lib1090.msgs.adsr.EmergencyOrPriorityStatusMsg(es1090);
 					}
 
 					if (ftc == 29) {
@@ -332,7 +589,8 @@ public class StatefulModeSDecoder {
 						boolean hasMe11Bit = (es1090.getMessage()[1]&0x20) != 0;
 
 						if (subtype == 1 && (dd.adsbVersion > 0 || !hasMe11Bit)) {
-							return new de.serosystems.lib1090.msgs.adsr.TargetStateAndStatusMsg(es1090);
+							return isMasked(ModeSDownlinkMsg.subtype.ADSR_TARGET_STATE_AND_STATUS) ? null :
+									new de.serosystems.lib1090.msgs.adsr.TargetStateAndStatusMsg(es1090);
 						}
 					}
 
@@ -344,19 +602,20 @@ public class StatefulModeSDecoder {
 							// airborne
 							switch (dd.adsbVersion) {
 								case 0:
-									return new de.serosystems.lib1090.msgs.adsr.OperationalStatusV0Msg(es1090);
+									return isMasked(ModeSDownlinkMsg.subtype.ADSR_STATUS_V0) ? null :
+											new de.serosystems.lib1090.msgs.adsr.OperationalStatusV0Msg(es1090);
 								case 1:
 									// TODO: store NIC supplement B as well
 									de.serosystems.lib1090.msgs.adsr.AirborneOperationalStatusV1Msg s1 =
 											new de.serosystems.lib1090.msgs.adsr.AirborneOperationalStatusV1Msg(es1090);
 									dd.nicSupplA = s1.hasNICSupplementA();
-									return s1;
+									return isMasked(s1.getType()) ? null : s1;
 								case 2:
 									// TODO: store NIC supplement B as well
 									de.serosystems.lib1090.msgs.adsr.AirborneOperationalStatusV2Msg s2 =
 											new de.serosystems.lib1090.msgs.adsr.AirborneOperationalStatusV2Msg(es1090);
 									dd.nicSupplA = s2.hasNICSupplementA();
-									return s2;
+									return isMasked(s2.getType()) ? null : s2;
 								default:
 									throw new BadFormatException("Airborne operational status has invalid version: " + dd.adsbVersion);
 							}
@@ -364,48 +623,50 @@ public class StatefulModeSDecoder {
 							// surface
 							switch (dd.adsbVersion) {
 								case 0:
-									return new de.serosystems.lib1090.msgs.adsr.OperationalStatusV0Msg(es1090);
+									return isMasked(ModeSDownlinkMsg.subtype.ADSR_STATUS_V0) ? null :
+											new de.serosystems.lib1090.msgs.adsr.OperationalStatusV0Msg(es1090);
 								case 1:
 									de.serosystems.lib1090.msgs.adsr.SurfaceOperationalStatusV1Msg s1 =
 											new de.serosystems.lib1090.msgs.adsr.SurfaceOperationalStatusV1Msg(es1090);
 									dd.nicSupplA = s1.hasNICSupplementA();
 									dd.nicSupplC = s1.getNICSupplementC();
-									return s1;
+									return isMasked(s1.getType()) ? null : s1;
 								case 2:
 									de.serosystems.lib1090.msgs.adsr.SurfaceOperationalStatusV2Msg s2 =
 											new de.serosystems.lib1090.msgs.adsr.SurfaceOperationalStatusV2Msg(es1090);
 									dd.nicSupplA = s2.hasNICSupplementA();
 									dd.nicSupplC = s2.getNICSupplementC();
-									return s2;
+									return isMasked(s2.getType()) ? null : s2;
 								default:
 									throw new BadFormatException("Surface operational status has invalid version: " + dd.adsbVersion);
 							}
 						}
 					}
 
-					return es1090; // unknown extended squitter
+					return isMasked(ModeSDownlinkMsg.subtype.EXTENDED_SQUITTER) ? null : es1090; // unknown extended squitter
 				} else if (modes.getDownlinkFormat() == 19) {
-					return new MilitaryExtendedSquitter(modes);
+					return isMasked(ModeSDownlinkMsg.subtype.MILITARY_EXTENDED_SQUITTER) ? null : new MilitaryExtendedSquitter(modes);
 				}
 
 				return modes; // this should never happen
-			case 20: return new CommBAltitudeReply(modes);
-			case 21: return new CommBIdentifyReply(modes);
+			case 20: return isMasked(ModeSDownlinkMsg.subtype.COMM_B_ALTITUDE_REPLY) ? null : new CommBAltitudeReply(modes);
+			case 21: return isMasked(ModeSDownlinkMsg.subtype.COMM_B_IDENTIFY_REPLY) ? null : new CommBIdentifyReply(modes);
 			default:
 				if (modes.getDownlinkFormat()>=24)
-					return new CommDExtendedLengthMsg(modes);
-				else return modes; // unknown mode s reply
+					return isMasked(ModeSDownlinkMsg.subtype.COMM_D_ELM) ? null : new CommDExtendedLengthMsg(modes);
+				else return isMasked(ModeSDownlinkMsg.subtype.MODES_REPLY) ? null : modes; // unknown mode s reply
 		}
 	}
 
 	/**
 	 * @param raw_message the Mode S message as byte array
 	 * @param timestamp time of applicability (or reception) of the message in milliseconds
-	 * @return an instance of the most specialized ModeSReply possible
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
 	 * @throws UnspecifiedFormatError if format is not specified
 	 * @throws BadFormatException if format contains error
 	 */
 	public ModeSDownlinkMsg decode(byte[] raw_message, long timestamp) throws BadFormatException, UnspecifiedFormatError {
+		if (isFilteredOut(raw_message)) return null;
 		return decode(new ModeSDownlinkMsg(raw_message), timestamp);
 	}
 
@@ -413,41 +674,60 @@ public class StatefulModeSDecoder {
 	 * @param raw_message the Mode S message as byte array
 	 * @param noCRC indicates whether the CRC has been subtracted from the parity field
 	 * @param timestamp time of applicability (or reception) of the message in milliseconds
-	 * @return an instance of the most specialized ModeSReply possible
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
 	 * @throws UnspecifiedFormatError if format is not specified
 	 * @throws BadFormatException if format contains error
 	 */
 	public ModeSDownlinkMsg decode(byte[] raw_message, boolean noCRC, long timestamp) throws BadFormatException, UnspecifiedFormatError {
+		if (isFilteredOut(raw_message)) return null;
 		return decode(new ModeSDownlinkMsg(raw_message, noCRC), timestamp);
 	}
 
+	/**
+	 * Decodes a frame which is part of a larger buffer without copying it first, e.g., frames
+	 * delivered by {@link de.serosystems.lib1090.io.BeastReader}.
+	 * @param buffer buffer containing the Mode S message
+	 * @param offset index of the first byte of the message in buffer
+	 * @param length number of bytes of the message (7 or 14)
+	 * @param timestamp time of applicability (or reception) of the message in milliseconds
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
+	 * @throws UnspecifiedFormatError if format is not specified
+	 * @throws BadFormatException if format contains error
+	 */
+	public ModeSDownlinkMsg decode(byte[] buffer, int offset, int length, long timestamp) throws BadFormatException, UnspecifiedFormatError {
+		if (isFilteredOut(buffer, offset, length)) return null;
+		return decode(new ModeSDownlinkMsg(buffer, offset, length, false), timestamp);
+	}
+
 	/**
 	 * @param raw_message the Mode S message in hex representation
 	 * @param timestamp time of applicability (or reception) of the message in milliseconds
-	 * @return an instance of the most specialized ModeSReply possible
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
 	 * @throws UnspecifiedFormatError if format is not specified
 	 * @throws BadFormatException if format contains error
 	 */
 	public ModeSDownlinkMsg decode(String raw_message, long timestamp) throws BadFormatException, UnspecifiedFormatError {
-		return decode(new ModeSDownlinkMsg(raw_message), timestamp);
+		return decode(Tools.hexStringToByteArray(raw_message), timestamp);
 	}
 
 	/**
 	 * @param raw_message the Mode S message in hex representation
 	 * @param noCRC indicates whether the CRC has been subtracted from the parity field
 	 * @param timestamp time of applicability (or reception) of the message in milliseconds
-	 * @return an instance of the most specialized ModeSReply possible
+	 * @return an instance of the most specialized ModeSReply possible (null if masked or filtered)
 	 * @throws UnspecifiedFormatError if format is not specified
 	 * @throws BadFormatException if format contains error
 	 */
 	public ModeSDownlinkMsg decode(String raw_message, boolean noCRC, long timestamp) throws BadFormatException, UnspecifiedFormatError {
-		return decode(new ModeSDownlinkMsg(raw_message, noCRC), timestamp);
+		return decode(Tools.hexStringToByteArray(raw_message), noCRC, timestamp);
 	}
 
 	/**
 	 * Decode CPR encoded position from airborne position message.
 	 * @param msg which contains the encoded position
-	 * @param receiver position for reasonableness test (can be null)
+	 * @param receiver position for reasonableness test (can be null). Pass a
+	 *                 {@link CompactPositionReporting.ReceiverPosition} for fixed receivers to speed up local decoding
+	 *                 (changing its coordinates is allowed but repeats the precomputation).
 	 * @return decoded WGS84 position
 	 */
 	public Position extractPosition(ModeSDownlinkMsg.QualifiedAddress address, PositionMsg msg, Position receiver) {
@@ -459,9 +739,29 @@ public class StatefulModeSDecoder {
 			pos.setAltitudeType(msg.getAltitudeType());
 		}
 
+		if (stateVectors != null && pos != null) {
+			Long timestamp = msg.getCPREncodedPosition().getTimestamp();
+			stateVectors.updatePosition(address, pos, timestamp != null ? timestamp : latestTimestamp);
+		}
+
 		return pos;
 	}
 
+	/**
+	 * Predicts the current position of an aircraft, e.g., to refresh a display between position messages.
+	 * Requires a {@link StateVectorStore} (see {@link #setStateVectorStore(StateVectorStore)}).
+	 * @param address the address of the aircraft
+	 * @param timestamp time of the prediction in milliseconds
+	 * @return the position extrapolated from the last reasonable position with the latest ground speed and track,
+	 *         or null if no reasonable position has been decoded yet
+	 * @see StateVectorStore#predictPosition(ModeSDownlinkMsg.QualifiedAddress, long)
+	 */
+	public Position predictPosition(ModeSDownlinkMsg.QualifiedAddress address, long timestamp) {
+		if (stateVectors == null)
+			throw new IllegalStateException("Prediction requires a state vector store");
+		return stateVectors.predictPosition(address, timestamp);
+	}
+
 	/**
 	 * @param reply a Mode S message
 	 * @return the ADS-B version as tracked by the decoder. Version 0 is assumed until an Operational Status message
@@ -240,4 +240,17 @@ public class Tools {
 		if (mps == null) return null;
 		return mps.doubleValue() / 0.00508;
 	}
+
+	/**
+	 * Decodes the 13 bits identity code of Mode S replies without creating a string
+	 * @param code 13 bits identity code (see ICAO Annex 10 V4)
+	 * @return the Mode A code as decimal number, e.g., 7700
+	 */
+	public static int decodeIdentityCode(short code) {
+		int a = (code >>> 7 & 1) << 2 | (code >>> 9 & 1) << 1 | (code >>> 11 & 1);
+		int b = (code >>> 1 & 1) << 2 | (code >>> 3 & 1) << 1 | (code >>> 5 & 1);
+		int c = (code >>> 8 & 1) << 2 | (code >>> 10 & 1) << 1 | (code >>> 12 & 1);
+		int d = (code & 1) << 2 | (code >>> 2 & 1) << 1 | (code >>> 4 & 1);
+		return a * 1000 + b * 100 + c * 10 + d;
+	}
 }
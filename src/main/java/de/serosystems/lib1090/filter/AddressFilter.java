@@ -0,0 +1,150 @@
+package de.serosystems.lib1090.filter;
+
+import java.util.Arrays;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Allow or deny list for 24-bit addresses. The addresses are stored in a bitset covering the
+ * full 24-bit address space (2 MiB), so each lookup is a single array access.<br>
+ * Use it with {@link de.serosystems.lib1090.StatefulModeSDecoder#setAddressFilter(AddressFilter)}
+ * to drop frames of unwanted aircraft before any message objects are created.<br>
+ * Note: the filter is not synchronized. It may be shared between threads once it has been set up.
+ */
+public class AddressFilter {
+
+	/**
+	 * Determines how the addresses in this filter are interpreted
+	 */
+	public enum Mode {
+		// accept only frames of addresses in the filter
+		ALLOW,
+		// accept all frames except those of addresses in the filter
+		DENY
+	}
+
+	private static final int ADDRESS_SPACE = 1 << 24;
+
+	private final long[] bits = new long[ADDRESS_SPACE >>> 6];
+	private final Mode mode;
+
+	/**
+	 * @param mode whether the addresses added to this filter are allowed or denied
+	 */
+	public AddressFilter(Mode mode) {
+		if (mode == null)
+			throw new IllegalArgumentException("Mode must not be null");
+		this.mode = mode;
+	}
+
+	/**
+	 * @return whether addresses in this filter are allowed or denied
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @param address the 24-bit address to add
+	 * @return this filter
+	 */
+	public AddressFilter add(int address) {
+		checkAddress(address);
+		bits[address >>> 6] |= 1L << address;
+		return this;
+	}
+
+	/**
+	 * Adds a range of addresses, e.g. the block of a national register.
+	 * @param from first 24-bit address of the range
+	 * @param to last 24-bit address of the range (inclusive)
+	 * @return this filter
+	 */
+	public AddressFilter addRange(int from, int to) {
+		setRange(from, to, true);
+		return this;
+	}
+
+	/**
+	 * @param address the 24-bit address to remove
+	 * @return this filter
+	 */
+	public AddressFilter remove(int address) {
+		checkAddress(address);
+		bits[address >>> 6] &= ~(1L << address);
+		return this;
+	}
+
+	/**
+	 * @param from first 24-bit address of the range
+	 * @param to last 24-bit address of the range (inclusive)
+	 * @return this filter
+	 */
+	public AddressFilter removeRange(int from, int to) {
+		setRange(from, to, false);
+		return this;
+	}
+
+	/**
+	 * Removes all addresses from this filter
+	 */
+	public void clear() {
+		Arrays.fill(bits, 0L);
+	}
+
+	/**
+	 * @param address a 24-bit address
+	 * @return true if the address has been added to this filter
+	 */
+	public boolean contains(int address) {
+		return (bits[(address & 0xFFFFFF) >>> 6] & (1L << address)) != 0;
+	}
+
+	/**
+	 * @param address a 24-bit address
+	 * @return true if frames with this address should be processed
+	 */
+	public boolean accepts(int address) {
+		return contains(address) == (mode == Mode.ALLOW);
+	}
+
+	private void setRange(int from, int to, boolean set) {
+		checkAddress(from);
+		checkAddress(to);
+		if (from > to)
+			throw new IllegalArgumentException(String.format("Invalid address range %06x-%06x", from, to));
+
+		int firstWord = from >>> 6, lastWord = to >>> 6;
+		long firstMask = -1L << from; // shift distance is taken mod 64
+		long lastMask = -1L >>> (63 - (to & 0x3F));
+
+		for (int w = firstWord; w <= lastWord; ++w) {
+			long mask = -1L;
+			if (w == firstWord) mask &= firstMask;
+			if (w == lastWord) mask &= lastMask;
+
+			if (set) bits[w] |= mask;
+			else bits[w] &= ~mask;
+		}
+	}
+
+	private static void checkAddress(int address) {
+		if (address < 0 || address >= ADDRESS_SPACE)
+			throw new IllegalArgumentException("Not a 24-bit address: " + address);
+	}
+}
@@ -0,0 +1,262 @@
+package de.serosystems.lib1090.filter;
+
+import java.util.Arrays;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Suppresses duplicate frames, e.g., when merging feeds of receivers with overlapping coverage. Frames are
+ * keyed on their raw bits (packed into two longs) and remembered for a configurable time window. The frames
+ * are kept in a ring buffer in order of arrival so that expired frames can be removed from the head without
+ * scanning the hash table. Run it before {@link de.serosystems.lib1090.StatefulModeSDecoder#decode(byte[], long)}
+ * to avoid decoding the same frame multiple times:
+ * <pre>
+ * if (!dedup.isDuplicate(raw, timestamp, receiverId))
+ *     decoder.decode(raw, timestamp);
+ * </pre>
+ * After each call, {@link #getFirstReceiver()}, {@link #getFirstSeen()} and {@link #getCopies()} describe the
+ * frame that has just been checked.<br>
+ * Note: this class is not thread-safe.
+ */
+public class DuplicateFilter {
+
+	private static final int EMPTY = -1;
+
+	private final long window;
+
+	// ring buffer with the frames of the window in order of arrival
+	private final long[] keyHigh;
+	private final long[] keyLow;
+	private final long[] firstSeen;
+	private final int[] firstReceiver;
+	private final int[] copies;
+	private int head; // oldest frame
+	private int count;
+
+	// hash table mapping frames to ring buffer positions
+	private final int[] table;
+
+	// information on most recently checked frame
+	private int lastEntry;
+
+	private long uniqueCount;
+	private long duplicateCount;
+
+	/**
+	 * Creates a filter with a window of 500 milliseconds for up to 65536 frames within the window.
+	 */
+	public DuplicateFilter() {
+		this(500L, 1 << 16);
+	}
+
+	/**
+	 * @param window time in milliseconds after which a frame is not considered a duplicate anymore
+	 * @param capacity maximum number of distinct frames within the time window. If exceeded, the oldest
+	 *                 frames are forgotten early.
+	 */
+	public DuplicateFilter(long window, int capacity) {
+		if (window <= 0 || capacity <= 0)
+			throw new IllegalArgumentException("Window and capacity must be positive");
+
+		this.window = window;
+
+		keyHigh = new long[capacity];
+		keyLow = new long[capacity];
+		firstSeen = new long[capacity];
+		firstReceiver = new int[capacity];
+		copies = new int[capacity];
+
+		// keep load factor below 0.5
+		table = new int[Integer.highestOneBit(capacity) << 2];
+		Arrays.fill(table, EMPTY);
+		lastEntry = EMPTY;
+	}
+
+	/**
+	 * @param frame raw Mode S frame
+	 * @param timestamp time of reception in milliseconds
+	 * @param receiver identifier of the receiver which received the frame
+	 * @return true if the same frame has already been seen within the time window
+	 */
+	public boolean isDuplicate(byte[] frame, long timestamp, int receiver) {
+		return isDuplicate(frame, 0, frame.length, timestamp, receiver);
+	}
+
+	/**
+	 * @param buffer buffer containing the raw Mode S frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame (7 or 14 bytes)
+	 * @param timestamp time of reception in milliseconds
+	 * @param receiver identifier of the receiver which received the frame
+	 * @return true if the same frame has already been seen within the time window
+	 */
+	public boolean isDuplicate(byte[] buffer, int offset, int length, long timestamp, int receiver) {
+		if (length != 7 && length != 14)
+			throw new IllegalArgumentException("Invalid frame length " + length);
+
+		// pack frame bits; the length goes into the top byte of the low key
+		long high = 0, low = (long) length << 56;
+		for (int i = 0; i < 8 && i < length; ++i)
+			high = high << 8 | (buffer[offset + i] & 0xFF);
+		for (int i = 8; i < length; ++i)
+			low |= (long) (buffer[offset + i] & 0xFF) << ((13 - i) * 8);
+
+		expire(timestamp);
+
+		int slot = find(high, low);
+		if (table[slot] != EMPTY) {
+			lastEntry = table[slot];
+			++copies[lastEntry];
+			++duplicateCount;
+			return true;
+		}
+
+		if (count == keyHigh.length) {
+			removeOldest();
+			slot = find(high, low);
+		}
+
+		int entry = (head + count) % keyHigh.length;
+		keyHigh[entry] = high;
+		keyLow[entry] = low;
+		firstSeen[entry] = timestamp;
+		firstReceiver[entry] = receiver;
+		copies[entry] = 1;
+		table[slot] = entry;
+		++count;
+
+		lastEntry = entry;
+		++uniqueCount;
+		return false;
+	}
+
+	/**
+	 * @return the receiver which delivered the most recently checked frame first
+	 */
+	public int getFirstReceiver() {
+		checkLastEntry();
+		return firstReceiver[lastEntry];
+	}
+
+	/**
+	 * @return time in milliseconds when the most recently checked frame has been seen first
+	 */
+	public long getFirstSeen() {
+		checkLastEntry();
+		return firstSeen[lastEntry];
+	}
+
+	/**
+	 * @return how often the most recently checked frame has been seen within the time window (including
+	 *         the first reception)
+	 */
+	public int getCopies() {
+		checkLastEntry();
+		return copies[lastEntry];
+	}
+
+	/**
+	 * @return number of frames which were not duplicates
+	 */
+	public long getUniqueCount() {
+		return uniqueCount;
+	}
+
+	/**
+	 * @return number of suppressed duplicates
+	 */
+	public long getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Resets the unique and duplicate counters
+	 */
+	public void resetStatistics() {
+		uniqueCount = 0;
+		duplicateCount = 0;
+	}
+
+	/**
+	 * @return number of frames currently within the time window
+	 */
+	public int size() {
+		return count;
+	}
+
+	private void checkLastEntry() {
+		if (lastEntry == EMPTY)
+			throw new IllegalStateException("No frame has been checked yet");
+	}
+
+	/**
+	 * Removes all frames from the head of the ring buffer which are older than the time window.
+	 * Note that this assumes timestamps to be roughly monotonic.
+	 */
+	private void expire(long timestamp) {
+		while (count > 0 && timestamp - firstSeen[head] > window)
+			removeOldest();
+	}
+
+	/**
+	 * Removes the entry at the head of the ring buffer
+	 */
+	private void removeOldest() {
+		int entry = head;
+		int mask = table.length - 1;
+		int i = find(keyHigh[entry], keyLow[entry]);
+		table[i] = EMPTY;
+
+		// shift following entries of the probe sequence back (linear probing)
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == EMPTY) break;
+
+			int home = hash(keyHigh[table[j]], keyLow[table[j]]) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = EMPTY;
+				i = j;
+			}
+		}
+
+		if (lastEntry == entry) lastEntry = EMPTY;
+		head = (head + 1) % keyHigh.length;
+		--count;
+	}
+
+	/**
+	 * @return slot of the frame in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(long high, long low) {
+		int mask = table.length - 1;
+		int slot = hash(high, low) & mask;
+		while (table[slot] != EMPTY && (keyHigh[table[slot]] != high || keyLow[table[slot]] != low))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(long high, long low) {
+		long h = high * 0x9E3779B97F4A7C15L + low;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
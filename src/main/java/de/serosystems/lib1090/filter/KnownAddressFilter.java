@@ -0,0 +1,201 @@
+package de.serosystems.lib1090.filter;
+
+import java.util.Arrays;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Time-decayed set of addresses which have been confirmed by frames with a clean CRC (DF 11 and DF 17).
+ * Replies with address/parity field (DF 0, 4, 5, 16, 20, 21 and 24) do not allow to detect bit errors
+ * because the address is recovered from the parity. Any corrupted frame hence yields a random address.
+ * This filter only accepts such replies if their address has been confirmed recently.<br>
+ * The set is an open addressing hash table on primitive arrays; expired entries are dropped lazily
+ * when the table fills up. Use it with
+ * {@link de.serosystems.lib1090.StatefulModeSDecoder#setKnownAddressFilter(KnownAddressFilter)}.<br>
+ * Note: this class is not thread-safe.
+ */
+public class KnownAddressFilter {
+
+	private static final int EMPTY = -1; // not a 24-bit address
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private final long timeout;
+
+	private int[] addresses;
+	private long[] lastConfirmed;
+	private int size;
+
+	private long accepted;
+	private long rejected;
+
+	/**
+	 * Creates a filter which forgets addresses that have not been confirmed for 60 seconds.
+	 */
+	public KnownAddressFilter() {
+		this(60_000L);
+	}
+
+	/**
+	 * @param timeout time in milliseconds after which an address is forgotten if it has not been confirmed again
+	 */
+	public KnownAddressFilter(long timeout) {
+		if (timeout <= 0)
+			throw new IllegalArgumentException("Timeout must be positive");
+
+		this.timeout = timeout;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Marks an address as seen in a frame with a clean CRC.
+	 * @param address the 24-bit address
+	 * @param timestamp time of reception in milliseconds
+	 */
+	public void confirm(int address, long timestamp) {
+		int slot = find(address);
+		if (addresses[slot] == address) {
+			lastConfirmed[slot] = Math.max(lastConfirmed[slot], timestamp);
+			return;
+		}
+
+		if ((size + 1) * 2 > addresses.length) {
+			// make room by dropping expired entries first; grow if still too crowded
+			rehash(timestamp, addresses.length);
+			if ((size + 1) * 4 > addresses.length)
+				rehash(timestamp, addresses.length << 1);
+			slot = find(address);
+		}
+
+		addresses[slot] = address;
+		lastConfirmed[slot] = timestamp;
+		++size;
+	}
+
+	/**
+	 * @param address the 24-bit address
+	 * @param timestamp current time in milliseconds
+	 * @return true if the address has been confirmed within the timeout
+	 */
+	public boolean isKnown(int address, long timestamp) {
+		int slot = find(address);
+		return addresses[slot] == address && timestamp - lastConfirmed[slot] <= timeout;
+	}
+
+	/**
+	 * Like {@link #isKnown(int, long)} but also counts accepted and rejected addresses.
+	 * @param address the 24-bit address recovered from an address/parity field
+	 * @param timestamp time of reception in milliseconds
+	 * @return true if the frame should be processed
+	 */
+	public boolean accepts(int address, long timestamp) {
+		if (isKnown(address, timestamp)) {
+			++accepted;
+			return true;
+		} else {
+			++rejected;
+			return false;
+		}
+	}
+
+	/**
+	 * @return number of frames accepted by {@link #accepts(int, long)}
+	 */
+	public long getAcceptedCount() {
+		return accepted;
+	}
+
+	/**
+	 * @return number of frames rejected by {@link #accepts(int, long)}
+	 */
+	public long getRejectedCount() {
+		return rejected;
+	}
+
+	/**
+	 * @return fraction of rejected frames (0 if no frames have been checked yet)
+	 */
+	public double getRejectionRate() {
+		long total = accepted + rejected;
+		return total == 0 ? 0.0 : (double) rejected / total;
+	}
+
+	/**
+	 * Resets accepted and rejected counters
+	 */
+	public void resetStatistics() {
+		accepted = 0;
+		rejected = 0;
+	}
+
+	/**
+	 * @return number of stored addresses (including expired ones which have not been purged yet)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all addresses which have not been confirmed within the timeout.
+	 * @param timestamp current time in milliseconds
+	 */
+	public void purge(long timestamp) {
+		rehash(timestamp, addresses.length);
+	}
+
+	/**
+	 * Forget all addresses
+	 */
+	public void clear() {
+		Arrays.fill(addresses, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return slot of the address or the empty slot where it would be inserted
+	 */
+	private int find(int address) {
+		int mask = addresses.length - 1;
+		int h = address * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (addresses[slot] != EMPTY && addresses[slot] != address)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void allocate(int capacity) {
+		addresses = new int[capacity];
+		lastConfirmed = new long[capacity];
+		Arrays.fill(addresses, EMPTY);
+		size = 0;
+	}
+
+	private void rehash(long timestamp, int capacity) {
+		int[] oldAddresses = addresses;
+		long[] oldConfirmed = lastConfirmed;
+
+		allocate(capacity);
+		for (int i = 0; i < oldAddresses.length; ++i) {
+			if (oldAddresses[i] == EMPTY || timestamp - oldConfirmed[i] > timeout) continue;
+
+			int slot = find(oldAddresses[i]);
+			addresses[slot] = oldAddresses[i];
+			lastConfirmed[slot] = oldConfirmed[i];
+			++size;
+		}
+	}
+}
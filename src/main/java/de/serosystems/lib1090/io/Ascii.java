@@ -0,0 +1,346 @@
+package de.serosystems.lib1090.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Parsing and formatting of ASCII encoded numbers directly from and to byte buffers. This avoids
+ * creating a String for each field of text formats.
+ */
+final class Ascii {
+
+	private static final byte[] HEX_VALUES = new byte[256];
+	static {
+		Arrays.fill(HEX_VALUES, (byte) -1);
+		for (int c = '0'; c <= '9'; ++c) HEX_VALUES[c] = (byte) (c - '0');
+		for (int c = 'a'; c <= 'f'; ++c) HEX_VALUES[c] = (byte) (c - 'a' + 10);
+		for (int c = 'A'; c <= 'F'; ++c) HEX_VALUES[c] = (byte) (c - 'A' + 10);
+	}
+
+	private static final double[] POWERS_OF_TEN = new double[19];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10.0;
+	}
+
+	private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7',
+			'8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+	private static final byte[] LOWER_HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7',
+			'8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+	private static final long[] LONG_POWERS_OF_TEN = new long[19];
+	static {
+		LONG_POWERS_OF_TEN[0] = 1L;
+		for (int i = 1; i < LONG_POWERS_OF_TEN.length; ++i)
+			LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i-1] * 10L;
+	}
+
+	private Ascii() {}
+
+	/**
+	 * Decodes hex digits in place, i.e., the bytes are written to the beginning of the range.
+	 * @param buffer the buffer
+	 * @param from index of the first hex digit
+	 * @param to end of the hex digits (exclusive)
+	 * @return the number of decoded bytes or -1 if the range does not contain an even number of hex digits
+	 */
+	static int decodeHex(byte[] buffer, int from, int to) {
+		if (((to - from) & 1) != 0) return -1;
+
+		int w = from;
+		for (int r = from; r < to; r += 2) {
+			int high = HEX_VALUES[buffer[r] & 0xFF], low = HEX_VALUES[buffer[r+1] & 0xFF];
+			if ((high | low) < 0) return -1;
+			buffer[w++] = (byte) (high << 4 | low);
+		}
+		return w - from;
+	}
+
+	/**
+	 * @param buffer the buffer
+	 * @param from index of the first hex digit
+	 * @param to end of the hex digits (exclusive); at most 15 digits
+	 * @return the value or -1 if the range is empty or contains other characters
+	 */
+	static long parseHex(byte[] buffer, int from, int to) {
+		if (from >= to || to - from > 15) return -1;
+
+		long value = 0;
+		for (int i = from; i < to; ++i) {
+			int digit = HEX_VALUES[buffer[i] & 0xFF];
+			if (digit < 0) return -1;
+			value = value << 4 | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * @param buffer the buffer
+	 * @param from index of the first digit
+	 * @param to end of the number (exclusive)
+	 * @return the non-negative decimal integer or -1 if the range is empty or contains other characters
+	 */
+	static long parseUnsigned(byte[] buffer, int from, int to) {
+		if (from >= to || to - from > 18) return -1;
+
+		long value = 0;
+		for (int i = from; i < to; ++i) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a decimal number such as -12.345. Other notations (e.g. exponents) are handed to
+	 * {@link Double#parseDouble(String)}.
+	 * @param buffer the buffer
+	 * @param from index of the first character
+	 * @param to end of the number (exclusive)
+	 * @return the value or NaN if the range does not contain a number
+	 */
+	static double parseDouble(byte[] buffer, int from, int to) {
+		int i = from;
+		boolean negative = i < to && buffer[i] == '-';
+		if (negative || i < to && buffer[i] == '+') ++i;
+
+		long mantissa = 0;
+		int digits = 0, fractionDigits = 0;
+		boolean point = false;
+		for (; i < to; ++i) {
+			byte c = buffer[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				++digits;
+				if (point) ++fractionDigits;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else break;
+		}
+
+		if (i == to && digits > 0 && digits < POWERS_OF_TEN.length) {
+			double value = mantissa / POWERS_OF_TEN[fractionDigits];
+			return negative ? -value : value;
+		}
+
+		try {
+			return Double.parseDouble(new String(buffer, from, to - from, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Parses a time in seconds with optional fraction (e.g. 1598964512.123) to milliseconds.
+	 * @param buffer the buffer
+	 * @param from index of the first character
+	 * @param to end of the number (exclusive)
+	 * @return time in milliseconds or -1 if the range does not contain a non-negative number
+	 */
+	static long parseSecondsAsMillis(byte[] buffer, int from, int to) {
+		int point = from;
+		while (point < to && buffer[point] != '.') ++point;
+
+		long seconds = parseUnsigned(buffer, from, point);
+		if (seconds < 0) return -1;
+
+		long millis = 0;
+		for (int i = point + 1, scale = 100; i < to; ++i, scale /= 10) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) return -1;
+			millis += digit * scale;
+		}
+		return seconds * 1000 + millis;
+	}
+
+	/**
+	 * @param buffer the buffer
+	 * @param from index to start the search
+	 * @param to end of the search range (exclusive)
+	 * @param c the character
+	 * @return the index of the first occurrence of c or -1 if not found
+	 */
+	static int indexOf(byte[] buffer, int from, int to, char c) {
+		for (int i = from; i < to; ++i)
+			if (buffer[i] == c) return i;
+		return -1;
+	}
+
+	/**
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param s ASCII string
+	 * @return index after the written characters
+	 */
+	static int putString(byte[] buffer, int offset, String s) {
+		for (int i = 0; i < s.length(); ++i)
+			buffer[offset++] = (byte) s.charAt(i);
+		return offset;
+	}
+
+	/**
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number
+	 * @return index after the written digits
+	 */
+	static int putLong(byte[] buffer, int offset, long value) {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) return putString(buffer, offset, "-9223372036854775808");
+			buffer[offset++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		while (digits < 19 && value >= LONG_POWERS_OF_TEN[digits]) ++digits;
+		return putDigits(buffer, offset, value, digits);
+	}
+
+	/**
+	 * Writes a non-negative number with a fixed number of digits (zero padded)
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number
+	 * @param digits number of digits
+	 * @return index after the written digits
+	 */
+	static int putDigits(byte[] buffer, int offset, long value, int digits) {
+		for (int i = offset + digits - 1; i >= offset; --i) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + digits;
+	}
+
+	/**
+	 * Writes a number rounded to a fixed number of decimals (e.g. 52.12346)
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number; must be finite
+	 * @param decimals number of decimals (0-9)
+	 * @return index after the written characters
+	 */
+	static int putFixed(byte[] buffer, int offset, double value, int decimals) {
+		long scaled = Math.round(Math.abs(value) * LONG_POWERS_OF_TEN[decimals]);
+		if (value < 0 && scaled != 0) buffer[offset++] = '-';
+
+		offset = putLong(buffer, offset, scaled / LONG_POWERS_OF_TEN[decimals]);
+		if (decimals == 0) return offset;
+
+		buffer[offset++] = '.';
+		return putDigits(buffer, offset, scaled % LONG_POWERS_OF_TEN[decimals], decimals);
+	}
+
+	/**
+	 * Writes a number with up to the given number of decimals; trailing zeros are omitted (e.g. 52.5)
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number; must be finite
+	 * @param decimals maximum number of decimals (0-9)
+	 * @return index after the written characters
+	 */
+	static int putDecimal(byte[] buffer, int offset, double value, int decimals) {
+		int end = putFixed(buffer, offset, value, decimals);
+		if (decimals == 0) return end;
+
+		while (buffer[end-1] == '0') --end;
+		if (buffer[end-1] == '.') --end;
+		return end;
+	}
+
+	/**
+	 * Writes a number in upper case hex representation
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number
+	 * @param digits number of hex digits
+	 * @return index after the written digits
+	 */
+	static int putHex(byte[] buffer, int offset, long value, int digits) {
+		return putHex(buffer, offset, value, digits, HEX_DIGITS);
+	}
+
+	/**
+	 * Writes a number in lower case hex representation
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param value the number
+	 * @param digits number of hex digits
+	 * @return index after the written digits
+	 */
+	static int putLowerHex(byte[] buffer, int offset, long value, int digits) {
+		return putHex(buffer, offset, value, digits, LOWER_HEX_DIGITS);
+	}
+
+	private static int putHex(byte[] buffer, int offset, long value, int digits, byte[] alphabet) {
+		for (int i = offset + digits - 1; i >= offset; --i) {
+			buffer[i] = alphabet[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+		return offset + digits;
+	}
+
+	/**
+	 * Writes the UTC date of a timestamp as year, month and day separated by the given character
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param millis milliseconds since epoch
+	 * @param separator e.g. '/' or '-'
+	 * @return index after the written characters
+	 */
+	static int putDate(byte[] buffer, int offset, long millis, char separator) {
+		// days to civil date, see http://howardhinnant.github.io/date_algorithms.html
+		long z = Math.floorDiv(millis, 86_400_000L) + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		long day = doy - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		offset = putDigits(buffer, offset, year, 4);
+		buffer[offset++] = (byte) separator;
+		offset = putDigits(buffer, offset, month, 2);
+		buffer[offset++] = (byte) separator;
+		return putDigits(buffer, offset, day, 2);
+	}
+
+	/**
+	 * Writes the UTC time of day of a timestamp as HH:mm:ss.SSS
+	 * @param buffer output buffer
+	 * @param offset index to write to
+	 * @param millis milliseconds since epoch
+	 * @return index after the written characters
+	 */
+	static int putTime(byte[] buffer, int offset, long millis) {
+		long ms = Math.floorMod(millis, 86_400_000L);
+		offset = putDigits(buffer, offset, ms / 3_600_000L, 2);
+		buffer[offset++] = ':';
+		offset = putDigits(buffer, offset, ms / 60_000L % 60, 2);
+		buffer[offset++] = ':';
+		offset = putDigits(buffer, offset, ms / 1000L % 60, 2);
+		buffer[offset++] = '.';
+		return putDigits(buffer, offset, ms % 1000L, 3);
+	}
+}
@@ -0,0 +1,75 @@
+package de.serosystems.lib1090.io;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reader for the AVR text format as provided by dump1090 (port 30002) and many SDR tools. Supported
+ * lines are
+ * <ul>
+ * <li>*8d40621d58c382d690c8ac2863a7; (frame only)</li>
+ * <li>@0000d7a3f4c58d40621d58c382d690c8ac2863a7; (12 hex digits of the 12 MHz MLAT counter followed by
+ * the frame)</li>
+ * </ul>
+ * Hex digits are decoded in place and passed to the handler as {@link RawFrame} views, so reading does
+ * not create any objects. The timestamp of frames without MLAT counter is -1. Lines with Mode A/C replies
+ * or in other formats are counted as framing errors.
+ */
+public class AvrReader extends LineReader {
+
+	public AvrReader() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize size of the input buffer in bytes
+	 */
+	public AvrReader(int bufferSize) {
+		super(bufferSize);
+	}
+
+	@Override
+	protected void parseLine(byte[] buffer, int from, int to, FrameHandler handler) {
+		if (buffer[to-1] == ';') --to;
+
+		long timestamp = -1;
+		int start = from + 1;
+		switch (buffer[from]) {
+			case '*':
+				break;
+			case '@':
+				if (start + 12 <= to) timestamp = Ascii.parseHex(buffer, start, start + 12);
+				if (timestamp < 0) {
+					framingError();
+					return;
+				}
+				start += 12;
+				break;
+			default:
+				framingError();
+				return;
+		}
+
+		int length = Ascii.decodeHex(buffer, start, to);
+		if (length != 7 && length != 14) {
+			framingError();
+			return;
+		}
+
+		emit(handler, buffer, start, length, timestamp, -1, -1);
+	}
+}
@@ -0,0 +1,129 @@
+package de.serosystems.lib1090.io;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reader for the Mode-S Beast binary format as provided by Beast receivers, dump1090 (port 30005) and
+ * readsb. Each record is<br>
+ * | 0x1a | type (1) | MLAT timestamp (6) | signal level (1) | frame (2, 7 or 14) |<br>
+ * where type is '1' (Mode A/C), '2' (short Mode S) or '3' (long Mode S). A 0x1a within a record is
+ * escaped by doubling it. Escape sequences are removed in place, i.e., frames are passed to the handler
+ * without copying them:
+ * <pre>
+ * BeastReader reader = new BeastReader();
+ * reader.read(channel, frame -&gt; decoder.decode(frame.getBuffer(), frame.getOffset(), frame.getLength(),
+ *         frame.getTimestamp() / BeastReader.TICKS_PER_MILLISECOND));
+ * </pre>
+ * The timestamp of {@link RawFrame} is the raw value of the receiver's 12 MHz counter. Mode A/C replies
+ * and status records are skipped.
+ */
+public class BeastReader extends FrameReader {
+
+	/** frequency of the MLAT clock */
+	public static final long TICKS_PER_MILLISECOND = 12_000L;
+
+	private static final byte ESCAPE = 0x1a;
+	private static final int HEADER_LENGTH = 7; // timestamp and signal level
+
+	private long modeACCount;
+
+	public BeastReader() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize size of the input buffer in bytes
+	 */
+	public BeastReader(int bufferSize) {
+		super(bufferSize);
+	}
+
+	/**
+	 * @return number of skipped Mode A/C replies
+	 */
+	public long getModeACCount() {
+		return modeACCount;
+	}
+
+	@Override
+	protected int parse(byte[] buffer, int from, int to, FrameHandler handler) {
+		int i = from;
+		while (i < to) {
+			if (buffer[i] != ESCAPE) {
+				// not in sync; skip to next record
+				++i;
+				continue;
+			}
+			if (i + 1 >= to) break;
+
+			int frameLength;
+			switch (buffer[i+1]) {
+				case '1': frameLength = 2; break;
+				case '2': frameLength = 7; break;
+				case '3': frameLength = 14; break;
+				default:
+					// status record or escaped 0x1a outside a record
+					++i;
+					continue;
+			}
+
+			// find end of the record and check for escape sequences
+			int recordLength = HEADER_LENGTH + frameLength;
+			int j = i + 2, n = 0;
+			boolean escaped = false, truncated = false;
+			while (n < recordLength && j < to) {
+				if (buffer[j] == ESCAPE) {
+					if (j + 1 >= to) break;
+					if (buffer[j+1] != ESCAPE) {
+						// unescaped 0x1a is the start of the next record
+						truncated = true;
+						break;
+					}
+					escaped = true;
+					j += 2;
+				} else ++j;
+				++n;
+			}
+
+			if (truncated) {
+				framingError();
+				i = j;
+				continue;
+			}
+			if (n < recordLength) break; // wait for more data
+
+			if (escaped) {
+				for (int r = i + 2, w = i + 2; r < j; ++w) {
+					buffer[w] = buffer[r];
+					r += buffer[r] == ESCAPE ? 2 : 1;
+				}
+			}
+
+			long timestamp = 0;
+			for (int k = i + 2; k < i + 8; ++k)
+				timestamp = timestamp << 8 | (buffer[k] & 0xFF);
+			int signalLevel = buffer[i+8] & 0xFF;
+
+			if (frameLength == 2) ++modeACCount;
+			else emit(handler, buffer, i + 9, frameLength, timestamp, signalLevel, -1);
+
+			i = j;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,124 @@
+package de.serosystems.lib1090.io;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reader for comma-separated lines with a timestamp in seconds, optionally the receiver's location and
+ * the frame in hex representation (the input format of {@link de.serosystems.example.ExampleDecoder}):
+ * <ul>
+ * <li>time,frame</li>
+ * <li>time,latitude,longitude,frame</li>
+ * <li>time,serial,latitude,longitude,frame</li>
+ * </ul>
+ * The timestamp of the {@link RawFrame} is converted to milliseconds. A numeric serial is provided as
+ * the receiver identifier. The receiver's location is available with {@link #hasReceiverPosition()},
+ * {@link #getReceiverLatitude()} and {@link #getReceiverLongitude()} while the handler is called.<br>
+ * Fields are parsed without creating Strings and hex digits are decoded in place.
+ */
+public class CsvReader extends LineReader {
+
+	private static final int MAX_FIELDS = 5;
+
+	private final int[] separators = new int[MAX_FIELDS];
+
+	private boolean hasPosition;
+	private double latitude;
+	private double longitude;
+
+	public CsvReader() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize size of the input buffer in bytes
+	 */
+	public CsvReader(int bufferSize) {
+		super(bufferSize);
+	}
+
+	/**
+	 * @return true if the current line contains the receiver's location
+	 */
+	public boolean hasReceiverPosition() {
+		return hasPosition;
+	}
+
+	/**
+	 * @return latitude of the receiver in the current line (NaN if not available)
+	 */
+	public double getReceiverLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * @return longitude of the receiver in the current line (NaN if not available)
+	 */
+	public double getReceiverLongitude() {
+		return longitude;
+	}
+
+	@Override
+	protected void parseLine(byte[] buffer, int from, int to, FrameHandler handler) {
+		// find field separators; separators[i] is the end of field i
+		int fields = 0;
+		for (int i = from; i < to; ++i) {
+			if (buffer[i] == ',') {
+				if (fields == MAX_FIELDS - 1) {
+					framingError();
+					return;
+				}
+				separators[fields++] = i;
+			}
+		}
+		separators[fields++] = to;
+
+		int receiver = -1;
+		hasPosition = false;
+		latitude = longitude = Double.NaN;
+
+		switch (fields) {
+			case 2:
+				break;
+			case 4:
+				latitude = Ascii.parseDouble(buffer, separators[0] + 1, separators[1]);
+				longitude = Ascii.parseDouble(buffer, separators[1] + 1, separators[2]);
+				hasPosition = true;
+				break;
+			case 5:
+				long serial = Ascii.parseUnsigned(buffer, separators[0] + 1, separators[1]);
+				if (serial <= Integer.MAX_VALUE) receiver = (int) serial;
+				latitude = Ascii.parseDouble(buffer, separators[1] + 1, separators[2]);
+				longitude = Ascii.parseDouble(buffer, separators[2] + 1, separators[3]);
+				hasPosition = true;
+				break;
+			default:
+				framingError();
+				return;
+		}
+
+		long timestamp = Ascii.parseSecondsAsMillis(buffer, from, separators[0]);
+		int start = separators[fields - 2] + 1;
+		int length = Ascii.decodeHex(buffer, start, to);
+		if (timestamp < 0 || (length != 7 && length != 14) || (hasPosition && Double.isNaN(latitude + longitude))) {
+			framingError();
+			return;
+		}
+
+		emit(handler, buffer, start, length, timestamp, -1, receiver);
+	}
+}
@@ -0,0 +1,39 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Callback for frames read by a {@link FrameReader}. The decoding exceptions may be passed on to the
+ * reader, which counts them and continues with the next frame. A typical handler is:
+ * <pre>
+ * frame -&gt; decoder.decode(frame.getBuffer(), frame.getOffset(), frame.getLength(), timestamp)
+ * </pre>
+ */
+public interface FrameHandler {
+
+	/**
+	 * @param frame the frame; only valid until this method returns
+	 * @throws BadFormatException if the frame could not be decoded
+	 * @throws UnspecifiedFormatError if the frame has a format which is not supported
+	 */
+	void onFrame(RawFrame frame) throws BadFormatException, UnspecifiedFormatError;
+
+}
@@ -0,0 +1,238 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Base class for readers of streamed receiver formats. Input is collected in a single reusable buffer and
+ * passed to {@link #parse(byte[], int, int, FrameHandler)}. Bytes which do not form a complete record yet
+ * (e.g. a frame which is split across two network packets) are kept for the next call. Frames are handed
+ * out as {@link RawFrame} views into the buffer, so no objects are created per frame.<br>
+ * Note: readers are not thread-safe.
+ */
+public abstract class FrameReader {
+
+	/** default size of the input buffer */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final byte[] buffer;
+	private final ByteBuffer wrapper;
+	private int start; // first byte which has not been parsed yet
+	private int end; // end of valid data
+
+	private final RawFrame frame = new RawFrame();
+
+	private long frameCount;
+	private long framingErrors;
+	private long decodingErrors;
+
+	/**
+	 * @param bufferSize size of the input buffer in bytes; must be larger than the longest record
+	 */
+	protected FrameReader(int bufferSize) {
+		if (bufferSize < 256)
+			throw new IllegalArgumentException("Buffer size must be at least 256 bytes");
+
+		buffer = new byte[bufferSize];
+		wrapper = ByteBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Reads from the channel until it reaches end-of-stream. For non-blocking channels, use
+	 * {@link #readAvailable(ReadableByteChannel, FrameHandler)} instead.
+	 * @param channel the input
+	 * @param handler is called for each frame
+	 * @throws IOException if reading from the channel fails
+	 */
+	public void read(ReadableByteChannel channel, FrameHandler handler) throws IOException {
+		while (readAvailable(channel, handler) >= 0);
+	}
+
+	/**
+	 * Reads from the stream until it reaches end-of-stream.
+	 * @param in the input
+	 * @param handler is called for each frame
+	 * @throws IOException if reading from the stream fails
+	 */
+	public void read(InputStream in, FrameHandler handler) throws IOException {
+		read(Channels.newChannel(in), handler);
+	}
+
+	/**
+	 * Performs a single read on the channel and passes all complete frames to the handler.
+	 * @param channel the input
+	 * @param handler is called for each frame
+	 * @return number of bytes read or -1 if the channel has reached end-of-stream
+	 * @throws IOException if reading from the channel fails
+	 */
+	public int readAvailable(ReadableByteChannel channel, FrameHandler handler) throws IOException {
+		makeRoom();
+		wrapper.limit(buffer.length).position(end);
+		int n = channel.read(wrapper);
+		if (n > 0) {
+			end += n;
+			start = parse(buffer, start, end, handler);
+		} else if (n < 0) {
+			finish(buffer, start, end, handler);
+			start = end = 0;
+		}
+		return n;
+	}
+
+	/**
+	 * Passes all bytes remaining in the source buffer to the reader.
+	 * @param src input, e.g. a buffer filled by a selector loop
+	 * @param handler is called for each frame
+	 */
+	public void feed(ByteBuffer src, FrameHandler handler) {
+		while (src.hasRemaining()) {
+			makeRoom();
+			int n = Math.min(src.remaining(), buffer.length - end);
+			src.get(buffer, end, n);
+			end += n;
+			start = parse(buffer, start, end, handler);
+		}
+	}
+
+	/**
+	 * @param data input
+	 * @param offset index of the first byte in data
+	 * @param length number of bytes
+	 * @param handler is called for each frame
+	 */
+	public void feed(byte[] data, int offset, int length, FrameHandler handler) {
+		feed(ByteBuffer.wrap(data, offset, length), handler);
+	}
+
+	/**
+	 * Signals the end of the input passed to the feed methods, e.g. to process a last line
+	 * which has no line terminator.
+	 * @param handler is called for remaining frames
+	 */
+	public void flush(FrameHandler handler) {
+		finish(buffer, start, end, handler);
+		start = end = 0;
+	}
+
+	/**
+	 * Discards incomplete input, e.g. after reconnecting to a feed
+	 */
+	public void reset() {
+		start = end = 0;
+	}
+
+	/**
+	 * @return number of frames passed to handlers
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return number of malformed or truncated records which have been skipped
+	 */
+	public long getFramingErrors() {
+		return framingErrors;
+	}
+
+	/**
+	 * @return number of frames for which the handler threw a decoding exception
+	 */
+	public long getDecodingErrors() {
+		return decodingErrors;
+	}
+
+	/**
+	 * Parses as many records as possible from the buffer and passes frames to the handler using
+	 * {@link #emit(FrameHandler, byte[], int, int, long, int, int)}. Implementations may modify the
+	 * buffer between from and the returned index, e.g. to remove escape sequences in place.
+	 * @param buffer the input buffer
+	 * @param from index of the first unparsed byte
+	 * @param to end of valid data in buffer (exclusive)
+	 * @param handler the handler for the frames
+	 * @return index of the first byte which has not been consumed yet (start of an incomplete record)
+	 */
+	protected abstract int parse(byte[] buffer, int from, int to, FrameHandler handler);
+
+	/**
+	 * Called when the input has reached end-of-stream to handle remaining bytes which have not been
+	 * consumed by {@link #parse(byte[], int, int, FrameHandler)}. By default, they are counted as a framing
+	 * error if there are any.
+	 * @param buffer the input buffer
+	 * @param from index of the first unparsed byte
+	 * @param to end of valid data in buffer (exclusive)
+	 * @param handler the handler for the frames
+	 */
+	protected void finish(byte[] buffer, int from, int to, FrameHandler handler) {
+		if (from < to) framingError();
+	}
+
+	/**
+	 * Passes a frame to the handler
+	 * @param handler the handler
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame
+	 * @param timestamp timestamp in the unit of the source or -1
+	 * @param signalLevel signal level or -1
+	 * @param receiver receiver identifier or -1
+	 */
+	protected final void emit(FrameHandler handler, byte[] buffer, int offset, int length,
+							  long timestamp, int signalLevel, int receiver) {
+		frame.set(buffer, offset, length, timestamp, signalLevel, receiver);
+		++frameCount;
+		try {
+			handler.onFrame(frame);
+		} catch (BadFormatException | UnspecifiedFormatError e) {
+			++decodingErrors;
+		}
+	}
+
+	/**
+	 * Counts a skipped record
+	 */
+	protected final void framingError() {
+		++framingErrors;
+	}
+
+	/**
+	 * Moves unparsed bytes to the beginning of the buffer if it is full
+	 */
+	private void makeRoom() {
+		if (start == end) start = end = 0;
+		if (end < buffer.length) return;
+
+		if (start == 0) {
+			// a single record fills the whole buffer; cannot be valid
+			framingError();
+			start = end = 0;
+		} else {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+	}
+}
@@ -0,0 +1,388 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import de.serosystems.lib1090.msgs.adsb.*;
+import de.serosystems.lib1090.msgs.modes.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Encodes decoded messages as JSON objects, one per line, e.g.<br>
+ * {"type":"ADSB_AIRBORN_POSITION_V0","timestamp":1564654542123,"df":17,"address":"40621d","address_type":"ICAO24",
+ * "ftc":11,"altitude":38000,"altitude_type":"BAROMETRIC_ALTITUDE","latitude":52.2572,"longitude":3.919373,...}<br>
+ * Each message type has a hand-written mapping which reads the values through the (partly boxed) getters
+ * of the message without reflection. Fields which are not available (e.g. altitude if
+ * {@link PositionMsg#hasValidAltitude()} is false) are omitted rather than written as null. Positions are
+ * not part of the messages; pass the result of
+ * {@link de.serosystems.lib1090.StatefulModeSDecoder#extractPosition} along with position messages.
+ * Objects are formatted into an internal buffer without creating Strings and copied to the output.
+ * Field names are fixed, so the output can be parsed with any JSON library.<br>
+ * Message-specific fields are written for ADS-B messages, Mode S replies and the position, velocity and
+ * identification messages of ADS-R and TIS-B. Other messages only carry the common fields.<br>
+ * Note: this class is not thread-safe.
+ */
+public class JsonEncoder {
+
+	/** maximum length of an encoded object in bytes */
+	public static final int MAX_LENGTH = 1024;
+
+	private final byte[] buffer = new byte[MAX_LENGTH];
+	private int position;
+
+	/**
+	 * Appends the JSON object for the message to the buffer
+	 * @param msg the decoded message
+	 * @param timestamp time of reception in milliseconds since epoch
+	 * @param position position decoded from msg or null
+	 * @param out the output buffer
+	 * @return number of bytes written
+	 * @throws java.nio.BufferOverflowException if there is not enough space left in the buffer
+	 */
+	public int encode(ModeSDownlinkMsg msg, long timestamp, Position position, ByteBuffer out) {
+		int length = format(msg, timestamp, position);
+		out.put(buffer, 0, length);
+		return length;
+	}
+
+	/**
+	 * Appends the JSON object for the message
+	 * @param msg the decoded message
+	 * @param timestamp time of reception in milliseconds since epoch
+	 * @param position position decoded from msg or null
+	 * @param out the output, e.g. a StringBuilder or Writer
+	 * @throws IOException if appending fails
+	 */
+	public void encode(ModeSDownlinkMsg msg, long timestamp, Position position, Appendable out) throws IOException {
+		int length = format(msg, timestamp, position);
+		for (int i = 0; i < length; ++i)
+			out.append((char) buffer[i]);
+	}
+
+	/**
+	 * Formats the message into the internal buffer
+	 * @return length of the object including the trailing newline
+	 */
+	private int format(ModeSDownlinkMsg msg, long timestamp, Position pos) {
+		this.position = 0;
+		buffer[this.position++] = '{';
+
+		// common fields
+		putString("type", msg.getType().name());
+		putLong("timestamp", timestamp);
+		putLong("df", msg.getDownlinkFormat());
+		name("address");
+		buffer[position++] = '"';
+		position = Ascii.putLowerHex(buffer, position, msg.getAddress().getAddress(), 6);
+		buffer[position++] = '"';
+		putString("address_type", msg.getAddress().getType().name());
+		if (msg instanceof ExtendedSquitter)
+			putLong("ftc", ((ExtendedSquitter) msg).getFormatTypeCode());
+
+		if (msg instanceof PositionMsg)
+			formatPosition((PositionMsg) msg, pos);
+		else if (msg instanceof ExtendedSquitter)
+			formatExtendedSquitter((ExtendedSquitter) msg);
+		else
+			formatReply(msg);
+
+		buffer[position++] = '}';
+		buffer[position++] = '\n';
+		return position;
+	}
+
+	private void formatPosition(PositionMsg msg, Position pos) {
+		if (msg.hasValidAltitude()) {
+			putLong("altitude", msg.getAltitude());
+			putString("altitude_type", msg.getAltitudeType().name());
+		}
+		if (pos != null && pos.getLatitude() != null && pos.getLongitude() != null) {
+			putDecimal("latitude", pos.getLatitude(), 6);
+			putDecimal("longitude", pos.getLongitude(), 6);
+		}
+
+		if (msg instanceof AirbornePositionV0Msg) {
+			AirbornePositionV0Msg airborne = (AirbornePositionV0Msg) msg;
+			putLong("nic", airborne.getNIC());
+			putDecimal("hcr", airborne.getHorizontalContainmentRadiusLimit(), 1);
+			putLong("surveillance_status", airborne.getSurveillanceStatus());
+			if (msg instanceof AirbornePositionV1Msg)
+				putBoolean("nic_supplement_a", ((AirbornePositionV1Msg) msg).hasNICSupplementA());
+			if (msg instanceof AirbornePositionV2Msg)
+				putBoolean("nic_supplement_b", ((AirbornePositionV2Msg) msg).hasNICSupplementB());
+		} else if (msg instanceof SurfacePositionV0Msg) {
+			SurfacePositionV0Msg surface = (SurfacePositionV0Msg) msg;
+			putLong("nic", surface.getNIC());
+			putDecimal("hcr", surface.getHorizontalContainmentRadiusLimit(), 1);
+			putDecimal("ground_speed", surface.getGroundSpeed(), 2);
+			putDecimal("heading", surface.getHeading(), 2);
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg) {
+			de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg airborne =
+					(de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg) msg;
+			putLong("nic", airborne.getNIC());
+			putDecimal("hcr", airborne.getHorizontalContainmentRadiusLimit(), 1);
+			putLong("surveillance_status", airborne.getSurveillanceStatus());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) {
+			de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg surface =
+					(de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) msg;
+			putLong("nic", surface.getNIC());
+			putDecimal("hcr", surface.getHorizontalContainmentRadiusLimit(), 1);
+			putDecimal("ground_speed", surface.getGroundSpeed(), 2);
+			putDecimal("heading", surface.getHeading(), 2);
+		} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.FineAirbornePositionMsg) {
+			de.serosystems.lib1090.msgs.tisb.FineAirbornePositionMsg airborne =
+					(de.serosystems.lib1090.msgs.tisb.FineAirbornePositionMsg) msg;
+			putLong("nic", airborne.getNIC());
+			putDecimal("hcr", airborne.getHorizontalContainmentRadiusLimit(), 1);
+			putLong("surveillance_status", airborne.getSurveillanceStatus());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) {
+			de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg surface =
+					(de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) msg;
+			putDecimal("hcr", surface.getHorizontalContainmentRadiusLimit(), 1);
+			putDecimal("ground_speed", surface.getGroundSpeed(), 2);
+			putDecimal("heading", surface.getHeading(), 2);
+		}
+	}
+
+	private void formatExtendedSquitter(ExtendedSquitter msg) {
+		if (msg instanceof IdentificationMsg) {
+			putIdentification(msg, ((IdentificationMsg) msg).getEmitterCategory());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.IdentificationMsg) {
+			putIdentification(msg, ((de.serosystems.lib1090.msgs.adsr.IdentificationMsg) msg).getEmitterCategory());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.IdentificationMsg) {
+			putIdentification(msg, ((de.serosystems.lib1090.msgs.tisb.IdentificationMsg) msg).getEmitterCategory());
+		} else if (msg instanceof VelocityOverGroundMsg) {
+			VelocityOverGroundMsg v = (VelocityOverGroundMsg) msg;
+			putVelocity(v.getVelocity(), v.getHeading(), v.getVerticalRate(), v.getGeoMinusBaro(), v.isSupersonic());
+			putLong("nacv", v.getNACv());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) {
+			de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg v =
+					(de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) msg;
+			putVelocity(v.getVelocity(), v.getHeading(), v.getVerticalRate(), v.getGeoMinusBaro(), v.isSupersonic());
+		} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) {
+			de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg v =
+					(de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) msg;
+			putVelocity(v.getVelocity(), v.getHeading(), v.getVerticalRate(), null, v.isSupersonic());
+		} else if (msg instanceof AirspeedHeadingMsg) {
+			AirspeedHeadingMsg a = (AirspeedHeadingMsg) msg;
+			if (a.hasAirspeedInfo()) {
+				putLong("airspeed", a.getAirspeed());
+				putBoolean("true_airspeed", a.isTrueAirspeed());
+			}
+			if (a.hasHeadingStatusFlag()) putDecimal("heading", a.getHeading(), 2);
+			putLong("vertical_rate", a.getVerticalRate());
+			putLong("geo_minus_baro", a.getGeoMinusBaro());
+			putBoolean("supersonic", a.isSupersonic());
+		} else if (msg instanceof AirborneOperationalStatusV1Msg) {
+			AirborneOperationalStatusV1Msg status = (AirborneOperationalStatusV1Msg) msg;
+			putLong("version", status.getVersion());
+			putLong("nacp", status.getNACp());
+			putLong("sil", status.getSIL());
+			putBoolean("nic_supplement_a", status.hasNICSupplementA());
+			putBoolean("tcas", status.hasOperationalTCAS());
+		} else if (msg instanceof SurfaceOperationalStatusV1Msg) {
+			SurfaceOperationalStatusV1Msg status = (SurfaceOperationalStatusV1Msg) msg;
+			putLong("version", status.getVersion());
+			putLong("nacp", status.getNACp());
+			putLong("sil", status.getSIL());
+			putBoolean("nic_supplement_a", status.hasNICSupplementA());
+		} else if (msg instanceof OperationalStatusV0Msg) {
+			putLong("version", ((OperationalStatusV0Msg) msg).getVersion());
+		} else if (msg instanceof TargetStateAndStatusMsg) {
+			TargetStateAndStatusMsg tss = (TargetStateAndStatusMsg) msg;
+			if (tss.hasSelectedAltitudeInfo()) putLong("selected_altitude", tss.getSelectedAltitude());
+			if (tss.hasBarometricPressureSettingInfo()) putDecimal("baro_setting", tss.getBarometricPressureSetting(), 1);
+			if (tss.hasSelectedHeadingInfo()) putDecimal("selected_heading", tss.getSelectedHeading(), 2);
+			putLong("nacp", tss.getNACp());
+			putLong("sil", tss.getSIL());
+			putBoolean("autopilot", tss.hasAutopilotEngaged());
+			putBoolean("vnav", tss.hasVNAVModeEngaged());
+			putBoolean("altitude_hold", tss.hasActiveAltitudeHoldMode());
+			putBoolean("approach", tss.hasActiveApproachMode());
+			putBoolean("lnav", tss.hasLNAVModeEngaged());
+			putBoolean("tcas", tss.hasOperationalTCAS());
+		} else if (msg instanceof EmergencyOrPriorityStatusMsg) {
+			EmergencyOrPriorityStatusMsg emergency = (EmergencyOrPriorityStatusMsg) msg;
+			putLong("emergency_state", emergency.getEmergencyStateCode());
+			putString("emergency_state_text", emergency.getEmergencyStateText());
+		} else if (msg instanceof TCASResolutionAdvisoryMsg) {
+			TCASResolutionAdvisoryMsg ra = (TCASResolutionAdvisoryMsg) msg;
+			putLong("active_ra", ra.getActiveRA());
+			putBoolean("ra_terminated", ra.hasRATerminated());
+			putBoolean("multi_threat", ra.hasMultiThreatEncounter());
+			putLong("threat_type", ra.getThreatType());
+		}
+	}
+
+	private void formatReply(ModeSDownlinkMsg msg) {
+		switch (msg.getType()) {
+			case ALTITUDE_REPLY:
+				AltitudeReply altitudeReply = (AltitudeReply) msg;
+				putLong("flight_status", altitudeReply.getFlightStatus());
+				putLong("altitude", altitudeReply.getAltitude());
+				break;
+			case COMM_B_ALTITUDE_REPLY:
+				CommBAltitudeReply commBAltitude = (CommBAltitudeReply) msg;
+				putLong("flight_status", commBAltitude.getFlightStatus());
+				putLong("altitude", commBAltitude.getAltitude());
+				putHex("mb", commBAltitude.getMessage());
+				break;
+			case IDENTIFY_REPLY:
+				IdentifyReply identifyReply = (IdentifyReply) msg;
+				putLong("flight_status", identifyReply.getFlightStatus());
+				putSquawk(identifyReply.getIdentityCode());
+				break;
+			case COMM_B_IDENTIFY_REPLY:
+				CommBIdentifyReply commBIdentify = (CommBIdentifyReply) msg;
+				putLong("flight_status", commBIdentify.getFlightStatus());
+				putSquawk(commBIdentify.getIdentityCode());
+				putHex("mb", commBIdentify.getMessage());
+				break;
+			case ALL_CALL_REPLY:
+				AllCallReply allCall = (AllCallReply) msg;
+				putLong("capabilities", allCall.getCapabilities());
+				if (allCall.hasValidInterrogatorCode()) putLong("interrogator", allCall.getInterrogatorCode());
+				break;
+			case SHORT_ACAS:
+				ShortACAS shortAcas = (ShortACAS) msg;
+				putLong("altitude", shortAcas.getAltitude());
+				putLong("sensitivity_level", shortAcas.getSensitivityLevel());
+				putLong("reply_information", shortAcas.getReplyInformation());
+				putBoolean("airborne", shortAcas.isAirborne());
+				break;
+			case LONG_ACAS:
+				LongACAS longAcas = (LongACAS) msg;
+				putLong("altitude", longAcas.getAltitude());
+				putLong("sensitivity_level", longAcas.getSensitivityLevel());
+				putLong("reply_information", longAcas.getReplyInformation());
+				putBoolean("airborne", longAcas.isAirborne());
+				break;
+			case COMM_D_ELM:
+				CommDExtendedLengthMsg commD = (CommDExtendedLengthMsg) msg;
+				putLong("sequence", commD.getSequenceNumber());
+				putBoolean("ack", commD.isAck());
+				putHex("message", commD.getMessage());
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void putIdentification(ExtendedSquitter msg, byte emitterCategory) {
+		name("callsign");
+		buffer[position++] = '"';
+		position = SbsEncoder.putCallsign(buffer, position, msg.getMessage());
+		buffer[position++] = '"';
+
+		// category set A to D is encoded in the format type code (4 to 1)
+		int ftc = msg.getFormatTypeCode();
+		if (ftc >= 1 && ftc <= 4) {
+			name("category");
+			buffer[position++] = '"';
+			buffer[position++] = (byte) ('A' + 4 - ftc);
+			buffer[position++] = (byte) ('0' + emitterCategory);
+			buffer[position++] = '"';
+		}
+	}
+
+	private void putVelocity(Double velocity, Double heading, Integer verticalRate, Integer geoMinusBaro,
+							 boolean supersonic) {
+		putDecimal("velocity", velocity, 2);
+		putDecimal("heading", heading, 2);
+		putLong("vertical_rate", verticalRate);
+		putLong("geo_minus_baro", geoMinusBaro);
+		putBoolean("supersonic", supersonic);
+	}
+
+	private void putSquawk(short identityCode) {
+		name("squawk");
+		buffer[position++] = '"';
+		position = Ascii.putDigits(buffer, position, Tools.decodeIdentityCode(identityCode), 4);
+		buffer[position++] = '"';
+	}
+
+	/**
+	 * Writes the separator (if necessary) and the quoted field name followed by a colon
+	 */
+	private void name(String name) {
+		if (buffer[position - 1] != '{') buffer[position++] = ',';
+		buffer[position++] = '"';
+		position = Ascii.putString(buffer, position, name);
+		buffer[position++] = '"';
+		buffer[position++] = ':';
+	}
+
+	private void putLong(String name, long value) {
+		name(name);
+		position = Ascii.putLong(buffer, position, value);
+	}
+
+	/**
+	 * Writes the field only if the value is available
+	 */
+	private void putLong(String name, Integer value) {
+		if (value != null) putLong(name, value.longValue());
+	}
+
+	/**
+	 * Writes the field only if the value is available and finite
+	 */
+	private void putDecimal(String name, Number value, int decimals) {
+		if (value == null) return;
+		double d = value.doubleValue();
+		if (Double.isNaN(d) || Double.isInfinite(d)) return;
+
+		name(name);
+		position = Ascii.putDecimal(buffer, position, d, decimals);
+	}
+
+	private void putBoolean(String name, boolean value) {
+		name(name);
+		position = Ascii.putString(buffer, position, value ? "true" : "false");
+	}
+
+	/**
+	 * Writes the field only if the value is available
+	 */
+	private void putBoolean(String name, Boolean value) {
+		if (value != null) putBoolean(name, value.booleanValue());
+	}
+
+	/**
+	 * Writes a string field; the value must not contain characters which need to be escaped
+	 */
+	private void putString(String name, String value) {
+		name(name);
+		buffer[position++] = '"';
+		position = Ascii.putString(buffer, position, value);
+		buffer[position++] = '"';
+	}
+
+	private void putHex(String name, byte[] value) {
+		name(name);
+		buffer[position++] = '"';
+		for (byte b : value)
+			position = Ascii.putLowerHex(buffer, position, b & 0xFF, 2);
+		buffer[position++] = '"';
+	}
+}
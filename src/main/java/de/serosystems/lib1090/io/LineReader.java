@@ -0,0 +1,63 @@
+package de.serosystems.lib1090.io;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Base class for line-based text formats. Splits the input at line feeds, strips trailing carriage
+ * returns and whitespace and skips empty lines and comments starting with '#'.
+ */
+abstract class LineReader extends FrameReader {
+
+	protected LineReader(int bufferSize) {
+		super(bufferSize);
+	}
+
+	/**
+	 * Parses a single line without the line terminator. Implementations may modify the line in place.
+	 * @param buffer the input buffer
+	 * @param from index of the first character of the line
+	 * @param to end of the line (exclusive)
+	 * @param handler the handler for the frames
+	 */
+	protected abstract void parseLine(byte[] buffer, int from, int to, FrameHandler handler);
+
+	@Override
+	protected int parse(byte[] buffer, int from, int to, FrameHandler handler) {
+		int i = from;
+		int eol;
+		while ((eol = Ascii.indexOf(buffer, i, to, '\n')) >= 0) {
+			line(buffer, i, eol, handler);
+			i = eol + 1;
+		}
+		return i;
+	}
+
+	@Override
+	protected void finish(byte[] buffer, int from, int to, FrameHandler handler) {
+		// last line without terminator
+		if (from < to) line(buffer, from, to, handler);
+	}
+
+	private void line(byte[] buffer, int from, int to, FrameHandler handler) {
+		while (to > from && buffer[to-1] <= ' ') --to;
+		while (from < to && buffer[from] <= ' ') ++from;
+		if (from == to || buffer[from] == '#') return;
+
+		parseLine(buffer, from, to, handler);
+	}
+}
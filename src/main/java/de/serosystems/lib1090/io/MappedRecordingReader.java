@@ -0,0 +1,466 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static de.serosystems.lib1090.io.RecordingWriter.BLOCK_HEADER_LENGTH;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Replays recordings written by {@link RecordingWriter} from memory-mapped windows of the file. Files
+ * larger than 2 GB are mapped in several windows which are aligned to block boundaries. Blocks are
+ * inflated into a reused buffer and frames are passed to handlers as {@link RawFrame} views.<br>
+ * For parallel replay, the frames can be partitioned by address so that each aircraft is decoded by a
+ * single {@link StatefulModeSDecoder} in order of reception (required for CPR decoding):
+ * <pre>
+ * try (MappedRecordingReader reader = new MappedRecordingReader(path)) {
+ *     reader.decodeParallel(8, StatefulModeSDecoder::new, msg -&gt; ...);
+ * }
+ * </pre>
+ * The calling thread inflates each block once and hands the frames to the decoding threads in batches.
+ * {@link #readPartition(int, int, long, long, FrameHandler)} instead scans all blocks and passes only the
+ * frames of one partition. For processing which does not depend on decoder state,
+ * {@link #readBlocks(int, int, FrameHandler)} reads chunks of blocks.<br>
+ * The sequential read methods must not be called concurrently; {@link #readBlocks(int, int, FrameHandler)}
+ * and {@link #readPartition(int, int, long, long, FrameHandler)} may be called from several threads.
+ */
+public class MappedRecordingReader implements Closeable {
+
+	/** default maximum size of a mapped window in bytes */
+	public static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+	// frames per batch and batches per partition for parallel decoding
+	private static final int BATCH_SIZE = 1024;
+	private static final int BATCHES = 4;
+
+	private final FileChannel channel;
+	private final RecordingIndex index;
+
+	private final MappedByteBuffer[] windows;
+	private final long[] windowStarts;
+	private final int[] blockWindows; // window of each block
+
+	private final RecordingBlock block = new RecordingBlock();
+	private final AtomicLong decodingErrors = new AtomicLong();
+
+	/**
+	 * @param path the recording
+	 * @throws IOException if the file cannot be opened and mapped or is not a recording
+	 */
+	public MappedRecordingReader(Path path) throws IOException {
+		this(path, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param path the recording
+	 * @param windowSize maximum size of a mapped window in bytes (at most 2 GB); a window contains at
+	 *                   least one block
+	 * @throws IOException if the file cannot be opened and mapped or is not a recording
+	 */
+	public MappedRecordingReader(Path path, long windowSize) throws IOException {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("Window size must be positive");
+		windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			index = RecordingIndex.load(channel);
+
+			int blocks = index.size();
+			long size = 0; // end of the last block
+			if (blocks > 0) {
+				ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+				RecordingIndex.readFully(channel, header, index.offset(blocks - 1));
+				size = index.offset(blocks - 1) + BLOCK_HEADER_LENGTH + header.getInt(8);
+			}
+			blockWindows = new int[blocks];
+			List<MappedByteBuffer> mapped = new ArrayList<>();
+			List<Long> starts = new ArrayList<>();
+
+			int b = 0;
+			while (b < blocks) {
+				long start = index.offset(b), end = blockEnd(b, size);
+				int first = b++;
+				while (b < blocks && blockEnd(b, size) - start <= windowSize) end = blockEnd(b++, size);
+
+				for (int i = first; i < b; ++i) blockWindows[i] = mapped.size();
+				mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+				starts.add(start);
+			}
+
+			windows = mapped.toArray(new MappedByteBuffer[0]);
+			windowStarts = new long[starts.size()];
+			for (int i = 0; i < windowStarts.length; ++i) windowStarts[i] = starts.get(i);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of blocks in the recording
+	 */
+	public int getBlockCount() {
+		return index.size();
+	}
+
+	/**
+	 * @return number of mapped windows
+	 */
+	public int getWindowCount() {
+		return windows.length;
+	}
+
+	/**
+	 * @return number of frames in the recording
+	 */
+	public long getFrameCount() {
+		return index.totalFrameCount();
+	}
+
+	/**
+	 * @return smallest timestamp in the recording or Long.MAX_VALUE if it is empty
+	 */
+	public long getFirstTimestamp() {
+		return index.firstTimestamp();
+	}
+
+	/**
+	 * @return largest timestamp in the recording or Long.MIN_VALUE if it is empty
+	 */
+	public long getLastTimestamp() {
+		return index.lastTimestamp();
+	}
+
+	/**
+	 * @return number of frames for which a handler threw a decoding exception
+	 */
+	public long getDecodingErrors() {
+		return decodingErrors.get() + block.getDecodingErrors();
+	}
+
+	/**
+	 * Passes all frames of the recording to the handler
+	 * @param handler is called for each frame
+	 * @throws IOException if the recording is corrupted
+	 */
+	public void read(FrameHandler handler) throws IOException {
+		read(Long.MIN_VALUE, Long.MAX_VALUE, handler);
+	}
+
+	/**
+	 * Passes all frames with from &lt;= timestamp &lt; to to the handler
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param handler is called for each frame
+	 * @throws IOException if the recording is corrupted
+	 */
+	public void read(long from, long to, FrameHandler handler) throws IOException {
+		read(0, index.size(), from, to, 0, 1, handler, block);
+	}
+
+	/**
+	 * Passes all frames of a chunk of blocks to the handler. Can be called concurrently for different
+	 * chunks; note that frames of an aircraft are spread over all chunks.
+	 * @param firstBlock index of the first block of the chunk
+	 * @param lastBlock index after the last block of the chunk (exclusive)
+	 * @param handler is called for each frame
+	 * @throws IOException if the recording is corrupted
+	 */
+	public void readBlocks(int firstBlock, int lastBlock, FrameHandler handler) throws IOException {
+		if (firstBlock < 0 || lastBlock > index.size() || firstBlock > lastBlock)
+			throw new IndexOutOfBoundsException("Invalid block range " + firstBlock + "-" + lastBlock);
+		readConcurrently(firstBlock, lastBlock, Long.MIN_VALUE, Long.MAX_VALUE, 0, 1, handler);
+	}
+
+	/**
+	 * Passes the frames of one partition within the time range to the handler. All frames of an
+	 * aircraft belong to the same partition. Can be called concurrently for different partitions.
+	 * @param partition the partition (0 to partitions-1)
+	 * @param partitions number of partitions
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param handler is called for each frame of the partition
+	 * @throws IOException if the recording is corrupted
+	 */
+	public void readPartition(int partition, int partitions, long from, long to, FrameHandler handler)
+			throws IOException {
+		if (partition < 0 || partition >= partitions)
+			throw new IndexOutOfBoundsException("Invalid partition " + partition);
+		readConcurrently(0, index.size(), from, to, partition, partitions, handler);
+	}
+
+	/**
+	 * Decodes the recording with one decoder per partition in parallel
+	 * @param workers number of threads and partitions
+	 * @param decoders creates a decoder for each partition
+	 * @param consumer is called for each decoded message; must be thread-safe
+	 * @throws IOException if the recording is corrupted
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public void decodeParallel(int workers, Supplier<StatefulModeSDecoder> decoders,
+							   Consumer<ModeSDownlinkMsg> consumer) throws IOException, InterruptedException {
+		decodeParallel(workers, Long.MIN_VALUE, Long.MAX_VALUE, decoders, consumer);
+	}
+
+	/**
+	 * Decodes all frames with from &lt;= timestamp &lt; to with one decoder per partition in parallel
+	 * @param workers number of threads and partitions
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param decoders creates a decoder for each partition
+	 * @param consumer is called for each decoded message; must be thread-safe
+	 * @throws IOException if the recording is corrupted
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public void decodeParallel(int workers, long from, long to, Supplier<StatefulModeSDecoder> decoders,
+							   Consumer<ModeSDownlinkMsg> consumer) throws IOException, InterruptedException {
+		if (workers <= 0)
+			throw new IllegalArgumentException("Number of workers must be positive");
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		RecordingBlock local = new RecordingBlock();
+		try {
+			Router router = new Router(workers);
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Partition partition : router.partitions) {
+				futures.add(pool.submit(() -> {
+					partition.decode(decoders.get(), consumer);
+					return null;
+				}));
+			}
+
+			for (int b = 0; b < index.size() && !router.aborted; ++b)
+				read(b, b + 1, from, to, 0, 1, router, local);
+			router.finish();
+			if (Thread.interrupted()) throw new InterruptedException();
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+		} finally {
+			decodingErrors.addAndGet(local.getDecodingErrors());
+			local.end();
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param frame buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame
+	 * @param partitions number of partitions
+	 * @return the partition of the frame as used by {@link #readPartition(int, int, long, long, FrameHandler)}
+	 */
+	public static int partition(byte[] frame, int offset, int length, int partitions) {
+		return RecordingBlock.partition(frame, offset, length, partitions);
+	}
+
+	/**
+	 * Closes the file. The mapped windows are released by the garbage collector.
+	 * @throws IOException if closing the file fails
+	 */
+	@Override
+	public void close() throws IOException {
+		block.end();
+		channel.close();
+	}
+
+	private void readConcurrently(int firstBlock, int lastBlock, long from, long to, int partition, int partitions,
+								  FrameHandler handler) throws IOException {
+		RecordingBlock local = new RecordingBlock();
+		try {
+			read(firstBlock, lastBlock, from, to, partition, partitions, handler, local);
+		} finally {
+			decodingErrors.addAndGet(local.getDecodingErrors());
+			local.end();
+		}
+	}
+
+	private void read(int firstBlock, int lastBlock, long from, long to, int partition, int partitions,
+					  FrameHandler handler, RecordingBlock block) throws IOException {
+		ByteBuffer window = null;
+		int current = -1;
+		for (int b = firstBlock; b < lastBlock; ++b) {
+			if (!index.overlaps(b, from, to)) continue;
+
+			if (blockWindows[b] != current) {
+				current = blockWindows[b];
+				window = windows[current].duplicate(); // own position for concurrent readers
+			}
+
+			window.position((int) (index.offset(b) - windowStarts[current]));
+			ByteBuffer header = block.header();
+			window.get(header.array(), 0, BLOCK_HEADER_LENGTH);
+			header.position(BLOCK_HEADER_LENGTH).flip();
+
+			int length = block.compressedLength();
+			if (length < 0 || length > window.remaining())
+				throw new IOException("Corrupted block " + b);
+			window.get(block.compressed(length), 0, length);
+
+			block.inflate();
+			block.read(from, to, partition, partitions, handler);
+		}
+	}
+
+	/**
+	 * @param block index of the block
+	 * @param size end of the last block
+	 * @return end of the block in the file
+	 */
+	private long blockEnd(int block, long size) {
+		return block + 1 < index.size() ? index.offset(block + 1) : size;
+	}
+
+	/**
+	 * Copies of up to {@link #BATCH_SIZE} frames of a partition
+	 */
+	private static final class Batch {
+		private static final int SLOT_SIZE = 14;
+
+		final byte[] data = new byte[BATCH_SIZE * SLOT_SIZE];
+		final byte[] lengths = new byte[BATCH_SIZE];
+		final long[] timestamps = new long[BATCH_SIZE];
+		int size;
+	}
+
+	/**
+	 * Batches of a partition which are filled by the reading thread and decoded by one worker. Batches
+	 * are returned after decoding, so the reading thread waits if the worker falls behind.
+	 */
+	private final class Partition {
+		private final Batch end = new Batch();
+		final BlockingQueue<Batch> filled = new ArrayBlockingQueue<>(BATCHES + 1);
+		final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES);
+		Batch current; // only accessed by the reading thread
+		volatile boolean done;
+
+		Partition() {
+			for (int i = 1; i < BATCHES; ++i) free.add(new Batch());
+			current = new Batch();
+		}
+
+		/**
+		 * Decodes batches until the end of the recording
+		 * @param decoder the decoder of this partition
+		 * @param consumer is called for each decoded message
+		 * @throws InterruptedException if interrupted while waiting for a batch
+		 */
+		void decode(StatefulModeSDecoder decoder, Consumer<ModeSDownlinkMsg> consumer) throws InterruptedException {
+			try {
+				Batch batch;
+				while ((batch = filled.take()) != end) {
+					for (int i = 0; i < batch.size; ++i) {
+						try {
+							ModeSDownlinkMsg msg = decoder.decode(batch.data, i * Batch.SLOT_SIZE, batch.lengths[i],
+									batch.timestamps[i]);
+							if (msg != null) consumer.accept(msg);
+						} catch (BadFormatException | UnspecifiedFormatError e) {
+							decodingErrors.incrementAndGet();
+						}
+					}
+					batch.size = 0;
+					free.add(batch);
+				}
+			} finally {
+				done = true;
+			}
+		}
+	}
+
+	/**
+	 * Assigns the frames read by the calling thread to partitions. Stops if a worker failed or the
+	 * calling thread is interrupted.
+	 */
+	private final class Router implements FrameHandler {
+		final Partition[] partitions;
+		boolean aborted;
+
+		Router(int partitions) {
+			this.partitions = new Partition[partitions];
+			for (int i = 0; i < partitions; ++i) this.partitions[i] = new Partition();
+		}
+
+		@Override
+		public void onFrame(RawFrame frame) {
+			if (aborted) return;
+
+			Partition partition = partitions[RecordingBlock.partition(frame.getBuffer(), frame.getOffset(),
+					frame.getLength(), partitions.length)];
+			Batch batch = partition.current;
+			System.arraycopy(frame.getBuffer(), frame.getOffset(), batch.data, batch.size * Batch.SLOT_SIZE,
+					frame.getLength());
+			batch.lengths[batch.size] = (byte) frame.getLength();
+			batch.timestamps[batch.size] = frame.getTimestamp();
+			if (++batch.size < BATCH_SIZE) return;
+
+			partition.filled.add(batch);
+			try {
+				while ((partition.current = partition.free.poll(10, TimeUnit.MILLISECONDS)) == null) {
+					if (partition.done) {
+						aborted = true;
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				aborted = true;
+			}
+		}
+
+		/**
+		 * Hands the remaining frames to the workers (unless aborted) and signals the end of the recording
+		 */
+		void finish() {
+			for (Partition partition : partitions) {
+				if (!aborted && partition.current.size > 0) partition.filled.add(partition.current);
+				partition.filled.offer(partition.end); // never full since there are only BATCHES batches
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Tools;
+
+import java.util.Arrays;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * View of a raw Mode S frame within the buffer of a {@link FrameReader}. Readers reuse a single instance
+ * for all frames, so the contents are only valid during {@link FrameHandler#onFrame(RawFrame)}. Use
+ * {@link #toByteArray()} to keep a copy of the frame.
+ */
+public class RawFrame {
+
+	private byte[] buffer;
+	private int offset;
+	private int length;
+	private long timestamp;
+	private int signalLevel;
+	private int receiver;
+
+	/**
+	 * Points this view to a frame. Used by frame sources, e.g. readers and queues.
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame
+	 * @param timestamp timestamp in the unit of the source or -1
+	 * @param signalLevel signal level or -1
+	 * @param receiver receiver identifier or -1
+	 */
+	public void set(byte[] buffer, int offset, int length, long timestamp, int signalLevel, int receiver) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		this.timestamp = timestamp;
+		this.signalLevel = signalLevel;
+		this.receiver = receiver;
+	}
+
+	/**
+	 * @return the buffer containing the frame; do not modify
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return index of the first byte of the frame in {@link #getBuffer()}
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return number of bytes of the frame (7 or 14)
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return timestamp of the frame in the unit of the source, e.g., ticks of the 12 MHz clock for
+	 *         {@link BeastReader}; -1 if not available
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return signal level as provided by the source (0-255 for {@link BeastReader}); -1 if not available
+	 */
+	public int getSignalLevel() {
+		return signalLevel;
+	}
+
+	/**
+	 * @return identifier of the receiver which received the frame; -1 if not available
+	 */
+	public int getReceiver() {
+		return receiver;
+	}
+
+	/**
+	 * @param index index of the byte within the frame
+	 * @return the byte of the frame
+	 */
+	public byte get(int index) {
+		return buffer[offset + index];
+	}
+
+	/**
+	 * @return a copy of the frame
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOfRange(buffer, offset, offset + length);
+	}
+
+	@Override
+	public String toString() {
+		return "RawFrame{" +
+				"frame=" + Tools.toHexString(toByteArray()) +
+				", timestamp=" + timestamp +
+				", signalLevel=" + signalLevel +
+				", receiver=" + receiver +
+				'}';
+	}
+}
@@ -0,0 +1,176 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static de.serosystems.lib1090.io.RecordingWriter.BLOCK_HEADER_LENGTH;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reusable buffers for inflating and iterating over a single block of a recording. Readers fill
+ * {@link #header()} and {@link #compressed(int)} from their source and call {@link #inflate()}.
+ */
+final class RecordingBlock {
+
+	private final Inflater inflater = new Inflater();
+	private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+	private byte[] compressed = new byte[0];
+	private byte[] data = new byte[0];
+	private int length;
+
+	private final RawFrame frame = new RawFrame();
+	private long decodingErrors;
+
+	/**
+	 * @return the cleared header buffer; must be filled and flipped by the caller
+	 */
+	ByteBuffer header() {
+		header.clear();
+		return header;
+	}
+
+	/**
+	 * @return length of the compressed data according to the header
+	 */
+	int compressedLength() {
+		return header.getInt(8);
+	}
+
+	/**
+	 * @param length length of the compressed data
+	 * @return buffer for the compressed data of at least the given length
+	 */
+	byte[] compressed(int length) {
+		if (compressed.length < length) compressed = new byte[length];
+		return compressed;
+	}
+
+	/**
+	 * Inflates the compressed data
+	 * @throws IOException if the block is corrupted
+	 */
+	void inflate() throws IOException {
+		int rawLength = header.getInt(4);
+		if (data.length < rawLength) data = new byte[rawLength];
+
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedLength());
+		try {
+			if (inflater.inflate(data, 0, rawLength) != rawLength)
+				throw new IOException("Corrupted block");
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted block", e);
+		}
+		length = rawLength;
+	}
+
+	/**
+	 * Passes the frames of the inflated block to the handler
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param partition only frames of this partition are passed to the handler
+	 * @param partitions number of partitions (1 for all frames)
+	 * @param handler the handler
+	 * @throws IOException if the block is corrupted
+	 */
+	void read(long from, long to, int partition, int partitions, FrameHandler handler) throws IOException {
+		int frames = header.getInt(0);
+		long timestamp = header.getLong(12);
+		int receiver = 0;
+		int i = 0;
+		for (int n = 0; n < frames; ++n) {
+			long delta = 0, receiverDelta = 0;
+			int shift = 0;
+			byte v;
+			do {
+				v = data[i++];
+				delta |= (long) (v & 0x7F) << shift;
+				shift += 7;
+			} while (v < 0 && i < length);
+			shift = 0;
+			do {
+				v = data[i++];
+				receiverDelta |= (long) (v & 0x7F) << shift;
+				shift += 7;
+			} while (v < 0 && i < length);
+
+			if (i >= length)
+				throw new IOException("Corrupted block");
+
+			timestamp += unzigzag(delta);
+			receiver += (int) unzigzag(receiverDelta);
+			int frameLength = ModeSDownlinkMsg.getExpectedLength((byte) ((data[i] >>> 3) & 0x1F));
+			if (i + frameLength > length)
+				throw new IOException("Corrupted block");
+
+			if (timestamp >= from && timestamp < to &&
+					(partitions <= 1 || partition(data, i, frameLength, partitions) == partition)) {
+				frame.set(data, i, frameLength, timestamp, -1, receiver);
+				try {
+					handler.onFrame(frame);
+				} catch (BadFormatException | UnspecifiedFormatError e) {
+					++decodingErrors;
+				}
+			}
+			i += frameLength;
+		}
+	}
+
+	long getDecodingErrors() {
+		return decodingErrors;
+	}
+
+	void end() {
+		inflater.end();
+	}
+
+	/**
+	 * Assigns frames to partitions based on the address, i.e., all frames of an aircraft end up in the
+	 * same partition. For replies with address/parity field, the address is recovered from the parity.
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame
+	 * @param partitions number of partitions
+	 * @return the partition (0 to partitions-1)
+	 */
+	static int partition(byte[] buffer, int offset, int length, int partitions) {
+		int address;
+		switch ((buffer[offset] >>> 3) & 0x1F) {
+			case 11: case 17: case 18: case 19:
+				address = (buffer[offset+1] & 0xFF) << 16 | (buffer[offset+2] & 0xFF) << 8 | (buffer[offset+3] & 0xFF);
+				break;
+			default:
+				int ap = offset + length - 3;
+				address = ModeSDownlinkMsg.calcParity(buffer, offset, length - 3) ^
+						((buffer[ap] & 0xFF) << 16 | (buffer[ap+1] & 0xFF) << 8 | (buffer[ap+2] & 0xFF));
+		}
+		int h = address * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % partitions;
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,180 @@
+package de.serosystems.lib1090.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static de.serosystems.lib1090.io.RecordingWriter.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Block index of a recording (see {@link RecordingWriter} for the format). It is read from the end of the
+ * file or, for recordings without index, rebuilt from the block headers.
+ */
+final class RecordingIndex {
+
+	private long[] offsets;
+	private long[] minimums;
+	private long[] maximums;
+	private int[] frameCounts;
+	private int blocks;
+
+	private RecordingIndex(int capacity) {
+		capacity = Math.max(capacity, 1);
+		offsets = new long[capacity];
+		minimums = new long[capacity];
+		maximums = new long[capacity];
+		frameCounts = new int[capacity];
+	}
+
+	/**
+	 * Checks the file header and loads the index
+	 * @param channel the recording
+	 * @return the index
+	 * @throws IOException if reading fails or the channel does not contain a recording
+	 */
+	static RecordingIndex load(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+		readFully(channel, header, 0);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException("Not a lib1090 recording");
+		if (header.get() != VERSION)
+			throw new IOException("Unsupported recording version");
+
+		RecordingIndex index = loadTrailer(channel);
+		return index != null ? index : scanBlocks(channel);
+	}
+
+	/**
+	 * @return the index at the end of the file or null if the recording has no index
+	 */
+	private static RecordingIndex loadTrailer(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < FILE_HEADER_LENGTH + TRAILER_LENGTH) return null;
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+		readFully(channel, trailer, size - TRAILER_LENGTH);
+		long indexOffset = trailer.getLong();
+		int count = trailer.getInt();
+		byte[] magic = new byte[INDEX_MAGIC.length];
+		trailer.get(magic);
+		if (!Arrays.equals(magic, INDEX_MAGIC) || count < 0 ||
+				indexOffset + (long) count * INDEX_ENTRY_LENGTH + TRAILER_LENGTH != size)
+			return null;
+
+		ByteBuffer entries = ByteBuffer.allocate(count * INDEX_ENTRY_LENGTH);
+		readFully(channel, entries, indexOffset);
+		RecordingIndex index = new RecordingIndex(count);
+		for (int i = 0; i < count; ++i)
+			index.add(entries.getLong(), entries.getLong(), entries.getLong(), entries.getInt());
+		return index;
+	}
+
+	/**
+	 * Builds the index by reading all block headers; truncated blocks at the end are ignored
+	 */
+	private static RecordingIndex scanBlocks(FileChannel channel) throws IOException {
+		RecordingIndex index = new RecordingIndex(64);
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+		long size = channel.size();
+		long offset = FILE_HEADER_LENGTH;
+		while (offset + BLOCK_HEADER_LENGTH <= size) {
+			header.clear();
+			readFully(channel, header, offset);
+			int frames = header.getInt(0);
+			long next = offset + BLOCK_HEADER_LENGTH + header.getInt(8);
+			if (frames <= 0 || next > size) break;
+
+			index.add(offset, header.getLong(20), header.getLong(28), frames);
+			offset = next;
+		}
+		return index;
+	}
+
+	private void add(long offset, long min, long max, int frames) {
+		if (blocks == offsets.length) {
+			offsets = Arrays.copyOf(offsets, blocks * 2);
+			minimums = Arrays.copyOf(minimums, blocks * 2);
+			maximums = Arrays.copyOf(maximums, blocks * 2);
+			frameCounts = Arrays.copyOf(frameCounts, blocks * 2);
+		}
+		offsets[blocks] = offset;
+		minimums[blocks] = min;
+		maximums[blocks] = max;
+		frameCounts[blocks] = frames;
+		++blocks;
+	}
+
+	int size() {
+		return blocks;
+	}
+
+	long offset(int block) {
+		return offsets[block];
+	}
+
+	long minimum(int block) {
+		return minimums[block];
+	}
+
+	long maximum(int block) {
+		return maximums[block];
+	}
+
+	int frameCount(int block) {
+		return frameCounts[block];
+	}
+
+	/**
+	 * @return true if the block contains frames with from &lt;= timestamp &lt; to
+	 */
+	boolean overlaps(int block, long from, long to) {
+		return maximums[block] >= from && minimums[block] < to;
+	}
+
+	long totalFrameCount() {
+		long count = 0;
+		for (int i = 0; i < blocks; ++i) count += frameCounts[i];
+		return count;
+	}
+
+	long firstTimestamp() {
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < blocks; ++i) min = Math.min(min, minimums[i]);
+		return min;
+	}
+
+	long lastTimestamp() {
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < blocks; ++i) max = Math.max(max, maximums[i]);
+		return max;
+	}
+
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0) throw new IOException("Unexpected end of recording");
+			position += n;
+		}
+		buffer.flip();
+	}
+}
@@ -0,0 +1,165 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import static de.serosystems.lib1090.io.RecordingWriter.BLOCK_HEADER_LENGTH;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads recordings written by {@link RecordingWriter}. The time index is loaded when the recording is
+ * opened, so reading a time range only touches the blocks which overlap with it. Recordings without
+ * index (e.g. if the writer has not been closed) are indexed by skipping from block header to block
+ * header. Frames are passed to the handler as {@link RawFrame} views into a reused block buffer, or
+ * decoded directly:
+ * <pre>
+ * try (RecordingReader reader = new RecordingReader(path)) {
+ *     reader.decode(decoder, from, to, msg -&gt; ...);
+ * }
+ * </pre>
+ * Note: this class is not thread-safe.
+ */
+public class RecordingReader implements Closeable {
+
+	private final FileChannel channel;
+	private final RecordingIndex index;
+	private final RecordingBlock block = new RecordingBlock();
+
+	/**
+	 * @param path the recording
+	 * @throws IOException if the file cannot be opened or is not a recording
+	 */
+	public RecordingReader(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ));
+	}
+
+	/**
+	 * @param channel the recording; it is closed when the reader is closed
+	 * @throws IOException if reading fails or the channel does not contain a recording
+	 */
+	public RecordingReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		index = RecordingIndex.load(channel);
+	}
+
+	/**
+	 * @return number of blocks in the recording
+	 */
+	public int getBlockCount() {
+		return index.size();
+	}
+
+	/**
+	 * @return number of frames in the recording
+	 */
+	public long getFrameCount() {
+		return index.totalFrameCount();
+	}
+
+	/**
+	 * @return smallest timestamp in the recording or Long.MAX_VALUE if it is empty
+	 */
+	public long getFirstTimestamp() {
+		return index.firstTimestamp();
+	}
+
+	/**
+	 * @return largest timestamp in the recording or Long.MIN_VALUE if it is empty
+	 */
+	public long getLastTimestamp() {
+		return index.lastTimestamp();
+	}
+
+	/**
+	 * @return number of frames for which a handler threw a decoding exception
+	 */
+	public long getDecodingErrors() {
+		return block.getDecodingErrors();
+	}
+
+	/**
+	 * Passes all frames of the recording to the handler
+	 * @param handler is called for each frame
+	 * @throws IOException if reading fails or the recording is corrupted
+	 */
+	public void read(FrameHandler handler) throws IOException {
+		read(Long.MIN_VALUE, Long.MAX_VALUE, handler);
+	}
+
+	/**
+	 * Passes all frames with from &lt;= timestamp &lt; to to the handler
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param handler is called for each frame
+	 * @throws IOException if reading fails or the recording is corrupted
+	 */
+	public void read(long from, long to, FrameHandler handler) throws IOException {
+		for (int b = 0; b < index.size(); ++b) {
+			if (!index.overlaps(b, from, to)) continue;
+
+			long offset = index.offset(b);
+			RecordingIndex.readFully(channel, block.header(), offset);
+			int length = block.compressedLength();
+			RecordingIndex.readFully(channel, ByteBuffer.wrap(block.compressed(length), 0, length),
+					offset + BLOCK_HEADER_LENGTH);
+			block.inflate();
+			block.read(from, to, 0, 1, handler);
+		}
+	}
+
+	/**
+	 * Decodes all frames of the recording
+	 * @param decoder the decoder; timestamps of the recording are passed as they are
+	 * @param consumer is called for each decoded message (masked or filtered frames are skipped)
+	 * @throws IOException if reading fails or the recording is corrupted
+	 */
+	public void decode(StatefulModeSDecoder decoder, Consumer<ModeSDownlinkMsg> consumer) throws IOException {
+		decode(decoder, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+	}
+
+	/**
+	 * Decodes all frames with from &lt;= timestamp &lt; to
+	 * @param decoder the decoder; timestamps of the recording are passed as they are
+	 * @param from start of the time range (inclusive)
+	 * @param to end of the time range (exclusive)
+	 * @param consumer is called for each decoded message (masked or filtered frames are skipped)
+	 * @throws IOException if reading fails or the recording is corrupted
+	 */
+	public void decode(StatefulModeSDecoder decoder, long from, long to, Consumer<ModeSDownlinkMsg> consumer)
+			throws IOException {
+		read(from, to, f -> {
+			ModeSDownlinkMsg msg = decoder.decode(f.getBuffer(), f.getOffset(), f.getLength(), f.getTimestamp());
+			if (msg != null) consumer.accept(msg);
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		block.end();
+		channel.close();
+	}
+}
@@ -0,0 +1,260 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Writes frames to a compact binary recording which can be replayed with {@link RecordingReader}.<br>
+ * A recording consists of a file header, a sequence of blocks and a sparse time index:
+ * <ul>
+ * <li>header: magic "LIB1090R" (8), version (1), reserved (3)</li>
+ * <li>block: number of frames (4), uncompressed length (4), compressed length (4), timestamp of first
+ * frame (8), minimum timestamp (8), maximum timestamp (8), deflate compressed records</li>
+ * <li>record: zigzag varint timestamp delta to previous frame, zigzag varint receiver delta to previous
+ * frame (the first frame of a block is relative to receiver 0), frame (7 or 14 bytes; the length follows
+ * from the downlink format)</li>
+ * <li>index: per block file offset (8), minimum timestamp (8), maximum timestamp (8), number of frames (4);
+ * followed by the offset of the index (8), the number of blocks (4) and the magic "LIB1090I" (8)</li>
+ * </ul>
+ * All numbers are big endian. Recordings which have not been closed properly lack the index but can
+ * still be read. Timestamps are stored as they are passed, usually milliseconds.<br>
+ * Note: this class is not thread-safe.
+ */
+public class RecordingWriter implements Closeable {
+
+	static final byte[] MAGIC = {'L', 'I', 'B', '1', '0', '9', '0', 'R'};
+	static final byte[] INDEX_MAGIC = {'L', 'I', 'B', '1', '0', '9', '0', 'I'};
+	static final byte VERSION = 1;
+	static final int FILE_HEADER_LENGTH = 12;
+	static final int BLOCK_HEADER_LENGTH = 36;
+	static final int INDEX_ENTRY_LENGTH = 28;
+	static final int TRAILER_LENGTH = 20;
+	static final int MAX_RECORD_LENGTH = 10 + 5 + 14; // zigzag of 33 bit receiver delta fits into 5 bytes
+
+	/** default size of uncompressed blocks in bytes */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final Deflater deflater;
+
+	private final byte[] block;
+	private byte[] compressed;
+	private int blockLength;
+	private int blockFrames;
+	private long first, previous, min, max;
+	private int previousReceiver;
+
+	// index
+	private long[] offsets = new long[64];
+	private long[] minimums = new long[64];
+	private long[] maximums = new long[64];
+	private int[] frameCounts = new int[64];
+	private int blocks;
+
+	private long position;
+	private long frameCount;
+	private boolean closed;
+
+	/**
+	 * Creates a new recording (or replaces an existing file)
+	 * @param path the file
+	 * @throws IOException if the file cannot be created
+	 */
+	public RecordingWriter(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE));
+	}
+
+	/**
+	 * @param channel the output; it is closed when the writer is closed
+	 * @throws IOException if the file header cannot be written
+	 */
+	public RecordingWriter(WritableByteChannel channel) throws IOException {
+		this(channel, DEFAULT_BLOCK_SIZE, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param channel the output; it is closed when the writer is closed
+	 * @param blockSize uncompressed size of blocks in bytes; larger blocks compress better but make the
+	 *                  time index coarser
+	 * @param compressionLevel deflate compression level (0-9)
+	 * @throws IOException if the file header cannot be written
+	 */
+	public RecordingWriter(WritableByteChannel channel, int blockSize, int compressionLevel) throws IOException {
+		if (blockSize < 1024)
+			throw new IllegalArgumentException("Block size must be at least 1024 bytes");
+
+		this.channel = channel;
+		deflater = new Deflater(compressionLevel);
+		block = new byte[blockSize + MAX_RECORD_LENGTH];
+		compressed = new byte[block.length + 64];
+
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+		header.put(MAGIC).put(VERSION);
+		header.position(FILE_HEADER_LENGTH).flip();
+		writeFully(header);
+	}
+
+	/**
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame; must match the downlink format
+	 * @param timestamp time of reception, e.g., in milliseconds
+	 * @param receiver identifier of the receiver or -1
+	 * @throws IOException if writing a block fails
+	 */
+	public void write(byte[] buffer, int offset, int length, long timestamp, int receiver) throws IOException {
+		if (closed)
+			throw new IOException("Recording has been closed");
+		if (length != ModeSDownlinkMsg.getExpectedLength((byte) ((buffer[offset] >>> 3) & 0x1F)))
+			throw new IllegalArgumentException("Frame length " + length + " does not match its downlink format");
+
+		if (blockFrames == 0) {
+			first = previous = min = max = timestamp;
+			previousReceiver = 0;
+		}
+
+		blockLength = putVarLong(block, blockLength, zigzag(timestamp - previous));
+		blockLength = putVarLong(block, blockLength, zigzag((long) receiver - previousReceiver));
+		System.arraycopy(buffer, offset, block, blockLength, length);
+		blockLength += length;
+
+		previous = timestamp;
+		previousReceiver = receiver;
+		if (timestamp < min) min = timestamp;
+		if (timestamp > max) max = timestamp;
+		++blockFrames;
+		++frameCount;
+
+		if (blockLength >= block.length - MAX_RECORD_LENGTH) flush();
+	}
+
+	/**
+	 * @param frame the frame; its timestamp is stored as it is
+	 * @throws IOException if writing a block fails
+	 */
+	public void write(RawFrame frame) throws IOException {
+		write(frame.getBuffer(), frame.getOffset(), frame.getLength(), frame.getTimestamp(), frame.getReceiver());
+	}
+
+	/**
+	 * Completes the current block and writes it to the channel
+	 * @throws IOException if writing fails
+	 */
+	public void flush() throws IOException {
+		if (blockFrames == 0) return;
+
+		deflater.reset();
+		deflater.setInput(block, 0, blockLength);
+		deflater.finish();
+		int compressedLength = 0;
+		while (!deflater.finished()) {
+			if (compressedLength == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+
+		if (blocks == offsets.length) {
+			offsets = Arrays.copyOf(offsets, blocks * 2);
+			minimums = Arrays.copyOf(minimums, blocks * 2);
+			maximums = Arrays.copyOf(maximums, blocks * 2);
+			frameCounts = Arrays.copyOf(frameCounts, blocks * 2);
+		}
+		offsets[blocks] = position;
+		minimums[blocks] = min;
+		maximums[blocks] = max;
+		frameCounts[blocks] = blockFrames;
+		++blocks;
+
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+		header.putInt(blockFrames).putInt(blockLength).putInt(compressedLength)
+				.putLong(first).putLong(min).putLong(max).flip();
+		writeFully(header);
+		writeFully(ByteBuffer.wrap(compressed, 0, compressedLength));
+
+		blockLength = 0;
+		blockFrames = 0;
+	}
+
+	/**
+	 * @return number of frames written so far
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return number of bytes written to the channel so far
+	 */
+	public long getBytesWritten() {
+		return position;
+	}
+
+	/**
+	 * Writes the last block and the index and closes the channel
+	 * @throws IOException if writing fails
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+
+		try {
+			flush();
+
+			long indexOffset = position;
+			ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_LENGTH + TRAILER_LENGTH);
+			for (int i = 0; i < blocks; ++i)
+				index.putLong(offsets[i]).putLong(minimums[i]).putLong(maximums[i]).putInt(frameCounts[i]);
+			index.putLong(indexOffset).putInt(blocks).put(INDEX_MAGIC).flip();
+			writeFully(index);
+		} finally {
+			closed = true;
+			deflater.end();
+			channel.close();
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer);
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static int putVarLong(byte[] buffer, int offset, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[offset++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+}
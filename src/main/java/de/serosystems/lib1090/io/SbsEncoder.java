@@ -0,0 +1,345 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import de.serosystems.lib1090.msgs.adsb.AirbornePositionV0Msg;
+import de.serosystems.lib1090.msgs.adsb.IdentificationMsg;
+import de.serosystems.lib1090.msgs.adsb.SurfacePositionV0Msg;
+import de.serosystems.lib1090.msgs.adsb.VelocityOverGroundMsg;
+import de.serosystems.lib1090.msgs.modes.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Encodes decoded messages as SBS-1/BaseStation lines (the format of port 30003 of dump1090), e.g.<br>
+ * MSG,3,1,1,40621D,1,2019/08/01,10:15:42.123,2019/08/01,10:15:42.123,,38000,,,52.25720,3.91937,,,0,0,0,0<br>
+ * The mapping of message types is
+ * <ul>
+ * <li>MSG,1: identification (ADS-B, ADS-R, TIS-B)</li>
+ * <li>MSG,2: surface position</li>
+ * <li>MSG,3: airborne position</li>
+ * <li>MSG,4: velocity over ground</li>
+ * <li>MSG,5: surveillance altitude reply (DF 4, 20)</li>
+ * <li>MSG,6: surveillance identity reply (DF 5, 21)</li>
+ * <li>MSG,7: air-air surveillance (DF 0, 16)</li>
+ * <li>MSG,8: all-call reply (DF 11)</li>
+ * </ul>
+ * Other messages (e.g. TIS-B management messages) are not encoded. Positions are not part of the messages; pass the result of
+ * {@link de.serosystems.lib1090.StatefulModeSDecoder#extractPosition} along with position messages.
+ * Lines are formatted into an internal buffer and copied to the output, so encoding does not create
+ * Strings. Flags are -1 (true) or 0 (false) and empty if unknown. Non-ICAO addresses are prefixed with '~'.<br>
+ * Note: this class is not thread-safe.
+ */
+public class SbsEncoder {
+
+	/** maximum length of an encoded line in bytes */
+	public static final int MAX_LINE_LENGTH = 256;
+
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+
+	private final byte[] line = new byte[MAX_LINE_LENGTH];
+
+	/**
+	 * Appends the SBS line for the message to the buffer
+	 * @param msg the decoded message
+	 * @param timestamp time of reception in milliseconds since epoch
+	 * @param position position decoded from msg or null
+	 * @param out the output buffer
+	 * @return number of bytes written; 0 if the message type has no SBS representation
+	 * @throws java.nio.BufferOverflowException if there is not enough space left in the buffer
+	 */
+	public int encode(ModeSDownlinkMsg msg, long timestamp, Position position, ByteBuffer out) {
+		int length = format(msg, timestamp, position);
+		out.put(line, 0, length);
+		return length;
+	}
+
+	/**
+	 * Appends the SBS line for the message
+	 * @param msg the decoded message
+	 * @param timestamp time of reception in milliseconds since epoch
+	 * @param position position decoded from msg or null
+	 * @param out the output, e.g. a StringBuilder or Writer
+	 * @return true if a line has been written; false if the message type has no SBS representation
+	 * @throws IOException if appending fails
+	 */
+	public boolean encode(ModeSDownlinkMsg msg, long timestamp, Position position, Appendable out) throws IOException {
+		int length = format(msg, timestamp, position);
+		for (int i = 0; i < length; ++i)
+			out.append((char) line[i]);
+		return length > 0;
+	}
+
+	/**
+	 * Formats the message into the line buffer
+	 * @return length of the line or 0 if the message is not encoded
+	 */
+	private int format(ModeSDownlinkMsg msg, long timestamp, Position position) {
+		int type;
+		switch (msg.getType()) {
+			case ADSB_IDENTIFICATION:
+			case ADSR_IDENTIFICATION:
+			case TISB_IDENTIFICATION:
+				// TIS-B/ADS-R management messages (DF 18, CF 4) share the type but carry no call sign
+				if (!(msg instanceof IdentificationMsg ||
+						msg instanceof de.serosystems.lib1090.msgs.adsr.IdentificationMsg ||
+						msg instanceof de.serosystems.lib1090.msgs.tisb.IdentificationMsg))
+					return 0;
+				type = 1;
+				break;
+			case ADSB_SURFACE_POSITION_V0: case ADSB_SURFACE_POSITION_V1: case ADSB_SURFACE_POSITION_V2:
+			case ADSR_SURFACE_POSITION_V0: case ADSR_SURFACE_POSITION_V1: case ADSR_SURFACE_POSITION_V2:
+			case TISB_FINE_SURFACE_POSITION:
+				type = 2;
+				break;
+			case ADSB_AIRBORN_POSITION_V0: case ADSB_AIRBORN_POSITION_V1: case ADSB_AIRBORN_POSITION_V2:
+			case ADSR_AIRBORN_POSITION_V0: case ADSR_AIRBORN_POSITION_V1: case ADSR_AIRBORN_POSITION_V2:
+			case TISB_FINE_AIRBORNE_POSITION:
+				type = 3;
+				break;
+			case ADSB_VELOCITY:
+			case ADSR_VELOCITY:
+			case TISB_VELOCITY:
+				type = 4;
+				break;
+			case ALTITUDE_REPLY:
+			case COMM_B_ALTITUDE_REPLY:
+				type = 5;
+				break;
+			case IDENTIFY_REPLY:
+			case COMM_B_IDENTIFY_REPLY:
+				type = 6;
+				break;
+			case SHORT_ACAS:
+			case LONG_ACAS:
+				type = 7;
+				break;
+			case ALL_CALL_REPLY:
+				type = 8;
+				break;
+			default:
+				return 0;
+		}
+
+		// header
+		int i = Ascii.putString(line, 0, "MSG,");
+		line[i++] = (byte) ('0' + type);
+		i = Ascii.putString(line, i, ",1,1,");
+		if (msg.getAddress().getType() != ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24) line[i++] = '~';
+		i = Ascii.putHex(line, i, msg.getAddress().getAddress(), 6);
+		i = Ascii.putString(line, i, ",1,");
+		for (int n = 0; n < 2; ++n) {
+			// generated and logged
+			i = Ascii.putDate(line, i, timestamp, '/');
+			line[i++] = ',';
+			i = Ascii.putTime(line, i, timestamp);
+			line[i++] = ',';
+		}
+
+		// fields 11 to 22
+		int altitude = UNKNOWN, verticalRate = UNKNOWN, squawk = UNKNOWN;
+		double groundSpeed = Double.NaN, track = Double.NaN;
+		int alert = UNKNOWN, emergency = UNKNOWN, spi = UNKNOWN, onGround = UNKNOWN;
+		boolean hasPosition = position != null && position.getLatitude() != null && position.getLongitude() != null;
+
+		switch (type) {
+			case 1:
+				i = putCallsign(line, i, ((ExtendedSquitter) msg).getMessage());
+				break;
+			case 2:
+			case 3:
+				PositionMsg pos = (PositionMsg) msg;
+				if (pos.hasValidAltitude()) altitude = pos.getAltitude();
+				onGround = type == 2 ? 1 : 0;
+				if (type == 2) {
+					Double gs = null, hdg = null;
+					if (msg instanceof SurfacePositionV0Msg) {
+						gs = ((SurfacePositionV0Msg) msg).getGroundSpeed();
+						hdg = ((SurfacePositionV0Msg) msg).getHeading();
+					} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) {
+						gs = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) msg).getGroundSpeed();
+						hdg = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) msg).getHeading();
+					} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) {
+						gs = ((de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) msg).getGroundSpeed();
+						hdg = ((de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) msg).getHeading();
+					}
+					if (gs != null) groundSpeed = gs;
+					if (hdg != null) track = hdg;
+				} else {
+					int status = -1;
+					if (msg instanceof AirbornePositionV0Msg)
+						status = ((AirbornePositionV0Msg) msg).getSurveillanceStatus();
+					else if (msg instanceof de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg)
+						status = ((de.serosystems.lib1090.msgs.adsr.AirbornePositionV0Msg) msg).getSurveillanceStatus();
+					if (status >= 0) {
+						// 1: permanent alert (emergency), 2: temporary alert (change of Mode A code), 3: SPI
+						emergency = status == 1 ? 1 : 0;
+						alert = status == 2 ? 1 : 0;
+						spi = status == 3 ? 1 : 0;
+					}
+				}
+				break;
+			case 4:
+				if (msg instanceof VelocityOverGroundMsg) {
+					VelocityOverGroundMsg v = (VelocityOverGroundMsg) msg;
+					if (v.hasVelocityInfo()) {
+						groundSpeed = v.getVelocityValue();
+						track = v.getHeadingValue();
+					}
+					if (v.hasVerticalRateInfo()) verticalRate = v.getVerticalRateValue();
+				} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) {
+					de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg v =
+							(de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) msg;
+					if (v.hasVelocityInfo()) {
+						groundSpeed = v.getVelocityValue();
+						track = v.getHeadingValue();
+					}
+					if (v.hasVerticalRateInfo()) verticalRate = v.getVerticalRateValue();
+				} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) {
+					de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg v =
+							(de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) msg;
+					if (v.hasVelocityInfo()) {
+						groundSpeed = v.getVelocityValue();
+						track = v.getHeadingValue();
+					}
+					if (v.hasVerticalRateInfo()) verticalRate = v.getVerticalRateValue();
+				}
+				break;
+			case 5:
+				byte fs;
+				if (msg instanceof AltitudeReply) {
+					fs = ((AltitudeReply) msg).getFlightStatus();
+					altitude = orUnknown(((AltitudeReply) msg).getAltitude());
+				} else {
+					fs = ((CommBAltitudeReply) msg).getFlightStatus();
+					altitude = orUnknown(((CommBAltitudeReply) msg).getAltitude());
+				}
+				alert = fs >= 2 && fs <= 4 ? 1 : 0;
+				spi = fs == 4 || fs == 5 ? 1 : 0;
+				onGround = flightStatusOnGround(fs);
+				break;
+			case 6:
+				short code;
+				if (msg instanceof IdentifyReply) {
+					fs = ((IdentifyReply) msg).getFlightStatus();
+					code = ((IdentifyReply) msg).getIdentityCode();
+				} else {
+					fs = ((CommBIdentifyReply) msg).getFlightStatus();
+					code = ((CommBIdentifyReply) msg).getIdentityCode();
+				}
+				squawk = Tools.decodeIdentityCode(code);
+				alert = fs >= 2 && fs <= 4 ? 1 : 0;
+				emergency = squawk == 7500 || squawk == 7600 || squawk == 7700 ? 1 : 0;
+				spi = fs == 4 || fs == 5 ? 1 : 0;
+				onGround = flightStatusOnGround(fs);
+				break;
+			case 7:
+				boolean airborne;
+				if (msg instanceof ShortACAS) {
+					altitude = orUnknown(((ShortACAS) msg).getAltitude());
+					airborne = ((ShortACAS) msg).isAirborne();
+				} else {
+					altitude = orUnknown(((LongACAS) msg).getAltitude());
+					airborne = ((LongACAS) msg).isAirborne();
+				}
+				onGround = airborne ? 0 : 1;
+				break;
+			case 8:
+				AllCallReply allCall = (AllCallReply) msg;
+				if (allCall.isOnGround()) onGround = 1;
+				else if (allCall.isAirborne()) onGround = 0;
+				break;
+		}
+
+		line[i++] = ',';
+		if (altitude != UNKNOWN) i = Ascii.putLong(line, i, altitude);
+		line[i++] = ',';
+		if (!Double.isNaN(groundSpeed)) i = Ascii.putFixed(line, i, groundSpeed, 0);
+		line[i++] = ',';
+		if (!Double.isNaN(track)) i = Ascii.putFixed(line, i, track, 0);
+		line[i++] = ',';
+		if (hasPosition && (type == 2 || type == 3)) {
+			i = Ascii.putFixed(line, i, position.getLatitude(), 5);
+			line[i++] = ',';
+			i = Ascii.putFixed(line, i, position.getLongitude(), 5);
+		} else line[i++] = ',';
+		line[i++] = ',';
+		if (verticalRate != UNKNOWN) i = Ascii.putLong(line, i, verticalRate);
+		line[i++] = ',';
+		if (squawk != UNKNOWN) i = Ascii.putDigits(line, i, squawk, 4);
+		i = putFlag(line, i, alert);
+		i = putFlag(line, i, emergency);
+		i = putFlag(line, i, spi);
+		i = putFlag(line, i, onGround);
+		line[i++] = '\r';
+		line[i++] = '\n';
+		return i;
+	}
+
+	private static int orUnknown(Integer value) {
+		return value == null ? UNKNOWN : value;
+	}
+
+	/**
+	 * @return 1 if on ground, 0 if airborne, UNKNOWN otherwise (see AltitudeReply#getFlightStatus())
+	 */
+	private static int flightStatusOnGround(byte fs) {
+		if (fs == 1 || fs == 3) return 1;
+		if (fs == 0 || fs == 2) return 0;
+		return UNKNOWN;
+	}
+
+	private static int putFlag(byte[] buffer, int offset, int flag) {
+		buffer[offset++] = ',';
+		if (flag == 1) {
+			buffer[offset++] = '-';
+			buffer[offset++] = '1';
+		} else if (flag == 0) {
+			buffer[offset++] = '0';
+		}
+		return offset;
+	}
+
+	/**
+	 * Writes the call sign of an identification message without trailing spaces
+	 * @param me the ME field of the message
+	 */
+	static int putCallsign(byte[] buffer, int offset, byte[] me) {
+		long chars = 0;
+		for (int b = 1; b < 7; ++b)
+			chars = chars << 8 | (me[b] & 0xFF);
+
+		int end = offset;
+		for (int c = 0; c < 8; ++c) {
+			int digit = (int) (chars >>> (42 - 6 * c)) & 0x3F;
+			char ch;
+			if (digit > 0 && digit < 27) ch = (char) ('A' + digit - 1);
+			else if (digit > 47 && digit < 58) ch = (char) ('0' + digit - 48);
+			else ch = ' ';
+
+			buffer[offset++] = (byte) ch;
+			if (ch != ' ') end = offset;
+		}
+		return end;
+	}
+}
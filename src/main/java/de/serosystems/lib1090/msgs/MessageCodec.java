@@ -0,0 +1,228 @@
+package de.serosystems.lib1090.msgs;
+
+import de.serosystems.lib1090.CompactPositionReporting;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.modes.ExtendedSquitter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Compact binary codec for decoded messages of all types. Instead of the decoded fields, a message is stored
+ * as its raw frame plus the state of the {@link StatefulModeSDecoder} which determined its type (ADS-B version
+ * and NIC supplements) and the timestamp of position messages. All other fields are derived again when the
+ * message is read. The layout is
+ * <pre>
+ * | codec version (8) | flags (8) | timestamp (64, position messages only) | frame (56 or 112) |
+ * </pre>
+ * so a message takes 9 to 24 bytes. Flags are
+ * <ul>
+ * <li>bit 0: parity field with CRC removed (see {@link ModeSDownlinkMsg#isNoCRC()})</li>
+ * <li>bit 1: NIC supplement A</li>
+ * <li>bit 2: NIC supplement C</li>
+ * <li>bit 3: timestamp present</li>
+ * <li>bits 4-5: ADS-B version</li>
+ * <li>bits 6-7: 0 for decoded messages; 1 and 2 for plain {@link ModeSDownlinkMsg} and {@link ExtendedSquitter}
+ * instances which are restored without further decoding</li>
+ * </ul>
+ * Java serialization of messages uses this codec, too (see {@link ModeSDownlinkMsg#writeReplace()}).<br>
+ * Note: this class is not thread-safe.
+ */
+public class MessageCodec {
+
+	/** version of the binary format written by this codec */
+	public static final byte VERSION = 1;
+
+	/** maximum length of an encoded message in bytes */
+	public static final int MAX_LENGTH = 24;
+
+	private static final int NO_CRC = 0x01;
+	private static final int NIC_SUPPLEMENT_A = 0x02;
+	private static final int NIC_SUPPLEMENT_C = 0x04;
+	private static final int HAS_TIMESTAMP = 0x08;
+	private static final int VERSION_SHIFT = 4;
+	private static final int LEVEL_SHIFT = 6;
+	private static final int LEVEL_DECODED = 0, LEVEL_MODES = 1, LEVEL_EXTENDED_SQUITTER = 2;
+
+	private final StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+	private final byte[] buffer = new byte[MAX_LENGTH];
+
+	/**
+	 * @param msg the message
+	 * @param out the output buffer
+	 * @return number of bytes written
+	 * @throws java.nio.BufferOverflowException if there is not enough space left in the buffer
+	 */
+	public int write(ModeSDownlinkMsg msg, ByteBuffer out) {
+		int length = format(msg);
+		out.put(buffer, 0, length);
+		return length;
+	}
+
+	/**
+	 * @param msg the message
+	 * @param out the output, e.g. an ObjectOutput
+	 * @throws IOException if writing fails
+	 */
+	public void write(ModeSDownlinkMsg msg, DataOutput out) throws IOException {
+		out.write(buffer, 0, format(msg));
+	}
+
+	/**
+	 * Reads the next message from the buffer
+	 * @param in the input buffer
+	 * @return the decoded message
+	 * @throws BadFormatException if the data is not a valid message or has an unknown codec version
+	 * @throws UnspecifiedFormatError if the frame has a format that is not further specified in DO-260B
+	 * @throws java.nio.BufferUnderflowException if the buffer does not contain the full message
+	 */
+	public ModeSDownlinkMsg read(ByteBuffer in) throws BadFormatException, UnspecifiedFormatError {
+		in.get(buffer, 0, 2);
+		int flags = checkHeader();
+
+		long timestamp = (flags & HAS_TIMESTAMP) != 0 ? in.getLong() : 0L;
+		in.get(buffer, 0, 1);
+		int length = ModeSDownlinkMsg.getExpectedLength((byte) (buffer[0] >>> 3 & 0x1F));
+		in.get(buffer, 1, length - 1);
+		return parse(flags, timestamp, length);
+	}
+
+	/**
+	 * Reads the next message from the input
+	 * @param in the input, e.g. an ObjectInput
+	 * @return the decoded message
+	 * @throws IOException if reading fails or the data is not a valid message
+	 */
+	public ModeSDownlinkMsg read(DataInput in) throws IOException {
+		try {
+			in.readFully(buffer, 0, 2);
+			int flags = checkHeader();
+
+			long timestamp = (flags & HAS_TIMESTAMP) != 0 ? in.readLong() : 0L;
+			buffer[0] = in.readByte();
+			int length = ModeSDownlinkMsg.getExpectedLength((byte) (buffer[0] >>> 3 & 0x1F));
+			in.readFully(buffer, 1, length - 1);
+			return parse(flags, timestamp, length);
+		} catch (BadFormatException | UnspecifiedFormatError e) {
+			throw new IOException("Invalid message: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the message into the internal buffer
+	 * @return the length of the encoded message
+	 */
+	private int format(ModeSDownlinkMsg msg) {
+		int flags = msg.isNoCRC() ? NO_CRC : 0;
+
+		int level = LEVEL_DECODED;
+		if (msg.getClass() == ModeSDownlinkMsg.class) level = LEVEL_MODES;
+		else if (msg.getClass() == ExtendedSquitter.class) level = LEVEL_EXTENDED_SQUITTER;
+		flags |= level << LEVEL_SHIFT;
+
+		// state which made the decoder choose the message class
+		int version = 0;
+		boolean nicA = false, nicC = false;
+		if (msg instanceof de.serosystems.lib1090.msgs.adsb.AirbornePositionV1Msg) {
+			version = msg instanceof de.serosystems.lib1090.msgs.adsb.AirbornePositionV2Msg ? 2 : 1;
+			nicA = ((de.serosystems.lib1090.msgs.adsb.AirbornePositionV1Msg) msg).hasNICSupplementA();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsb.SurfacePositionV2Msg) {
+			version = 2;
+			nicA = ((de.serosystems.lib1090.msgs.adsb.SurfacePositionV2Msg) msg).hasNICSupplementA();
+			nicC = ((de.serosystems.lib1090.msgs.adsb.SurfacePositionV2Msg) msg).hasNICSupplementC();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsb.SurfacePositionV1Msg) {
+			version = 1;
+			nicA = ((de.serosystems.lib1090.msgs.adsb.SurfacePositionV1Msg) msg).hasNICSupplementA();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.AirbornePositionV1Msg) {
+			version = msg instanceof de.serosystems.lib1090.msgs.adsr.AirbornePositionV2Msg ? 2 : 1;
+			nicA = ((de.serosystems.lib1090.msgs.adsr.AirbornePositionV1Msg) msg).hasNICSupplementA();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.SurfacePositionV2Msg) {
+			version = 2;
+			nicA = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV2Msg) msg).hasNICSupplementA();
+			nicC = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV2Msg) msg).hasNICSupplementC();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.SurfacePositionV1Msg) {
+			version = 1;
+			nicA = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV1Msg) msg).hasNICSupplementA();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsb.TargetStateAndStatusMsg ||
+				msg instanceof de.serosystems.lib1090.msgs.adsr.TargetStateAndStatusMsg) {
+			// target state and status messages are only decoded as such for version > 0
+			version = 2;
+		}
+		flags |= version << VERSION_SHIFT;
+		if (nicA) flags |= NIC_SUPPLEMENT_A;
+		if (nicC) flags |= NIC_SUPPLEMENT_C;
+
+		int i = 2;
+		if (msg instanceof PositionMsg && level == LEVEL_DECODED) {
+			CompactPositionReporting.CPREncodedPosition cpr = ((PositionMsg) msg).getCPREncodedPosition();
+			if (cpr != null && cpr.getTimestamp() != null) {
+				flags |= HAS_TIMESTAMP;
+				long timestamp = cpr.getTimestamp();
+				for (int shift = 56; shift >= 0; shift -= 8)
+					buffer[i++] = (byte) (timestamp >>> shift);
+			}
+		}
+
+		buffer[0] = VERSION;
+		buffer[1] = (byte) flags;
+
+		// raw frame
+		byte[] payload = msg.getPayload();
+		buffer[i++] = (byte) (msg.getDownlinkFormat() << 3 | msg.getFirstField());
+		System.arraycopy(payload, 0, buffer, i, payload.length);
+		i += payload.length;
+		int parity = msg.getParity();
+		buffer[i++] = (byte) (parity >>> 16);
+		buffer[i++] = (byte) (parity >>> 8);
+		buffer[i++] = (byte) parity;
+		return i;
+	}
+
+	/**
+	 * Checks the codec version in the first byte of the buffer
+	 * @return the flags
+	 */
+	private int checkHeader() throws BadFormatException {
+		if (buffer[0] != VERSION)
+			throw new BadFormatException("Unsupported codec version " + buffer[0]);
+		return buffer[1] & 0xFF;
+	}
+
+	/**
+	 * Decodes the frame in the buffer
+	 */
+	private ModeSDownlinkMsg parse(int flags, long timestamp, int length) throws BadFormatException, UnspecifiedFormatError {
+		ModeSDownlinkMsg modes = new ModeSDownlinkMsg(buffer, 0, length, (flags & NO_CRC) != 0);
+
+		switch (flags >>> LEVEL_SHIFT) {
+			case LEVEL_MODES:
+				return modes;
+			case LEVEL_EXTENDED_SQUITTER:
+				return new ExtendedSquitter(modes);
+			default:
+				return decoder.decode(modes, timestamp, (byte) (flags >>> VERSION_SHIFT & 0x3),
+						(flags & NIC_SUPPLEMENT_A) != 0, (flags & NIC_SUPPLEMENT_C) != 0);
+		}
+	}
+}
@@ -4,6 +4,7 @@ import de.serosystems.lib1090.Tools;
 import de.serosystems.lib1090.exceptions.BadFormatException;
 import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.Arrays;
 
@@ -230,6 +231,34 @@ public class ModeSDownlinkMsg implements Serializable {
 		return Arrays.copyOf(pi, CRC_polynomial.length);
 	}
 
+	/**
+	 * lookup table for the byte-wise calculation of the parity (generator polynomial 0x1FFF409)
+	 */
+	private static final int[] CRC_TABLE = new int[256];
+	static {
+		for (int i = 0; i < 256; ++i) {
+			int crc = i << 16;
+			for (int bit = 0; bit < 8; ++bit)
+				crc = (crc & 0x800000) != 0 ? (crc << 1) ^ 0xFFF409 : crc << 1;
+			CRC_TABLE[i] = crc & 0xFFFFFF;
+		}
+	}
+
+	/**
+	 * Table-driven calculation of the parity which works on a range of a buffer and does not allocate
+	 * any memory. Yields the same result as {@link #calcParity(byte[])}.
+	 * @param buffer buffer containing the message
+	 * @param offset index of the first byte of the message
+	 * @param length number of bytes to include, i.e., the length of the message without the parity field
+	 * @return calculated parity field as 24-bit integer
+	 */
+	public static int calcParity(byte[] buffer, int offset, int length) {
+		int crc = 0;
+		for (int i = offset; i < offset+length; ++i)
+			crc = (crc << 8 ^ CRC_TABLE[(crc >>> 16 ^ buffer[i]) & 0xFF]) & 0xFFFFFF;
+		return crc;
+	}
+
 	public static int getExpectedLength(byte downlink_format) {
 		if (downlink_format < 16) return 7;
 		else return 14;
@@ -286,27 +315,46 @@ public class ModeSDownlinkMsg implements Serializable {
 	 * @throws UnspecifiedFormatError if message has format that is not further specified in DO-260B
 	 */
 	public ModeSDownlinkMsg(byte[] reply, boolean noCRC) throws BadFormatException, UnspecifiedFormatError {
+		this(reply, 0, reply.length, noCRC);
+	}
+
+	/**
+	 * Decodes a reply which is part of a larger buffer, e.g., the receive buffer of a network feed.
+	 * Only the payload is copied; the buffer can be reused once the constructor returns.
+	 *
+	 * @param buffer the buffer containing the bytes of the reply
+	 * @param offset index of the first byte of the reply in buffer
+	 * @param length number of bytes of the reply (7 or 14)
+	 * @param noCRC indicates whether the CRC has been subtracted from the parity field
+	 * @throws BadFormatException if message has invalid length or downlink format
+	 * @throws UnspecifiedFormatError if message has format that is not further specified in DO-260B
+	 */
+	public ModeSDownlinkMsg(byte[] buffer, int offset, int length, boolean noCRC) throws BadFormatException, UnspecifiedFormatError {
 		// check format invariants
 		this.noCRC = noCRC;
 
-		if (reply.length != 7 && reply.length != 14) // initial test
-			throw new BadFormatException("Raw message has an invalid length of "+reply.length);
+		if (length != 7 && length != 14) // initial test
+			throw new BadFormatException("Raw message has an invalid length of "+length);
+
+		if (offset < 0 || offset+length > buffer.length)
+			throw new BadFormatException("Raw message exceeds buffer bounds");
 
-		downlink_format = reply[0];
+		downlink_format = buffer[offset];
 		first_field = (byte) (downlink_format & 0x7);
 		downlink_format = (byte) (downlink_format>>>3 & 0x1F);
 
-		if (reply.length != getExpectedLength(downlink_format)) {
+		if (length != getExpectedLength(downlink_format)) {
 			throw new BadFormatException(
 					String.format("Downlink format %d has length %d, but only %d bytes provided.",
-							downlink_format, getExpectedLength(downlink_format), reply.length));
+							downlink_format, getExpectedLength(downlink_format), length));
 		}
 
 		// extract payload
-		payload = Arrays.copyOfRange(reply, 1, reply.length-3);
+		payload = Arrays.copyOfRange(buffer, offset+1, offset+length-3);
 
 		// extract parity field
-		parity = rawAPToInt(Arrays.copyOfRange(reply,reply.length-3, reply.length));
+		int ap = offset+length-3;
+		parity = (buffer[ap]&0xff) << 16 | (buffer[ap+1]&0xff) << 8 | (buffer[ap+2]&0xff);
 
 		// extract ICAO24 address
 		address = new QualifiedAddress();
@@ -503,16 +551,22 @@ public class ModeSDownlinkMsg implements Serializable {
 		return parity;
 	}
 
+	/**
+	 * @return true if the CRC has been subtracted from the parity field, i.e., the parity
+	 *         field contains the remainder of the CRC polynomial division
+	 */
+	public boolean isNoCRC() {
+		return noCRC;
+	}
+
 	/**
 	 * @return calculates Mode S parity as 3-byte array
 	 */
 	public int calcParity() {
-		byte[] message = new byte[payload.length+1];
-
-		message[0] = (byte) (downlink_format<<3 | first_field);
-		System.arraycopy(payload, 0, message, 1, payload.length);
-
-		return rawAPToInt(calcParity(message));
+		int crc = CRC_TABLE[(downlink_format<<3 | first_field) & 0xFF];
+		for (byte b : payload)
+			crc = (crc << 8 ^ CRC_TABLE[(crc >>> 16 ^ b) & 0xFF]) & 0xFFFFFF;
+		return crc;
 	}
 
 	/**
@@ -552,6 +606,16 @@ public class ModeSDownlinkMsg implements Serializable {
 		return calcParity() == getParity();
 	}
 
+	/**
+	 * Java serialization writes messages of all types as raw frame plus the few fields which depend on
+	 * decoder state (see {@link MessageCodec}). All other fields are derived again when reading.
+	 * @return the serialization proxy for this message
+	 * @throws ObjectStreamException never
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		return new SerializedMessage(this);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == null) return false;
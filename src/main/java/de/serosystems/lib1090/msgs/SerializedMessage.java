@@ -0,0 +1,63 @@
+package de.serosystems.lib1090.msgs;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Serialization proxy which is written instead of messages (see {@link ModeSDownlinkMsg#writeReplace()}).
+ * It stores messages in the compact format of {@link MessageCodec} and resolves to the decoded message
+ * when it is read.
+ */
+final class SerializedMessage implements Externalizable {
+
+	private static final long serialVersionUID = 1L;
+
+	// codecs are not thread-safe and streams may be read in parallel
+	private static final ThreadLocal<MessageCodec> CODEC = ThreadLocal.withInitial(MessageCodec::new);
+
+	private ModeSDownlinkMsg msg;
+
+	/** public no-arg constructor required by {@link Externalizable} **/
+	public SerializedMessage() { }
+
+	SerializedMessage(ModeSDownlinkMsg msg) {
+		this.msg = msg;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		CODEC.get().write(msg, out);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		msg = CODEC.get().read(in);
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		if (msg == null)
+			throw new InvalidObjectException("Message could not be restored");
+		return msg;
+	}
+}
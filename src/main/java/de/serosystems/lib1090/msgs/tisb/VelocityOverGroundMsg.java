@@ -224,7 +224,15 @@ public class VelocityOverGroundMsg extends ExtendedSquitter implements Serializa
 	 */
 	public Integer getVerticalRate() {
 		if (!vertical_rate_info_available) return null;
-		return (vertical_rate_down ? -vertical_rate : vertical_rate);
+		return getVerticalRateValue();
+	}
+
+	/**
+	 * Same as {@link #getVerticalRate()} but without boxing; check {@link #hasVerticalRateInfo()} first.
+	 * @return vertical rate in feet/min (negative value means descending); undefined if information is not available
+	 */
+	public int getVerticalRateValue() {
+		return vertical_rate_down ? -vertical_rate : vertical_rate;
 	}
 
 
@@ -242,9 +250,18 @@ public class VelocityOverGroundMsg extends ExtendedSquitter implements Serializa
 	 */
 	public Double getHeading() {
 		if (!velocity_info_available) return null;
+		return getHeadingValue();
+	}
+
+	/**
+	 * Same as {@link #getHeading()} but without boxing; check {@link #hasVelocityInfo()} first.
+	 * @return heading in decimal degrees ([0, 360]) clockwise from geographic north; undefined if information is
+	 * not available
+	 */
+	public double getHeadingValue() {
 		double angle = Math.toDegrees(Math.atan2(
-				-this.getEastToWestVelocity(),
-				-this.getNorthToSouthVelocity()));
+				direction_west ? -east_west_velocity : east_west_velocity,
+				direction_south ? -north_south_velocity : north_south_velocity));
 
 		// if negative => clockwise
 		if (angle < 0) return 360+angle;
@@ -257,6 +274,14 @@ public class VelocityOverGroundMsg extends ExtendedSquitter implements Serializa
 	 */
 	public Double getVelocity() {
 		if (!velocity_info_available) return null;
+		return getVelocityValue();
+	}
+
+	/**
+	 * Same as {@link #getVelocity()} but without boxing; check {@link #hasVelocityInfo()} first.
+	 * @return speed over ground in knots; undefined if information is not available
+	 */
+	public double getVelocityValue() {
 		return Math.hypot(north_south_velocity, east_west_velocity);
 	}
 
@@ -0,0 +1,198 @@
+package de.serosystems.lib1090.net;
+
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.io.FrameHandler;
+import de.serosystems.lib1090.io.RawFrame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Bounded single-producer single-consumer queue of frames which hands frames from a {@link FeedManager}
+ * to a processing thread. All slots are allocated up front and frames are copied into them, so neither
+ * the producer nor the consumer creates objects per frame and the memory use is fixed. The consumer
+ * takes frames in batches:
+ * <pre>
+ * while (running)
+ *     queue.drain(frame -&gt; decoder.decode(frame.getBuffer(), frame.getOffset(), frame.getLength(),
+ *             queue.getReceptionTime()), 256, 100, TimeUnit.MILLISECONDS);
+ * </pre>
+ * Drained frames carry the feed identifier as receiver. During the callback, {@link #getReceptionTime()}
+ * returns the time the frame was read from the network.<br>
+ * Note: {@link #offer(int, long, RawFrame)} must only be called by one thread and the drain methods by
+ * one other thread.
+ */
+public class BoundedFrameQueue implements FrameSink {
+
+	private static final int SLOT_SIZE = 14;
+
+	private final int capacity;
+	private final int mask;
+
+	// slots
+	private final byte[] data;
+	private final byte[] lengths;
+	private final long[] timestamps;
+	private final long[] receptionTimes;
+	private final int[] signalLevels;
+	private final int[] feeds;
+
+	// index of next slot to write (producer) and to read (consumer)
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	private volatile Thread waitingConsumer;
+
+	private final RawFrame frame = new RawFrame();
+	private long receptionTime;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param capacity maximum number of queued frames; rounded up to the next power of two
+	 */
+	public BoundedFrameQueue(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 24)
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^24");
+
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		mask = this.capacity - 1;
+		data = new byte[this.capacity * SLOT_SIZE];
+		lengths = new byte[this.capacity];
+		timestamps = new long[this.capacity];
+		receptionTimes = new long[this.capacity];
+		signalLevels = new int[this.capacity];
+		feeds = new int[this.capacity];
+	}
+
+	@Override
+	public boolean offer(int feed, long receptionTime, RawFrame frame) {
+		long t = tail.get();
+		if (t - head.get() >= capacity || frame.getLength() > SLOT_SIZE) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int slot = (int) t & mask;
+		System.arraycopy(frame.getBuffer(), frame.getOffset(), data, slot * SLOT_SIZE, frame.getLength());
+		lengths[slot] = (byte) frame.getLength();
+		timestamps[slot] = frame.getTimestamp();
+		receptionTimes[slot] = receptionTime;
+		signalLevels[slot] = frame.getSignalLevel();
+		feeds[slot] = feed;
+		// publish the slot; full fence so that a consumer which has just started waiting is seen
+		tail.set(t + 1);
+
+		Thread consumer = waitingConsumer;
+		if (consumer != null) LockSupport.unpark(consumer);
+		return true;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Passes up to max queued frames to the handler. Decoding exceptions thrown by the handler are ignored.
+	 * @param handler is called for each frame
+	 * @param max maximum number of frames
+	 * @return number of frames passed to the handler
+	 */
+	public int drain(FrameHandler handler, int max) {
+		long h = head.get();
+		int n = (int) Math.min(max, tail.get() - h);
+		for (int i = 0; i < n; ++i) {
+			int slot = (int) (h + i) & mask;
+			receptionTime = receptionTimes[slot];
+			frame.set(data, slot * SLOT_SIZE, lengths[slot], timestamps[slot], signalLevels[slot], feeds[slot]);
+			try {
+				handler.onFrame(frame);
+			} catch (BadFormatException | UnspecifiedFormatError e) {
+				// not the concern of the queue
+			}
+		}
+		// release all slots of the batch at once
+		head.lazySet(h + n);
+		return n;
+	}
+
+	/**
+	 * Like {@link #drain(FrameHandler, int)} but waits for frames if the queue is empty
+	 * @param handler is called for each frame
+	 * @param max maximum number of frames
+	 * @param timeout maximum time to wait
+	 * @param unit unit of timeout
+	 * @return number of frames passed to the handler; 0 if the timeout has elapsed
+	 * @throws InterruptedException if the thread has been interrupted while waiting
+	 */
+	public int drain(FrameHandler handler, int max, long timeout, TimeUnit unit) throws InterruptedException {
+		if (isEmpty()) {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			waitingConsumer = Thread.currentThread();
+			try {
+				while (isEmpty()) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) return 0;
+					LockSupport.parkNanos(this, remaining);
+					if (Thread.interrupted()) throw new InterruptedException();
+				}
+			} finally {
+				waitingConsumer = null;
+			}
+		}
+		return drain(handler, max);
+	}
+
+	/**
+	 * @return the time in milliseconds when the frame currently passed to the handler was read from the network
+	 */
+	public long getReceptionTime() {
+		return receptionTime;
+	}
+
+	/**
+	 * @return number of queued frames
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * @return true if no frames are queued
+	 */
+	public boolean isEmpty() {
+		return tail.get() == head.get();
+	}
+
+	/**
+	 * @return maximum number of queued frames
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of frames which have been dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,174 @@
+package de.serosystems.lib1090.net;
+
+import de.serosystems.lib1090.io.FrameReader;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A TCP connection to a receiver managed by a {@link FeedManager}, e.g. the Beast output (port 30005) or
+ * the AVR output (port 30002) of dump1090. Each feed has its own {@link FrameReader}, so records which
+ * are split across packets are reassembled per connection. Statistics may be read from any thread.
+ */
+public class Feed {
+
+	/**
+	 * Connection state of a feed
+	 */
+	public enum State {
+		// waiting for the connection to be established
+		CONNECTING,
+		// connected and reading
+		CONNECTED,
+		// disconnected; waiting for the reconnect delay to pass
+		WAITING,
+		// removed from the feed manager
+		CLOSED
+	}
+
+	private final int id;
+	private final String host;
+	private final int port;
+	final FrameReader reader;
+
+	// owned by the thread of the feed manager
+	SocketChannel channel;
+	SelectionKey key;
+	long nextConnect;
+	long lastRead;
+	long reconnectDelay;
+
+	private volatile State state = State.WAITING;
+	private volatile long connects;
+	private volatile long bytesRead;
+	private volatile long frames;
+	private volatile long dropped;
+	private volatile String lastError;
+
+	Feed(int id, String host, int port, FrameReader reader) {
+		this.id = id;
+		this.host = host;
+		this.port = port;
+		this.reader = reader;
+	}
+
+	/**
+	 * @return identifier of this feed which is passed to the {@link FrameSink} with each frame
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return host name or address of the receiver
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return TCP port of the receiver
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return current connection state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return number of established connections (1 + number of reconnects)
+	 */
+	public long getConnectCount() {
+		return connects;
+	}
+
+	/**
+	 * @return number of bytes received
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return number of frames received
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * @return number of frames which have been rejected by the sink
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * @return number of malformed records (see {@link FrameReader#getFramingErrors()})
+	 */
+	public long getFramingErrors() {
+		return reader.getFramingErrors();
+	}
+
+	/**
+	 * @return description of the error which caused the last disconnect or null
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	// updates by the feed manager (single writer)
+
+	void setState(State state) {
+		this.state = state;
+	}
+
+	void connected() {
+		++connects;
+	}
+
+	void read(int bytes) {
+		bytesRead += bytes;
+	}
+
+	void frame(boolean accepted) {
+		++frames;
+		if (!accepted) ++dropped;
+	}
+
+	void error(String error) {
+		lastError = error;
+	}
+
+	@Override
+	public String toString() {
+		return "Feed{" +
+				"id=" + id +
+				", host=" + host +
+				", port=" + port +
+				", state=" + state +
+				'}';
+	}
+}
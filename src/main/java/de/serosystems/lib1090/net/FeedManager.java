@@ -0,0 +1,369 @@
+package de.serosystems.lib1090.net;
+
+import de.serosystems.lib1090.io.FrameHandler;
+import de.serosystems.lib1090.io.FrameReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads frames from many receivers over TCP with a single thread. The connections are multiplexed with a
+ * {@link Selector}; each {@link Feed} has its own {@link FrameReader} for framing (e.g. Beast or AVR). All
+ * frames are passed to one {@link FrameSink}:
+ * <pre>
+ * BoundedFrameQueue queue = new BoundedFrameQueue(1 &lt;&lt; 16);
+ * FeedManager feeds = new FeedManager(queue);
+ * feeds.addFeed("receiver1", 30005, new BeastReader());
+ * feeds.addFeed("receiver2", 30002, new AvrReader());
+ * feeds.start();
+ * </pre>
+ * Feeds which fail to connect, are closed by the receiver or stay silent for longer than the idle timeout
+ * are reconnected after a delay which doubles with each failed attempt (up to the maximum delay).<br>
+ * Backpressure: each read is limited to the number of bytes which cannot yield more frames than the sink
+ * can currently accept (see {@link #MIN_RECORD_LENGTH}). If the sink is full, the feed manager stops reading
+ * until the consumer has caught up. Hence, no frames are dropped, the memory use is bounded by the sink and
+ * the socket buffers, and receivers are throttled by TCP flow control.<br>
+ * Feeds can be added and removed from any thread while the feed manager is running.
+ */
+public class FeedManager implements Closeable {
+
+	/** minimum number of bytes of a record which contains a frame in any of the supported formats */
+	public static final int MIN_RECORD_LENGTH = 16;
+
+	private static final long PAUSE_POLL_INTERVAL = 1L; // ms
+
+	private final FrameSink sink;
+	private final Selector selector;
+	private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private int nextId;
+
+	private int readBufferSize = 1 << 14;
+	private long minReconnectDelay = 1000L;
+	private long maxReconnectDelay = 60_000L;
+	private long idleTimeout = 60_000L;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	// state of the selector thread
+	private ByteBuffer readBuffer;
+	private volatile boolean paused;
+	private long receptionTime;
+	private Feed current;
+	private final FrameHandler handler;
+
+	/**
+	 * @param sink receives the frames of all feeds
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public FeedManager(FrameSink sink) throws IOException {
+		if (sink == null)
+			throw new IllegalArgumentException("Sink must not be null");
+
+		this.sink = sink;
+		this.selector = Selector.open();
+		this.handler = frame -> current.frame(sink.offer(current.getId(), receptionTime, frame));
+	}
+
+	/**
+	 * Adds a feed. The connection is established by the thread of the feed manager.
+	 * @param host host name or address of the receiver
+	 * @param port TCP port of the receiver
+	 * @param reader reader for the output format of the receiver; must not be shared with other feeds
+	 * @return the feed
+	 */
+	public synchronized Feed addFeed(String host, int port, FrameReader reader) {
+		if (reader == null)
+			throw new IllegalArgumentException("Reader must not be null");
+
+		Feed feed = new Feed(nextId++, host, port, reader);
+		feed.reconnectDelay = minReconnectDelay;
+		feeds.add(feed);
+		selector.wakeup();
+		return feed;
+	}
+
+	/**
+	 * Closes the connection to the feed and removes it
+	 * @param feed the feed to remove
+	 */
+	public void removeFeed(Feed feed) {
+		if (!feeds.remove(feed)) return;
+		tasks.add(() -> {
+			disconnect(feed, null);
+			feed.setState(Feed.State.CLOSED);
+		});
+		selector.wakeup();
+	}
+
+	/**
+	 * @return the current feeds
+	 */
+	public List<Feed> getFeeds() {
+		return new ArrayList<>(feeds);
+	}
+
+	/**
+	 * @param size size of the buffer for a single read in bytes (default 16 KiB); only takes effect
+	 *             before the feed manager is started
+	 */
+	public void setReadBufferSize(int size) {
+		if (size < 256)
+			throw new IllegalArgumentException("Read buffer must be at least 256 bytes");
+		readBufferSize = size;
+	}
+
+	/**
+	 * @param min delay in milliseconds before the first reconnect attempt (default 1 s)
+	 * @param max maximum delay in milliseconds between reconnect attempts (default 60 s)
+	 */
+	public void setReconnectDelay(long min, long max) {
+		if (min <= 0 || max < min)
+			throw new IllegalArgumentException("Invalid reconnect delays");
+		minReconnectDelay = min;
+		maxReconnectDelay = max;
+	}
+
+	/**
+	 * @param timeout time in milliseconds without data after which a feed is reconnected (default 60 s);
+	 *                0 disables the timeout
+	 */
+	public void setIdleTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Timeout must not be negative");
+		idleTimeout = timeout;
+	}
+
+	/**
+	 * @return true if reading is currently paused because the sink is full
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Starts a daemon thread which runs the feed manager
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Feed manager has already been started");
+
+		thread = new Thread(this::run, "lib1090-feed-manager");
+		thread.setDaemon(true);
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops the thread and closes all connections
+	 * @throws IOException if closing the selector fails
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+
+		Thread t;
+		synchronized (this) {
+			t = thread;
+		}
+		if (t != null && t != Thread.currentThread()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		for (Feed feed : feeds) {
+			disconnect(feed, null);
+			feed.setState(Feed.State.CLOSED);
+		}
+		selector.close();
+	}
+
+	private void run() {
+		readBuffer = ByteBuffer.allocate(readBufferSize);
+
+		while (running) {
+			Runnable task;
+			while ((task = tasks.poll()) != null)
+				task.run();
+
+			long now = System.currentTimeMillis();
+			long timeout = checkTimers(now);
+
+			// pause reading while the sink cannot take the frames of a minimal read
+			boolean full = readLimit() < MIN_RECORD_LENGTH;
+			if (full != paused) {
+				paused = full;
+				for (Feed feed : feeds)
+					if (feed.getState() == Feed.State.CONNECTED)
+						feed.key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+			}
+			if (paused) timeout = PAUSE_POLL_INTERVAL;
+
+			try {
+				selector.select(Math.max(1L, timeout));
+			} catch (IOException e) {
+				// selector is broken; nothing sensible to do but to stop
+				running = false;
+				break;
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				if (!key.isValid()) continue;
+
+				Feed feed = (Feed) key.attachment();
+				if (key.isConnectable()) finishConnect(feed);
+				else if (key.isReadable()) read(feed);
+			}
+		}
+	}
+
+	/**
+	 * Opens due connections and closes idle ones
+	 * @return time in milliseconds until the next timer is due
+	 */
+	private long checkTimers(long now) {
+		long next = 1000L;
+		for (Feed feed : feeds) {
+			switch (feed.getState()) {
+				case WAITING:
+					if (feed.nextConnect <= now) connect(feed, now);
+					else next = Math.min(next, feed.nextConnect - now);
+					break;
+				case CONNECTED:
+					if (idleTimeout > 0 && !paused && now - feed.lastRead > idleTimeout)
+						disconnect(feed, "Idle timeout");
+					break;
+				default:
+					break;
+			}
+		}
+		return next;
+	}
+
+	private void connect(Feed feed, long now) {
+		feed.setState(Feed.State.CONNECTING);
+		feed.lastRead = now;
+		try {
+			feed.channel = SocketChannel.open();
+			feed.channel.configureBlocking(false);
+			if (feed.channel.connect(new InetSocketAddress(feed.getHost(), feed.getPort()))) {
+				feed.key = feed.channel.register(selector, paused ? 0 : SelectionKey.OP_READ, feed);
+				connected(feed);
+			} else {
+				feed.key = feed.channel.register(selector, SelectionKey.OP_CONNECT, feed);
+			}
+		} catch (IOException | RuntimeException e) {
+			// e.g. unresolved address
+			disconnect(feed, e.toString());
+		}
+	}
+
+	private void finishConnect(Feed feed) {
+		try {
+			if (feed.channel.finishConnect()) {
+				feed.key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+				connected(feed);
+			}
+		} catch (IOException e) {
+			disconnect(feed, e.toString());
+		}
+	}
+
+	private void connected(Feed feed) {
+		feed.reader.reset();
+		feed.reconnectDelay = minReconnectDelay;
+		feed.lastRead = System.currentTimeMillis();
+		feed.connected();
+		feed.setState(Feed.State.CONNECTED);
+	}
+
+	/**
+	 * @return maximum number of bytes to read such that the sink can take all resulting frames
+	 */
+	private int readLimit() {
+		// one frame may be completed by bytes of a previous read
+		long frames = sink.remainingCapacity() - 1L;
+		return (int) Math.max(0L, Math.min(readBufferSize, frames * MIN_RECORD_LENGTH));
+	}
+
+	private void read(Feed feed) {
+		// other feeds may have filled the sink in this round
+		int limit = readLimit();
+		if (limit < MIN_RECORD_LENGTH) return;
+
+		try {
+			readBuffer.clear().limit(limit);
+			int n = feed.channel.read(readBuffer);
+			if (n < 0) {
+				disconnect(feed, "Connection closed by receiver");
+				return;
+			}
+
+			receptionTime = System.currentTimeMillis();
+			feed.lastRead = receptionTime;
+			feed.read(n);
+			readBuffer.flip();
+			current = feed;
+			feed.reader.feed(readBuffer, handler);
+		} catch (IOException e) {
+			disconnect(feed, e.toString());
+		}
+	}
+
+	/**
+	 * Closes the connection and schedules a reconnect
+	 * @param error reason or null if the feed is removed
+	 */
+	private void disconnect(Feed feed, String error) {
+		if (feed.channel != null) {
+			try {
+				feed.channel.close(); // also cancels the key
+			} catch (IOException e) {
+				// ignore
+			}
+			feed.channel = null;
+			feed.key = null;
+		}
+
+		if (error != null) feed.error(error);
+		feed.setState(Feed.State.WAITING);
+		feed.nextConnect = System.currentTimeMillis() + feed.reconnectDelay;
+		feed.reconnectDelay = Math.min(feed.reconnectDelay * 2, maxReconnectDelay);
+	}
+}
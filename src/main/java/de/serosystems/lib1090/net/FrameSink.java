@@ -0,0 +1,43 @@
+package de.serosystems.lib1090.net;
+
+import de.serosystems.lib1090.io.RawFrame;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Destination of the frames read by a {@link FeedManager}. Sinks are called on the thread of the
+ * feed manager, so they should not block. Instead, they report their remaining capacity and the
+ * feed manager stops reading from the network while it is low. The receivers are then throttled
+ * by TCP flow control.
+ */
+public interface FrameSink {
+
+	/**
+	 * @param feed identifier of the feed which delivered the frame (see {@link Feed#getId()})
+	 * @param receptionTime time in milliseconds since epoch when the frame was read from the network
+	 * @param frame the frame; only valid until this method returns
+	 * @return true if the frame has been accepted; false if it has been dropped
+	 */
+	boolean offer(int feed, long receptionTime, RawFrame frame);
+
+	/**
+	 * @return number of frames which can currently be accepted; {@link Integer#MAX_VALUE} if unbounded
+	 */
+	int remainingCapacity();
+
+}
@@ -0,0 +1,38 @@
+package de.serosystems.lib1090.pipeline;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Receives the results of a {@link Pipeline}. It is called by a single thread in the order in which
+ * the frames have been published.
+ */
+public interface MessageHandler {
+
+	/**
+	 * @param msg the decoded message
+	 * @param position position decoded from msg or null if msg is not a position message or the
+	 *                 position could not be decoded yet
+	 * @param timestamp time of reception in milliseconds as published
+	 * @param receiver receiver identifier as published
+	 */
+	void onMessage(ModeSDownlinkMsg msg, Position position, long timestamp, int receiver);
+
+}
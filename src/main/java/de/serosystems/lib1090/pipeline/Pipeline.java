@@ -0,0 +1,572 @@
+package de.serosystems.lib1090.pipeline;
+
+import de.serosystems.lib1090.CompactPositionReporting;
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.filter.DuplicateFilter;
+import de.serosystems.lib1090.io.RawFrame;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import de.serosystems.lib1090.net.FrameSink;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Multi-threaded processing of frames in the style of a disruptor: frames are copied into the preallocated
+ * slots of a ring buffer by a single producer and then passed through a chain of stages, each on its own
+ * thread:
+ * <ol>
+ * <li>CRC check of DF 11, 17, 18 and 19 frames with optional correction of single-bit errors in extended
+ * squitters; recovery of the address for the sharding</li>
+ * <li>suppression of duplicates (see {@link DuplicateFilter})</li>
+ * <li>decoding and position extraction by {@link StatefulModeSDecoder}s; frames are sharded by address over
+ * several decoder threads so that the state of each aircraft is kept by one decoder</li>
+ * <li>delivery of the results to a {@link MessageHandler} in publishing order</li>
+ * </ol>
+ * Stages do not hand frames to each other through queues. Instead, each stage publishes the sequence number
+ * of the last slot it has processed, and the next stage processes all slots up to it as one batch. Hence,
+ * no locks are taken and no objects are created apart from the decoded messages. If the ring is full,
+ * {@link #tryPublish(byte[], int, int, long, int)} fails (or {@link #publish(byte[], int, int, long, int)}
+ * waits), which makes the pipeline usable as {@link FrameSink} of a {@link de.serosystems.lib1090.net.FeedManager}.
+ * Per-stage latency and throughput are available from {@link #getStageMetrics()}.<br>
+ * Configure the pipeline before calling {@link #start()}. Frames must be published by a single thread.
+ */
+public class Pipeline implements FrameSink, Closeable {
+
+	/** default number of slots */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static final int SLOT_SIZE = 14;
+
+	// slot status
+	private static final byte OK = 0;
+	private static final byte CRC_ERROR = 1;
+	private static final byte DUPLICATE = 2;
+	private static final byte DECODING_ERROR = 3;
+	private static final byte FILTERED = 4;
+
+	// syndromes of single-bit errors in a 112-bit frame
+	private static final int[] SYNDROMES = new int[112];
+	static {
+		byte[] frame = new byte[14];
+		for (int bit = 0; bit < 112; ++bit) {
+			frame[bit >>> 3] = (byte) (0x80 >>> (bit & 7));
+			SYNDROMES[bit] = ModeSDownlinkMsg.calcParity(frame, 0, 11) ^ parity(frame, 11);
+			frame[bit >>> 3] = 0;
+		}
+	}
+
+	private final MessageHandler handler;
+
+	// configuration
+	private int capacity = DEFAULT_CAPACITY;
+	private int shards = 2;
+	private int maxBatchSize = 256;
+	private WaitStrategy waitStrategy = WaitStrategy.SLEEPING;
+	private boolean errorCorrection = true;
+	private DuplicateFilter duplicateFilter = new DuplicateFilter();
+	private Supplier<StatefulModeSDecoder> decoderFactory = StatefulModeSDecoder::new;
+	private volatile Position receiverPosition;
+
+	// ring
+	private int mask;
+	private byte[] data;
+	private byte[] lengths;
+	private long[] timestamps;
+	private int[] receivers;
+	private long[] publishTimes;
+	private int[] addresses;
+	private byte[] status;
+	private ModeSDownlinkMsg[] messages;
+	private Position[] positions;
+
+	// producer
+	private final Sequence cursor = new Sequence(-1);
+	private long cachedGate = -1;
+
+	private Stage[] stages;
+	private Stage sink;
+	private Thread[] threads;
+	private volatile boolean closed;
+
+	private volatile long crcErrors;
+	private volatile long correctedFrames;
+	private volatile long duplicates;
+	private volatile long handlerErrors;
+
+	/**
+	 * @param handler receives the decoded messages
+	 */
+	public Pipeline(MessageHandler handler) {
+		if (handler == null)
+			throw new IllegalArgumentException("Handler must not be null");
+		this.handler = handler;
+	}
+
+	/**
+	 * @param capacity number of slots (default {@link #DEFAULT_CAPACITY}); rounded up to the next power of two
+	 */
+	public void setCapacity(int capacity) {
+		checkNotStarted();
+		if (capacity < 2 || capacity > 1 << 24)
+			throw new IllegalArgumentException("Capacity must be between 2 and 2^24");
+		this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	/**
+	 * @param shards number of decoder threads (default 2)
+	 */
+	public void setDecoderShards(int shards) {
+		checkNotStarted();
+		if (shards < 1)
+			throw new IllegalArgumentException("At least one decoder shard is required");
+		this.shards = shards;
+	}
+
+	/**
+	 * @param size maximum number of frames a stage processes before publishing its progress (default 256)
+	 */
+	public void setMaxBatchSize(int size) {
+		checkNotStarted();
+		if (size < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.maxBatchSize = size;
+	}
+
+	/**
+	 * @param strategy how idle stages wait for work (default {@link WaitStrategy#SLEEPING})
+	 */
+	public void setWaitStrategy(WaitStrategy strategy) {
+		checkNotStarted();
+		if (strategy == null)
+			throw new IllegalArgumentException("Wait strategy must not be null");
+		this.waitStrategy = strategy;
+	}
+
+	/**
+	 * @param enabled whether single-bit errors in extended squitters are corrected (default true)
+	 */
+	public void setErrorCorrection(boolean enabled) {
+		checkNotStarted();
+		this.errorCorrection = enabled;
+	}
+
+	/**
+	 * @param filter filter for duplicates or null to disable the stage (default: {@link DuplicateFilter#DuplicateFilter()})
+	 */
+	public void setDuplicateFilter(DuplicateFilter filter) {
+		checkNotStarted();
+		this.duplicateFilter = filter;
+	}
+
+	/**
+	 * @param factory creates the decoder of each shard, e.g. to set decode masks or filters
+	 */
+	public void setDecoderFactory(Supplier<StatefulModeSDecoder> factory) {
+		checkNotStarted();
+		if (factory == null)
+			throw new IllegalArgumentException("Decoder factory must not be null");
+		this.decoderFactory = factory;
+	}
+
+	/**
+	 * @param position receiver position used as reference for position decoding or null; may be changed at any time.
+	 *                 Local decoding relative to it is precomputed (see {@link CompactPositionReporting.ReceiverPosition}).
+	 */
+	public void setReceiverPosition(Position position) {
+		if (position != null && !(position instanceof CompactPositionReporting.ReceiverPosition))
+			position = new CompactPositionReporting.ReceiverPosition(position);
+		this.receiverPosition = position;
+	}
+
+	/**
+	 * Allocates the ring and starts the threads of all stages
+	 */
+	public synchronized void start() {
+		checkNotStarted();
+
+		mask = capacity - 1;
+		data = new byte[capacity * SLOT_SIZE];
+		lengths = new byte[capacity];
+		timestamps = new long[capacity];
+		receivers = new int[capacity];
+		publishTimes = new long[capacity];
+		addresses = new int[capacity];
+		status = new byte[capacity];
+		messages = new ModeSDownlinkMsg[capacity];
+		positions = new Position[capacity];
+
+		List<Stage> list = new ArrayList<>();
+		Stage crc = new CrcStage();
+		list.add(crc);
+		Stage dedup = new DuplicateStage(crc);
+		list.add(dedup);
+		Stage[] decoders = new Stage[shards];
+		for (int i = 0; i < shards; ++i) {
+			decoders[i] = new DecoderStage(i, dedup);
+			list.add(decoders[i]);
+		}
+		sink = new SinkStage(decoders);
+		list.add(sink);
+		stages = list.toArray(new Stage[0]);
+
+		threads = new Thread[stages.length];
+		for (int i = 0; i < stages.length; ++i) {
+			threads[i] = new Thread(stages[i], "lib1090-pipeline-" + stages[i].metrics.getName());
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * Copies a frame into the next slot unless the ring is full
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame (7 or 14 bytes)
+	 * @param timestamp time of reception in milliseconds
+	 * @param receiver identifier of the receiver
+	 * @return true if the frame has been published; false if the ring is full
+	 */
+	public boolean tryPublish(byte[] buffer, int offset, int length, long timestamp, int receiver) {
+		if (stages == null || closed)
+			throw new IllegalStateException("Pipeline is not running");
+		if (length != 7 && length != 14)
+			throw new IllegalArgumentException("Invalid frame length " + length);
+
+		long seq = cursor.get() + 1;
+		if (seq - capacity > cachedGate) {
+			cachedGate = sink.sequence.get();
+			if (seq - capacity > cachedGate) return false;
+		}
+
+		int slot = (int) seq & mask;
+		System.arraycopy(buffer, offset, data, slot * SLOT_SIZE, length);
+		lengths[slot] = (byte) length;
+		timestamps[slot] = timestamp;
+		receivers[slot] = receiver;
+		status[slot] = OK;
+		publishTimes[slot] = System.nanoTime();
+		cursor.set(seq);
+		return true;
+	}
+
+	/**
+	 * Like {@link #tryPublish(byte[], int, int, long, int)} but waits for a free slot
+	 * @param buffer buffer containing the frame
+	 * @param offset index of the first byte of the frame
+	 * @param length length of the frame (7 or 14 bytes)
+	 * @param timestamp time of reception in milliseconds
+	 * @param receiver identifier of the receiver
+	 */
+	public void publish(byte[] buffer, int offset, int length, long timestamp, int receiver) {
+		int attempt = 0;
+		while (!tryPublish(buffer, offset, length, timestamp, receiver))
+			attempt = waitStrategy.idle(attempt);
+	}
+
+	/**
+	 * Publishes the frame with the reception time as timestamp and the feed as receiver
+	 */
+	@Override
+	public boolean offer(int feed, long receptionTime, RawFrame frame) {
+		return tryPublish(frame.getBuffer(), frame.getOffset(), frame.getLength(), receptionTime, feed);
+	}
+
+	@Override
+	public int remainingCapacity() {
+		if (sink == null) return 0;
+		return (int) (capacity - (cursor.get() - sink.sequence.get()));
+	}
+
+	/**
+	 * Processes all published frames and stops the threads
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (threads == null) return;
+
+		for (Thread t : threads) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return metrics of all stages in processing order
+	 */
+	public List<StageMetrics> getStageMetrics() {
+		List<StageMetrics> metrics = new ArrayList<>();
+		if (stages != null)
+			for (Stage s : stages)
+				metrics.add(s.metrics);
+		return metrics;
+	}
+
+	/**
+	 * @return number of frames which failed the CRC check and could not be corrected
+	 */
+	public long getCrcErrors() {
+		return crcErrors;
+	}
+
+	/**
+	 * @return number of frames with a corrected single-bit error
+	 */
+	public long getCorrectedFrames() {
+		return correctedFrames;
+	}
+
+	/**
+	 * @return number of suppressed duplicates
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return number of frames the decoders rejected
+	 */
+	public long getDecodingErrors() {
+		long errors = 0;
+		if (stages != null)
+			for (Stage s : stages)
+				if (s instanceof DecoderStage)
+					errors += ((DecoderStage) s).errors;
+		return errors;
+	}
+
+	/**
+	 * @return number of runtime exceptions thrown by the message handler
+	 */
+	public long getHandlerErrors() {
+		return handlerErrors;
+	}
+
+	private void checkNotStarted() {
+		if (stages != null)
+			throw new IllegalStateException("Pipeline has already been started");
+	}
+
+	private static int parity(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xFF) << 16 | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset + 2] & 0xFF);
+	}
+
+	/**
+	 * Thread of a stage which processes all slots its predecessors have completed in batches
+	 */
+	private abstract class Stage implements Runnable {
+		final Sequence sequence = new Sequence(-1);
+		final StageMetrics metrics;
+		private final Stage[] upstream; // empty for the first stage (its predecessor is the producer)
+		private final Sequence[] dependencies;
+		volatile boolean done;
+
+		Stage(String name, Stage... upstream) {
+			this.metrics = new StageMetrics(name);
+			this.upstream = upstream;
+			if (upstream.length == 0) {
+				dependencies = new Sequence[] {cursor};
+			} else {
+				dependencies = new Sequence[upstream.length];
+				for (int i = 0; i < upstream.length; ++i)
+					dependencies[i] = upstream[i].sequence;
+			}
+		}
+
+		abstract void process(int slot);
+
+		private boolean upstreamDone() {
+			if (upstream.length == 0) return closed;
+			for (Stage s : upstream)
+				if (!s.done) return false;
+			return true;
+		}
+
+		@Override
+		public void run() {
+			long next = 0;
+			int attempt = 0;
+			while (true) {
+				// read before the sequences so that no frames are missed when stopping
+				boolean finished = upstreamDone();
+				long available = dependencies.length == 1 ? dependencies[0].get() : Sequence.minimum(dependencies);
+
+				if (available >= next) {
+					long end = Math.min(available, next + maxBatchSize - 1);
+					long start = System.nanoTime();
+					for (long s = next; s <= end; ++s)
+						process((int) s & mask);
+					long now = System.nanoTime();
+					metrics.batch((int) (end - next + 1), now - publishTimes[(int) next & mask], now - start);
+					sequence.set(end);
+					next = end + 1;
+					attempt = 0;
+				} else if (finished) {
+					done = true;
+					return;
+				} else {
+					attempt = waitStrategy.idle(attempt);
+				}
+			}
+		}
+	}
+
+	private class CrcStage extends Stage {
+		CrcStage() {
+			super("crc");
+		}
+
+		@Override
+		void process(int slot) {
+			int offset = slot * SLOT_SIZE;
+			int length = lengths[slot];
+			byte df = (byte) (data[offset] >>> 3 & 0x1F);
+			if (length != ModeSDownlinkMsg.getExpectedLength(df)) {
+				crcError(slot);
+				return;
+			}
+
+			int syndrome = ModeSDownlinkMsg.calcParity(data, offset, length - 3) ^ parity(data, offset + length - 3);
+			switch (df) {
+				case 11:
+					// parity is overlaid with the interrogator code
+					if ((syndrome & ~0x7F) != 0) {
+						crcError(slot);
+						return;
+					}
+					break;
+				case 17: case 18: case 19:
+					if (syndrome != 0) {
+						if (!errorCorrection || !correct(offset, syndrome)) {
+							crcError(slot);
+							return;
+						}
+						++correctedFrames;
+					}
+					break;
+				default:
+					// address/parity field
+					addresses[slot] = syndrome;
+					return;
+			}
+			addresses[slot] = parity(data, offset + 1);
+		}
+
+		private void crcError(int slot) {
+			status[slot] = CRC_ERROR;
+			++crcErrors;
+		}
+
+		/**
+		 * Corrects a single-bit error; bits of the downlink format are not corrected
+		 * @return true if the frame has been corrected
+		 */
+		private boolean correct(int offset, int syndrome) {
+			for (int bit = 5; bit < 112; ++bit) {
+				if (SYNDROMES[bit] == syndrome) {
+					data[offset + (bit >>> 3)] ^= (byte) (0x80 >>> (bit & 7));
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private class DuplicateStage extends Stage {
+		DuplicateStage(Stage crc) {
+			super("dedup", crc);
+		}
+
+		@Override
+		void process(int slot) {
+			if (status[slot] != OK || duplicateFilter == null) return;
+			if (duplicateFilter.isDuplicate(data, slot * SLOT_SIZE, lengths[slot], timestamps[slot], receivers[slot])) {
+				status[slot] = DUPLICATE;
+				++duplicates;
+			}
+		}
+	}
+
+	private class DecoderStage extends Stage {
+		private final int shard;
+		private final StatefulModeSDecoder decoder = decoderFactory.get();
+		volatile long errors;
+
+		DecoderStage(int shard, Stage dedup) {
+			super("decode-" + shard, dedup);
+			this.shard = shard;
+		}
+
+		@Override
+		void process(int slot) {
+			if (status[slot] != OK) return;
+			int hash = addresses[slot] * 0x9E3779B9;
+			if (((hash >>> 8) % shards) != shard) return;
+
+			ModeSDownlinkMsg msg;
+			try {
+				msg = decoder.decode(data, slot * SLOT_SIZE, lengths[slot], timestamps[slot]);
+			} catch (BadFormatException | UnspecifiedFormatError e) {
+				status[slot] = DECODING_ERROR;
+				++errors;
+				return;
+			}
+
+			if (msg == null) {
+				status[slot] = FILTERED;
+				return;
+			}
+
+			messages[slot] = msg;
+			if (msg instanceof PositionMsg && ((PositionMsg) msg).hasValidPosition())
+				positions[slot] = decoder.extractPosition(msg.getAddress(), (PositionMsg) msg, receiverPosition);
+		}
+	}
+
+	private class SinkStage extends Stage {
+		SinkStage(Stage[] decoders) {
+			super("sink", decoders);
+		}
+
+		@Override
+		void process(int slot) {
+			if (status[slot] != OK) return;
+
+			try {
+				handler.onMessage(messages[slot], positions[slot], timestamps[slot], receivers[slot]);
+			} catch (RuntimeException e) {
+				++handlerErrors;
+			}
+			// release references for garbage collection
+			messages[slot] = null;
+			positions[slot] = null;
+		}
+	}
+}
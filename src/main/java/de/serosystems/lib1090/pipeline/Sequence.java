@@ -0,0 +1,60 @@
+package de.serosystems.lib1090.pipeline;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Sequence number of a stage, i.e., the last slot of the ring which the stage has processed. The value is
+ * padded to its own cache line(s) so that stages running on different cores do not slow each other down
+ * through false sharing. The padding is spread over a class hierarchy because the JVM does not reorder
+ * fields across classes.
+ */
+final class Sequence extends SequenceValue {
+
+	// right padding
+	long p9, p10, p11, p12, p13, p14, p15;
+
+	Sequence(long initial) {
+		value = initial;
+	}
+
+	long get() {
+		return value;
+	}
+
+	void set(long value) {
+		this.value = value;
+	}
+
+	/**
+	 * @return the smallest value of the sequences
+	 */
+	static long minimum(Sequence[] sequences) {
+		long min = Long.MAX_VALUE;
+		for (Sequence s : sequences)
+			min = Math.min(min, s.value);
+		return min;
+	}
+}
+
+class SequenceLeftPadding {
+	long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequenceLeftPadding {
+	volatile long value;
+}
@@ -0,0 +1,112 @@
+package de.serosystems.lib1090.pipeline;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Statistics of a pipeline stage. Latency is measured from the time a frame has been published to the
+ * pipeline until the stage has finished the batch containing it. To keep measurement cheap, only the
+ * oldest frame of each batch is sampled.<br>
+ * Values are updated by the thread of the stage and may be read from any thread.
+ */
+public class StageMetrics {
+
+	private final String name;
+
+	private volatile long processed;
+	private volatile long batches;
+	private volatile long latencySum;
+	private volatile long maxLatency;
+	private volatile long busyTime;
+
+	StageMetrics(String name) {
+		this.name = name;
+	}
+
+	void batch(int size, long latency, long busy) {
+		processed += size;
+		batches++;
+		latencySum += latency;
+		if (latency > maxLatency) maxLatency = latency;
+		busyTime += busy;
+	}
+
+	/**
+	 * @return name of the stage
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of frames processed by the stage
+	 */
+	public long getProcessedCount() {
+		return processed;
+	}
+
+	/**
+	 * @return number of batches processed by the stage
+	 */
+	public long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * @return average number of frames per batch
+	 */
+	public double getMeanBatchSize() {
+		long b = batches;
+		return b == 0 ? 0.0 : (double) processed / b;
+	}
+
+	/**
+	 * @return mean latency in nanoseconds from publishing a frame until it has passed this stage
+	 */
+	public double getMeanLatencyNanos() {
+		long b = batches;
+		return b == 0 ? 0.0 : (double) latencySum / b;
+	}
+
+	/**
+	 * @return maximum observed latency in nanoseconds
+	 */
+	public long getMaxLatencyNanos() {
+		return maxLatency;
+	}
+
+	/**
+	 * @return time in nanoseconds the stage spent processing frames (i.e., not waiting)
+	 */
+	public long getBusyNanos() {
+		return busyTime;
+	}
+
+	/**
+	 * @return frames per second of busy time, i.e., the maximum throughput of the stage
+	 */
+	public double getThroughput() {
+		long busy = busyTime;
+		return busy == 0 ? 0.0 : processed * 1e9 / busy;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{processed=%d, batch=%.1f, latency=%.1fus (max %.1fus), throughput=%.0f/s}",
+				name, processed, getMeanBatchSize(), getMeanLatencyNanos() / 1e3, maxLatency / 1e3, getThroughput());
+	}
+}
@@ -0,0 +1,64 @@
+package de.serosystems.lib1090.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Determines how pipeline threads wait for their predecessors. Strategies trade latency for CPU usage.
+ */
+public enum WaitStrategy {
+
+	/** spin without pausing; lowest latency but occupies one core per stage */
+	BUSY_SPIN {
+		@Override
+		int idle(int attempt) {
+			return attempt + 1;
+		}
+	},
+
+	/** spin briefly, then yield the core to other threads */
+	YIELDING {
+		@Override
+		int idle(int attempt) {
+			if (attempt >= SPIN_TRIES) Thread.yield();
+			return attempt + 1;
+		}
+	},
+
+	/** spin, yield and finally park for short periods; low CPU usage when idle (default) */
+	SLEEPING {
+		@Override
+		int idle(int attempt) {
+			if (attempt >= SPIN_TRIES + YIELD_TRIES) LockSupport.parkNanos(PARK_NANOS);
+			else if (attempt >= SPIN_TRIES) Thread.yield();
+			return attempt + 1;
+		}
+	};
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = 50_000L;
+
+	/**
+	 * Called while there is nothing to do
+	 * @param attempt number of unsuccessful attempts since work was found last (starts at 0)
+	 * @return the next attempt number
+	 */
+	abstract int idle(int attempt);
+}
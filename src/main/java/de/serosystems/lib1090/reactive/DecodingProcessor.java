@@ -0,0 +1,341 @@
+package de.serosystems.lib1090.reactive;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.io.RawFrame;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reactive Streams processor which decodes raw frames with a {@link StatefulModeSDecoder}. Demand is
+ * propagated upstream so that a slow subscriber throttles the frame source instead of messages being buffered
+ * without limit: the processor prefetches up to its buffer size of frames and requests more in batches of
+ * three quarters of the buffer once frames have been delivered or dropped.<br>
+ * Frames are decoded on the thread which calls {@link #onNext(RawFrame)}, so upstream may reuse its
+ * {@link RawFrame} instances. Messages are handed to the subscriber on the given executor. Each executor
+ * task delivers as many messages as are buffered and requested, so the cost of the thread handoff is shared
+ * by a whole batch rather than paid for every message. Frames which cannot be decoded, which the decoder
+ * filters and messages of other than the selected subtypes (see {@link #setSubtypes(ModeSDownlinkMsg.subtype...)})
+ * are dropped. Errors and completion of upstream are forwarded after all buffered messages.<br>
+ * Only one subscriber is supported. On Java 9 and newer, use {@code org.reactivestreams.FlowAdapters} to
+ * connect the processor to {@code java.util.concurrent.Flow} publishers and subscribers.
+ */
+public class DecodingProcessor implements Processor<RawFrame, ModeSDownlinkMsg> {
+
+	/** default number of buffered messages */
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+
+	private final StatefulModeSDecoder decoder;
+	private final Executor executor;
+
+	// single-producer single-consumer buffer; written by onNext and read by the drain loop
+	private final ModeSDownlinkMsg[] buffer;
+	private final int mask;
+	private final AtomicLong producerIndex = new AtomicLong();
+	private final AtomicLong consumerIndex = new AtomicLong();
+
+	// number of frames to request from upstream at once
+	private final int limit;
+	// frames delivered or dropped since upstream has been asked for more
+	private final AtomicLong consumed = new AtomicLong();
+
+	private final AtomicBoolean upstreamSubscribed = new AtomicBoolean();
+	private final AtomicReference<Subscription> upstream = new AtomicReference<>();
+	private final AtomicReference<Subscriber<? super ModeSDownlinkMsg>> downstream = new AtomicReference<>();
+	private final DownstreamSubscription subscription = new DownstreamSubscription();
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private volatile Set<ModeSDownlinkMsg.subtype> subtypes;
+	private volatile boolean upstreamDone;
+	private volatile boolean done;
+	private volatile Throwable error;
+	private volatile Throwable requestError;
+	private volatile boolean cancelled;
+	private volatile long decodingErrors;
+
+	// owned by the drain loop
+	private boolean subscribed;
+	private boolean upstreamCancelled;
+
+	/**
+	 * Creates a processor with a new decoder which delivers messages on the common fork-join pool
+	 */
+	public DecodingProcessor() {
+		this(new StatefulModeSDecoder(), ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param decoder the decoder; must not be used elsewhere concurrently
+	 * @param executor executor on which messages are delivered to the subscriber
+	 * @param bufferSize maximum number of buffered messages; rounded up to the next power of two
+	 */
+	public DecodingProcessor(StatefulModeSDecoder decoder, Executor executor, int bufferSize) {
+		if (decoder == null || executor == null)
+			throw new IllegalArgumentException("Decoder and executor must not be null");
+		if (bufferSize < 1 || bufferSize > 1 << 24)
+			throw new IllegalArgumentException("Buffer size must be between 1 and 2^24");
+
+		this.decoder = decoder;
+		this.executor = executor;
+		int capacity = bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+		this.buffer = new ModeSDownlinkMsg[capacity];
+		this.mask = capacity - 1;
+		this.limit = capacity - (capacity >> 2);
+	}
+
+	/**
+	 * Restricts the output to the given message types; all other messages are dropped
+	 * @param types the types to deliver; none to deliver all messages
+	 */
+	public void setSubtypes(ModeSDownlinkMsg.subtype... types) {
+		subtypes = types.length == 0 ? null : EnumSet.copyOf(Arrays.asList(types));
+	}
+
+	/**
+	 * @return number of frames which could not be decoded
+	 */
+	public long getDecodingErrors() {
+		return decodingErrors;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super ModeSDownlinkMsg> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("Subscriber must not be null");
+
+		if (!downstream.compareAndSet(null, subscriber)) {
+			subscriber.onSubscribe(new Subscription() {
+				@Override public void request(long n) {}
+				@Override public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+			return;
+		}
+		// onSubscribe is signalled by the drain loop so that all signals are serialized
+		schedule();
+	}
+
+	@Override
+	public void onSubscribe(Subscription s) {
+		if (s == null)
+			throw new NullPointerException("Subscription must not be null");
+
+		if (cancelled || !upstreamSubscribed.compareAndSet(false, true)) {
+			s.cancel();
+			return;
+		}
+		s.request(buffer.length);
+		// the drain loop takes over only after the initial request to keep requests serialized
+		upstream.set(s);
+		schedule();
+	}
+
+	@Override
+	public void onNext(RawFrame frame) {
+		if (frame == null)
+			throw new NullPointerException("Frame must not be null");
+		if (done || cancelled) return;
+
+		ModeSDownlinkMsg msg;
+		try {
+			msg = decoder.decode(frame.getBuffer(), frame.getOffset(), frame.getLength(), frame.getTimestamp());
+		} catch (BadFormatException | UnspecifiedFormatError e) {
+			++decodingErrors;
+			msg = null;
+		}
+
+		Set<ModeSDownlinkMsg.subtype> types = subtypes;
+		if (msg == null || types != null && !types.contains(msg.getType())) {
+			// make up for the frame which did not produce a message
+			if (consumed.incrementAndGet() >= limit)
+				schedule();
+			return;
+		}
+
+		long index = producerIndex.get();
+		if (index - consumerIndex.get() == buffer.length) {
+			// upstream sent more than requested
+			error = new IllegalStateException("Upstream ignored backpressure");
+			done = true;
+			schedule();
+			return;
+		}
+		buffer[(int) index & mask] = msg;
+		producerIndex.lazySet(index + 1);
+		schedule();
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		if (t == null)
+			throw new NullPointerException("Throwable must not be null");
+		error = t;
+		upstreamDone = true;
+		done = true;
+		schedule();
+	}
+
+	@Override
+	public void onComplete() {
+		upstreamDone = true;
+		done = true;
+		schedule();
+	}
+
+	private void schedule() {
+		if (wip.getAndIncrement() == 0)
+			executor.execute(this::drain);
+	}
+
+	/**
+	 * Delivers buffered messages and terminal signals and issues all requests to upstream. Runs on the
+	 * executor and never on more than one thread at a time.
+	 */
+	private void drain() {
+		int missed = 1;
+		do {
+			Subscriber<? super ModeSDownlinkMsg> subscriber = downstream.get();
+
+			if (cancelled) {
+				cancelUpstream();
+				clear();
+			} else if (subscriber != null) {
+				if (!subscribed) {
+					subscribed = true;
+					subscriber.onSubscribe(subscription);
+				}
+
+				Throwable invalid = requestError;
+				if (invalid != null && !cancelled) {
+					cancelled = true;
+					subscriber.onError(invalid);
+				}
+
+				long demand = requested.get();
+				long emitted = 0;
+				while (emitted != demand && !cancelled) {
+					long index = consumerIndex.get();
+					boolean terminated = done;
+					if (index == producerIndex.get()) {
+						if (terminated) terminate(subscriber);
+						break;
+					}
+
+					ModeSDownlinkMsg msg = buffer[(int) index & mask];
+					buffer[(int) index & mask] = null;
+					consumerIndex.lazySet(index + 1);
+					subscriber.onNext(msg);
+					++emitted;
+					consumed.incrementAndGet();
+				}
+
+				if (emitted == demand && done && !cancelled && consumerIndex.get() == producerIndex.get())
+					terminate(subscriber);
+
+				if (emitted != 0 && demand != Long.MAX_VALUE)
+					requested.addAndGet(-emitted);
+			}
+
+			if (cancelled) {
+				cancelUpstream();
+				clear();
+			} else {
+				replenish();
+			}
+
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	/**
+	 * Requests as many frames from upstream as have been delivered or dropped once a batch is complete
+	 */
+	private void replenish() {
+		Subscription s = upstream.get();
+		long n = consumed.get();
+		if (s != null && !upstreamDone && n >= limit) {
+			consumed.addAndGet(-n);
+			s.request(n);
+		}
+	}
+
+	private void terminate(Subscriber<? super ModeSDownlinkMsg> subscriber) {
+		cancelled = true;
+		Throwable t = error;
+		if (t != null) subscriber.onError(t);
+		else subscriber.onComplete();
+	}
+
+	private void cancelUpstream() {
+		if (upstreamCancelled) return;
+		Subscription s = upstream.get();
+		if (s != null && !upstreamDone) {
+			upstreamCancelled = true;
+			s.cancel();
+		}
+	}
+
+	private void clear() {
+		long index = consumerIndex.get();
+		long end = producerIndex.get();
+		for (; index != end; ++index)
+			buffer[(int) index & mask] = null;
+		consumerIndex.lazySet(end);
+	}
+
+	private class DownstreamSubscription implements Subscription {
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				requestError = new IllegalArgumentException("Non-positive request " + n);
+				schedule();
+				return;
+			}
+
+			long current, next;
+			do {
+				current = requested.get();
+				if (current == Long.MAX_VALUE) return;
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!requested.compareAndSet(current, next));
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An area of interest, either a polygon or a circle. On creation, the area is rasterized into a grid over its
+ * bounding box whose cells are marked as inside, outside or on the boundary. Tests of positions in inside or
+ * outside cells take a single array read; only positions in boundary cells are tested exactly.<br>
+ * Polygon edges are straight lines in latitude/longitude coordinates. A polygon which crosses the antimeridian
+ * must use continuous longitudes beyond 180 degrees (e.g., 170 to 190) instead of wrapping around.
+ */
+public final class Geofence {
+
+	/** default number of raster cells along the longer side of the bounding box */
+	public static final int DEFAULT_RESOLUTION = 64;
+
+	private static final byte OUTSIDE = 0, INSIDE = 1, BOUNDARY = 2;
+	private static final double EPSILON = 1e-9;
+
+	private final int id;
+
+	// bounding box; longitudes may exceed 180 degrees
+	final double minLatitude, maxLatitude, minLongitude, maxLongitude;
+
+	// polygon vertices or circle center
+	private final double[] latitudes, longitudes;
+	private final double radius;
+
+	private final int rows, columns;
+	private final double cellHeight, cellWidth;
+	private final byte[] raster;
+
+	private Geofence(int id, double[] latitudes, double[] longitudes, double radius,
+					 double minLatitude, double maxLatitude, double minLongitude, double maxLongitude, int resolution) {
+		if (resolution < 1 || resolution > 4096)
+			throw new IllegalArgumentException("Resolution must be between 1 and 4096");
+
+		this.id = id;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.radius = radius;
+		this.minLatitude = minLatitude;
+		this.maxLatitude = maxLatitude;
+		this.minLongitude = minLongitude;
+		this.maxLongitude = maxLongitude;
+
+		double height = max(maxLatitude - minLatitude, EPSILON), width = max(maxLongitude - minLongitude, EPSILON);
+		double size = max(height, width) / resolution;
+		rows = max(1, (int) ceil(height / size));
+		columns = max(1, (int) ceil(width / size));
+		cellHeight = height / rows;
+		cellWidth = width / columns;
+		raster = new byte[rows * columns];
+	}
+
+	/**
+	 * @param id identifier of the fence
+	 * @param latitudes latitudes of the vertices in degrees
+	 * @param longitudes longitudes of the vertices in degrees
+	 * @return a polygon rasterized with {@link #DEFAULT_RESOLUTION}
+	 */
+	public static Geofence polygon(int id, double[] latitudes, double[] longitudes) {
+		return polygon(id, latitudes, longitudes, DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param id identifier of the fence
+	 * @param latitudes latitudes of the vertices in degrees
+	 * @param longitudes longitudes of the vertices in degrees; continuous across the antimeridian
+	 * @param resolution number of raster cells along the longer side of the bounding box
+	 * @return the polygon
+	 */
+	public static Geofence polygon(int id, double[] latitudes, double[] longitudes, int resolution) {
+		if (latitudes.length != longitudes.length || latitudes.length < 3)
+			throw new IllegalArgumentException("A polygon needs at least three vertices");
+
+		double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+		double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+		for (int i = 0; i < latitudes.length; ++i) {
+			if (!(abs(latitudes[i]) <= 90) || !(abs(longitudes[i]) <= 540))
+				throw new IllegalArgumentException("Invalid vertex " + latitudes[i] + "," + longitudes[i]);
+			minLat = min(minLat, latitudes[i]);
+			maxLat = max(maxLat, latitudes[i]);
+			minLon = min(minLon, longitudes[i]);
+			maxLon = max(maxLon, longitudes[i]);
+		}
+		if (maxLon - minLon >= 360)
+			throw new IllegalArgumentException("Polygon must span less than 360 degrees of longitude");
+
+		Geofence fence = new Geofence(id, latitudes.clone(), longitudes.clone(), 0,
+				minLat, maxLat, minLon, maxLon, resolution);
+		fence.rasterizePolygon();
+		return fence;
+	}
+
+	/**
+	 * @param id identifier of the fence
+	 * @param latitude latitude of the center in degrees
+	 * @param longitude longitude of the center in degrees
+	 * @param radius great circle radius in meters
+	 * @return a circle rasterized with {@link #DEFAULT_RESOLUTION}
+	 */
+	public static Geofence circle(int id, double latitude, double longitude, double radius) {
+		return circle(id, latitude, longitude, radius, DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param id identifier of the fence
+	 * @param latitude latitude of the center in degrees
+	 * @param longitude longitude of the center in degrees
+	 * @param radius great circle radius in meters (less than 5000 km)
+	 * @param resolution number of raster cells along the longer side of the bounding box
+	 * @return the circle
+	 */
+	public static Geofence circle(int id, double latitude, double longitude, double radius, int resolution) {
+		if (!(abs(latitude) <= 90) || !(abs(longitude) <= 180) || !(radius > 0 && radius < 5e6))
+			throw new IllegalArgumentException("Invalid circle");
+
+		double dLat = toDegrees(radius / Position.EARTH_RADIUS);
+		double minLat = max(-90, latitude - dLat), maxLat = min(90, latitude + dLat);
+		double minLon = longitude - 180, maxLon = longitude + 180;
+		if (abs(latitude) + dLat < 90) {
+			// longitude extent unless the circle contains a pole
+			double dLon = toDegrees(asin(min(1.0, sin(radius / Position.EARTH_RADIUS) / cos(toRadians(latitude)))));
+			minLon = longitude - dLon;
+			maxLon = longitude + dLon;
+		}
+
+		Geofence fence = new Geofence(id, new double[] {latitude}, new double[] {longitude}, radius,
+				minLat, maxLat, minLon, maxLon, resolution);
+		fence.rasterizeCircle();
+		return fence;
+	}
+
+	/**
+	 * @return identifier of the fence
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return true if the fence is a circle
+	 */
+	public boolean isCircle() {
+		return radius > 0;
+	}
+
+	/**
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @return true if the position is inside the fence
+	 */
+	public boolean contains(double latitude, double longitude) {
+		if (latitude < minLatitude || latitude > maxLatitude) return false;
+		if (longitude < minLongitude) longitude += 360;
+		else if (longitude > maxLongitude) longitude -= 360;
+		if (longitude < minLongitude || longitude > maxLongitude) return false;
+
+		int row = min(rows - 1, (int) ((latitude - minLatitude) / cellHeight));
+		int column = min(columns - 1, (int) ((longitude - minLongitude) / cellWidth));
+		byte cell = raster[row * columns + column];
+		if (cell != BOUNDARY) return cell == INSIDE;
+
+		return isCircle() ? Position.haversine(latitudes[0], longitudes[0], latitude, longitude) <= radius :
+				containsExactly(latitude, longitude);
+	}
+
+	/**
+	 * @return fraction of the raster cells which require an exact test
+	 */
+	public double getBoundaryFraction() {
+		int boundary = 0;
+		for (byte cell : raster)
+			if (cell == BOUNDARY) ++boundary;
+		return boundary / (double) raster.length;
+	}
+
+	/**
+	 * Crossing number test
+	 */
+	private boolean containsExactly(double latitude, double longitude) {
+		boolean inside = false;
+		for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+			if ((latitudes[i] > latitude) != (latitudes[j] > latitude) &&
+					longitude < longitudes[i] + (latitude - latitudes[i]) * (longitudes[j] - longitudes[i]) /
+							(latitudes[j] - latitudes[i]))
+				inside = !inside;
+		}
+		return inside;
+	}
+
+	private void rasterizePolygon() {
+		// mark all cells touched by an edge
+		for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+			double x0 = (longitudes[j] - minLongitude) / cellWidth, y0 = (latitudes[j] - minLatitude) / cellHeight;
+			double x1 = (longitudes[i] - minLongitude) / cellWidth, y1 = (latitudes[i] - minLatitude) / cellHeight;
+			if (x0 > x1) {
+				double t = x0; x0 = x1; x1 = t;
+				t = y0; y0 = y1; y1 = t;
+			}
+
+			int firstColumn = max(0, (int) floor(x0 - EPSILON)), lastColumn = min(columns - 1, (int) floor(x1 + EPSILON));
+			for (int column = firstColumn; column <= lastColumn; ++column) {
+				// part of the edge within the column
+				double ya = y0, yb = y1;
+				if (x1 > x0) {
+					double slope = (y1 - y0) / (x1 - x0);
+					ya = y0 + (max(x0, column) - x0) * slope;
+					yb = y0 + (min(x1, column + 1) - x0) * slope;
+				}
+				int firstRow = max(0, (int) floor(min(ya, yb) - EPSILON));
+				int lastRow = min(rows - 1, (int) floor(max(ya, yb) + EPSILON));
+				for (int row = firstRow; row <= lastRow; ++row)
+					raster[row * columns + column] = BOUNDARY;
+			}
+		}
+
+		// classify the other cells by their centers with a scanline per row
+		double[] crossings = new double[latitudes.length];
+		for (int row = 0; row < rows; ++row) {
+			double latitude = minLatitude + (row + 0.5) * cellHeight;
+			int count = 0;
+			for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+				if ((latitudes[i] > latitude) != (latitudes[j] > latitude))
+					crossings[count++] = longitudes[i] + (latitude - latitudes[i]) * (longitudes[j] - longitudes[i]) /
+							(latitudes[j] - latitudes[i]);
+			}
+			Arrays.sort(crossings, 0, count);
+
+			int next = 0;
+			for (int column = 0; column < columns; ++column) {
+				double longitude = minLongitude + (column + 0.5) * cellWidth;
+				while (next < count && crossings[next] <= longitude) ++next;
+				int cell = row * columns + column;
+				if (raster[cell] != BOUNDARY)
+					raster[cell] = (next & 1) == 1 ? INSIDE : OUTSIDE;
+			}
+		}
+	}
+
+	private void rasterizeCircle() {
+		for (int row = 0; row < rows; ++row) {
+			double south = minLatitude + row * cellHeight, north = south + cellHeight;
+			double center = south + cellHeight / 2;
+			for (int column = 0; column < columns; ++column) {
+				double west = minLongitude + column * cellWidth, east = west + cellWidth;
+				double middle = west + cellWidth / 2;
+
+				// the cell is within the distance of its center to its farthest corner
+				double distance = Position.haversine(latitudes[0], longitudes[0], center, middle);
+				double extent = max(max(Position.haversine(center, middle, south, west),
+						Position.haversine(center, middle, south, east)),
+						max(Position.haversine(center, middle, north, west),
+								Position.haversine(center, middle, north, east)));
+
+				byte cell = BOUNDARY;
+				if (distance + extent < radius) cell = INSIDE;
+				else if (distance - extent > radius) cell = OUTSIDE;
+				raster[row * columns + column] = cell;
+			}
+		}
+	}
+}
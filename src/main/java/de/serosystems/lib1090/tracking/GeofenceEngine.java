@@ -0,0 +1,341 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Tracks which aircraft are inside which {@link Geofence} and reports when they enter or leave a fence. The
+ * fences are registered in a grid of one degree cells over the earth, so a position is only tested against the
+ * fences whose bounding boxes overlap its cell. Positions are typically fed from
+ * {@link de.serosystems.lib1090.StatefulModeSDecoder#extractPosition}:
+ * <pre>
+ * Position position = decoder.extractPosition(msg.getAddress(), (PositionMsg) msg, receiver);
+ * geofences.update(msg.getAddress(), position, timestamp);
+ * </pre>
+ * Note: this class is not thread-safe.
+ */
+public class GeofenceEngine {
+
+	/**
+	 * Receives the events of the geofence engine
+	 */
+	public interface Listener {
+		/**
+		 * @param aircraft the id of the aircraft
+		 * @param fence the id of the fence
+		 * @param timestamp time of the position inside the fence
+		 */
+		void onEnter(int aircraft, int fence, long timestamp);
+
+		/**
+		 * @param aircraft the id of the aircraft
+		 * @param fence the id of the fence
+		 * @param timestamp time of the position outside the fence or of the removal
+		 */
+		void onLeave(int aircraft, int fence, long timestamp);
+	}
+
+	private static final int[] NONE = new int[0];
+
+	private static final class Member {
+		final int id;
+		// ids of the fences which contain the aircraft, sorted
+		int[] fences;
+		int count;
+
+		Member(int id) {
+			this.id = id;
+		}
+	}
+
+	private final List<Geofence> fences = new ArrayList<>();
+	// fences whose bounding box overlaps each one degree cell (latitude major); rebuilt after changes
+	private Geofence[][] grid;
+
+	// open addressing table of the aircraft which are inside at least one fence
+	private Member[] table = new Member[256];
+	private int size;
+
+	private Listener listener;
+	private int[] scratch = new int[16];
+
+	/**
+	 * @param listener receives enter and leave events; null to disable
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Adds a fence. Aircraft already inside enter it with their next update.
+	 * @param fence the fence; its id must be unique
+	 */
+	public void addFence(Geofence fence) {
+		if (getFence(fence.getId()) != null)
+			throw new IllegalArgumentException("Duplicate fence " + fence.getId());
+		fences.add(fence);
+		grid = null;
+	}
+
+	/**
+	 * Removes a fence and lets all aircraft inside leave it
+	 * @param id the id of the fence
+	 * @param timestamp time of the leave events
+	 * @return true if the fence existed
+	 */
+	public boolean removeFence(int id, long timestamp) {
+		Geofence fence = getFence(id);
+		if (fence == null) return false;
+		fences.remove(fence);
+		grid = null;
+
+		for (Member m : table.clone()) {
+			if (m == null) continue;
+			int i = Arrays.binarySearch(m.fences, 0, m.count, id);
+			if (i < 0) continue;
+			System.arraycopy(m.fences, i + 1, m.fences, i, --m.count - i);
+			if (listener != null) listener.onLeave(m.id, id, timestamp);
+			if (m.count == 0) delete(m.id);
+		}
+		return true;
+	}
+
+	/**
+	 * @param id the id of a fence
+	 * @return the fence or null if unknown
+	 */
+	public Geofence getFence(int id) {
+		for (Geofence fence : fences)
+			if (fence.getId() == id) return fence;
+		return null;
+	}
+
+	/**
+	 * @return number of fences
+	 */
+	public int getFenceCount() {
+		return fences.size();
+	}
+
+	/**
+	 * @return number of aircraft inside at least one fence
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds all fences which contain a position
+	 * @return number of fences; their ids are stored in the scratch array in ascending order
+	 */
+	private int lookup(double latitude, double longitude) {
+		if (grid == null) buildGrid();
+		Geofence[] candidates = grid[cell(latitude, longitude)];
+		if (candidates == null) return 0;
+
+		int count = 0;
+		for (Geofence fence : candidates) {
+			if (fence.contains(latitude, longitude)) {
+				if (count == scratch.length) scratch = Arrays.copyOf(scratch, count * 2);
+				scratch[count++] = fence.getId();
+			}
+		}
+		if (count > 1) Arrays.sort(scratch, 0, count);
+		return count;
+	}
+
+	/**
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @return the ids of all fences which contain the position
+	 */
+	public int[] getFences(double latitude, double longitude) {
+		return Arrays.copyOf(scratch, lookup(latitude, longitude));
+	}
+
+	/**
+	 * @param aircraft the id of an aircraft
+	 * @return the ids of the fences which currently contain the aircraft
+	 */
+	public int[] getFences(int aircraft) {
+		Member m = table[find(aircraft)];
+		return m == null ? NONE : Arrays.copyOf(m.fences, m.count);
+	}
+
+	/**
+	 * Updates an aircraft with a position from
+	 * {@link de.serosystems.lib1090.StatefulModeSDecoder#extractPosition}. Positions which are null or have not
+	 * passed the reasonableness test are ignored.
+	 * @param address the address of the aircraft; its id is {@link StateVectorStore#getId(ModeSDownlinkMsg.QualifiedAddress)}
+	 * @param position the decoded position
+	 * @param timestamp time of applicability in milliseconds
+	 */
+	public void update(ModeSDownlinkMsg.QualifiedAddress address, Position position, long timestamp) {
+		if (position == null || !position.isReasonable() ||
+				position.getLatitude() == null || position.getLongitude() == null)
+			return;
+		update(StateVectorStore.getId(address), position.getLatitude(), position.getLongitude(), timestamp);
+	}
+
+	/**
+	 * Updates an aircraft and reports the fences it has entered or left
+	 * @param aircraft the id of the aircraft
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @param timestamp time of applicability in milliseconds
+	 */
+	public void update(int aircraft, double latitude, double longitude, long timestamp) {
+		int count = lookup(latitude, longitude);
+		int[] inside = scratch;
+
+		Member m = table[find(aircraft)];
+		if (m == null) {
+			if (count == 0) return;
+			m = insert(aircraft);
+		}
+
+		// merge the sorted lists of fences
+		int[] before = m.fences;
+		int i = 0, j = 0;
+		while (i < m.count || j < count) {
+			if (j == count || i < m.count && before[i] < inside[j]) {
+				if (listener != null) listener.onLeave(aircraft, before[i], timestamp);
+				++i;
+			} else if (i == m.count || inside[j] < before[i]) {
+				if (listener != null) listener.onEnter(aircraft, inside[j], timestamp);
+				++j;
+			} else {
+				++i;
+				++j;
+			}
+		}
+
+		if (count == 0) {
+			delete(aircraft);
+			return;
+		}
+		if (m.fences.length < count) m.fences = new int[inside.length];
+		System.arraycopy(inside, 0, m.fences, 0, count);
+		m.count = count;
+	}
+
+	/**
+	 * Removes an aircraft and lets it leave all fences, e.g., when it is not tracked anymore
+	 * @param aircraft the id of the aircraft
+	 * @param timestamp time of the leave events
+	 * @return true if the aircraft was inside a fence
+	 */
+	public boolean removeAircraft(int aircraft, long timestamp) {
+		Member m = table[find(aircraft)];
+		if (m == null) return false;
+		if (listener != null)
+			for (int i = 0; i < m.count; ++i)
+				listener.onLeave(aircraft, m.fences[i], timestamp);
+		delete(aircraft);
+		return true;
+	}
+
+	private void buildGrid() {
+		grid = new Geofence[180 * 360][];
+		int[] counts = new int[grid.length];
+		for (int pass = 0; pass < 2; ++pass) {
+			for (Geofence fence : fences) {
+				int firstRow = (int) floor(fence.minLatitude + 90), lastRow = min(179, (int) floor(fence.maxLatitude + 90));
+				int firstColumn = (int) floor(fence.minLongitude + 180);
+				int lastColumn = min(firstColumn + 359, (int) floor(fence.maxLongitude + 180));
+				for (int row = max(0, firstRow); row <= lastRow; ++row) {
+					for (int c = firstColumn; c <= lastColumn; ++c) {
+						int cell = row * 360 + floorMod(c, 360);
+						if (pass == 0) ++counts[cell];
+						else grid[cell][--counts[cell]] = fence;
+					}
+				}
+			}
+			if (pass == 0)
+				for (int cell = 0; cell < grid.length; ++cell)
+					if (counts[cell] > 0) grid[cell] = new Geofence[counts[cell]];
+		}
+	}
+
+	private static int cell(double latitude, double longitude) {
+		int row = min(179, max(0, (int) floor(latitude + 90)));
+		int column = floorMod((int) floor(longitude + 180), 360);
+		return row * 360 + column;
+	}
+
+	private Member insert(int id) {
+		if (++size * 2 > table.length) {
+			Member[] old = table;
+			table = new Member[old.length * 2];
+			for (Member m : old)
+				if (m != null) table[find(m.id)] = m;
+		}
+		Member m = new Member(id);
+		m.fences = new int[4];
+		table[find(id)] = m;
+		return m;
+	}
+
+	/**
+	 * Removes the id from the hash table and shifts back the following entries of its probe sequence
+	 */
+	private void delete(int id) {
+		int mask = table.length - 1;
+		int i = find(id);
+		table[i] = null;
+		--size;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == null) break;
+
+			int home = hash(table[j].id) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = null;
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * @return slot of the id in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(int id) {
+		int mask = table.length - 1;
+		int slot = hash(id) & mask;
+		while (table[slot] != null && table[slot].id != id)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
@@ -0,0 +1,334 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Detects pairs of aircraft which come closer than a horizontal and a vertical distance, by default 5 NM
+ * and 1000 ft. Positions are checked incrementally as they arrive: an update only compares the aircraft with
+ * those in the neighbouring cells of a {@link SpatialIndex} and with its current partners, so the cost does
+ * not grow with the number of tracked aircraft. A {@link Listener} is notified when a pair enters and when it
+ * leaves proximity. Positions can be fed directly or from a {@link StateVectorStore}:
+ * <pre>
+ * StateVector sv = store.updatePosition(address, position, timestamp);
+ * if (sv != null) detector.update(sv);
+ * </pre>
+ * Note: this class is not thread-safe.
+ */
+public class ProximityDetector {
+
+	/**
+	 * Receives proximity events. Pairs are reported with the lower id first.
+	 */
+	public interface Listener {
+		/**
+		 * @param id1 the id of the first aircraft
+		 * @param id2 the id of the second aircraft
+		 * @param distance horizontal (great circle) distance in meters
+		 * @param verticalSeparation vertical separation in feet
+		 * @param timestamp time of the update which caused the event
+		 */
+		void onEnter(int id1, int id2, double distance, double verticalSeparation, long timestamp);
+
+		/**
+		 * @param id1 the id of the first aircraft
+		 * @param id2 the id of the second aircraft
+		 * @param timestamp time of the update or removal which caused the event
+		 */
+		void onExit(int id1, int id2, long timestamp);
+	}
+
+	/** default horizontal threshold: 5 NM in meters */
+	public static final double DEFAULT_HORIZONTAL_DISTANCE = 5 * 1852.0;
+
+	/** default vertical threshold in feet */
+	public static final double DEFAULT_VERTICAL_DISTANCE = 1000.0;
+
+	private static final class Target {
+		final int id;
+		double latitude, longitude, altitude;
+		long timestamp;
+		int[] partners = new int[2];
+		int partnerCount;
+
+		Target(int id) {
+			this.id = id;
+		}
+	}
+
+	private final double horizontalDistance;
+	private final double verticalDistance;
+	private final SpatialIndex index;
+
+	// open addressing table of the targets keyed by id
+	private Target[] table = new Target[1024];
+	private int size;
+
+	private Listener listener;
+	private int pairCount;
+	private long enterCount;
+
+	// aircraft which is currently compared with its neighbours
+	private Target current;
+	private long currentTime;
+	private final SpatialIndex.Visitor visitor = this::checkNeighbour;
+
+	/**
+	 * Creates a detector with the default thresholds of 5 NM and 1000 ft
+	 */
+	public ProximityDetector() {
+		this(DEFAULT_HORIZONTAL_DISTANCE, DEFAULT_VERTICAL_DISTANCE);
+	}
+
+	/**
+	 * @param horizontalDistance horizontal threshold in meters (at most 100 NM)
+	 * @param verticalDistance vertical threshold in feet
+	 */
+	public ProximityDetector(double horizontalDistance, double verticalDistance) {
+		if (!(horizontalDistance > 0 && horizontalDistance <= 185200) || !(verticalDistance >= 0))
+			throw new IllegalArgumentException("Invalid thresholds");
+
+		this.horizontalDistance = horizontalDistance;
+		this.verticalDistance = verticalDistance;
+		// cells about as large as the threshold so that a query covers only the neighbouring cells
+		index = new SpatialIndex(max(0.1, toDegrees(horizontalDistance / Position.EARTH_RADIUS)));
+	}
+
+	/**
+	 * @param listener receives proximity events; null to disable
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return number of tracked aircraft
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of pairs currently in proximity
+	 */
+	public int getPairCount() {
+		return pairCount;
+	}
+
+	/**
+	 * @return number of enter events since creation
+	 */
+	public long getEnterCount() {
+		return enterCount;
+	}
+
+	/**
+	 * @param id1 the id of an aircraft
+	 * @param id2 the id of another aircraft
+	 * @return true if the aircraft are currently in proximity
+	 */
+	public boolean isInProximity(int id1, int id2) {
+		Target t = get(id1);
+		return t != null && indexOf(t, id2) >= 0;
+	}
+
+	/**
+	 * Updates an aircraft with the position and barometric altitude of a state vector. Aircraft on the ground
+	 * or without altitude are removed.
+	 * @param sv the state vector of the aircraft
+	 */
+	public void update(StateVector sv) {
+		int id = StateVectorStore.getId(sv);
+		if (!sv.hasPosition() || sv.isOnGround() || sv.getBarometricAltitudeTime() == StateVector.NEVER)
+			remove(id, sv.getLastSeen());
+		else
+			update(id, sv.getLatitude(), sv.getLongitude(), sv.getBarometricAltitude(), sv.getPositionTime());
+	}
+
+	/**
+	 * Adds or moves an aircraft and reports the pairs which enter or leave proximity
+	 * @param id the id of the aircraft
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @param altitude altitude in feet
+	 * @param timestamp time of the position in milliseconds
+	 */
+	public void update(int id, double latitude, double longitude, double altitude, long timestamp) {
+		Target t = get(id);
+		if (t == null) t = insert(id);
+		t.latitude = latitude;
+		t.longitude = longitude;
+		t.altitude = altitude;
+		t.timestamp = timestamp;
+		index.update(id, latitude, longitude);
+
+		// pairs which are no longer in proximity
+		for (int i = t.partnerCount - 1; i >= 0; --i) {
+			Target other = get(t.partners[i]);
+			if (abs(t.altitude - other.altitude) > verticalDistance ||
+					Position.haversine(latitude, longitude, other.latitude, other.longitude) > horizontalDistance)
+				unpair(t, other, timestamp);
+		}
+
+		// new pairs among the neighbours
+		current = t;
+		currentTime = timestamp;
+		index.queryRadius(latitude, longitude, horizontalDistance, visitor);
+		current = null;
+	}
+
+	/**
+	 * Removes an aircraft and reports the end of all its pairs
+	 * @param id the id of the aircraft
+	 * @param timestamp time of the removal
+	 * @return true if the aircraft was tracked
+	 */
+	public boolean remove(int id, long timestamp) {
+		Target t = get(id);
+		if (t == null) return false;
+
+		while (t.partnerCount > 0)
+			unpair(t, get(t.partners[t.partnerCount - 1]), timestamp);
+		index.remove(id);
+		delete(id);
+		return true;
+	}
+
+	/**
+	 * Removes all aircraft whose last position is older than maxAge
+	 * @param now current time in milliseconds
+	 * @param maxAge maximum age of positions in milliseconds
+	 * @return number of removed aircraft
+	 */
+	public int removeInactive(long now, long maxAge) {
+		int[] stale = new int[16];
+		int count = 0;
+		for (Target t : table) {
+			if (t != null && now - t.timestamp > maxAge) {
+				if (count == stale.length) stale = Arrays.copyOf(stale, count * 2);
+				stale[count++] = t.id;
+			}
+		}
+		for (int i = 0; i < count; ++i)
+			remove(stale[i], now);
+		return count;
+	}
+
+	private void checkNeighbour(int id, double latitude, double longitude) {
+		Target t = current;
+		if (id == t.id || indexOf(t, id) >= 0) return;
+
+		Target other = get(id);
+		double separation = abs(t.altitude - other.altitude);
+		if (separation > verticalDistance) return;
+
+		addPartner(t, id);
+		addPartner(other, t.id);
+		++pairCount;
+		++enterCount;
+		if (listener != null)
+			listener.onEnter(min(id, t.id), max(id, t.id),
+					Position.haversine(t.latitude, t.longitude, latitude, longitude), separation, currentTime);
+	}
+
+	private void unpair(Target a, Target b, long timestamp) {
+		removePartner(a, b.id);
+		removePartner(b, a.id);
+		--pairCount;
+		if (listener != null)
+			listener.onExit(min(a.id, b.id), max(a.id, b.id), timestamp);
+	}
+
+	private static int indexOf(Target t, int id) {
+		for (int i = 0; i < t.partnerCount; ++i)
+			if (t.partners[i] == id) return i;
+		return -1;
+	}
+
+	private static void addPartner(Target t, int id) {
+		if (t.partnerCount == t.partners.length)
+			t.partners = Arrays.copyOf(t.partners, t.partnerCount * 2);
+		t.partners[t.partnerCount++] = id;
+	}
+
+	private static void removePartner(Target t, int id) {
+		int i = indexOf(t, id);
+		t.partners[i] = t.partners[--t.partnerCount];
+	}
+
+	private Target get(int id) {
+		return table[find(id)];
+	}
+
+	private Target insert(int id) {
+		if (++size * 2 > table.length) {
+			Target[] old = table;
+			table = new Target[old.length * 2];
+			for (Target t : old)
+				if (t != null) table[find(t.id)] = t;
+		}
+		Target t = new Target(id);
+		table[find(id)] = t;
+		return t;
+	}
+
+	/**
+	 * Removes the id from the hash table and shifts back the following entries of its probe sequence
+	 */
+	private void delete(int id) {
+		int mask = table.length - 1;
+		int i = find(id);
+		table[i] = null;
+		--size;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == null) break;
+
+			int home = hash(table[j].id) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = null;
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * @return slot of the id in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(int id) {
+		int mask = table.length - 1;
+		int slot = hash(id) & mask;
+		while (table[slot] != null && table[slot].id != id)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
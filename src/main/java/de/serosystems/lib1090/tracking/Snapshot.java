@@ -0,0 +1,367 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Columnar copy of the state vectors of all aircraft which changed within one interval of a
+ * {@link SnapshotEmitter}. Row i of all columns belongs to the same aircraft. Use {@link #has(int, int)} to
+ * check which values of a row are known.<br>
+ * Snapshots are reused by the emitter. Call {@link #release()} when done reading; the values must not be
+ * accessed afterwards.
+ */
+public final class Snapshot {
+
+	/** flag for a known position */
+	public static final int POSITION = 1;
+	/** flag for a known barometric altitude */
+	public static final int BAROMETRIC_ALTITUDE = 1 << 1;
+	/** flag for a known geometric altitude */
+	public static final int GEOMETRIC_ALTITUDE = 1 << 2;
+	/** flag for known ground speed and track */
+	public static final int VELOCITY = 1 << 3;
+	/** flag for a known vertical rate */
+	public static final int VERTICAL_RATE = 1 << 4;
+	/** flag for a known call sign */
+	public static final int CALLSIGN = 1 << 5;
+	/** flag for a known squawk */
+	public static final int SQUAWK = 1 << 6;
+	/** flag for a known air/ground state */
+	public static final int ON_GROUND = 1 << 7;
+	/** flag for a known NACp */
+	public static final int NACP = 1 << 8;
+	/** flag for a known emergency state */
+	public static final int EMERGENCY = 1 << 9;
+	/** flag for a known emitter category */
+	public static final int CATEGORY = 1 << 10;
+
+	static final int FREE = 0, READY = 1, READING = 2;
+
+	final AtomicInteger state = new AtomicInteger(FREE);
+
+	private long time;
+	private int size;
+
+	private int[] flags;
+	private int[] addresses;
+	private ModeSDownlinkMsg.QualifiedAddress.Type[] addressTypes;
+	private long[] lastSeen;
+	private double[] latitudes;
+	private double[] longitudes;
+	private long[] positionTimes;
+	private int[] barometricAltitudes;
+	private int[] geometricAltitudes;
+	private double[] groundSpeeds;
+	private double[] tracks;
+	private int[] verticalRates;
+	private long[] callsigns;
+	private int[] squawks;
+	private boolean[] onGround;
+	private byte[] nacp;
+	private byte[] emergency;
+	private char[] categorySets;
+	private byte[] emitterCategories;
+
+	Snapshot(int capacity) {
+		allocate(Math.max(capacity, 16));
+	}
+
+	private void allocate(int capacity) {
+		flags = new int[capacity];
+		addresses = new int[capacity];
+		addressTypes = new ModeSDownlinkMsg.QualifiedAddress.Type[capacity];
+		lastSeen = new long[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		positionTimes = new long[capacity];
+		barometricAltitudes = new int[capacity];
+		geometricAltitudes = new int[capacity];
+		groundSpeeds = new double[capacity];
+		tracks = new double[capacity];
+		verticalRates = new int[capacity];
+		callsigns = new long[capacity];
+		squawks = new int[capacity];
+		onGround = new boolean[capacity];
+		nacp = new byte[capacity];
+		emergency = new byte[capacity];
+		categorySets = new char[capacity];
+		emitterCategories = new byte[capacity];
+	}
+
+	/**
+	 * Copies the changed state vectors of the store into the columns
+	 */
+	void fill(StateVectorStore store, long time) {
+		this.time = time;
+		size = store.getChangedCount();
+		if (size > addresses.length)
+			allocate(Integer.highestOneBit(size) << 1);
+
+		for (int i = 0; i < size; ++i) {
+			StateVector sv = store.getChanged(i);
+			int f = 0;
+			addresses[i] = sv.address;
+			addressTypes[i] = sv.addressType;
+			lastSeen[i] = sv.lastSeen;
+			if (sv.positionTime != StateVector.NEVER) {
+				f |= POSITION;
+				latitudes[i] = sv.latitude;
+				longitudes[i] = sv.longitude;
+			}
+			positionTimes[i] = sv.positionTime;
+			if (sv.barometricAltitudeTime != StateVector.NEVER) {
+				f |= BAROMETRIC_ALTITUDE;
+				barometricAltitudes[i] = sv.barometricAltitude;
+			}
+			if (sv.geometricAltitudeTime != StateVector.NEVER) {
+				f |= GEOMETRIC_ALTITUDE;
+				geometricAltitudes[i] = sv.geometricAltitude;
+			}
+			if (sv.velocityTime != StateVector.NEVER) {
+				f |= VELOCITY;
+				groundSpeeds[i] = sv.groundSpeed;
+				tracks[i] = sv.track;
+			}
+			if (sv.verticalRateTime != StateVector.NEVER) {
+				f |= VERTICAL_RATE;
+				verticalRates[i] = sv.verticalRate;
+			}
+			if (sv.callsignTime != StateVector.NEVER) {
+				f |= CALLSIGN;
+				callsigns[i] = sv.callsign;
+			}
+			if (sv.squawkTime != StateVector.NEVER) {
+				f |= SQUAWK;
+				squawks[i] = sv.squawk;
+			}
+			if (sv.onGroundTime != StateVector.NEVER) {
+				f |= ON_GROUND;
+				onGround[i] = sv.onGround;
+			}
+			if (sv.nacpTime != StateVector.NEVER) {
+				f |= NACP;
+				nacp[i] = sv.nacp;
+			}
+			if (sv.emergencyTime != StateVector.NEVER) {
+				f |= EMERGENCY;
+				emergency[i] = sv.emergency;
+			}
+			if (sv.categoryTime != StateVector.NEVER) {
+				f |= CATEGORY;
+				categorySets[i] = sv.categorySet;
+				emitterCategories[i] = sv.emitterCategory;
+			}
+			flags[i] = f;
+		}
+	}
+
+	/**
+	 * Returns the snapshot to the emitter for reuse
+	 */
+	public void release() {
+		if (!state.compareAndSet(READING, FREE))
+			throw new IllegalStateException("Snapshot has already been released");
+	}
+
+	/**
+	 * @return the time of the snapshot in milliseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return number of aircraft (rows) in the snapshot
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param row the row
+	 * @param flag one of the flags of this class, e.g., {@link #POSITION}
+	 * @return true if the value is known
+	 */
+	public boolean has(int row, int flag) {
+		checkRow(row);
+		return (flags[row] & flag) != 0;
+	}
+
+	/**
+	 * @return the 24-bit address of the aircraft in the given row
+	 */
+	public int getAddress(int row) {
+		checkRow(row);
+		return addresses[row];
+	}
+
+	/**
+	 * @return the type of the address of the aircraft in the given row
+	 */
+	public ModeSDownlinkMsg.QualifiedAddress.Type getAddressType(int row) {
+		checkRow(row);
+		return addressTypes[row];
+	}
+
+	/**
+	 * @return time of the last message of the aircraft in milliseconds
+	 */
+	public long getLastSeen(int row) {
+		checkRow(row);
+		return lastSeen[row];
+	}
+
+	/**
+	 * @return latitude in degrees (see {@link #POSITION})
+	 */
+	public double getLatitude(int row) {
+		checkRow(row);
+		return latitudes[row];
+	}
+
+	/**
+	 * @return longitude in degrees (see {@link #POSITION})
+	 */
+	public double getLongitude(int row) {
+		checkRow(row);
+		return longitudes[row];
+	}
+
+	/**
+	 * @return time of the position in milliseconds or {@link StateVector#NEVER}
+	 */
+	public long getPositionTime(int row) {
+		checkRow(row);
+		return positionTimes[row];
+	}
+
+	/**
+	 * @return barometric altitude in feet (see {@link #BAROMETRIC_ALTITUDE})
+	 */
+	public int getBarometricAltitude(int row) {
+		checkRow(row);
+		return barometricAltitudes[row];
+	}
+
+	/**
+	 * @return geometric altitude in feet (see {@link #GEOMETRIC_ALTITUDE})
+	 */
+	public int getGeometricAltitude(int row) {
+		checkRow(row);
+		return geometricAltitudes[row];
+	}
+
+	/**
+	 * @return ground speed in knots (see {@link #VELOCITY})
+	 */
+	public double getGroundSpeed(int row) {
+		checkRow(row);
+		return groundSpeeds[row];
+	}
+
+	/**
+	 * @return track angle in degrees (see {@link #VELOCITY})
+	 */
+	public double getTrack(int row) {
+		checkRow(row);
+		return tracks[row];
+	}
+
+	/**
+	 * @return vertical rate in feet per minute (see {@link #VERTICAL_RATE})
+	 */
+	public int getVerticalRate(int row) {
+		checkRow(row);
+		return verticalRates[row];
+	}
+
+	/**
+	 * @return the call sign packed as in {@link StateVector#getCallsignCode()} (see {@link #CALLSIGN})
+	 */
+	public long getCallsignCode(int row) {
+		checkRow(row);
+		return callsigns[row];
+	}
+
+	/**
+	 * @return Mode A code as decimal number (see {@link #SQUAWK})
+	 */
+	public int getSquawk(int row) {
+		checkRow(row);
+		return squawks[row];
+	}
+
+	/**
+	 * @return true if the aircraft is on the ground (see {@link #ON_GROUND})
+	 */
+	public boolean isOnGround(int row) {
+		checkRow(row);
+		return onGround[row];
+	}
+
+	/**
+	 * @return navigation accuracy category for position (see {@link #NACP})
+	 */
+	public byte getNACp(int row) {
+		checkRow(row);
+		return nacp[row];
+	}
+
+	/**
+	 * @return emergency state code (see {@link #EMERGENCY})
+	 */
+	public byte getEmergencyState(int row) {
+		checkRow(row);
+		return emergency[row];
+	}
+
+	/**
+	 * @return emitter category set ('A' to 'D'; see {@link #CATEGORY})
+	 */
+	public char getCategorySet(int row) {
+		checkRow(row);
+		return categorySets[row];
+	}
+
+	/**
+	 * @return emitter category within its set (see {@link #CATEGORY})
+	 */
+	public byte getEmitterCategory(int row) {
+		checkRow(row);
+		return emitterCategories[row];
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot{" +
+				"time=" + time +
+				", size=" + size +
+				", addresses=" + Arrays.toString(Arrays.copyOf(addresses, Math.min(size, 8))) +
+				(size > 8 ? "..." : "") +
+				'}';
+	}
+}
@@ -0,0 +1,138 @@
+package de.serosystems.lib1090.tracking;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Emits a {@link Snapshot} of all aircraft in a {@link StateVectorStore} which changed during the last interval,
+ * e.g., every second or every five seconds. Snapshot times are aligned to multiples of the interval.<br>
+ * The emitter is double-buffered: the thread which updates the store (usually the decoding thread) calls
+ * {@link #update(long)} to fill one snapshot while a reader may still process the other one which it got from
+ * {@link #poll()}. The updating thread never waits for the reader. If the reader has not yet taken the last
+ * snapshot or still holds the buffer which is due to be filled, emission is deferred and the changes are
+ * included in the next snapshot. Filling a snapshot takes time proportional to the number of changed aircraft,
+ * not the number of tracked aircraft.
+ * <pre>
+ * // decoding thread
+ * StateVectorStore store = new StateVectorStore();
+ * decoder.setStateVectorStore(store);
+ * SnapshotEmitter emitter = new SnapshotEmitter(store, 5000L);
+ * ...
+ * decoder.decode(frame, timestamp);
+ * emitter.update(timestamp);
+ *
+ * // reader thread
+ * Snapshot snapshot = emitter.poll();
+ * if (snapshot != null) {
+ *     for (int i = 0; i &lt; snapshot.size(); ++i) ...
+ *     snapshot.release();
+ * }
+ * </pre>
+ */
+public class SnapshotEmitter {
+
+	private final StateVectorStore store;
+	private final long interval;
+	private final Snapshot[] buffers;
+	// buffer which is filled next
+	private int next;
+	private long nextEmission = Long.MIN_VALUE;
+
+	private volatile long emittedCount;
+	private volatile long deferredCount;
+
+	/**
+	 * @param store the store with the state vectors
+	 * @param interval time between snapshots in milliseconds
+	 */
+	public SnapshotEmitter(StateVectorStore store, long interval) {
+		if (store == null)
+			throw new IllegalArgumentException("Store must not be null");
+		if (interval <= 0)
+			throw new IllegalArgumentException("Interval must be positive");
+
+		this.store = store;
+		this.interval = interval;
+		int capacity = Math.max(store.size(), 1024);
+		buffers = new Snapshot[] {new Snapshot(capacity), new Snapshot(capacity)};
+	}
+
+	/**
+	 * Emits a snapshot if the current interval has ended. Call this regularly from the thread which updates the
+	 * store, e.g., after each decoded message with its timestamp or from a timer. The first call starts the
+	 * schedule; the first snapshot is emitted at the next multiple of the interval.
+	 * @param now current time in milliseconds
+	 * @return true if a snapshot has been emitted
+	 */
+	public boolean update(long now) {
+		if (nextEmission == Long.MIN_VALUE)
+			nextEmission = alignedAfter(now);
+		if (now < nextEmission)
+			return false;
+
+		Snapshot target = buffers[next];
+		if (target.state.get() != Snapshot.FREE || buffers[next ^ 1].state.get() == Snapshot.READY) {
+			// reader is behind; keep collecting changes
+			++deferredCount;
+			return false;
+		}
+
+		target.fill(store, now);
+		store.clearChanged();
+		target.state.set(Snapshot.READY);
+		next ^= 1;
+		nextEmission = alignedAfter(now);
+		++emittedCount;
+		return true;
+	}
+
+	/**
+	 * Takes the latest snapshot. It must be {@link Snapshot#release() released} after use.
+	 * @return the snapshot or null if no new snapshot has been emitted since the last call
+	 */
+	public Snapshot poll() {
+		for (Snapshot snapshot : buffers)
+			if (snapshot.state.compareAndSet(Snapshot.READY, Snapshot.READING))
+				return snapshot;
+		return null;
+	}
+
+	/**
+	 * @return time between snapshots in milliseconds
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return number of emitted snapshots
+	 */
+	public long getEmittedCount() {
+		return emittedCount;
+	}
+
+	/**
+	 * @return number of times emission has been deferred because the reader was behind
+	 */
+	public long getDeferredCount() {
+		return deferredCount;
+	}
+
+	private long alignedAfter(long time) {
+		return time - Math.floorMod(time, interval) + interval;
+	}
+}
@@ -0,0 +1,512 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Uniform latitude/longitude grid over the positions of tracked aircraft. Moving an aircraft takes constant
+ * time and relinks it only if it enters another cell. Range queries visit only the cells which overlap the
+ * query area, so their cost is proportional to the number of aircraft near the query area rather than the
+ * number of tracked aircraft. Only occupied cells are stored (in a hash table keyed by cell), so the memory
+ * use depends on the number of aircraft rather than on the cell size.<br>
+ * Aircraft are identified by an int, e.g., the 24-bit address. A {@link StateVectorStore} with an index
+ * (see {@link StateVectorStore#setSpatialIndex(SpatialIndex)}) uses the address type in the upper byte and the
+ * 24-bit address in the lower three bytes, i.e., the id of an ICAO 24-bit address is the address itself.<br>
+ * Note: this class is not thread-safe.
+ */
+public class SpatialIndex {
+
+	/**
+	 * Receives the aircraft found by a query
+	 */
+	@FunctionalInterface
+	public interface Visitor {
+		/**
+		 * @param id the id of the aircraft
+		 * @param latitude its latitude in degrees
+		 * @param longitude its longitude in degrees
+		 */
+		void visit(int id, double latitude, double longitude);
+	}
+
+	private static final int EMPTY = -1;
+
+	private final double cellSize;
+	private final int rows;
+	private final int columns;
+
+	// hash table mapping occupied cells to their first entry
+	private int[] cellKeys;
+	private int[] cellHeads;
+	private int cellCount;
+
+	// entries
+	private int[] ids;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int[] cells;
+	private int[] next;
+	private int[] prev;
+	private int size;
+
+	// hash table mapping ids to entries
+	private int[] table;
+
+	/**
+	 * Creates an index with cells of one degree
+	 */
+	public SpatialIndex() {
+		this(1.0);
+	}
+
+	/**
+	 * @param cellSize width and height of the cells in degrees (0.1 to 10). Choose it in the order of the
+	 *                 typical query radius.
+	 */
+	public SpatialIndex(double cellSize) {
+		if (!(cellSize >= 0.1 && cellSize <= 10))
+			throw new IllegalArgumentException("Cell size must be between 0.1 and 10 degrees");
+
+		this.cellSize = cellSize;
+		rows = (int) ceil(180 / cellSize);
+		columns = (int) ceil(360 / cellSize);
+		int capacity = 1024;
+		cellKeys = new int[capacity];
+		cellHeads = new int[capacity];
+		Arrays.fill(cellKeys, EMPTY);
+		Arrays.fill(cellHeads, EMPTY);
+
+		ids = new int[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		cells = new int[capacity];
+		next = new int[capacity];
+		prev = new int[capacity];
+		table = new int[capacity * 2];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * @return number of aircraft in the index
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an aircraft or moves it to a new position
+	 * @param id the id of the aircraft
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 */
+	public void update(int id, double latitude, double longitude) {
+		if (abs(latitude) > 90 || abs(longitude) > 180 || Double.isNaN(latitude) || Double.isNaN(longitude))
+			throw new IllegalArgumentException("Invalid position " + latitude + ", " + longitude);
+
+		int cell = cell(row(latitude), column(longitude));
+		int slot = find(id);
+		int entry = table[slot];
+
+		if (entry == EMPTY) {
+			if (size == ids.length) grow();
+			if ((size + 1) * 2 > table.length) {
+				rehash(table.length * 2);
+				slot = find(id);
+			}
+			entry = size++;
+			table[slot] = entry;
+			ids[entry] = id;
+			link(entry, cell);
+		} else if (cells[entry] != cell) {
+			unlink(entry);
+			link(entry, cell);
+		}
+
+		latitudes[entry] = latitude;
+		longitudes[entry] = longitude;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return true if the aircraft was in the index
+	 */
+	public boolean remove(int id) {
+		int slot = find(id);
+		int entry = table[slot];
+		if (entry == EMPTY) return false;
+
+		deleteSlot(slot);
+		unlink(entry);
+
+		// move last entry into the gap
+		int last = --size;
+		if (entry != last) {
+			ids[entry] = ids[last];
+			latitudes[entry] = latitudes[last];
+			longitudes[entry] = longitudes[last];
+			int cell = cells[last];
+			unlink(last);
+			link(entry, cell);
+			table[find(ids[entry])] = entry;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all aircraft
+	 */
+	public void clear() {
+		Arrays.fill(cellKeys, EMPTY);
+		Arrays.fill(cellHeads, EMPTY);
+		cellCount = 0;
+		Arrays.fill(table, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @param id the id of an aircraft
+	 * @return true if the aircraft is in the index
+	 */
+	public boolean contains(int id) {
+		return table[find(id)] != EMPTY;
+	}
+
+	/**
+	 * Finds all aircraft within a bounding box
+	 * @param minLatitude southern boundary in degrees
+	 * @param minLongitude western boundary in degrees; greater than maxLongitude if the box crosses the antimeridian
+	 * @param maxLatitude northern boundary in degrees
+	 * @param maxLongitude eastern boundary in degrees
+	 * @param visitor called for each aircraft inside the box
+	 * @return number of aircraft inside the box
+	 */
+	public int queryBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+						Visitor visitor) {
+		if (minLatitude > maxLatitude) return 0;
+		boolean wraps = minLongitude > maxLongitude;
+
+		int firstRow = row(minLatitude), lastRow = row(maxLatitude);
+		int firstColumn = column(minLongitude), lastColumn = column(maxLongitude);
+		int width = wraps ? lastColumn + columns - firstColumn + 1 : lastColumn - firstColumn + 1;
+		if (width > columns) width = columns;
+
+		int found = 0;
+		for (int row = firstRow; row <= lastRow; ++row) {
+			for (int c = 0; c < width; ++c) {
+				int column = (firstColumn + c) % columns;
+				for (int e = head(cell(row, column)); e != EMPTY; e = next[e]) {
+					double lat = latitudes[e], lon = longitudes[e];
+					if (lat < minLatitude || lat > maxLatitude) continue;
+					if (wraps ? lon < minLongitude && lon > maxLongitude : lon < minLongitude || lon > maxLongitude)
+						continue;
+					visitor.visit(ids[e], lat, lon);
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds all aircraft within a great circle distance
+	 * @param latitude latitude of the center in degrees
+	 * @param longitude longitude of the center in degrees
+	 * @param radius the distance in meters
+	 * @param visitor called for each aircraft within the distance
+	 * @return number of aircraft within the distance
+	 */
+	public int queryRadius(double latitude, double longitude, double radius, Visitor visitor) {
+		double dLat = toDegrees(radius / Position.EARTH_RADIUS);
+		int firstRow = row(max(-90, latitude - dLat));
+		int lastRow = row(min(90, latitude + dLat));
+
+		// longitude extent of the circle unless it contains a pole
+		int firstColumn = 0, width = columns;
+		if (abs(latitude) + dLat < 90) {
+			double dLon = toDegrees(asin(min(1.0, sin(radius / Position.EARTH_RADIUS) / cos(toRadians(latitude)))));
+			int west = (int) floor((longitude - dLon + 180) / cellSize);
+			int east = (int) floor((longitude + dLon + 180) / cellSize);
+			width = min(columns, east - west + 1);
+			firstColumn = floorMod(west, columns);
+		}
+
+		int found = 0;
+		for (int row = firstRow; row <= lastRow; ++row) {
+			for (int c = 0; c < width; ++c) {
+				int column = (firstColumn + c) % columns;
+				for (int e = head(cell(row, column)); e != EMPTY; e = next[e]) {
+					if (Position.haversine(latitude, longitude, latitudes[e], longitudes[e]) <= radius) {
+						visitor.visit(ids[e], latitudes[e], longitudes[e]);
+						++found;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the k nearest aircraft by searching rings of cells around the given position until no closer
+	 * aircraft can be found
+	 * @param latitude latitude of the position in degrees
+	 * @param longitude longitude of the position in degrees
+	 * @param k number of aircraft to find
+	 * @param ids receives the ids of the nearest aircraft, nearest first (at least k elements)
+	 * @param distances receives their distances in meters (at least k elements)
+	 * @return number of aircraft found (less than k if the index contains less aircraft)
+	 */
+	public int nearest(double latitude, double longitude, int k, int[] ids, double[] distances) {
+		if (k <= 0 || ids.length < k || distances.length < k)
+			throw new IllegalArgumentException("Result arrays must have space for k > 0 aircraft");
+
+		int centerRow = row(latitude), centerColumn = column(longitude);
+		int count = 0;
+		int maxRing = max(rows, columns / 2);
+		// column offsets which represent each column exactly once
+		int minOffset = -(columns - 1) / 2, maxOffset = columns / 2;
+
+		for (int ring = 0; ring <= maxRing; ++ring) {
+			// visit the cells at Chebyshev distance ring from the center cell
+			int lo = max(-ring, minOffset), hi = min(ring, maxOffset);
+			for (int dr = -ring; dr <= ring; ++dr) {
+				int row = centerRow + dr;
+				if (row < 0 || row >= rows) continue;
+
+				if (abs(dr) == ring) {
+					for (int dc = lo; dc <= hi; ++dc)
+						count = collect(head(cell(row, floorMod(centerColumn + dc, columns))),
+								latitude, longitude, k, ids, distances, count);
+				} else {
+					if (-ring >= minOffset)
+						count = collect(head(cell(row, floorMod(centerColumn - ring, columns))),
+								latitude, longitude, k, ids, distances, count);
+					if (ring <= maxOffset)
+						count = collect(head(cell(row, floorMod(centerColumn + ring, columns))),
+								latitude, longitude, k, ids, distances, count);
+				}
+			}
+
+			if (count == size) break;
+			if (count == k && distances[k - 1] <= outsideBound(latitude, longitude, centerRow, centerColumn, ring))
+				break;
+		}
+		return count;
+	}
+
+	/**
+	 * Inserts the aircraft of a cell into the sorted result arrays
+	 */
+	private int collect(int head, double latitude, double longitude, int k, int[] resultIds, double[] distances,
+						int count) {
+		for (int e = head; e != EMPTY; e = next[e]) {
+			double d = Position.haversine(latitude, longitude, latitudes[e], longitudes[e]);
+			if (count == k && d >= distances[k - 1]) continue;
+
+			int i = count < k ? count++ : k - 1;
+			while (i > 0 && distances[i - 1] > d) {
+				distances[i] = distances[i - 1];
+				resultIds[i] = resultIds[i - 1];
+				--i;
+			}
+			distances[i] = d;
+			resultIds[i] = ids[e];
+		}
+		return count;
+	}
+
+	/**
+	 * @return lower bound for the distance between the position and any point outside the cells within the
+	 *         given ring around its cell
+	 */
+	private double outsideBound(double latitude, double longitude, int centerRow, int centerColumn, int ring) {
+		double south = -90 + (centerRow - ring) * cellSize;
+		double north = -90 + (centerRow + ring + 1) * cellSize;
+		double bound = Double.MAX_VALUE;
+		if (south > -90) bound = min(bound, toRadians(latitude - south) * Position.EARTH_RADIUS);
+		if (north < 90) bound = min(bound, toRadians(north - latitude) * Position.EARTH_RADIUS);
+
+		if (ring < columns / 2) {
+			double west = -180 + (centerColumn - ring) * cellSize;
+			double east = -180 + (centerColumn + ring + 1) * cellSize;
+			double gap = toRadians(min(longitude - west, east - longitude));
+			// cross-track distance to the great circle through the meridian at the edge of the searched cells
+			double crossTrack = asin(min(1.0, cos(toRadians(latitude)) * sin(gap)));
+			bound = min(bound, crossTrack * Position.EARTH_RADIUS);
+		}
+		return bound;
+	}
+
+	private int row(double latitude) {
+		return min(rows - 1, max(0, (int) ((latitude + 90) / cellSize)));
+	}
+
+	private int column(double longitude) {
+		return min(columns - 1, max(0, (int) ((longitude + 180) / cellSize)));
+	}
+
+	private int cell(int row, int column) {
+		return row * columns + column;
+	}
+
+	/**
+	 * @return first entry of the cell or EMPTY if the cell is not occupied
+	 */
+	private int head(int cell) {
+		return cellHeads[findCell(cell)];
+	}
+
+	private void link(int entry, int cell) {
+		int slot = findCell(cell);
+		if (cellKeys[slot] == EMPTY) {
+			if ((cellCount + 1) * 2 > cellKeys.length) {
+				rehashCells(cellKeys.length * 2);
+				slot = findCell(cell);
+			}
+			cellKeys[slot] = cell;
+			++cellCount;
+		}
+
+		cells[entry] = cell;
+		prev[entry] = EMPTY;
+		next[entry] = cellHeads[slot];
+		if (next[entry] != EMPTY) prev[next[entry]] = entry;
+		cellHeads[slot] = entry;
+	}
+
+	private void unlink(int entry) {
+		if (next[entry] != EMPTY) prev[next[entry]] = prev[entry];
+		if (prev[entry] != EMPTY) {
+			next[prev[entry]] = next[entry];
+		} else {
+			int slot = findCell(cells[entry]);
+			if (next[entry] != EMPTY) cellHeads[slot] = next[entry];
+			else deleteCell(slot);
+		}
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		latitudes = Arrays.copyOf(latitudes, capacity);
+		longitudes = Arrays.copyOf(longitudes, capacity);
+		cells = Arrays.copyOf(cells, capacity);
+		next = Arrays.copyOf(next, capacity);
+		prev = Arrays.copyOf(prev, capacity);
+	}
+
+	private void rehash(int length) {
+		table = new int[length];
+		Arrays.fill(table, EMPTY);
+		for (int i = 0; i < size; ++i)
+			table[find(ids[i])] = i;
+	}
+
+	/**
+	 * Empties a slot of the hash table and shifts back the following entries of its probe sequence
+	 */
+	private void deleteSlot(int i) {
+		int mask = table.length - 1;
+		table[i] = EMPTY;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == EMPTY) break;
+
+			int home = hash(ids[table[j]]) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = EMPTY;
+				i = j;
+			}
+		}
+	}
+
+	private void rehashCells(int length) {
+		int[] oldKeys = cellKeys, oldHeads = cellHeads;
+		cellKeys = new int[length];
+		cellHeads = new int[length];
+		Arrays.fill(cellKeys, EMPTY);
+		Arrays.fill(cellHeads, EMPTY);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] == EMPTY) continue;
+			int slot = findCell(oldKeys[i]);
+			cellKeys[slot] = oldKeys[i];
+			cellHeads[slot] = oldHeads[i];
+		}
+	}
+
+	/**
+	 * Empties a slot of the cell table and shifts back the following cells of its probe sequence
+	 */
+	private void deleteCell(int i) {
+		int mask = cellKeys.length - 1;
+		cellKeys[i] = EMPTY;
+		cellHeads[i] = EMPTY;
+		--cellCount;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (cellKeys[j] == EMPTY) break;
+
+			int home = hash(cellKeys[j]) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				cellKeys[i] = cellKeys[j];
+				cellHeads[i] = cellHeads[j];
+				cellKeys[j] = EMPTY;
+				cellHeads[j] = EMPTY;
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * @return slot of the cell in the cell table or the empty slot where it would be inserted
+	 */
+	private int findCell(int cell) {
+		int mask = cellKeys.length - 1;
+		int slot = hash(cell) & mask;
+		while (cellKeys[slot] != EMPTY && cellKeys[slot] != cell)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * @return slot of the id in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(int id) {
+		int mask = table.length - 1;
+		int slot = hash(id) & mask;
+		while (table[slot] != EMPTY && ids[table[slot]] != id)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
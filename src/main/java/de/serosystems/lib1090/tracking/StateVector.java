@@ -0,0 +1,408 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Current state of an aircraft as maintained by a {@link StateVectorStore}. All values are kept in primitive
+ * fields which are updated in place. Each group of fields has the time of its last update in milliseconds
+ * which is {@link #NEVER} if no value has been received yet.<br>
+ * Note: instances are owned by the store and are reused for other aircraft after they have been removed from
+ * it. Do not keep references across calls to {@link StateVectorStore#removeInactive(long, long)}.
+ */
+public final class StateVector {
+
+	/** update time of values which have not been received yet */
+	public static final long NEVER = Long.MIN_VALUE;
+
+	private static final double METERS_PER_DEGREE = Math.toRadians(Position.EARTH_RADIUS);
+
+	int key;
+	// position in the list of changed state vectors of the store or -1
+	int changedIndex = -1;
+	int address;
+	ModeSDownlinkMsg.QualifiedAddress.Type addressType;
+	long firstSeen;
+	long lastSeen;
+	long messageCount;
+
+	double latitude;
+	double longitude;
+	long positionTime;
+	// motion in degrees per millisecond for dead reckoning (see updateDeltas)
+	double latitudeDelta;
+	double longitudeDelta;
+
+	boolean onGround;
+	long onGroundTime;
+
+	int barometricAltitude;
+	long barometricAltitudeTime;
+
+	int geometricAltitude;
+	long geometricAltitudeTime;
+
+	double groundSpeed;
+	double track;
+	long velocityTime;
+
+	int verticalRate;
+	long verticalRateTime;
+
+	long callsign;
+	long callsignTime;
+
+	char categorySet;
+	byte emitterCategory;
+	long categoryTime;
+
+	int squawk;
+	long squawkTime;
+
+	byte nacp;
+	long nacpTime;
+
+	byte emergency;
+	long emergencyTime;
+
+	StateVector() {}
+
+	/**
+	 * Resets all fields for a new aircraft
+	 */
+	void reset(int key, int address, ModeSDownlinkMsg.QualifiedAddress.Type addressType, long timestamp) {
+		this.key = key;
+		this.address = address;
+		this.addressType = addressType;
+		firstSeen = lastSeen = timestamp;
+		messageCount = 0;
+		latitudeDelta = longitudeDelta = 0;
+		positionTime = onGroundTime = barometricAltitudeTime = geometricAltitudeTime = NEVER;
+		velocityTime = verticalRateTime = callsignTime = categoryTime = NEVER;
+		squawkTime = nacpTime = emergencyTime = NEVER;
+	}
+
+	/**
+	 * @return the 24-bit address
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the type of the address
+	 */
+	public ModeSDownlinkMsg.QualifiedAddress.Type getAddressType() {
+		return addressType;
+	}
+
+	/**
+	 * @return time of the first message in milliseconds
+	 */
+	public long getFirstSeen() {
+		return firstSeen;
+	}
+
+	/**
+	 * @return time of the last message in milliseconds
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * @return number of messages received from the aircraft
+	 */
+	public long getMessageCount() {
+		return messageCount;
+	}
+
+	/**
+	 * @return true if a position has been received
+	 */
+	public boolean hasPosition() {
+		return positionTime != NEVER;
+	}
+
+	/**
+	 * @return latitude of the last position in degrees
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * @return longitude of the last position in degrees
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * @return time of the last position in milliseconds
+	 */
+	public long getPositionTime() {
+		return positionTime;
+	}
+
+	/**
+	 * Dead reckoning from the last position with the last ground speed and track
+	 * @param timestamp time in milliseconds
+	 * @return predicted latitude in degrees at the given time; the last latitude if the velocity is unknown
+	 */
+	public double predictLatitude(long timestamp) {
+		double lat = latitude + latitudeDelta * (timestamp - positionTime);
+		return lat > 90 ? 90 : lat < -90 ? -90 : lat;
+	}
+
+	/**
+	 * Dead reckoning from the last position with the last ground speed and track
+	 * @param timestamp time in milliseconds
+	 * @return predicted longitude in degrees at the given time; the last longitude if the velocity is unknown
+	 */
+	public double predictLongitude(long timestamp) {
+		double lon = longitude + longitudeDelta * (timestamp - positionTime);
+		return lon >= 180 || lon < -180 ? lon - 360 * Math.floor((lon + 180) / 360) : lon;
+	}
+
+	/**
+	 * Precomputes the motion per millisecond from position, ground speed and track so that predictions
+	 * only take a multiplication and an addition. Called whenever position or velocity change.
+	 */
+	void updateDeltas() {
+		if (positionTime == NEVER || velocityTime == NEVER) {
+			latitudeDelta = longitudeDelta = 0;
+			return;
+		}
+		// knots to meters per millisecond to degrees per millisecond
+		double speed = groundSpeed * 0.514444 / 1000.0 / METERS_PER_DEGREE;
+		double track = Math.toRadians(this.track);
+		latitudeDelta = speed * Math.cos(track);
+		double cosLat = Math.cos(Math.toRadians(latitude));
+		longitudeDelta = cosLat < 1e-6 ? 0 : speed * Math.sin(track) / cosLat;
+	}
+
+	/**
+	 * @return true if the aircraft is on the ground (see {@link #getOnGroundTime()} for validity)
+	 */
+	public boolean isOnGround() {
+		return onGround;
+	}
+
+	/**
+	 * @return time of the last air/ground state in milliseconds
+	 */
+	public long getOnGroundTime() {
+		return onGroundTime;
+	}
+
+	/**
+	 * @return last barometric altitude in feet
+	 */
+	public int getBarometricAltitude() {
+		return barometricAltitude;
+	}
+
+	/**
+	 * @return time of the last barometric altitude in milliseconds
+	 */
+	public long getBarometricAltitudeTime() {
+		return barometricAltitudeTime;
+	}
+
+	/**
+	 * @return last geometric altitude (above the WGS84 ellipsoid) in feet
+	 */
+	public int getGeometricAltitude() {
+		return geometricAltitude;
+	}
+
+	/**
+	 * @return time of the last geometric altitude in milliseconds
+	 */
+	public long getGeometricAltitudeTime() {
+		return geometricAltitudeTime;
+	}
+
+	/**
+	 * @return last ground speed in knots
+	 */
+	public double getGroundSpeed() {
+		return groundSpeed;
+	}
+
+	/**
+	 * @return last track angle (clockwise from true north) in degrees
+	 */
+	public double getTrack() {
+		return track;
+	}
+
+	/**
+	 * @return time of the last ground speed and track in milliseconds
+	 */
+	public long getVelocityTime() {
+		return velocityTime;
+	}
+
+	/**
+	 * @return last vertical rate in feet per minute
+	 */
+	public int getVerticalRate() {
+		return verticalRate;
+	}
+
+	/**
+	 * @return time of the last vertical rate in milliseconds
+	 */
+	public long getVerticalRateTime() {
+		return verticalRateTime;
+	}
+
+	/**
+	 * @return the call sign as eight 6-bit characters (AIS charset) packed into the lower 48 bits. Allows to
+	 * compare call signs without creating strings.
+	 */
+	public long getCallsignCode() {
+		return callsign;
+	}
+
+	/**
+	 * @return the call sign without trailing spaces or null if unknown
+	 */
+	public String getCallsign() {
+		if (callsignTime == NEVER) return null;
+		char[] chars = new char[8];
+		int length = getCallsign(chars, 0);
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Writes the call sign without trailing spaces into the given array
+	 * @param dst array with at least 8 characters space after offset
+	 * @param offset index of the first character
+	 * @return number of characters written
+	 */
+	public int getCallsign(char[] dst, int offset) {
+		if (callsignTime == NEVER) return 0;
+		int length = 0;
+		for (int c = 0; c < 8; ++c) {
+			int digit = (int) (callsign >>> (42 - 6 * c)) & 0x3F;
+			char ch;
+			if (digit > 0 && digit < 27) ch = (char) ('A' + digit - 1);
+			else if (digit > 47 && digit < 58) ch = (char) ('0' + digit - 48);
+			else ch = ' ';
+
+			dst[offset + c] = ch;
+			if (ch != ' ') length = c + 1;
+		}
+		return length;
+	}
+
+	/**
+	 * @return time of the last call sign in milliseconds
+	 */
+	public long getCallsignTime() {
+		return callsignTime;
+	}
+
+	/**
+	 * @return the emitter category set ('A' to 'D')
+	 */
+	public char getCategorySet() {
+		return categorySet;
+	}
+
+	/**
+	 * @return the emitter category within its set (0 to 7), e.g., 3 for category A3
+	 */
+	public byte getEmitterCategory() {
+		return emitterCategory;
+	}
+
+	/**
+	 * @return time of the last emitter category in milliseconds
+	 */
+	public long getCategoryTime() {
+		return categoryTime;
+	}
+
+	/**
+	 * @return the last Mode A code as decimal number, e.g., 7700
+	 */
+	public int getSquawk() {
+		return squawk;
+	}
+
+	/**
+	 * @return time of the last Mode A code in milliseconds
+	 */
+	public long getSquawkTime() {
+		return squawkTime;
+	}
+
+	/**
+	 * @return the last navigation accuracy category for position (NACp)
+	 */
+	public byte getNACp() {
+		return nacp;
+	}
+
+	/**
+	 * @return time of the last NACp in milliseconds
+	 */
+	public long getNACpTime() {
+		return nacpTime;
+	}
+
+	/**
+	 * @return the last emergency state code of an emergency/priority status message (0 for no emergency)
+	 */
+	public byte getEmergencyState() {
+		return emergency;
+	}
+
+	/**
+	 * @return time of the last emergency state in milliseconds
+	 */
+	public long getEmergencyTime() {
+		return emergencyTime;
+	}
+
+	@Override
+	public String toString() {
+		return "StateVector{" +
+				"address=" + String.format("%06x", address) +
+				", address_type=" + addressType +
+				", last_seen=" + lastSeen +
+				(positionTime != NEVER ? ", latitude=" + latitude + ", longitude=" + longitude : "") +
+				(onGroundTime != NEVER ? ", on_ground=" + onGround : "") +
+				(barometricAltitudeTime != NEVER ? ", baro_altitude=" + barometricAltitude : "") +
+				(geometricAltitudeTime != NEVER ? ", geo_altitude=" + geometricAltitude : "") +
+				(velocityTime != NEVER ? ", ground_speed=" + groundSpeed + ", track=" + track : "") +
+				(verticalRateTime != NEVER ? ", vertical_rate=" + verticalRate : "") +
+				(callsignTime != NEVER ? ", callsign=" + getCallsign() : "") +
+				(categoryTime != NEVER ? ", category=" + categorySet + emitterCategory : "") +
+				(squawkTime != NEVER ? ", squawk=" + String.format("%04d", squawk) : "") +
+				(nacpTime != NEVER ? ", nacp=" + nacp : "") +
+				(emergencyTime != NEVER ? ", emergency=" + emergency : "") +
+				'}';
+	}
+}
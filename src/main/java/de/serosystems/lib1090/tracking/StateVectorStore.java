@@ -0,0 +1,679 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import de.serosystems.lib1090.msgs.adsb.AirborneOperationalStatusV1Msg;
+import de.serosystems.lib1090.msgs.adsb.AirspeedHeadingMsg;
+import de.serosystems.lib1090.msgs.adsb.EmergencyOrPriorityStatusMsg;
+import de.serosystems.lib1090.msgs.adsb.IdentificationMsg;
+import de.serosystems.lib1090.msgs.adsb.SurfaceOperationalStatusV1Msg;
+import de.serosystems.lib1090.msgs.adsb.SurfacePositionV0Msg;
+import de.serosystems.lib1090.msgs.adsb.TargetStateAndStatusMsg;
+import de.serosystems.lib1090.msgs.adsb.VelocityOverGroundMsg;
+import de.serosystems.lib1090.msgs.modes.AllCallReply;
+import de.serosystems.lib1090.msgs.modes.AltitudeReply;
+import de.serosystems.lib1090.msgs.modes.CommBAltitudeReply;
+import de.serosystems.lib1090.msgs.modes.CommBIdentifyReply;
+import de.serosystems.lib1090.msgs.modes.ExtendedSquitter;
+import de.serosystems.lib1090.msgs.modes.IdentifyReply;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the current {@link StateVector} of each aircraft, i.e., its position, altitude, velocity, call sign,
+ * squawk, emitter category, NACp and emergency state. The state vectors are updated in place from each
+ * decoded message and position. Attach the store to a decoder with
+ * {@link de.serosystems.lib1090.StatefulModeSDecoder#setStateVectorStore(StateVectorStore)} to have it fed
+ * automatically or call {@link #update(ModeSDownlinkMsg, long)} and
+ * {@link #updatePosition(ModeSDownlinkMsg.QualifiedAddress, Position, long)} yourself.<br>
+ * State vectors are stored densely in an array and found through an open addressing hash table keyed on the
+ * qualified address. Hence, lookups and updates take constant time and, apart from growing the table and
+ * creating the state vector of a new aircraft, do not allocate. State vectors of removed aircraft are reused.<br>
+ * Note: this class is not thread-safe.
+ */
+public class StateVectorStore {
+
+	private static final int EMPTY = -1;
+
+	private static final ModeSDownlinkMsg.QualifiedAddress.Type[] ADDRESS_TYPES =
+			ModeSDownlinkMsg.QualifiedAddress.Type.values();
+
+	// dense array of active state vectors followed by unused ones
+	private StateVector[] vectors;
+	private int size;
+
+	// hash table mapping keys to indices in vectors
+	private int[] table;
+
+	// index of the positions; null if disabled
+	private SpatialIndex spatialIndex;
+
+	// filtered tracks; null if disabled
+	private TrackFilter trackFilter;
+
+	// state vectors updated since the last call of clearChanged()
+	private StateVector[] changed;
+	private int changedCount;
+
+	public StateVectorStore() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity expected number of aircraft; the store grows if needed
+	 */
+	public StateVectorStore(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		vectors = new StateVector[capacity];
+		changed = new StateVector[capacity];
+		table = new int[Integer.highestOneBit(capacity) << 2];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Keep the positions of all aircraft in the given spatial index. Aircraft are identified by
+	 * {@link #getId(StateVector)}.
+	 * @param index an empty index or null to disable (default)
+	 */
+	public void setSpatialIndex(SpatialIndex index) {
+		if (index != null && index.size() > 0)
+			throw new IllegalArgumentException("Index must be empty");
+		this.spatialIndex = index;
+		if (index != null)
+			for (int i = 0; i < size; ++i)
+				if (vectors[i].positionTime != StateVector.NEVER)
+					index.update(vectors[i].key, vectors[i].latitude, vectors[i].longitude);
+	}
+
+	/**
+	 * @return the spatial index or null if none has been set
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Feed the measurements of all aircraft into the given track filter. Tracks are identified by
+	 * {@link #getId(StateVector)}. Unlike the state vectors, the filter also receives positions which have not
+	 * passed the reasonableness test, since it applies its own outlier test.
+	 * @param filter an empty filter or null to disable (default)
+	 */
+	public void setTrackFilter(TrackFilter filter) {
+		if (filter != null && filter.size() > 0)
+			throw new IllegalArgumentException("Track filter must be empty");
+		this.trackFilter = filter;
+		if (filter != null)
+			for (int i = 0; i < size; ++i)
+				filter.update(vectors[i]);
+	}
+
+	/**
+	 * @return the track filter or null if none has been set
+	 */
+	public TrackFilter getTrackFilter() {
+		return trackFilter;
+	}
+
+	/**
+	 * @param sv a state vector of this store
+	 * @return the id of the aircraft in a {@link SpatialIndex}: the address type ordinal in the upper byte and the
+	 *         24-bit address in the lower three bytes. For ICAO 24-bit addresses, this is the address.
+	 */
+	public static int getId(StateVector sv) {
+		return sv.key;
+	}
+
+	/**
+	 * @param address the qualified address of an aircraft
+	 * @return the id of the aircraft as returned by {@link #getId(StateVector)} for its state vector
+	 */
+	public static int getId(ModeSDownlinkMsg.QualifiedAddress address) {
+		return key(address.getAddress(), address.getType());
+	}
+
+	/**
+	 * @param id the id of an aircraft (see {@link #getId(StateVector)})
+	 * @return the state vector of the aircraft or null if unknown
+	 */
+	public StateVector getStateById(int id) {
+		int index = table[find(id)];
+		return index == EMPTY ? null : vectors[index];
+	}
+
+	/**
+	 * @param address the qualified address of an aircraft
+	 * @return the state vector of the aircraft or null if no message has been received
+	 */
+	public StateVector getState(ModeSDownlinkMsg.QualifiedAddress address) {
+		return getState(address.getAddress(), address.getType());
+	}
+
+	/**
+	 * @param icao24 the ICAO 24-bit address of an aircraft
+	 * @return the state vector of the aircraft or null if no message has been received
+	 */
+	public StateVector getState(int icao24) {
+		return getState(icao24, ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24);
+	}
+
+	/**
+	 * @param address the 24-bit address
+	 * @param type the type of the address
+	 * @return the state vector of the aircraft or null if no message has been received
+	 */
+	public StateVector getState(int address, ModeSDownlinkMsg.QualifiedAddress.Type type) {
+		int index = table[find(key(address, type))];
+		return index == EMPTY ? null : vectors[index];
+	}
+
+	/**
+	 * @return number of aircraft in the store
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Predicts the position of an aircraft by dead reckoning from its last reasonable position with its latest
+	 * ground speed and track. For many aircraft, e.g., to refresh a map, use
+	 * {@link StateVector#predictLatitude(long)} and {@link StateVector#predictLongitude(long)} from
+	 * {@link #forEachActive(long, long, Consumer)} instead to avoid creating objects.
+	 * @param address the qualified address of the aircraft
+	 * @param timestamp time of the prediction in milliseconds
+	 * @return the predicted position with the last barometric altitude (if known) or null if the aircraft has no
+	 *         position yet
+	 */
+	public Position predictPosition(ModeSDownlinkMsg.QualifiedAddress address, long timestamp) {
+		return predictPosition(getState(address), timestamp);
+	}
+
+	/**
+	 * @see #predictPosition(ModeSDownlinkMsg.QualifiedAddress, long)
+	 * @param icao24 the ICAO 24-bit address of the aircraft
+	 * @param timestamp time of the prediction in milliseconds
+	 * @return the predicted position or null if the aircraft has no position yet
+	 */
+	public Position predictPosition(int icao24, long timestamp) {
+		return predictPosition(getState(icao24), timestamp);
+	}
+
+	private static Position predictPosition(StateVector sv, long timestamp) {
+		if (sv == null || sv.positionTime == StateVector.NEVER) return null;
+		Double altitude = sv.barometricAltitudeTime == StateVector.NEVER ? null : (double) sv.barometricAltitude;
+		return new Position(sv.predictLongitude(timestamp), sv.predictLatitude(timestamp), altitude);
+	}
+
+	/**
+	 * Calls the action for all state vectors which have been updated within the given time
+	 * @param now current time in milliseconds
+	 * @param maxAge maximum time since the last message in milliseconds
+	 * @param action called for each active aircraft
+	 */
+	public void forEachActive(long now, long maxAge, Consumer<StateVector> action) {
+		for (int i = 0; i < size; ++i)
+			if (now - vectors[i].lastSeen <= maxAge)
+				action.accept(vectors[i]);
+	}
+
+	/**
+	 * Removes all aircraft which have not been updated within the given time
+	 * @param now current time in milliseconds
+	 * @param maxAge maximum time since the last message in milliseconds
+	 * @return number of removed aircraft
+	 */
+	public int removeInactive(long now, long maxAge) {
+		int removed = 0;
+		for (int i = size - 1; i >= 0; --i) {
+			if (now - vectors[i].lastSeen > maxAge) {
+				remove(i);
+				++removed;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes all aircraft
+	 */
+	public void clear() {
+		if (spatialIndex != null) spatialIndex.clear();
+		if (trackFilter != null) trackFilter.clear();
+		clearChanged();
+		Arrays.fill(table, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return number of aircraft which have been updated since the last call of {@link #clearChanged()}
+	 */
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	/**
+	 * Calls the action for all aircraft which have been updated since the last call of {@link #clearChanged()}.
+	 * This takes time proportional to the number of changed aircraft, not the total number.
+	 * @param action called for each changed aircraft
+	 */
+	public void forEachChanged(Consumer<StateVector> action) {
+		for (int i = 0; i < changedCount; ++i)
+			action.accept(changed[i]);
+	}
+
+	/**
+	 * Resets the change tracking
+	 */
+	public void clearChanged() {
+		for (int i = 0; i < changedCount; ++i) {
+			changed[i].changedIndex = -1;
+			changed[i] = null;
+		}
+		changedCount = 0;
+	}
+
+	/**
+	 * @return the changed state vector at the given position (0 to {@link #getChangedCount()} - 1)
+	 */
+	StateVector getChanged(int index) {
+		return changed[index];
+	}
+
+	private void markChanged(StateVector sv) {
+		if (sv.changedIndex >= 0) return;
+		if (changedCount == changed.length)
+			changed = Arrays.copyOf(changed, changedCount * 2);
+		sv.changedIndex = changedCount;
+		changed[changedCount++] = sv;
+	}
+
+	private void unmarkChanged(StateVector sv) {
+		int index = sv.changedIndex;
+		if (index < 0) return;
+		StateVector last = changed[--changedCount];
+		changed[index] = last;
+		last.changedIndex = index;
+		changed[changedCount] = null;
+		sv.changedIndex = -1;
+	}
+
+	/**
+	 * Updates the state of the sender of a message
+	 * @param msg the decoded message
+	 * @param timestamp time of reception in milliseconds
+	 * @return the updated state vector
+	 */
+	public StateVector update(ModeSDownlinkMsg msg, long timestamp) {
+		StateVector sv = getOrCreate(msg.getAddress().getAddress(), msg.getAddress().getType(), timestamp);
+		if (timestamp > sv.lastSeen) sv.lastSeen = timestamp;
+		++sv.messageCount;
+		markChanged(sv);
+
+		if (msg instanceof PositionMsg)
+			updatePositionMsg(sv, (PositionMsg) msg, timestamp);
+		else if (msg instanceof ExtendedSquitter)
+			updateExtendedSquitter(sv, (ExtendedSquitter) msg, timestamp);
+		else
+			updateReply(sv, msg, timestamp);
+
+		if (trackFilter != null) trackFilter.update(sv);
+		return sv;
+	}
+
+	/**
+	 * Updates the position of an aircraft, e.g., with the result of
+	 * {@link de.serosystems.lib1090.StatefulModeSDecoder#extractPosition}. Positions which have not passed the
+	 * reasonableness test are ignored.
+	 * @param address the address of the aircraft
+	 * @param position the decoded position
+	 * @param timestamp time of applicability in milliseconds
+	 * @return the updated state vector or null if the position has been ignored
+	 */
+	public StateVector updatePosition(ModeSDownlinkMsg.QualifiedAddress address, Position position, long timestamp) {
+		return updatePosition(address.getAddress(), address.getType(), position, timestamp);
+	}
+
+	/**
+	 * @see #updatePosition(ModeSDownlinkMsg.QualifiedAddress, Position, long)
+	 * @param address the 24-bit address of the aircraft
+	 * @param type the type of the address
+	 * @param position the decoded position
+	 * @param timestamp time of applicability in milliseconds
+	 * @return the updated state vector or null if the position has been ignored
+	 */
+	public StateVector updatePosition(int address, ModeSDownlinkMsg.QualifiedAddress.Type type, Position position,
+									  long timestamp) {
+		if (position == null || position.getLatitude() == null || position.getLongitude() == null)
+			return null;
+		if (trackFilter != null)
+			trackFilter.updatePosition(key(address, type), position.getLatitude(), position.getLongitude(), timestamp);
+		if (!position.isReasonable())
+			return null;
+
+		StateVector sv = getOrCreate(address, type, timestamp);
+		if (timestamp > sv.lastSeen) sv.lastSeen = timestamp;
+		markChanged(sv);
+		sv.latitude = position.getLatitude();
+		sv.longitude = position.getLongitude();
+		sv.positionTime = timestamp;
+		sv.updateDeltas();
+		if (spatialIndex != null) spatialIndex.update(sv.key, sv.latitude, sv.longitude);
+		return sv;
+	}
+
+	private void updatePositionMsg(StateVector sv, PositionMsg msg, long timestamp) {
+		if (msg.hasValidAltitude()) {
+			if (msg.getAltitudeType() == Position.AltitudeType.BAROMETRIC_ALTITUDE) {
+				sv.barometricAltitude = msg.getAltitude();
+				sv.barometricAltitudeTime = timestamp;
+			} else if (msg.getAltitudeType() == Position.AltitudeType.ABOVE_WGS84_ELLIPSOID) {
+				sv.geometricAltitude = msg.getAltitude();
+				sv.geometricAltitudeTime = timestamp;
+			}
+		}
+
+		Double speed = null, heading = null;
+		boolean surface = true;
+		if (msg instanceof SurfacePositionV0Msg) {
+			speed = ((SurfacePositionV0Msg) msg).getGroundSpeed();
+			heading = ((SurfacePositionV0Msg) msg).getHeading();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) {
+			speed = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) msg).getGroundSpeed();
+			heading = ((de.serosystems.lib1090.msgs.adsr.SurfacePositionV0Msg) msg).getHeading();
+		} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) {
+			speed = ((de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) msg).getGroundSpeed();
+			heading = ((de.serosystems.lib1090.msgs.tisb.FineSurfacePositionMsg) msg).getHeading();
+		} else {
+			surface = false;
+		}
+
+		if (msg.getCPREncodedPosition() != null) {
+			sv.onGround = surface;
+			sv.onGroundTime = timestamp;
+		}
+		if (speed != null && heading != null)
+			updateVelocity(sv, speed, heading, timestamp);
+	}
+
+	private void updateExtendedSquitter(StateVector sv, ExtendedSquitter msg, long timestamp) {
+		switch (msg.getType()) {
+			case ADSB_IDENTIFICATION:
+				updateIdentification(sv, msg, ((IdentificationMsg) msg).getEmitterCategory(), timestamp);
+				break;
+			case ADSR_IDENTIFICATION:
+				updateIdentification(sv, msg,
+						((de.serosystems.lib1090.msgs.adsr.IdentificationMsg) msg).getEmitterCategory(), timestamp);
+				break;
+			case TISB_IDENTIFICATION:
+				if (msg instanceof de.serosystems.lib1090.msgs.tisb.IdentificationMsg)
+					updateIdentification(sv, msg,
+							((de.serosystems.lib1090.msgs.tisb.IdentificationMsg) msg).getEmitterCategory(), timestamp);
+				break;
+			case ADSB_VELOCITY:
+			case ADSR_VELOCITY:
+			case TISB_VELOCITY:
+				if (msg instanceof VelocityOverGroundMsg) {
+					VelocityOverGroundMsg v = (VelocityOverGroundMsg) msg;
+					updateVelocity(sv, v.getVelocity(), v.getHeading(), v.getVerticalRate(), timestamp);
+				} else if (msg instanceof de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) {
+					de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg v =
+							(de.serosystems.lib1090.msgs.adsr.VelocityOverGroundMsg) msg;
+					updateVelocity(sv, v.getVelocity(), v.getHeading(), v.getVerticalRate(), timestamp);
+				} else if (msg instanceof de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) {
+					de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg v =
+							(de.serosystems.lib1090.msgs.tisb.VelocityOverGroundMsg) msg;
+					updateVelocity(sv, v.getVelocity(), v.getHeading(), v.getVerticalRate(), timestamp);
+				}
+				break;
+			case ADSB_AIRSPEED:
+				updateVerticalRate(sv, ((AirspeedHeadingMsg) msg).getVerticalRate(), timestamp);
+				break;
+			case ADSR_AIRSPEED:
+				updateVerticalRate(sv, ((de.serosystems.lib1090.msgs.adsr.AirspeedHeadingMsg) msg).getVerticalRate(),
+						timestamp);
+				break;
+			case ADSB_AIRBORN_STATUS_V1: case ADSB_AIRBORN_STATUS_V2:
+				updateNACp(sv, ((AirborneOperationalStatusV1Msg) msg).getNACp(), timestamp);
+				break;
+			case ADSB_SURFACE_STATUS_V1: case ADSB_SURFACE_STATUS_V2:
+				updateNACp(sv, ((SurfaceOperationalStatusV1Msg) msg).getNACp(), timestamp);
+				break;
+			case ADSR_AIRBORN_STATUS_V1: case ADSR_AIRBORN_STATUS_V2:
+				updateNACp(sv, ((de.serosystems.lib1090.msgs.adsr.AirborneOperationalStatusV1Msg) msg).getNACp(),
+						timestamp);
+				break;
+			case ADSR_SURFACE_STATUS_V1: case ADSR_SURFACE_STATUS_V2:
+				updateNACp(sv, ((de.serosystems.lib1090.msgs.adsr.SurfaceOperationalStatusV1Msg) msg).getNACp(),
+						timestamp);
+				break;
+			case ADSB_TARGET_STATE_AND_STATUS:
+				updateNACp(sv, ((TargetStateAndStatusMsg) msg).getNACp(), timestamp);
+				break;
+			case ADSR_TARGET_STATE_AND_STATUS:
+				updateNACp(sv, ((de.serosystems.lib1090.msgs.adsr.TargetStateAndStatusMsg) msg).getNACp(), timestamp);
+				break;
+			case ADSB_EMERGENCY:
+				updateEmergency(sv, (EmergencyOrPriorityStatusMsg) msg, timestamp);
+				break;
+			case ADSR_EMERGENCY:
+				de.serosystems.lib1090.msgs.adsr.EmergencyOrPriorityStatusMsg emergency =
+						(de.serosystems.lib1090.msgs.adsr.EmergencyOrPriorityStatusMsg) msg;
+				if (emergency.getSubtype() == 1) {
+					sv.emergency = emergency.getEmergencyStateCode();
+					sv.emergencyTime = timestamp;
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void updateReply(StateVector sv, ModeSDownlinkMsg msg, long timestamp) {
+		switch (msg.getType()) {
+			case ALTITUDE_REPLY:
+				AltitudeReply altitudeReply = (AltitudeReply) msg;
+				updateFlightStatus(sv, altitudeReply.getFlightStatus(), timestamp);
+				updateAltitude(sv, altitudeReply.getAltitude(), timestamp);
+				break;
+			case COMM_B_ALTITUDE_REPLY:
+				CommBAltitudeReply commBAltitude = (CommBAltitudeReply) msg;
+				updateFlightStatus(sv, commBAltitude.getFlightStatus(), timestamp);
+				updateAltitude(sv, commBAltitude.getAltitude(), timestamp);
+				break;
+			case IDENTIFY_REPLY:
+				IdentifyReply identifyReply = (IdentifyReply) msg;
+				updateFlightStatus(sv, identifyReply.getFlightStatus(), timestamp);
+				sv.squawk = Tools.decodeIdentityCode(identifyReply.getIdentityCode());
+				sv.squawkTime = timestamp;
+				break;
+			case COMM_B_IDENTIFY_REPLY:
+				CommBIdentifyReply commBIdentify = (CommBIdentifyReply) msg;
+				updateFlightStatus(sv, commBIdentify.getFlightStatus(), timestamp);
+				sv.squawk = Tools.decodeIdentityCode(commBIdentify.getIdentityCode());
+				sv.squawkTime = timestamp;
+				break;
+			case ALL_CALL_REPLY:
+				AllCallReply allCall = (AllCallReply) msg;
+				if (allCall.isOnGround() || allCall.isAirborne()) {
+					sv.onGround = allCall.isOnGround();
+					sv.onGroundTime = timestamp;
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static void updateIdentification(StateVector sv, ExtendedSquitter msg, byte category, long timestamp) {
+		byte[] me = msg.getMessage();
+		long chars = 0;
+		for (int b = 1; b < 7; ++b)
+			chars = chars << 8 | (me[b] & 0xFF);
+		sv.callsign = chars;
+		sv.callsignTime = timestamp;
+
+		// category set A to D is encoded in the format type code (4 to 1)
+		int ftc = msg.getFormatTypeCode();
+		if (ftc >= 1 && ftc <= 4) {
+			sv.categorySet = (char) ('A' + 4 - ftc);
+			sv.emitterCategory = category;
+			sv.categoryTime = timestamp;
+		}
+	}
+
+	private static void updateVelocity(StateVector sv, Double speed, Double heading, Integer rate, long timestamp) {
+		if (speed != null && heading != null)
+			updateVelocity(sv, speed, heading, timestamp);
+		updateVerticalRate(sv, rate, timestamp);
+	}
+
+	private static void updateVelocity(StateVector sv, double speed, double heading, long timestamp) {
+		sv.groundSpeed = speed;
+		sv.track = heading;
+		sv.velocityTime = timestamp;
+		sv.updateDeltas();
+	}
+
+	private static void updateVerticalRate(StateVector sv, Integer rate, long timestamp) {
+		if (rate == null) return;
+		sv.verticalRate = rate;
+		sv.verticalRateTime = timestamp;
+	}
+
+	private static void updateAltitude(StateVector sv, Integer altitude, long timestamp) {
+		if (altitude == null) return;
+		sv.barometricAltitude = altitude;
+		sv.barometricAltitudeTime = timestamp;
+	}
+
+	/**
+	 * Derives the air/ground state from the flight status of surveillance replies
+	 */
+	private static void updateFlightStatus(StateVector sv, byte fs, long timestamp) {
+		if (fs == 1 || fs == 3) sv.onGround = true;
+		else if (fs == 0 || fs == 2) sv.onGround = false;
+		else return;
+		sv.onGroundTime = timestamp;
+	}
+
+	private static void updateNACp(StateVector sv, byte nacp, long timestamp) {
+		sv.nacp = nacp;
+		sv.nacpTime = timestamp;
+	}
+
+	private static void updateEmergency(StateVector sv, EmergencyOrPriorityStatusMsg msg, long timestamp) {
+		// subtype 2 is a TCAS resolution advisory broadcast
+		if (msg.getSubtype() != 1) return;
+		sv.emergency = msg.getEmergencyStateCode();
+		sv.emergencyTime = timestamp;
+	}
+
+	private StateVector getOrCreate(int address, ModeSDownlinkMsg.QualifiedAddress.Type type, long timestamp) {
+		int key = key(address, type);
+		int slot = find(key);
+		if (table[slot] != EMPTY)
+			return vectors[table[slot]];
+
+		if (size == vectors.length)
+			vectors = Arrays.copyOf(vectors, size * 2);
+		if ((size + 1) * 2 > table.length) {
+			rehash(table.length * 2);
+			slot = find(key);
+		}
+
+		StateVector sv = vectors[size];
+		if (sv == null) sv = vectors[size] = new StateVector();
+		sv.reset(key, address, type, timestamp);
+		table[slot] = size++;
+		return sv;
+	}
+
+	/**
+	 * Removes the state vector at the given index by moving the last one into its place
+	 */
+	private void remove(int index) {
+		StateVector removed = vectors[index];
+		unmarkChanged(removed);
+		if (spatialIndex != null) spatialIndex.remove(removed.key);
+		if (trackFilter != null) trackFilter.remove(removed.key);
+		deleteKey(removed.key);
+
+		int last = --size;
+		if (index != last) {
+			// repoint the slot of the last vector while its key can still be found there
+			table[find(vectors[last].key)] = index;
+			vectors[index] = vectors[last];
+			vectors[last] = removed;
+		}
+	}
+
+	/**
+	 * Deletes a key from the hash table and shifts back the following entries of its probe sequence
+	 */
+	private void deleteKey(int key) {
+		int mask = table.length - 1;
+		int i = find(key);
+		table[i] = EMPTY;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == EMPTY) break;
+
+			int home = hash(vectors[table[j]].key) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = EMPTY;
+				i = j;
+			}
+		}
+	}
+
+	private void rehash(int length) {
+		table = new int[length];
+		Arrays.fill(table, EMPTY);
+		for (int i = 0; i < size; ++i)
+			table[find(vectors[i].key)] = i;
+	}
+
+	/**
+	 * @return slot of the key in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(int key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != EMPTY && vectors[table[slot]].key != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int key(int address, ModeSDownlinkMsg.QualifiedAddress.Type type) {
+		return type.ordinal() << 24 | address & 0xFFFFFF;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
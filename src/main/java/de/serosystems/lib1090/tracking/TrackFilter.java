@@ -0,0 +1,656 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/*
+ *  This file is part of de.serosystems.lib1090.
+ *
+ *  de.serosystems.lib1090 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  de.serosystems.lib1090 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with de.serosystems.lib1090.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Constant velocity Kalman filter for the tracks of all aircraft. It fuses positions with velocities over ground,
+ * barometric altitudes and vertical rates. Horizontal and vertical motion are filtered independently; north and
+ * east use the same noise model and therefore share one covariance matrix. Measurements whose normalized
+ * innovation exceeds a gate are rejected as outliers instead of corrupting the track, but a track is restarted
+ * if several positions in a row are rejected or if it has not been updated for a while.<br>
+ * The state of all tracks is kept in primitive arrays, so filtering and {@link #extrapolate(int, long, double[])}
+ * take constant time and do not allocate. Tracks are identified by an int, e.g., the id of a
+ * {@link StateVectorStore} (see {@link StateVectorStore#setTrackFilter(TrackFilter)}).<br>
+ * Note: this class is not thread-safe.
+ */
+public class TrackFilter {
+
+	/** index of the latitude in results of {@link #extrapolate(int, long, double[])} */
+	public static final int LATITUDE = 0;
+	/** index of the longitude in results of {@link #extrapolate(int, long, double[])} */
+	public static final int LONGITUDE = 1;
+	/** index of the altitude in results of {@link #extrapolate(int, long, double[])} */
+	public static final int ALTITUDE = 2;
+
+	private static final int EMPTY = -1;
+	private static final long NEVER = Long.MIN_VALUE;
+
+	// meters per degree of latitude
+	private static final double METERS_PER_DEGREE = toRadians(Position.EARTH_RADIUS);
+	// initial variance of unknown velocities: (300 m/s)^2 and (6000 ft/min)^2
+	private static final double UNKNOWN_VELOCITY = 90000.0;
+	private static final double UNKNOWN_VERTICAL_RATE = 10000.0;
+
+	// noise model
+	private double positionVariance = 50.0 * 50.0;
+	private double velocityVariance = 2.0 * 2.0;
+	private double accelerationVariance = 3.0 * 3.0;
+	private double altitudeVariance = 25.0 * 25.0;
+	private double verticalRateVariance = 1.0 * 1.0;
+	private double verticalAccelerationVariance = 10.0 * 10.0;
+	private double gate = 13.8;
+	private int maxRejections = 3;
+	private long maxCoastTime = 30000L;
+
+	// horizontal state: time of the estimate, position in degrees, velocity in m/s and covariance of each axis
+	private int[] ids;
+	private long[] times;
+	private double[] latitudes, longitudes;
+	private double[] northVelocities, eastVelocities;
+	private double[] p00, p01, p11;
+	private int[] rejections;
+
+	// vertical state: altitude in feet, vertical rate in ft/s and covariance
+	private long[] altitudeTimes;
+	private double[] altitudes, verticalRates;
+	private double[] a00, a01, a11;
+
+	// time of the last measurement of each kind, whether accepted or not
+	private long[] positionTimes, velocityTimes, barometricAltitudeTimes, verticalRateTimes;
+
+	private int size;
+	private long rejectedCount;
+
+	// hash table mapping ids to tracks
+	private int[] table;
+
+	public TrackFilter() {
+		int capacity = 256;
+		ids = new int[capacity];
+		times = new long[capacity];
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		northVelocities = new double[capacity];
+		eastVelocities = new double[capacity];
+		p00 = new double[capacity];
+		p01 = new double[capacity];
+		p11 = new double[capacity];
+		rejections = new int[capacity];
+		altitudeTimes = new long[capacity];
+		altitudes = new double[capacity];
+		verticalRates = new double[capacity];
+		a00 = new double[capacity];
+		a01 = new double[capacity];
+		a11 = new double[capacity];
+		positionTimes = new long[capacity];
+		velocityTimes = new long[capacity];
+		barometricAltitudeTimes = new long[capacity];
+		verticalRateTimes = new long[capacity];
+		table = new int[capacity * 2];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * @param sigma standard deviation of positions in meters (default: 50)
+	 */
+	public void setPositionNoise(double sigma) {
+		positionVariance = variance(sigma);
+	}
+
+	/**
+	 * @param sigma standard deviation of velocities over ground in m/s (default: 2)
+	 */
+	public void setVelocityNoise(double sigma) {
+		velocityVariance = variance(sigma);
+	}
+
+	/**
+	 * @param sigma standard deviation of the horizontal acceleration in m/s^2, i.e., how much the aircraft are
+	 *              expected to deviate from constant velocity (default: 3)
+	 */
+	public void setAccelerationNoise(double sigma) {
+		accelerationVariance = variance(sigma);
+	}
+
+	/**
+	 * @param sigma standard deviation of barometric altitudes in feet (default: 25)
+	 */
+	public void setAltitudeNoise(double sigma) {
+		altitudeVariance = variance(sigma);
+	}
+
+	/**
+	 * @param sigma standard deviation of vertical rates in ft/s (default: 1)
+	 */
+	public void setVerticalRateNoise(double sigma) {
+		verticalRateVariance = variance(sigma);
+	}
+
+	/**
+	 * @param sigma standard deviation of the vertical acceleration in ft/s^2 (default: 10)
+	 */
+	public void setVerticalAccelerationNoise(double sigma) {
+		verticalAccelerationVariance = variance(sigma);
+	}
+
+	/**
+	 * @param gate maximum squared Mahalanobis distance of accepted measurements (default: 13.8, i.e., 99.9% of
+	 *             all measurements are accepted if the noise model is right)
+	 */
+	public void setGate(double gate) {
+		if (!(gate > 0))
+			throw new IllegalArgumentException("Gate must be positive");
+		this.gate = gate;
+	}
+
+	/**
+	 * @param maxRejections number of positions in a row which may be rejected before the track is restarted
+	 *                      at the latest position (default: 3)
+	 */
+	public void setMaxRejections(int maxRejections) {
+		if (maxRejections < 0)
+			throw new IllegalArgumentException("Number of rejections must not be negative");
+		this.maxRejections = maxRejections;
+	}
+
+	/**
+	 * @param maxCoastTime time in milliseconds after which a track without positions is restarted (default: 30s)
+	 */
+	public void setMaxCoastTime(long maxCoastTime) {
+		if (maxCoastTime <= 0)
+			throw new IllegalArgumentException("Coast time must be positive");
+		this.maxCoastTime = maxCoastTime;
+	}
+
+	private static double variance(double sigma) {
+		if (!(sigma > 0))
+			throw new IllegalArgumentException("Standard deviation must be positive");
+		return sigma * sigma;
+	}
+
+	/**
+	 * @return number of tracks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of measurements which have been rejected as outliers
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return true if the track of the aircraft has a position
+	 */
+	public boolean hasPosition(int id) {
+		int track = table[find(id)];
+		return track != EMPTY && positionTimes[track] != NEVER;
+	}
+
+	/**
+	 * Fuses all measurements of a state vector which are newer than the ones already processed for its track
+	 * @param sv the state vector
+	 */
+	public void update(StateVector sv) {
+		int id = StateVectorStore.getId(sv);
+		int track = table[find(id)];
+		if (sv.velocityTime != StateVector.NEVER && (track == EMPTY || sv.velocityTime > velocityTimes[track]))
+			updateVelocity(id, sv.groundSpeed, sv.track, sv.velocityTime);
+		if (sv.positionTime != StateVector.NEVER && (track == EMPTY || sv.positionTime > positionTimes[track]))
+			updatePosition(id, sv.latitude, sv.longitude, sv.positionTime);
+		if (sv.verticalRateTime != StateVector.NEVER &&
+				(track == EMPTY || sv.verticalRateTime > verticalRateTimes[track]))
+			updateVerticalRate(id, sv.verticalRate, sv.verticalRateTime);
+		if (sv.barometricAltitudeTime != StateVector.NEVER &&
+				(track == EMPTY || sv.barometricAltitudeTime > barometricAltitudeTimes[track]))
+			updateAltitude(id, sv.barometricAltitude, sv.barometricAltitudeTime);
+	}
+
+	/**
+	 * Fuses a position into the track of an aircraft
+	 * @param id the id of the aircraft
+	 * @param latitude latitude in degrees
+	 * @param longitude longitude in degrees
+	 * @param timestamp time of applicability in milliseconds
+	 * @return false if the position was rejected as an outlier or is older than the track
+	 */
+	public boolean updatePosition(int id, double latitude, double longitude, long timestamp) {
+		int t = getOrCreate(id);
+		if (positionTimes[t] == NEVER || timestamp - positionTimes[t] > maxCoastTime) {
+			restart(t, latitude, longitude, timestamp);
+			return true;
+		}
+		if (timestamp < times[t]) return false;
+
+		predict(t, timestamp);
+
+		double north = (latitude - latitudes[t]) * METERS_PER_DEGREE;
+		double east = normalizeLongitude(longitude - longitudes[t]) * METERS_PER_DEGREE *
+				cos(toRadians(latitudes[t]));
+		double s = p00[t] + positionVariance;
+		positionTimes[t] = timestamp;
+		if ((north * north + east * east) / s > gate) {
+			++rejectedCount;
+			if (++rejections[t] > maxRejections) {
+				restart(t, latitude, longitude, timestamp);
+				return true;
+			}
+			return false;
+		}
+
+		double k0 = p00[t] / s, k1 = p01[t] / s;
+		longitudes[t] = normalizeLongitude(longitudes[t] +
+				k0 * east / (METERS_PER_DEGREE * cos(toRadians(latitudes[t]))));
+		latitudes[t] += k0 * north / METERS_PER_DEGREE;
+		northVelocities[t] += k1 * north;
+		eastVelocities[t] += k1 * east;
+		p11[t] -= k1 * p01[t];
+		p01[t] *= 1 - k0;
+		p00[t] *= 1 - k0;
+
+		rejections[t] = 0;
+		return true;
+	}
+
+	/**
+	 * Fuses a velocity over ground into the track of an aircraft
+	 * @param id the id of the aircraft
+	 * @param groundSpeed speed over ground in knots
+	 * @param track track angle (clockwise from true north) in degrees
+	 * @param timestamp time of applicability in milliseconds
+	 * @return false if the velocity was rejected as an outlier or is older than the track
+	 */
+	public boolean updateVelocity(int id, double groundSpeed, double track, long timestamp) {
+		int t = getOrCreate(id);
+		double speed = groundSpeed * 0.514444;
+		double north = speed * cos(toRadians(track)), east = speed * sin(toRadians(track));
+
+		if (positionTimes[t] == NEVER) {
+			// nothing to filter yet
+			northVelocities[t] = north;
+			eastVelocities[t] = east;
+			p11[t] = velocityVariance;
+			velocityTimes[t] = timestamp;
+			return true;
+		}
+		if (timestamp < times[t]) return false;
+
+		predict(t, timestamp);
+
+		north -= northVelocities[t];
+		east -= eastVelocities[t];
+		double s = p11[t] + velocityVariance;
+		velocityTimes[t] = timestamp;
+		if ((north * north + east * east) / s > gate) {
+			++rejectedCount;
+			return false;
+		}
+
+		double k0 = p01[t] / s, k1 = p11[t] / s;
+		longitudes[t] = normalizeLongitude(longitudes[t] +
+				k0 * east / (METERS_PER_DEGREE * cos(toRadians(latitudes[t]))));
+		latitudes[t] += k0 * north / METERS_PER_DEGREE;
+		northVelocities[t] += k1 * north;
+		eastVelocities[t] += k1 * east;
+		p00[t] -= k0 * p01[t];
+		p01[t] -= k0 * p11[t];
+		p11[t] *= 1 - k1;
+		return true;
+	}
+
+	/**
+	 * Fuses a barometric altitude into the track of an aircraft
+	 * @param id the id of the aircraft
+	 * @param altitude altitude in feet
+	 * @param timestamp time of applicability in milliseconds
+	 * @return false if the altitude was rejected as an outlier or is older than the track
+	 */
+	public boolean updateAltitude(int id, double altitude, long timestamp) {
+		int t = getOrCreate(id);
+		if (barometricAltitudeTimes[t] == NEVER || timestamp - barometricAltitudeTimes[t] > maxCoastTime) {
+			altitudes[t] = altitude;
+			a00[t] = altitudeVariance;
+			a01[t] = 0;
+			if (verticalRateTimes[t] == NEVER) a11[t] = UNKNOWN_VERTICAL_RATE;
+			altitudeTimes[t] = barometricAltitudeTimes[t] = timestamp;
+			return true;
+		}
+		if (timestamp < altitudeTimes[t]) return false;
+
+		predictAltitude(t, timestamp);
+
+		double innovation = altitude - altitudes[t];
+		double s = a00[t] + altitudeVariance;
+		barometricAltitudeTimes[t] = timestamp;
+		if (innovation * innovation / s > gate) {
+			++rejectedCount;
+			return false;
+		}
+
+		double k0 = a00[t] / s, k1 = a01[t] / s;
+		altitudes[t] += k0 * innovation;
+		verticalRates[t] += k1 * innovation;
+		a11[t] -= k1 * a01[t];
+		a01[t] *= 1 - k0;
+		a00[t] *= 1 - k0;
+		return true;
+	}
+
+	/**
+	 * Fuses a vertical rate into the track of an aircraft
+	 * @param id the id of the aircraft
+	 * @param verticalRate vertical rate in feet per minute
+	 * @param timestamp time of applicability in milliseconds
+	 * @return false if the vertical rate was rejected as an outlier or is older than the track
+	 */
+	public boolean updateVerticalRate(int id, double verticalRate, long timestamp) {
+		int t = getOrCreate(id);
+		double rate = verticalRate / 60.0;
+
+		if (barometricAltitudeTimes[t] == NEVER) {
+			verticalRates[t] = rate;
+			a11[t] = verticalRateVariance;
+			verticalRateTimes[t] = timestamp;
+			return true;
+		}
+		if (timestamp < altitudeTimes[t]) return false;
+
+		predictAltitude(t, timestamp);
+
+		double innovation = rate - verticalRates[t];
+		double s = a11[t] + verticalRateVariance;
+		verticalRateTimes[t] = timestamp;
+		if (innovation * innovation / s > gate) {
+			++rejectedCount;
+			return false;
+		}
+
+		double k0 = a01[t] / s, k1 = a11[t] / s;
+		altitudes[t] += k0 * innovation;
+		verticalRates[t] += k1 * innovation;
+		a00[t] -= k0 * a01[t];
+		a01[t] -= k0 * a11[t];
+		a11[t] *= 1 - k1;
+		return true;
+	}
+
+	/**
+	 * Extrapolates the track of an aircraft with its estimated velocity
+	 * @param id the id of the aircraft
+	 * @param timestamp time in milliseconds
+	 * @param result receives latitude and longitude in degrees and altitude in feet (NaN if unknown) at the
+	 *               given time at the indices {@link #LATITUDE}, {@link #LONGITUDE} and {@link #ALTITUDE}
+	 * @return false if the track is unknown or has no position yet
+	 */
+	public boolean extrapolate(int id, long timestamp, double[] result) {
+		int t = table[find(id)];
+		if (t == EMPTY || positionTimes[t] == NEVER) return false;
+
+		double dt = (timestamp - times[t]) / 1000.0;
+		result[LATITUDE] = latitudes[t] + northVelocities[t] * dt / METERS_PER_DEGREE;
+		result[LONGITUDE] = normalizeLongitude(longitudes[t] +
+				eastVelocities[t] * dt / (METERS_PER_DEGREE * cos(toRadians(latitudes[t]))));
+		result[ALTITUDE] = barometricAltitudeTimes[t] == NEVER ? Double.NaN :
+				altitudes[t] + verticalRates[t] * (timestamp - altitudeTimes[t]) / 1000.0;
+		return true;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return standard deviation of the estimated position in meters at the time of the last update or NaN
+	 *         if the track has no position
+	 */
+	public double getPositionUncertainty(int id) {
+		int t = table[find(id)];
+		return t == EMPTY || positionTimes[t] == NEVER ? Double.NaN : sqrt(p00[t]);
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return estimated ground speed in knots or NaN if the track is unknown
+	 */
+	public double getGroundSpeed(int id) {
+		int t = table[find(id)];
+		return t == EMPTY ? Double.NaN : hypot(northVelocities[t], eastVelocities[t]) / 0.514444;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return estimated track angle (clockwise from true north) in degrees or NaN if the track is unknown
+	 */
+	public double getTrack(int id) {
+		int t = table[find(id)];
+		if (t == EMPTY) return Double.NaN;
+		double track = toDegrees(atan2(eastVelocities[t], northVelocities[t]));
+		return track < 0 ? track + 360 : track;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return estimated vertical rate in feet per minute or NaN if the track is unknown
+	 */
+	public double getVerticalRate(int id) {
+		int t = table[find(id)];
+		return t == EMPTY ? Double.NaN : verticalRates[t] * 60.0;
+	}
+
+	/**
+	 * @param id the id of the aircraft
+	 * @return true if the track existed
+	 */
+	public boolean remove(int id) {
+		int slot = find(id);
+		int t = table[slot];
+		if (t == EMPTY) return false;
+
+		deleteSlot(slot);
+		int last = --size;
+		if (t != last) {
+			// move the last track into the gap
+			table[find(ids[last])] = t;
+			ids[t] = ids[last];
+			times[t] = times[last];
+			latitudes[t] = latitudes[last];
+			longitudes[t] = longitudes[last];
+			northVelocities[t] = northVelocities[last];
+			eastVelocities[t] = eastVelocities[last];
+			p00[t] = p00[last];
+			p01[t] = p01[last];
+			p11[t] = p11[last];
+			rejections[t] = rejections[last];
+			altitudeTimes[t] = altitudeTimes[last];
+			altitudes[t] = altitudes[last];
+			verticalRates[t] = verticalRates[last];
+			a00[t] = a00[last];
+			a01[t] = a01[last];
+			a11[t] = a11[last];
+			positionTimes[t] = positionTimes[last];
+			velocityTimes[t] = velocityTimes[last];
+			barometricAltitudeTimes[t] = barometricAltitudeTimes[last];
+			verticalRateTimes[t] = verticalRateTimes[last];
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all tracks
+	 */
+	public void clear() {
+		size = 0;
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Starts a new track at the given position. A known velocity is kept.
+	 */
+	private void restart(int t, double latitude, double longitude, long timestamp) {
+		latitudes[t] = latitude;
+		longitudes[t] = longitude;
+		p00[t] = positionVariance;
+		p01[t] = 0;
+		if (velocityTimes[t] == NEVER || timestamp - velocityTimes[t] > maxCoastTime) {
+			northVelocities[t] = eastVelocities[t] = 0;
+			p11[t] = UNKNOWN_VELOCITY;
+		}
+		times[t] = positionTimes[t] = timestamp;
+		rejections[t] = 0;
+	}
+
+	/**
+	 * Moves the horizontal state to the given time
+	 */
+	private void predict(int t, long timestamp) {
+		double dt = (timestamp - times[t]) / 1000.0;
+		if (dt <= 0) return;
+
+		longitudes[t] = normalizeLongitude(longitudes[t] +
+				eastVelocities[t] * dt / (METERS_PER_DEGREE * cos(toRadians(latitudes[t]))));
+		latitudes[t] += northVelocities[t] * dt / METERS_PER_DEGREE;
+
+		// P = F P F' + Q with white noise acceleration
+		double q = accelerationVariance;
+		p00[t] += dt * (2 * p01[t] + dt * p11[t]) + q * dt * dt * dt / 3;
+		p01[t] += dt * p11[t] + q * dt * dt / 2;
+		p11[t] += q * dt;
+		times[t] = timestamp;
+	}
+
+	/**
+	 * Moves the vertical state to the given time
+	 */
+	private void predictAltitude(int t, long timestamp) {
+		double dt = (timestamp - altitudeTimes[t]) / 1000.0;
+		if (dt <= 0) return;
+
+		altitudes[t] += verticalRates[t] * dt;
+		double q = verticalAccelerationVariance;
+		a00[t] += dt * (2 * a01[t] + dt * a11[t]) + q * dt * dt * dt / 3;
+		a01[t] += dt * a11[t] + q * dt * dt / 2;
+		a11[t] += q * dt;
+		altitudeTimes[t] = timestamp;
+	}
+
+	/**
+	 * @return the longitude in the range [-180, 180)
+	 */
+	private static double normalizeLongitude(double longitude) {
+		return longitude >= 180 || longitude < -180 ? longitude - 360 * floor((longitude + 180) / 360) : longitude;
+	}
+
+	private int getOrCreate(int id) {
+		int slot = find(id);
+		if (table[slot] != EMPTY) return table[slot];
+
+		if (size == ids.length) grow();
+		if ((size + 1) * 2 > table.length) {
+			rehash(table.length * 2);
+			slot = find(id);
+		}
+
+		int t = size++;
+		table[slot] = t;
+		ids[t] = id;
+		times[t] = altitudeTimes[t] = NEVER;
+		northVelocities[t] = eastVelocities[t] = verticalRates[t] = 0;
+		p00[t] = p01[t] = a00[t] = a01[t] = 0;
+		p11[t] = UNKNOWN_VELOCITY;
+		a11[t] = UNKNOWN_VERTICAL_RATE;
+		rejections[t] = 0;
+		positionTimes[t] = velocityTimes[t] = barometricAltitudeTimes[t] = verticalRateTimes[t] = NEVER;
+		return t;
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		times = Arrays.copyOf(times, capacity);
+		latitudes = Arrays.copyOf(latitudes, capacity);
+		longitudes = Arrays.copyOf(longitudes, capacity);
+		northVelocities = Arrays.copyOf(northVelocities, capacity);
+		eastVelocities = Arrays.copyOf(eastVelocities, capacity);
+		p00 = Arrays.copyOf(p00, capacity);
+		p01 = Arrays.copyOf(p01, capacity);
+		p11 = Arrays.copyOf(p11, capacity);
+		rejections = Arrays.copyOf(rejections, capacity);
+		altitudeTimes = Arrays.copyOf(altitudeTimes, capacity);
+		altitudes = Arrays.copyOf(altitudes, capacity);
+		verticalRates = Arrays.copyOf(verticalRates, capacity);
+		a00 = Arrays.copyOf(a00, capacity);
+		a01 = Arrays.copyOf(a01, capacity);
+		a11 = Arrays.copyOf(a11, capacity);
+		positionTimes = Arrays.copyOf(positionTimes, capacity);
+		velocityTimes = Arrays.copyOf(velocityTimes, capacity);
+		barometricAltitudeTimes = Arrays.copyOf(barometricAltitudeTimes, capacity);
+		verticalRateTimes = Arrays.copyOf(verticalRateTimes, capacity);
+	}
+
+	private void rehash(int length) {
+		table = new int[length];
+		Arrays.fill(table, EMPTY);
+		for (int i = 0; i < size; ++i)
+			table[find(ids[i])] = i;
+	}
+
+	/**
+	 * Empties a slot of the hash table and shifts back the following entries of its probe sequence
+	 */
+	private void deleteSlot(int i) {
+		int mask = table.length - 1;
+		table[i] = EMPTY;
+
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == EMPTY) break;
+
+			int home = hash(ids[table[j]]) & mask;
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if (movable) {
+				table[i] = table[j];
+				table[j] = EMPTY;
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * @return slot of the id in the hash table or the empty slot where it would be inserted
+	 */
+	private int find(int id) {
+		int mask = table.length - 1;
+		int slot = hash(id) & mask;
+		while (table[slot] != EMPTY && ids[table[slot]] != id)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
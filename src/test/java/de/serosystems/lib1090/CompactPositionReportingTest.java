@@ -0,0 +1,156 @@
+package de.serosystems.lib1090;
+
+import de.serosystems.lib1090.CompactPositionReporting.CPREncodedPosition;
+import de.serosystems.lib1090.CompactPositionReporting.ReceiverPosition;
+import de.serosystems.lib1090.CompactPositionReporting.StatefulPositionDecoder;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompactPositionReportingTest {
+
+	private static double nl(double lat) {
+		if (Math.abs(lat) >= 87) return 1;
+		return Math.floor(2 * Math.PI / Math.acos(1 - (1 - Math.cos(Math.PI / 30)) /
+				Math.pow(Math.cos(Math.toRadians(Math.abs(lat))), 2)));
+	}
+
+	/**
+	 * Position encoding according to DO-260B, A.1.7.5
+	 */
+	private static CPREncodedPosition encode(double lat, double lon, boolean odd, boolean surface, long timestamp) {
+		int i = odd ? 1 : 0;
+		double angle = surface ? 90.0 : 360.0;
+		double dLat = angle / (60 - i);
+		double yz = Math.floor((1 << 17) * ((lat % dLat + dLat) % dLat) / dLat + 0.5);
+		double rLat = dLat * (yz / (1 << 17) + Math.floor(lat / dLat));
+		double dLon = angle / Math.max(nl(rLat) - i, 1);
+		double xz = Math.floor((1 << 17) * ((lon % dLon + dLon) % dLon) / dLon + 0.5);
+		return new CPREncodedPosition(odd, (int) yz & 0x1FFFF, (int) xz & 0x1FFFF, 17, surface, timestamp);
+	}
+
+	private static CPREncodedPosition encodeSurface(double lat, double lon, boolean odd, long timestamp) {
+		return encode(lat, lon, odd, true, timestamp);
+	}
+
+	// on the aprons of Amsterdam, Sao Paulo, San Francisco and Sydney
+	private static final double[][] POSITIONS = {{52.3086, 4.7639}, {-23.4356, -46.4731}, {37.6213, -122.3790},
+			{-33.9399, 151.1753}};
+
+	@Test
+	public void surfacePositions_shouldBeDecodedWithoutReceiver() {
+		for (double[] p : POSITIONS) {
+			StatefulPositionDecoder decoder = new StatefulPositionDecoder();
+			assertNull(decoder.decodePosition(encodeSurface(p[0], p[1], false, 0L), null));
+
+			Position pos = decoder.decodePosition(encodeSurface(p[0], p[1], true, 1000L), null);
+			assertEquals(p[0], pos.getLatitude(), 1e-4);
+			assertEquals(p[1], pos.getLongitude(), 1e-4);
+		}
+	}
+
+	@Test
+	public void surfaceQuadrant_shouldBeClosestToReference() {
+		for (double[] p : POSITIONS) {
+			CPREncodedPosition even = encodeSurface(p[0], p[1], false, 0L);
+			CPREncodedPosition odd = encodeSurface(p[0], p[1], true, 1000L);
+			// references up to 40 degrees away
+			for (double dLat = -40; dLat <= 40; dLat += 20) {
+				for (double dLon = -40; dLon <= 40; dLon += 20) {
+					double lon = p[1] + dLon;
+					Position reference = new Position(lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon,
+							Math.max(-90, Math.min(90, p[0] + dLat)), 0.0);
+					Position pos = CompactPositionReporting.decodeGlobalPosition(odd, even, reference);
+					assertEquals(p[0], pos.getLatitude(), 1e-4);
+					assertEquals(p[1], pos.getLongitude(), 1e-4);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void surfaceReference_shouldBeNearestAirport() {
+		AirportDatabase airports = AirportDatabase.getDefault();
+		int eham = airports.nearest(52.3, 4.76, 10000);
+		assertEquals("EHAM", airports.getIdent(eham));
+		assertEquals(-1, airports.nearest(0, -30, 100000)); // Atlantic
+
+		CPREncodedPosition even = encodeSurface(52.31, 4.77, false, 0L);
+		CPREncodedPosition odd = encodeSurface(52.31, 4.77, true, 1000L);
+		Position reference = CompactPositionReporting.findSurfaceReference(odd, even, airports);
+		assertEquals(52.3086, reference.getLatitude(), 0);
+
+		// far away from all airports
+		even = encodeSurface(0.5, -30.5, false, 0L);
+		odd = encodeSurface(0.5, -30.5, true, 1000L);
+		assertNull(CompactPositionReporting.findSurfaceReference(odd, even, airports));
+	}
+
+	@Test
+	public void modeTransition_shouldUseComplementaryFramesOfSameMode() {
+		StatefulPositionDecoder decoder = new StatefulPositionDecoder();
+		// on approach, 60 NM from Amsterdam
+		assertNull(decoder.decodePosition(encode(52.9, 6.2, false, false, 0L), null));
+		Position pos = decoder.decodePosition(encode(52.9, 6.2, true, false, 1000L), null);
+		assertEquals(52.9, pos.getLatitude(), 1e-3);
+
+		// on the apron after a coverage gap, still sending airborne positions in between
+		assertNull(decoder.decodePosition(encodeSurface(52.3086, 4.7639, false, 300_000L), null));
+		assertNotNull(decoder.decodePosition(encode(52.3086, 4.7639, false, false, 300_500L), null));
+		pos = decoder.decodePosition(encodeSurface(52.3086, 4.7639, true, 301_000L), null);
+		assertEquals(52.3086, pos.getLatitude(), 1e-4);
+		assertEquals(4.7639, pos.getLongitude(), 1e-4);
+
+		// taking off again: last surface position is a valid reference
+		pos = decoder.decodePosition(encode(52.31, 4.77, true, false, 330_000L), null);
+		assertEquals(52.31, pos.getLatitude(), 1e-3);
+		assertEquals(4.77, pos.getLongitude(), 1e-3);
+	}
+
+	@Test
+	public void receiverPosition_shouldDecodeLikePlainPosition() {
+		Random random = new Random(42);
+		double[][] receivers = {{52.3, 4.76}, {0.0, 0.0}, {-0.4, 179.9}, {86.9, -179.9}, {-87.3, 12.0},
+				{89.9, 45.0}, {10.47, -5.0}, {-45.0, -135.0}};
+		for (int r = 0; r < receivers.length + 200; ++r) {
+			double lat = r < receivers.length ? receivers[r][0] : random.nextDouble() * 180 - 90;
+			double lon = r < receivers.length ? receivers[r][1] : random.nextDouble() * 360 - 180;
+			Position plain = new Position(lon, lat, null);
+			ReceiverPosition receiver = new ReceiverPosition(plain);
+
+			for (int i = 0; i < 2000; ++i) {
+				int nbits = i % 5 == 0 ? 12 : i % 5 == 1 ? 14 : 17;
+				boolean surface = nbits == 17 && random.nextBoolean();
+				CPREncodedPosition cpr = new CPREncodedPosition(random.nextBoolean(), random.nextInt(1 << nbits),
+						random.nextInt(1 << nbits), nbits, surface, 0L);
+				Position expected = CompactPositionReporting.decodeLocalPosition(cpr, plain);
+				Position actual = CompactPositionReporting.decodeLocalPosition(cpr, receiver);
+				assertEquals(cpr.toString(), expected.getLatitude(), actual.getLatitude(), 0);
+				assertEquals(cpr.toString(), expected.getLongitude(), actual.getLongitude(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void receiverPosition_shouldFollowChangedCoordinates() {
+		ReceiverPosition receiver = new ReceiverPosition(4.76, 52.3, null);
+		CPREncodedPosition cpr = new CPREncodedPosition(false, 93000, 51372, 17, false, 0L);
+		CompactPositionReporting.decodeLocalPosition(cpr, receiver);
+
+		receiver.setLatitude(-33.9);
+		receiver.setLongitude(18.6);
+		Position expected = CompactPositionReporting.decodeLocalPosition(cpr, new Position(18.6, -33.9, null));
+		Position actual = CompactPositionReporting.decodeLocalPosition(cpr, receiver);
+		assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+		assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+
+		// falls back to the generic algorithm for invalid coordinates
+		receiver.setLongitude(200.0);
+		expected = CompactPositionReporting.decodeLocalPosition(cpr, new Position(200.0, -33.9, null));
+		actual = CompactPositionReporting.decodeLocalPosition(cpr, receiver);
+		assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+		assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+	}
+}
@@ -0,0 +1,115 @@
+package de.serosystems.lib1090.filter;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.modes.AltitudeReply;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AddressFilterTest {
+
+	private static final String ALL_CALL = "5d506c28000000"; // 506c28
+	private static final String ALTITUDE_REPLY = "200001b4f0f71d"; // address in parity field
+
+	/**
+	 * @return operational status of 4840d6 with the invalid ADS-B version 7 which fails to decode
+	 */
+	private static byte[] invalidOpstat() {
+		byte[] frame = Tools.hexStringToByteArray("8d4840d6f8000000000000000000");
+		frame[9] = (byte) 0xE0;
+		int parity = ModeSDownlinkMsg.calcParity(frame, 0, 11);
+		frame[11] = (byte) (parity >>> 16); frame[12] = (byte) (parity >>> 8); frame[13] = (byte) parity;
+		return frame;
+	}
+
+	@Test
+	public void allowMode_shouldOnlyAcceptAddedAddresses() {
+		AddressFilter filter = new AddressFilter(AddressFilter.Mode.ALLOW).add(0x40621d);
+		assertTrue(filter.accepts(0x40621d));
+		assertFalse(filter.accepts(0x40621c));
+
+		filter.remove(0x40621d);
+		assertFalse(filter.accepts(0x40621d));
+	}
+
+	@Test
+	public void denyMode_shouldRejectAddedAddresses() {
+		AddressFilter filter = new AddressFilter(AddressFilter.Mode.DENY).add(0x40621d);
+		assertFalse(filter.accepts(0x40621d));
+		assertTrue(filter.accepts(0x40621e));
+	}
+
+	@Test
+	public void ranges_shouldIncludeBothEnds() {
+		AddressFilter filter = new AddressFilter(AddressFilter.Mode.ALLOW)
+				.addRange(0x000000, 0x000000)
+				.addRange(0xFFFFC1, 0xFFFFFF)
+				.addRange(0x3C0000, 0x3FFFFF); // Germany
+		assertTrue(filter.contains(0x000000));
+		assertFalse(filter.contains(0x000001));
+		assertFalse(filter.contains(0xFFFFC0));
+		assertTrue(filter.contains(0xFFFFC1));
+		assertTrue(filter.contains(0xFFFFFF));
+		assertFalse(filter.contains(0x3BFFFF));
+		assertTrue(filter.contains(0x3C0000));
+		assertTrue(filter.contains(0x3FFFFF));
+		assertFalse(filter.contains(0x400000));
+
+		filter.removeRange(0x3C0001, 0x3FFFFE);
+		assertTrue(filter.contains(0x3C0000));
+		assertFalse(filter.contains(0x3C0001));
+		assertFalse(filter.contains(0x3FFFFE));
+		assertTrue(filter.contains(0x3FFFFF));
+
+		filter.addRange(0x000000, 0xFFFFFF);
+		assertTrue(filter.contains(0x123456));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidRange_shouldBeRejected() {
+		new AddressFilter(AddressFilter.Mode.ALLOW).addRange(0xFFFFFF, 0x1000000);
+	}
+
+	@Test
+	public void clearAddresses_shouldBeRejectedBeforeDecoding() throws Exception {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		try {
+			decoder.decode(invalidOpstat(), 0L);
+			fail("Operational status with version 7 should not decode");
+		} catch (BadFormatException expected) {
+		}
+
+		decoder.setAddressFilter(new AddressFilter(AddressFilter.Mode.DENY).add(0x4840d6).add(0x506c28));
+		assertNull(decoder.decode(invalidOpstat(), 0L)); // DF 17 is dropped before decoding
+		assertNull(decoder.decode(ALL_CALL, 0L)); // DF 11
+
+		decoder.setAddressFilter(new AddressFilter(AddressFilter.Mode.ALLOW).add(0x506c28));
+		assertNotNull(decoder.decode(ALL_CALL, 0L));
+	}
+
+	@Test(expected = UnspecifiedFormatError.class)
+	public void df19WithoutAdsb_shouldNotBeFilteredByAddress() throws Exception {
+		// DF 19 with AF 1 does not carry an address in its first bytes
+		byte[] frame = Tools.hexStringToByteArray("9940621d58c382d690c8ac2863a7");
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		decoder.setAddressFilter(new AddressFilter(AddressFilter.Mode.DENY).add(0x40621d));
+		decoder.decode(frame, 0L);
+	}
+
+	@Test
+	public void parityAddresses_shouldBeFilteredAfterCrc() throws Exception {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		int address = decoder.decode(ALTITUDE_REPLY, 0L).getAddress().getAddress();
+
+		decoder.setAddressFilter(new AddressFilter(AddressFilter.Mode.DENY).add(address));
+		assertNull(decoder.decode(ALTITUDE_REPLY, 0L));
+
+		decoder.setAddressFilter(new AddressFilter(AddressFilter.Mode.ALLOW).add(address));
+		assertTrue(decoder.decode(ALTITUDE_REPLY, 0L) instanceof AltitudeReply);
+		assertNull(decoder.decode(Tools.hexStringToByteArray("a0001838ca3e51f0a8000047a36a"), 0L)); // DF 20
+	}
+}
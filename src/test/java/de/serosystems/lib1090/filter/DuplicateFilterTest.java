@@ -0,0 +1,57 @@
+package de.serosystems.lib1090.filter;
+
+import de.serosystems.lib1090.Tools;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTest {
+
+	private static final byte[] POSITION = Tools.hexStringToByteArray("8d40621d58c382d690c8ac2863a7");
+	private static final byte[] ALTITUDE = Tools.hexStringToByteArray("200001b4f0f71d");
+
+	@Test
+	public void duplicateWithinWindow_shouldBeSuppressed() {
+		DuplicateFilter filter = new DuplicateFilter(500L, 16);
+
+		assertFalse(filter.isDuplicate(POSITION, 1000L, 1));
+		assertFalse(filter.isDuplicate(ALTITUDE, 1010L, 2));
+		assertTrue(filter.isDuplicate(POSITION, 1100L, 2));
+		assertTrue(filter.isDuplicate(POSITION, 1200L, 3));
+
+		assertEquals(1, filter.getFirstReceiver());
+		assertEquals(1000L, filter.getFirstSeen());
+		assertEquals(3, filter.getCopies());
+		assertEquals(2, filter.getUniqueCount());
+		assertEquals(2, filter.getDuplicateCount());
+	}
+
+	@Test
+	public void frameAfterWindow_shouldNotBeSuppressed() {
+		DuplicateFilter filter = new DuplicateFilter(500L, 16);
+
+		assertFalse(filter.isDuplicate(POSITION, 1000L, 1));
+		assertFalse(filter.isDuplicate(POSITION, 1600L, 2));
+		assertEquals(2, filter.getFirstReceiver());
+		assertEquals(1, filter.size());
+	}
+
+	@Test
+	public void fullRingBuffer_shouldForgetOldestFrames() {
+		DuplicateFilter filter = new DuplicateFilter(500L, 4);
+
+		byte[] frame = ALTITUDE.clone();
+		for (int i = 0; i < 100; ++i) {
+			frame[3] = (byte) i;
+			assertFalse(filter.isDuplicate(frame, 1000L, 0));
+		}
+		assertEquals(4, filter.size());
+
+		// the most recent frames are still known, older ones have been evicted
+		assertTrue(filter.isDuplicate(frame, 1000L, 0));
+		frame[3] = (byte) 96;
+		assertTrue(filter.isDuplicate(frame, 1000L, 0));
+		frame[3] = (byte) 95;
+		assertFalse(filter.isDuplicate(frame, 1000L, 0));
+	}
+}
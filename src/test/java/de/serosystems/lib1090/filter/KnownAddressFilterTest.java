@@ -0,0 +1,105 @@
+package de.serosystems.lib1090.filter;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.modes.AltitudeReply;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KnownAddressFilterTest {
+
+	private static final String ALTITUDE_REPLY = "200001b4f0f71d"; // address in parity field
+
+	/**
+	 * @return all-call reply of the address with interrogator code 0
+	 */
+	private static byte[] allCall(int address) {
+		byte[] frame = {0x5d, (byte) (address >>> 16), (byte) (address >>> 8), (byte) address, 0, 0, 0};
+		int parity = ModeSDownlinkMsg.calcParity(frame, 0, 4);
+		frame[4] = (byte) (parity >>> 16); frame[5] = (byte) (parity >>> 8); frame[6] = (byte) parity;
+		return frame;
+	}
+
+	@Test
+	public void confirmedAddresses_shouldBeKnown() {
+		KnownAddressFilter filter = new KnownAddressFilter(1000L);
+		for (int i = 0; i < 10000; ++i)
+			filter.confirm(i * 1663, 0L);
+
+		assertEquals(10000, filter.size());
+		for (int i = 0; i < 10000; ++i)
+			assertTrue(filter.isKnown(i * 1663, 1000L));
+		assertFalse(filter.isKnown(1, 0L));
+		assertFalse(filter.isKnown(0, 1001L));
+
+		// confirming again extends the timeout
+		filter.confirm(0, 900L);
+		assertTrue(filter.isKnown(0, 1900L));
+		assertEquals(10000, filter.size());
+	}
+
+	@Test
+	public void expiredAddresses_shouldBeDroppedWhenTableFillsUp() {
+		KnownAddressFilter filter = new KnownAddressFilter(1000L);
+		// fill initial table up to half its capacity
+		for (int i = 0; i < 2048; ++i)
+			filter.confirm(i, 0L);
+		assertEquals(2048, filter.size());
+
+		// next insertion purges the expired entries instead of growing
+		filter.confirm(0x40621d, 2000L);
+		assertEquals(1, filter.size());
+		assertTrue(filter.isKnown(0x40621d, 2000L));
+		assertFalse(filter.isKnown(5, 2000L));
+
+		filter.confirm(0x40621e, 2500L);
+		filter.purge(3200L);
+		assertEquals(1, filter.size());
+		assertTrue(filter.isKnown(0x40621e, 3200L));
+	}
+
+	@Test
+	public void rejectionRate_shouldCountAcceptedAndRejected() {
+		KnownAddressFilter filter = new KnownAddressFilter();
+		assertEquals(0.0, filter.getRejectionRate(), 0);
+
+		filter.confirm(0x40621d, 0L);
+		assertTrue(filter.accepts(0x40621d, 10L));
+		assertFalse(filter.accepts(0x123456, 10L));
+		assertFalse(filter.accepts(0x654321, 10L));
+		assertFalse(filter.accepts(0x40621d, 60_001L));
+
+		assertEquals(1, filter.getAcceptedCount());
+		assertEquals(3, filter.getRejectedCount());
+		assertEquals(0.75, filter.getRejectionRate(), 1e-9);
+
+		filter.resetStatistics();
+		assertEquals(0.0, filter.getRejectionRate(), 0);
+	}
+
+	@Test
+	public void addressParityReplies_shouldRequireConfirmedAddress() throws Exception {
+		int address = new StatefulModeSDecoder().decode(ALTITUDE_REPLY, 0L).getAddress().getAddress();
+
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		decoder.setKnownAddressFilter(new KnownAddressFilter(60_000L));
+
+		// never confirmed
+		assertNull(decoder.decode(ALTITUDE_REPLY, 0L));
+
+		// all-call with bit error (outside the interrogator code) does not confirm the address
+		byte[] corrupted = allCall(address);
+		corrupted[4] ^= 0x01;
+		assertNotNull(decoder.decode(corrupted, 500L));
+		assertNull(decoder.decode(ALTITUDE_REPLY, 600L));
+
+		// clean all-call confirms it
+		assertNotNull(decoder.decode(allCall(address), 1000L));
+		assertTrue(decoder.decode(ALTITUDE_REPLY, 2000L) instanceof AltitudeReply);
+
+		// forgotten after the timeout
+		assertNull(decoder.decode(ALTITUDE_REPLY, 61_001L));
+		assertEquals(3, decoder.getKnownAddressFilter().getRejectedCount());
+	}
+}
@@ -0,0 +1,109 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BeastReaderTest {
+
+	private static final byte[] POSITION = Tools.hexStringToByteArray("8d40621d58c382d690c8ac2863a7");
+	private static final byte[] ALTITUDE = Tools.hexStringToByteArray("200001b4f0f71d");
+
+	private static void record(ByteArrayOutputStream out, char type, long timestamp, int signal, byte[] frame) {
+		out.write(0x1a);
+		out.write(type);
+		byte[] body = new byte[7 + frame.length];
+		for (int i = 0; i < 6; ++i)
+			body[i] = (byte) (timestamp >>> (40 - 8 * i));
+		body[6] = (byte) signal;
+		System.arraycopy(frame, 0, body, 7, frame.length);
+		for (byte b : body) {
+			out.write(b);
+			if (b == 0x1a) out.write(b);
+		}
+	}
+
+	private static byte[] stream() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x42); // garbage before first record
+		record(out, '2', 0x1a1a00001aL, 0x1a, ALTITUDE);
+		record(out, '1', 1L, 10, new byte[] {0x12, 0x34});
+		record(out, '3', 0xFFFFFFFFFFFFL, 200, POSITION);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void escapedRecords_shouldBeUnescaped() {
+		List<RawFrame> frames = new ArrayList<>();
+		BeastReader reader = new BeastReader();
+		byte[] data = stream();
+		reader.feed(data, 0, data.length, frame -> {
+			RawFrame copy = new RawFrame();
+			copy.set(frame.toByteArray(), 0, frame.getLength(), frame.getTimestamp(), frame.getSignalLevel(), -1);
+			frames.add(copy);
+		});
+
+		assertEquals(2, frames.size());
+		assertArrayEquals(ALTITUDE, frames.get(0).toByteArray());
+		assertArrayEquals(POSITION, frames.get(1).toByteArray());
+		assertEquals(0x1a1a00001aL, frames.get(0).getTimestamp());
+		assertEquals(0x1a, frames.get(0).getSignalLevel());
+		assertEquals(0xFFFFFFFFFFFFL, frames.get(1).getTimestamp());
+		assertEquals(200, frames.get(1).getSignalLevel());
+		assertEquals(1, reader.getModeACCount());
+		assertEquals(0, reader.getFramingErrors());
+	}
+
+	@Test
+	public void splitRecords_shouldBeReassembled() {
+		byte[] data = stream();
+		for (int split = 0; split <= data.length; ++split) {
+			List<byte[]> frames = new ArrayList<>();
+			BeastReader reader = new BeastReader();
+			reader.feed(data, 0, split, frame -> frames.add(frame.toByteArray()));
+			reader.feed(data, split, data.length - split, frame -> frames.add(frame.toByteArray()));
+
+			assertEquals("split at " + split, 2, frames.size());
+			assertArrayEquals(ALTITUDE, frames.get(0));
+			assertArrayEquals(POSITION, frames.get(1));
+		}
+	}
+
+	@Test
+	public void truncatedRecord_shouldBeSkipped() {
+		byte[] data = stream();
+		byte[] truncated = new byte[data.length - 5];
+		// cut the first record short
+		System.arraycopy(data, 0, truncated, 0, 10);
+		System.arraycopy(data, 15, truncated, 10, data.length - 15);
+
+		List<byte[]> frames = new ArrayList<>();
+		BeastReader reader = new BeastReader();
+		reader.feed(truncated, 0, truncated.length, frame -> frames.add(frame.toByteArray()));
+
+		assertEquals(1, frames.size());
+		assertArrayEquals(POSITION, frames.get(0));
+		assertEquals(1, reader.getFramingErrors());
+	}
+
+	@Test
+	public void frames_shouldBeDecodedWithoutCopy() {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		List<ModeSDownlinkMsg> msgs = new ArrayList<>();
+		byte[] data = stream();
+		new BeastReader().feed(data, 0, data.length, frame -> msgs.add(decoder.decode(frame.getBuffer(),
+				frame.getOffset(), frame.getLength(), frame.getTimestamp() / BeastReader.TICKS_PER_MILLISECOND)));
+
+		assertEquals(2, msgs.size());
+		assertEquals(ModeSDownlinkMsg.subtype.ALTITUDE_REPLY, msgs.get(0).getType());
+		assertEquals(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V0, msgs.get(1).getType());
+		assertEquals(0x40621d, msgs.get(1).getAddress().getAddress());
+	}
+}
@@ -0,0 +1,85 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Tools;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvReaderTest {
+
+	private static final String POSITION = "8d40621d58c382d690c8ac2863a7";
+	private static final String ALTITUDE = "200001b4f0f71d";
+
+	@Test
+	public void layouts_shouldBeParsed() {
+		String input = "1598964512.123," + POSITION + "\n" +
+				"# comment\r\n" +
+				"\n" +
+				"2,52.5,-13.25," + ALTITUDE + "\r\n" +
+				"3.5,4711,-1.5,100.125," + POSITION + "\n" +
+				"4,invalid\n" +
+				"5," + ALTITUDE; // no line terminator
+		byte[] data = input.getBytes(StandardCharsets.US_ASCII);
+
+		CsvReader reader = new CsvReader();
+		List<String> frames = new ArrayList<>();
+		List<Long> timestamps = new ArrayList<>();
+		List<double[]> positions = new ArrayList<>();
+		List<Integer> receivers = new ArrayList<>();
+		FrameHandler handler = frame -> {
+			frames.add(Tools.toHexString(frame.toByteArray()));
+			timestamps.add(frame.getTimestamp());
+			receivers.add(frame.getReceiver());
+			positions.add(reader.hasReceiverPosition() ?
+					new double[] {reader.getReceiverLatitude(), reader.getReceiverLongitude()} : null);
+		};
+
+		// feed in small chunks to split lines
+		for (int i = 0; i < data.length; i += 7)
+			reader.feed(data, i, Math.min(7, data.length - i), handler);
+		reader.flush(handler);
+
+		assertEquals(4, frames.size());
+		assertEquals(1, reader.getFramingErrors());
+
+		assertEquals(POSITION, frames.get(0));
+		assertEquals(1598964512123L, (long) timestamps.get(0));
+		assertNull(positions.get(0));
+
+		assertEquals(ALTITUDE, frames.get(1));
+		assertEquals(2000L, (long) timestamps.get(1));
+		assertArrayEquals(new double[] {52.5, -13.25}, positions.get(1), 1e-12);
+
+		assertEquals(3500L, (long) timestamps.get(2));
+		assertEquals(4711, (int) receivers.get(2));
+		assertArrayEquals(new double[] {-1.5, 100.125}, positions.get(2), 1e-12);
+
+		assertEquals(ALTITUDE, frames.get(3));
+		assertEquals(5000L, (long) timestamps.get(3));
+	}
+
+	@Test
+	public void avrLines_shouldBeParsed() {
+		byte[] data = ("*" + POSITION + ";\n@00000000012c" + ALTITUDE + ";\n*1234;\n")
+				.getBytes(StandardCharsets.US_ASCII);
+
+		AvrReader reader = new AvrReader();
+		List<String> frames = new ArrayList<>();
+		List<Long> timestamps = new ArrayList<>();
+		reader.feed(data, 0, data.length, frame -> {
+			frames.add(Tools.toHexString(frame.toByteArray()));
+			timestamps.add(frame.getTimestamp());
+		});
+
+		assertEquals(2, frames.size());
+		assertEquals(POSITION, frames.get(0));
+		assertEquals(-1L, (long) timestamps.get(0));
+		assertEquals(ALTITUDE, frames.get(1));
+		assertEquals(300L, (long) timestamps.get(1));
+		assertEquals(1, reader.getFramingErrors());
+	}
+}
@@ -0,0 +1,69 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.modes.IdentifyReply;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonEncoderTest {
+
+	private static final long TIMESTAMP = 1564654542123L;
+
+	private final StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+	private final JsonEncoder encoder = new JsonEncoder();
+
+	private String encode(String frame, Position position) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		encoder.encode(decoder.decode(frame, TIMESTAMP), TIMESTAMP, position, sb);
+		return sb.toString();
+	}
+
+	@Test
+	public void identification_shouldContainCallsign() throws Exception {
+		assertEquals("{\"type\":\"ADSB_IDENTIFICATION\",\"timestamp\":1564654542123,\"df\":17,\"address\":\"4840d6\"," +
+						"\"address_type\":\"ICAO24\",\"ftc\":4,\"callsign\":\"KLM1023\",\"category\":\"A0\"}\n",
+				encode("8d4840d6202cc371c32ce0576098", null));
+	}
+
+	@Test
+	public void position_shouldContainDecodedPosition() throws Exception {
+		String json = encode("8d40621d58c382d690c8ac2863a7", new Position(3.919373, 52.2572021484375, null));
+		assertTrue(json, json.contains(",\"altitude\":38000,\"altitude_type\":\"BAROMETRIC_ALTITUDE\"," +
+				"\"latitude\":52.257202,\"longitude\":3.919373,"));
+		assertTrue(json.endsWith("}\n"));
+
+		// position unknown
+		json = encode("8d40621d58c382d690c8ac2863a7", null);
+		assertFalse(json.contains("latitude"));
+	}
+
+	@Test
+	public void velocity_shouldContainVelocity() throws Exception {
+		String json = encode("8d485020994409940838175b284f", null);
+		assertTrue(json, json.contains(",\"velocity\":159.2"));
+		assertTrue(json, json.contains(",\"vertical_rate\":-832,"));
+	}
+
+	@Test
+	public void identifyReply_shouldContainSquawk() throws Exception {
+		String frame = "28001a1f2c1d77";
+		IdentifyReply reply = (IdentifyReply) decoder.decode(frame, TIMESTAMP);
+		assertTrue(encode(frame, null).contains(",\"squawk\":\"" + reply.getIdentity() + "\"}"));
+	}
+
+	@Test
+	public void byteBuffer_shouldContainSameObject() throws Exception {
+		ModeSDownlinkMsg msg = decoder.decode("8d4840d6202cc371c32ce0576098", TIMESTAMP);
+		ByteBuffer buffer = ByteBuffer.allocate(JsonEncoder.MAX_LENGTH);
+		int length = encoder.encode(msg, TIMESTAMP, null, buffer);
+		assertEquals(length, buffer.position());
+		assertEquals(encode("8d4840d6202cc371c32ce0576098", null),
+				new String(buffer.array(), 0, length, StandardCharsets.US_ASCII));
+	}
+}
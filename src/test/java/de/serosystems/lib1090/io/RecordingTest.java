@@ -0,0 +1,195 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class RecordingTest {
+
+	private static final byte[] POSITION = Tools.hexStringToByteArray("8d40621d58c382d690c8ac2863a7");
+	private static final byte[] ALTITUDE = Tools.hexStringToByteArray("200001b4f0f71d");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path record(boolean close) throws IOException {
+		Path path = folder.newFile().toPath();
+		RecordingWriter writer = new RecordingWriter(FileChannel.open(path, StandardOpenOption.WRITE), 1024, 6);
+		for (int i = 0; i < 1000; ++i) {
+			byte[] frame = i % 2 == 0 ? POSITION : ALTITUDE;
+			writer.write(frame, 0, frame.length, 1_000_000L + i * 10L, i % 3 - 1);
+		}
+		if (close) writer.close();
+		else writer.flush();
+		return path;
+	}
+
+	@Test
+	public void recording_shouldContainAllFrames() throws IOException {
+		Path path = record(true);
+		assertTrue(Files.size(path) < 1000 * 7);
+
+		List<Long> timestamps = new ArrayList<>();
+		try (RecordingReader reader = new RecordingReader(path)) {
+			assertTrue(reader.getBlockCount() > 1);
+			assertEquals(1000, reader.getFrameCount());
+			assertEquals(1_000_000L, reader.getFirstTimestamp());
+			assertEquals(1_009_990L, reader.getLastTimestamp());
+
+			reader.read(frame -> {
+				int i = timestamps.size();
+				assertArrayEquals(i % 2 == 0 ? POSITION : ALTITUDE, frame.toByteArray());
+				assertEquals(i % 3 - 1, frame.getReceiver());
+				timestamps.add(frame.getTimestamp());
+			});
+		}
+
+		assertEquals(1000, timestamps.size());
+		for (int i = 0; i < 1000; ++i)
+			assertEquals(1_000_000L + i * 10L, (long) timestamps.get(i));
+	}
+
+	@Test
+	public void receiverDeltas_shouldCoverFullRange() throws IOException {
+		int[] receivers = {Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 42, 42};
+		Path path = folder.newFile().toPath();
+		try (RecordingWriter writer = new RecordingWriter(FileChannel.open(path, StandardOpenOption.WRITE))) {
+			for (int i = 0; i < receivers.length; ++i)
+				writer.write(POSITION, 0, POSITION.length, i, receivers[i]);
+		}
+
+		List<Integer> read = new ArrayList<>();
+		try (RecordingReader reader = new RecordingReader(path)) {
+			reader.read(frame -> read.add(frame.getReceiver()));
+		}
+
+		assertEquals(receivers.length, read.size());
+		for (int i = 0; i < receivers.length; ++i)
+			assertEquals(receivers[i], (int) read.get(i));
+	}
+
+	@Test
+	public void timeRange_shouldBeDecoded() throws IOException {
+		List<ModeSDownlinkMsg> msgs = new ArrayList<>();
+		try (RecordingReader reader = new RecordingReader(record(true))) {
+			reader.decode(new StatefulModeSDecoder(), 1_005_000L, 1_005_100L, msgs::add);
+		}
+
+		assertEquals(10, msgs.size());
+		assertEquals(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V0, msgs.get(0).getType());
+		assertEquals(ModeSDownlinkMsg.subtype.ALTITUDE_REPLY, msgs.get(1).getType());
+	}
+
+	@Test
+	public void unclosedRecording_shouldBeReadable() throws IOException {
+		try (RecordingReader reader = new RecordingReader(record(false))) {
+			assertEquals(1000, reader.getFrameCount());
+			List<RawFrame> frames = new ArrayList<>();
+			reader.read(1_009_990L, Long.MAX_VALUE, frames::add);
+			assertEquals(1, frames.size());
+		}
+	}
+
+	@Test
+	public void mappedPartitions_shouldCoverAllFrames() throws IOException, InterruptedException {
+		Path path = folder.newFile().toPath();
+		byte[][] frames = {
+				POSITION,
+				ALTITUDE,
+				Tools.hexStringToByteArray("8d4840d6202cc371c32ce0576098"),
+				Tools.hexStringToByteArray("a0001838ca3e51f0a8000047a36a")
+		};
+		try (RecordingWriter writer = new RecordingWriter(FileChannel.open(path, StandardOpenOption.WRITE), 1024, 6)) {
+			for (int i = 0; i < 2000; ++i)
+				writer.write(frames[i % 4], 0, frames[i % 4].length, i, 0);
+		}
+
+		try (MappedRecordingReader reader = new MappedRecordingReader(path, 1)) {
+			assertEquals(reader.getBlockCount(), reader.getWindowCount());
+			assertTrue(reader.getBlockCount() > 1);
+
+			List<RawFrame> all = new ArrayList<>();
+			reader.read(all::add);
+			assertEquals(2000, all.size());
+
+			int total = 0;
+			for (int p = 0; p < 3; ++p) {
+				List<byte[]> partition = new ArrayList<>();
+				reader.readPartition(p, 3, Long.MIN_VALUE, Long.MAX_VALUE, f -> partition.add(f.toByteArray()));
+				for (byte[] f : partition)
+					assertEquals(p, MappedRecordingReader.partition(f, 0, f.length, 3));
+				total += partition.size();
+			}
+			assertEquals(2000, total);
+
+			List<ModeSDownlinkMsg> msgs = Collections.synchronizedList(new ArrayList<>());
+			reader.decodeParallel(3, StatefulModeSDecoder::new, msgs::add);
+			assertEquals(2000, msgs.size());
+		}
+	}
+
+	@Test
+	public void parallelDecoding_shouldKeepOrderPerAircraft() throws IOException, InterruptedException {
+		Path path = folder.newFile().toPath();
+		byte[][] frames = {POSITION, ALTITUDE, Tools.hexStringToByteArray("8d4840d6202cc371c32ce0576098")};
+		try (RecordingWriter writer = new RecordingWriter(path)) {
+			for (int i = 0; i < 30000; ++i)
+				writer.write(frames[i % 3], 0, frames[i % 3].length, i, 0);
+		}
+
+		Map<Integer, List<Long>> timestamps = new ConcurrentHashMap<>();
+		try (MappedRecordingReader reader = new MappedRecordingReader(path)) {
+			// record the order in which each decoder sees the frames of an aircraft
+			reader.decodeParallel(2, () -> new StatefulModeSDecoder() {
+				@Override
+				public ModeSDownlinkMsg decode(byte[] buffer, int offset, int length, long timestamp)
+						throws BadFormatException, UnspecifiedFormatError {
+					ModeSDownlinkMsg msg = super.decode(buffer, offset, length, timestamp);
+					timestamps.computeIfAbsent(msg.getAddress().getAddress(), a -> new ArrayList<>()).add(timestamp);
+					return msg;
+				}
+			}, msg -> {});
+			assertEquals(0, reader.getDecodingErrors());
+		}
+
+		assertEquals(3, timestamps.size());
+		for (List<Long> list : timestamps.values()) {
+			assertEquals(10000, list.size());
+			for (int i = 1; i < list.size(); ++i)
+				assertTrue(list.get(i - 1) < list.get(i));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failingConsumer_shouldStopParallelDecoding() throws IOException, InterruptedException {
+		Path path = folder.newFile().toPath();
+		try (RecordingWriter writer = new RecordingWriter(path)) {
+			for (int i = 0; i < 100000; ++i)
+				writer.write(POSITION, 0, POSITION.length, i, 0);
+		}
+
+		try (MappedRecordingReader reader = new MappedRecordingReader(path)) {
+			reader.decodeParallel(2, StatefulModeSDecoder::new, msg -> {
+				throw new IllegalStateException();
+			});
+		}
+	}
+}
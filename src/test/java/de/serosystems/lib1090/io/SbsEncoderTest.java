@@ -0,0 +1,102 @@
+package de.serosystems.lib1090.io;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.modes.AltitudeReply;
+import de.serosystems.lib1090.msgs.modes.IdentifyReply;
+import de.serosystems.lib1090.msgs.tisb.ManagementMessage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SbsEncoderTest {
+
+	private static final long TIMESTAMP = 1564654542123L; // 2019-08-01 10:15:42.123 UTC
+
+	private final StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+	private final SbsEncoder encoder = new SbsEncoder();
+
+	private String encode(String frame, Position position) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		encoder.encode(decoder.decode(frame, TIMESTAMP), TIMESTAMP, position, sb);
+		return sb.toString();
+	}
+
+	@Test
+	public void messages_shouldBeMappedToSbsLines() throws Exception {
+		assertEquals("MSG,1,1,1,4840D6,1,2019/08/01,10:15:42.123,2019/08/01,10:15:42.123,KLM1023,,,,,,,,,,,\r\n",
+				encode("8d4840d6202cc371c32ce0576098", null));
+		assertEquals("MSG,3,1,1,40621D,1,2019/08/01,10:15:42.123,2019/08/01,10:15:42.123,,38000,,,52.25720,3.91937,,,0,0,0,0\r\n",
+				encode("8d40621d58c382d690c8ac2863a7", new Position(3.919373, 52.2572021484375, null)));
+		assertEquals("MSG,4,1,1,485020,1,2019/08/01,10:15:42.123,2019/08/01,10:15:42.123,,,159,183,,,-832,,,,,\r\n",
+				encode("8d485020994409940838175b284f", null));
+		AltitudeReply reply = (AltitudeReply) decoder.decode("200001b4f0f71d", TIMESTAMP);
+		assertEquals("MSG,5,1,1," + reply.getAddress().getHexAddress().toUpperCase() +
+						",1,2019/08/01,10:15:42.123,2019/08/01,10:15:42.123,," + reply.getAltitude() + ",,,,,,,0,,0,0\r\n",
+				encode("200001b4f0f71d", null));
+	}
+
+	@Test
+	public void squawk_shouldMatchIdentifyReply() throws Exception {
+		String frame = "28001a1f2c1d77";
+		IdentifyReply reply = (IdentifyReply) decoder.decode(frame, TIMESTAMP);
+		String line = encode(frame, null);
+		assertEquals(reply.getIdentity(), line.split(",")[17]);
+	}
+
+	@Test
+	public void byteBuffer_shouldContainSameLine() throws Exception {
+		ModeSDownlinkMsg msg = decoder.decode("8d4840d6202cc371c32ce0576098", TIMESTAMP);
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		int length = encoder.encode(msg, TIMESTAMP, null, buffer);
+		assertEquals(length, buffer.position());
+		assertEquals(encode("8d4840d6202cc371c32ce0576098", null),
+				new String(buffer.array(), 0, length, StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void managementMessage_shouldNotBeEncoded() throws Exception {
+		// DF 18 CF 4 frame carrying the ME field of an identification. ModeSDownlinkMsg rejects such frames
+		// but the decoder maps them to ManagementMessage with type TISB_IDENTIFICATION.
+		byte[] frame = Tools.hexStringToByteArray("8d4840d6202cc371c32ce0576098");
+		frame[0] = (byte) (18 << 3 | 4);
+		ManagementMessage msg = new ManagementMessage() {
+			@Override
+			public subtype getType() {
+				return subtype.TISB_IDENTIFICATION;
+			}
+
+			@Override
+			public byte getDownlinkFormat() {
+				return 18;
+			}
+
+			@Override
+			public byte getFirstField() {
+				return 4;
+			}
+
+			@Override
+			public QualifiedAddress getAddress() {
+				return new QualifiedAddress();
+			}
+
+			@Override
+			public byte[] getMessage() {
+				return Arrays.copyOfRange(frame, 4, 11);
+			}
+		};
+
+		StringBuilder sb = new StringBuilder();
+		assertFalse(encoder.encode(msg, TIMESTAMP, null, sb));
+		assertEquals("", sb.toString());
+		assertEquals(0, encoder.encode(msg, TIMESTAMP, null, ByteBuffer.allocate(1024)));
+	}
+}
@@ -0,0 +1,91 @@
+package de.serosystems.lib1090.msgs;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.exceptions.BadFormatException;
+import de.serosystems.lib1090.msgs.adsb.AirbornePositionV2Msg;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MessageCodecTest {
+
+	private static final String[] FRAMES = {
+			"8d40621d58c382d690c8ac2863a7", // airborne position
+			"8c4841753aab238733c8cd4020b1", // surface position
+			"8d485020994409940838175b284f", // velocity
+			"8da05f219b06b6af189400cbc33f", // airspeed
+			"8d4840d6202cc371c32ce0576098", // identification
+			OperationalStatusMsgTest.A_OPSTAT_V2,
+			"8da08f94ea1b785e8f3c088ab467", // target state and status
+			"5d506c28000000", // all-call reply
+			"02e197bf5db8dd", // short ACAS
+			"200001b4f0f71d", // altitude reply
+			"28001a1f2c1d77", // identify reply
+			"a0001838ca3e51f0a8000047a36a", // Comm-B altitude reply
+			"a800199a8bb80030a8000065c5fa", // Comm-B identify reply
+	};
+
+	private final MessageCodec codec = new MessageCodec();
+
+	@Test
+	public void allFrames_shouldRoundTrip() throws Exception {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		ByteBuffer buffer = ByteBuffer.allocate(FRAMES.length * MessageCodec.MAX_LENGTH);
+
+		ModeSDownlinkMsg[] messages = new ModeSDownlinkMsg[FRAMES.length];
+		for (int i = 0; i < FRAMES.length; ++i) {
+			messages[i] = decoder.decode(FRAMES[i], 1564654542123L + i);
+			codec.write(messages[i], buffer);
+		}
+
+		buffer.flip();
+		for (ModeSDownlinkMsg msg : messages) {
+			ModeSDownlinkMsg copy = codec.read(buffer);
+			assertEquals(msg.getClass(), copy.getClass());
+			assertEquals(msg.toString(), copy.toString());
+		}
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void javaSerialization_shouldKeepDecoderState() throws Exception {
+		// make aircraft 40621d an ADS-B version 2 transmitter with NIC supplement A
+		byte[] status = Tools.hexStringToByteArray(OperationalStatusMsgTest.A_OPSTAT_V2);
+		status[1] = 0x40; status[2] = 0x62; status[3] = 0x1d;
+		status[9] |= 0x10;
+		int parity = ModeSDownlinkMsg.calcParity(status, 0, 11);
+		status[11] = (byte) (parity >>> 16); status[12] = (byte) (parity >>> 8); status[13] = (byte) parity;
+
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		decoder.decode(status, 0L);
+		AirbornePositionV2Msg position = (AirbornePositionV2Msg) decoder.decode("8d40621d58c382d690c8ac2863a7", 42L);
+		assertTrue(position.hasNICSupplementA());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(position);
+		}
+		assertTrue("Serialized size " + bytes.size(), bytes.size() < 100);
+
+		Object copy;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = in.readObject();
+		}
+		assertTrue(copy instanceof AirbornePositionV2Msg);
+		assertTrue(((AirbornePositionV2Msg) copy).hasNICSupplementA());
+		assertEquals(position.getNIC(), ((AirbornePositionV2Msg) copy).getNIC());
+		assertEquals(Long.valueOf(42L), ((AirbornePositionV2Msg) copy).getCPREncodedPosition().getTimestamp());
+	}
+
+	@Test(expected = BadFormatException.class)
+	public void unknownVersion_shouldBeRejected() throws Exception {
+		codec.read(ByteBuffer.wrap(new byte[] {(byte) (MessageCodec.VERSION + 1), 0, 0x20, 0, 0, 0, 0, 0, 0}));
+	}
+}
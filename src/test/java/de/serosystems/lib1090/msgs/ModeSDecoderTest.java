@@ -1,12 +1,16 @@
 package de.serosystems.lib1090.msgs;
 
 import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
 import de.serosystems.lib1090.exceptions.BadFormatException;
 import de.serosystems.lib1090.exceptions.UnspecifiedFormatError;
+import de.serosystems.lib1090.msgs.adsb.AirbornePositionV2Msg;
 import de.serosystems.lib1090.msgs.adsb.TargetStateAndStatusMsg;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.EnumSet;
+
 import static org.junit.Assert.*;
 
 
@@ -59,4 +63,66 @@ public class ModeSDecoderTest {
 		assertFalse(tss.hasSelectedHeadingInfo());
 	}
 
+	@Test
+	public void maskedOpstat_shouldStillTrackVersion() throws UnspecifiedFormatError, BadFormatException {
+		decoder.setDecodeMask(EnumSet.of(ModeSDownlinkMsg.subtype.ADSB_TARGET_STATE_AND_STATUS));
+
+		// operational status is masked but must still tell the decoder that the aircraft uses ADS-B v2
+		assertNull(decoder.decode(OperationalStatusMsgTest.A_OPSTAT_V2, 0L));
+
+		final ModeSDownlinkMsg reply = decoder.decode(TargetStateAndStatusMsgTest.TSS_WITH_ME11_BIT_SET, 0L);
+		assertEquals(ModeSDownlinkMsg.subtype.ADSB_TARGET_STATE_AND_STATUS, reply.getType());
+	}
+
+	@Test
+	public void maskedOpstat_shouldStillSelectPositionVersion() throws UnspecifiedFormatError, BadFormatException {
+		decoder.setDecodeMask(EnumSet.of(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V2));
+
+		// operational status of 40621d with ADS-B version 2
+		byte[] status = Tools.hexStringToByteArray(OperationalStatusMsgTest.A_OPSTAT_V2);
+		status[1] = 0x40; status[2] = 0x62; status[3] = 0x1d;
+		int parity = ModeSDownlinkMsg.calcParity(status, 0, 11);
+		status[11] = (byte) (parity >>> 16); status[12] = (byte) (parity >>> 8); status[13] = (byte) parity;
+		assertNull(decoder.decode(status, 0L));
+
+		assertTrue(decoder.decode("8d40621d58c382d690c8ac2863a7", 1L) instanceof AirbornePositionV2Msg);
+	}
+
+	@Test
+	public void maskedOpstatWithUnknownSubtype_shouldStillSelectPositionVersion() throws UnspecifiedFormatError, BadFormatException {
+		decoder.setDecodeMask(EnumSet.of(ModeSDownlinkMsg.subtype.ADSB_AIRBORN_POSITION_V2));
+
+		// operational status of 40621d with ADS-B version 2 and reserved subtype 2
+		byte[] status = Tools.hexStringToByteArray(OperationalStatusMsgTest.A_OPSTAT_V2);
+		status[1] = 0x40; status[2] = 0x62; status[3] = 0x1d;
+		status[4] = (byte) (31 << 3 | 2);
+		int parity = ModeSDownlinkMsg.calcParity(status, 0, 11);
+		status[11] = (byte) (parity >>> 16); status[12] = (byte) (parity >>> 8); status[13] = (byte) parity;
+		assertNull(decoder.decode(status, 0L));
+
+		assertTrue(decoder.decode("8d40621d58c382d690c8ac2863a7", 1L) instanceof AirbornePositionV2Msg);
+	}
+
+	@Test
+	public void maskedPositionAndVelocity_shouldNotBeDecoded() throws UnspecifiedFormatError, BadFormatException {
+		String[] frames = {
+				"8d40621d58c382d690c8ac2863a7", // airborne position
+				"8c4841753aab238733c8cd4020b1", // surface position
+				"8d485020994409940838175b284f", // velocity
+				"8da05f219b06b6af189400cbc33f", // airspeed
+		};
+		decoder.setDecodeMask(EnumSet.of(ModeSDownlinkMsg.subtype.ADSB_IDENTIFICATION));
+		StatefulModeSDecoder unmasked = new StatefulModeSDecoder();
+
+		for (String frame : frames) {
+			assertNull(frame, decoder.decode(frame, 0L));
+
+			// difference between geometric and barometric altitude is still tracked
+			ModeSDownlinkMsg msg = unmasked.decode(frame, 0L);
+			assertNotNull(msg);
+			assertEquals(frame, unmasked.getGeoMinusBaro(msg), decoder.getGeoMinusBaro(msg));
+		}
+		assertNotNull(decoder.getGeoMinusBaro(unmasked.decode(frames[2], 0L)));
+		assertNotNull(decoder.getGeoMinusBaro(unmasked.decode(frames[3], 0L)));
+	}
 }
@@ -0,0 +1,151 @@
+package de.serosystems.lib1090.net;
+
+import de.serosystems.lib1090.io.AvrReader;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class FeedManagerTest {
+
+	private static final byte[] LINE = "*8d4840d6202cc371c32ce0576098;\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final List<FakeReceiver> receivers = new ArrayList<>();
+	private FeedManager manager;
+
+	/**
+	 * In-process receiver which writes a number of AVR lines to each client
+	 */
+	private static class FakeReceiver implements Runnable {
+		private final ServerSocket server;
+		private final int framesPerConnection;
+		private final boolean closeAfterWriting;
+		private final Thread thread;
+
+		FakeReceiver(int framesPerConnection, boolean closeAfterWriting) throws IOException {
+			this.server = new ServerSocket(0);
+			this.framesPerConnection = framesPerConnection;
+			this.closeAfterWriting = closeAfterWriting;
+			this.thread = new Thread(this, "fake-receiver");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			while (!server.isClosed()) {
+				try (Socket client = server.accept()) {
+					OutputStream out = client.getOutputStream();
+					for (int i = 0; i < framesPerConnection; ++i)
+						out.write(LINE);
+					out.flush();
+					if (!closeAfterWriting) client.getInputStream().read(); // until client disconnects
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+	}
+
+	private FakeReceiver receiver(int frames, boolean close) throws IOException {
+		FakeReceiver receiver = new FakeReceiver(frames, close);
+		receivers.add(receiver);
+		return receiver;
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (manager != null) manager.close();
+		for (FakeReceiver receiver : receivers)
+			receiver.close();
+	}
+
+	/**
+	 * Drains the queue until the condition is met or a timeout of 10 s has elapsed
+	 * @return number of drained frames
+	 */
+	private static int drainUntil(BoundedFrameQueue queue, int[] perFeed, BooleanSupplier done) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000L;
+		int[] count = {0};
+		while (!done.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			queue.drain(frame -> {
+				++count[0];
+				++perFeed[frame.getReceiver()];
+				assertEquals(14, frame.getLength());
+			}, 100, 10, TimeUnit.MILLISECONDS);
+		}
+		return count[0];
+	}
+
+	@Test
+	public void framesOfAllFeeds_shouldReachQueue() throws Exception {
+		BoundedFrameQueue queue = new BoundedFrameQueue(1024);
+		manager = new FeedManager(queue);
+		Feed a = manager.addFeed("localhost", receiver(500, false).getPort(), new AvrReader());
+		Feed b = manager.addFeed("localhost", receiver(300, false).getPort(), new AvrReader());
+		manager.start();
+
+		int[] perFeed = new int[2];
+		drainUntil(queue, perFeed, () -> perFeed[0] + perFeed[1] == 800);
+		assertEquals(500, perFeed[a.getId()]);
+		assertEquals(300, perFeed[b.getId()]);
+		assertEquals(Feed.State.CONNECTED, a.getState());
+		assertEquals(500L * LINE.length, a.getBytesRead());
+	}
+
+	@Test
+	public void closedConnection_shouldBeReestablished() throws Exception {
+		BoundedFrameQueue queue = new BoundedFrameQueue(1024);
+		manager = new FeedManager(queue);
+		manager.setReconnectDelay(10, 100);
+		Feed feed = manager.addFeed("localhost", receiver(10, true).getPort(), new AvrReader());
+		manager.start();
+
+		int[] perFeed = new int[1];
+		drainUntil(queue, perFeed, () -> perFeed[0] >= 30);
+		assertTrue(perFeed[0] >= 30);
+		assertTrue(feed.getConnectCount() >= 3);
+		assertEquals("Connection closed by receiver", feed.getLastError());
+	}
+
+	@Test
+	public void fullQueue_shouldPauseReading() throws Exception {
+		BoundedFrameQueue queue = new BoundedFrameQueue(64);
+		manager = new FeedManager(queue);
+		manager.setReadBufferSize(256);
+		Feed feed = manager.addFeed("localhost", receiver(5000, false).getPort(), new AvrReader());
+		manager.start();
+
+		// nobody consumes: reading stops before the queue overflows
+		long deadline = System.currentTimeMillis() + 10_000L;
+		while (!manager.isPaused() && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		assertTrue(manager.isPaused());
+		Thread.sleep(50);
+		assertTrue(queue.size() <= 64);
+
+		int[] perFeed = new int[1];
+		drainUntil(queue, perFeed, () -> perFeed[0] == 5000);
+		assertEquals(5000, perFeed[0]);
+		assertEquals(0, queue.getDroppedCount());
+		assertEquals(0, feed.getDroppedCount());
+	}
+}
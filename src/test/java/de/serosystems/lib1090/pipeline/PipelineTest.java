@@ -0,0 +1,98 @@
+package de.serosystems.lib1090.pipeline;
+
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.adsb.AirbornePositionV0Msg;
+import de.serosystems.lib1090.msgs.adsb.IdentificationMsg;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PipelineTest {
+
+	private static final String[] FRAMES = {
+			"8d40621d58c382d690c8ac2863a7", // airborne position
+			"8d485020994409940838175b284f", // velocity
+			"8d4840d6202cc371c32ce0576098", // identification
+			"5d506c28387c97", // all-call reply
+			"200001b4f0f71d", // altitude reply
+	};
+
+	private final List<ModeSDownlinkMsg> received = new ArrayList<>();
+	private final List<Long> timestamps = new ArrayList<>();
+
+	private Pipeline newPipeline() {
+		Pipeline pipeline = new Pipeline((msg, position, timestamp, receiver) -> {
+			received.add(msg);
+			timestamps.add(timestamp);
+		});
+		pipeline.setCapacity(4);
+		pipeline.setDecoderShards(3);
+		pipeline.setWaitStrategy(WaitStrategy.YIELDING);
+		return pipeline;
+	}
+
+	@Test
+	public void messages_shouldBeDeliveredInOrder() {
+		Pipeline pipeline = newPipeline();
+		pipeline.start();
+		for (int i = 0; i < 100; ++i) {
+			byte[] frame = Tools.hexStringToByteArray(FRAMES[i % FRAMES.length]);
+			// far apart so that the duplicate filter does not interfere
+			pipeline.publish(frame, 0, frame.length, i * 1000L, 0);
+		}
+		pipeline.close();
+
+		assertEquals(100, received.size());
+		for (int i = 0; i < 100; ++i) {
+			assertEquals(Long.valueOf(i * 1000L), timestamps.get(i));
+			byte df = (byte) (Tools.hexStringToByteArray(FRAMES[i % FRAMES.length])[0] >>> 3 & 0x1F);
+			assertEquals(df, received.get(i).getDownlinkFormat());
+		}
+		assertTrue(received.get(0) instanceof AirbornePositionV0Msg);
+
+		long processed = 0;
+		for (StageMetrics metrics : pipeline.getStageMetrics())
+			if (metrics.getName().startsWith("decode-"))
+				processed += metrics.getProcessedCount();
+		assertEquals(300L, processed);
+		assertEquals(100L, pipeline.getStageMetrics().get(0).getProcessedCount());
+	}
+
+	@Test
+	public void duplicates_shouldBeSuppressed() {
+		Pipeline pipeline = newPipeline();
+		pipeline.start();
+		byte[] frame = Tools.hexStringToByteArray(FRAMES[1]);
+		for (int receiver = 0; receiver < 3; ++receiver)
+			pipeline.publish(frame, 0, frame.length, 100L, receiver);
+		pipeline.close();
+
+		assertEquals(1, received.size());
+		assertEquals(2L, pipeline.getDuplicates());
+	}
+
+	@Test
+	public void singleBitErrors_shouldBeCorrected() {
+		Pipeline pipeline = newPipeline();
+		pipeline.setDuplicateFilter(null);
+		pipeline.start();
+
+		byte[] frame = Tools.hexStringToByteArray(FRAMES[2]);
+		frame[6] ^= 0x10;
+		pipeline.publish(frame, 0, frame.length, 0L, 0);
+
+		// two bits cannot be corrected
+		frame[9] ^= 0x01;
+		pipeline.publish(frame, 0, frame.length, 0L, 0);
+		pipeline.close();
+
+		assertEquals(1, received.size());
+		assertEquals("KLM1023", new String(((IdentificationMsg) received.get(0)).getIdentity()).trim());
+		assertEquals(1L, pipeline.getCorrectedFrames());
+		assertEquals(1L, pipeline.getCrcErrors());
+	}
+}
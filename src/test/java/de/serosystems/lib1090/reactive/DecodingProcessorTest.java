@@ -0,0 +1,237 @@
+package de.serosystems.lib1090.reactive;
+
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.Tools;
+import de.serosystems.lib1090.io.RawFrame;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class DecodingProcessorTest {
+
+	private static final byte[][] FRAMES = {
+			Tools.hexStringToByteArray("8d40621d58c382d690c8ac2863a7"), // airborne position
+			Tools.hexStringToByteArray("8d485020994409940838175b284f"), // velocity
+			Tools.hexStringToByteArray("8d4840d6202cc371c32ce0576098"), // identification
+			Tools.hexStringToByteArray("8d4840d6202cc3"), // too short for an extended squitter
+	};
+
+	private static final int BUFFER_SIZE = 16;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Emits a number of frames and verifies that it never gets more demand than the processor can buffer
+	 */
+	private static class FramePublisher implements Publisher<RawFrame> {
+		private final long count;
+		private final RawFrame frame = new RawFrame();
+		private long emitted;
+		private long demand;
+		private boolean emitting;
+		volatile long maxOutstanding;
+		volatile boolean cancelled;
+
+		FramePublisher(long count) {
+			this.count = count;
+		}
+
+		@Override
+		public void subscribe(Subscriber<? super RawFrame> subscriber) {
+			subscriber.onSubscribe(new Subscription() {
+				@Override
+				public void request(long n) {
+					assertTrue(n > 0);
+					demand += n;
+					maxOutstanding = Math.max(maxOutstanding, demand);
+					if (emitting) return;
+
+					emitting = true;
+					while (demand > 0 && emitted < count && !cancelled) {
+						byte[] raw = FRAMES[(int) (emitted % FRAMES.length)];
+						// the frame is reused, just like the readers do
+						frame.set(raw, 0, raw.length, emitted * 1000L, 0, 0);
+						--demand;
+						++emitted;
+						subscriber.onNext(frame);
+					}
+					emitting = false;
+					if (emitted == count && !cancelled) {
+						cancelled = true;
+						subscriber.onComplete();
+					}
+				}
+
+				@Override
+				public void cancel() {
+					cancelled = true;
+				}
+			});
+		}
+	}
+
+	private static class RecordingSubscriber implements Subscriber<ModeSDownlinkMsg> {
+		final List<ModeSDownlinkMsg> received = new ArrayList<>();
+		final CountDownLatch terminated = new CountDownLatch(1);
+		final AtomicLong outstanding = new AtomicLong();
+		final long initialRequest;
+		volatile Subscription subscription;
+		volatile Throwable error;
+		volatile boolean completed;
+		volatile boolean excess;
+
+		RecordingSubscriber(long initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+
+		void request(long n) {
+			outstanding.addAndGet(n);
+			subscription.request(n);
+		}
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+			if (initialRequest > 0) request(initialRequest);
+		}
+
+		@Override
+		public void onNext(ModeSDownlinkMsg msg) {
+			if (outstanding.decrementAndGet() < 0) excess = true;
+			received.add(msg);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			error = t;
+			terminated.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+			terminated.countDown();
+		}
+	}
+
+	private DecodingProcessor newProcessor() {
+		return new DecodingProcessor(new StatefulModeSDecoder(), executor, BUFFER_SIZE);
+	}
+
+	@Test
+	public void slowSubscriber_shouldThrottleUpstream() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		FramePublisher publisher = new FramePublisher(4000);
+		RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+			@Override
+			public void onNext(ModeSDownlinkMsg msg) {
+				super.onNext(msg);
+				request(1);
+			}
+		};
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+
+		assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+		assertTrue(subscriber.completed);
+		assertFalse("Got more messages than requested", subscriber.excess);
+		assertEquals(3000, subscriber.received.size());
+		assertEquals(1000L, processor.getDecodingErrors());
+		assertTrue("Outstanding demand " + publisher.maxOutstanding, publisher.maxOutstanding <= BUFFER_SIZE);
+	}
+
+	@Test
+	public void noDemand_shouldStopUpstream() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		FramePublisher publisher = new FramePublisher(1000);
+		RecordingSubscriber subscriber = new RecordingSubscriber(5);
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+
+		// buffer is full; upstream waits for demand
+		Thread.sleep(200);
+		assertEquals(5, subscriber.received.size());
+		assertTrue(publisher.emitted < 40);
+		assertFalse(subscriber.completed);
+
+		subscriber.request(Long.MAX_VALUE);
+		subscriber.request(Long.MAX_VALUE);
+		assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+		assertEquals(750, subscriber.received.size());
+	}
+
+	@Test
+	public void subtypes_shouldBeFiltered() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		processor.setSubtypes(ModeSDownlinkMsg.subtype.ADSB_VELOCITY);
+		RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+		processor.subscribe(subscriber);
+		new FramePublisher(400).subscribe(processor);
+
+		assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+		assertEquals(100, subscriber.received.size());
+		for (ModeSDownlinkMsg msg : subscriber.received)
+			assertEquals(ModeSDownlinkMsg.subtype.ADSB_VELOCITY, msg.getType());
+	}
+
+	@Test
+	public void nonPositiveRequest_shouldSignalError() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		FramePublisher publisher = new FramePublisher(1000);
+		RecordingSubscriber subscriber = new RecordingSubscriber(0);
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+
+		while (subscriber.subscription == null) Thread.sleep(1);
+		subscriber.request(0);
+		assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+		// upstream is cancelled after the error
+		executor.submit(() -> {}).get();
+		assertTrue(publisher.cancelled);
+	}
+
+	@Test
+	public void cancel_shouldCancelUpstream() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		FramePublisher publisher = new FramePublisher(1000);
+		RecordingSubscriber subscriber = new RecordingSubscriber(3);
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+
+		while (subscriber.subscription == null) Thread.sleep(1);
+		subscriber.subscription.cancel();
+		executor.submit(() -> {}).get();
+		assertTrue(publisher.cancelled);
+		assertTrue(subscriber.received.size() <= 3);
+		assertEquals(1, subscriber.terminated.getCount());
+	}
+
+	@Test
+	public void secondSubscriber_shouldBeRejected() throws Exception {
+		DecodingProcessor processor = newProcessor();
+		processor.subscribe(new RecordingSubscriber(1));
+		RecordingSubscriber second = new RecordingSubscriber(1);
+		processor.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+	}
+}
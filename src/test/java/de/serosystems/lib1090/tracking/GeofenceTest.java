@@ -0,0 +1,119 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeofenceTest {
+
+	private final Random random = new Random(42);
+
+	/**
+	 * @return a concave star around the given center
+	 */
+	private static Geofence star(int id, double latitude, double longitude, double size) {
+		double[] lats = new double[16], lons = new double[16];
+		for (int i = 0; i < 16; ++i) {
+			double r = i % 2 == 0 ? size : size / 3, angle = Math.PI * i / 8;
+			lats[i] = latitude + r * Math.sin(angle);
+			lons[i] = longitude + r * Math.cos(angle);
+		}
+		return Geofence.polygon(id, lats, lons);
+	}
+
+	private static boolean crossingNumber(double[] lats, double[] lons, double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0, j = lats.length - 1; i < lats.length; j = i++)
+			if ((lats[i] > lat) != (lats[j] > lat) && lon < lons[i] + (lat - lats[i]) * (lons[j] - lons[i]) / (lats[j] - lats[i]))
+				inside = !inside;
+		return inside;
+	}
+
+	@Test
+	public void polygon_shouldMatchExactTest() {
+		double[] lats = new double[16], lons = new double[16];
+		for (int i = 0; i < 16; ++i) {
+			double r = i % 2 == 0 ? 2.0 : 0.7, angle = Math.PI * i / 8;
+			lats[i] = 50 + r * Math.sin(angle);
+			lons[i] = 8 + r * Math.cos(angle);
+		}
+		Geofence fence = Geofence.polygon(1, lats, lons, 32);
+		assertTrue(fence.getBoundaryFraction() < 0.5);
+
+		for (int i = 0; i < 100000; ++i) {
+			double lat = 47.5 + random.nextDouble() * 5, lon = 5.5 + random.nextDouble() * 5;
+			assertEquals(lat + "," + lon, crossingNumber(lats, lons, lat, lon), fence.contains(lat, lon));
+		}
+	}
+
+	@Test
+	public void circle_shouldMatchDistance() {
+		// including a circle across the antimeridian and one around the pole
+		double[][] circles = {{50, 8, 50000}, {-10, 179.9, 200000}, {89, 0, 300000}};
+		for (double[] c : circles) {
+			Geofence circle = Geofence.circle(1, c[0], c[1], c[2]);
+			for (int i = 0; i < 20000; ++i) {
+				double lat = Math.max(-90, Math.min(90, circle.minLatitude - 1 + random.nextDouble() *
+						(circle.maxLatitude - circle.minLatitude + 2)));
+				double lon = circle.minLongitude - 1 + random.nextDouble() * (circle.maxLongitude - circle.minLongitude + 2);
+				lon = lon >= 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+				assertEquals(lat + "," + lon, Position.haversine(c[0], c[1], lat, lon) <= c[2], circle.contains(lat, lon));
+			}
+		}
+	}
+
+	@Test
+	public void engine_shouldReportEnterAndLeave() {
+		GeofenceEngine engine = new GeofenceEngine();
+		List<String> events = new ArrayList<>();
+		engine.setListener(new GeofenceEngine.Listener() {
+			@Override
+			public void onEnter(int aircraft, int fence, long timestamp) {
+				events.add("enter " + aircraft + " " + fence + " " + timestamp);
+			}
+
+			@Override
+			public void onLeave(int aircraft, int fence, long timestamp) {
+				events.add("leave " + aircraft + " " + fence + " " + timestamp);
+			}
+		});
+
+		engine.addFence(star(10, 50, 8, 1.0));
+		engine.addFence(Geofence.circle(20, 50, 8, 20000));
+		// across the antimeridian with continuous longitudes
+		engine.addFence(Geofence.polygon(30, new double[] {-5, -5, 5, 5}, new double[] {175, 185, 185, 175}));
+		assertEquals(3, engine.getFenceCount());
+
+		engine.update(1, 50.0, 8.0, 0L); // center
+		engine.update(1, 50.0, 8.5, 1L); // star only
+		engine.update(1, 50.23, 8.55, 2L); // between two spikes
+		engine.update(2, 0.0, -179.0, 3L);
+		engine.update(2, 0.0, 179.0, 4L);
+		engine.update(2, 0.0, 170.0, 5L);
+		assertEquals(Arrays.asList("enter 1 10 0", "enter 1 20 0", "leave 1 20 1", "leave 1 10 2",
+				"enter 2 30 3", "leave 2 30 5"), events);
+		assertEquals(0, engine.size());
+
+		events.clear();
+		engine.update(1, 50.0, 8.0, 6L);
+		assertArrayEquals(new int[] {10, 20}, engine.getFences(1));
+		assertTrue(engine.removeFence(20, 7L));
+		assertArrayEquals(new int[] {10}, engine.getFences(50.0, 8.0));
+		assertTrue(engine.removeAircraft(1, 8L));
+		assertFalse(engine.removeAircraft(1, 9L));
+		assertEquals(Arrays.asList("enter 1 10 6", "enter 1 20 6", "leave 1 20 7", "leave 1 10 8"), events);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void duplicateFence_shouldBeRejected() {
+		GeofenceEngine engine = new GeofenceEngine();
+		engine.addFence(Geofence.circle(1, 50, 8, 1000));
+		engine.addFence(Geofence.circle(1, 51, 8, 1000));
+	}
+}
@@ -0,0 +1,94 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ProximityDetectorTest {
+
+	private final ProximityDetector detector = new ProximityDetector();
+	private final List<String> events = new ArrayList<>();
+
+	{
+		detector.setListener(new ProximityDetector.Listener() {
+			@Override
+			public void onEnter(int id1, int id2, double distance, double verticalSeparation, long timestamp) {
+				events.add("enter " + id1 + " " + id2 + " " + Math.round(distance) + " " +
+						Math.round(verticalSeparation) + " " + timestamp);
+			}
+
+			@Override
+			public void onExit(int id1, int id2, long timestamp) {
+				events.add("exit " + id1 + " " + id2 + " " + timestamp);
+			}
+		});
+	}
+
+	@Test
+	public void pairs_shouldEnterAndExit() {
+		detector.update(2, 50.0, 8.0, 35000, 0L);
+		detector.update(1, 50.1, 8.0, 36000, 0L); // about 11 km
+		detector.update(1, 50.05, 8.0, 36000, 1L); // about 5.6 km
+		detector.update(3, 50.05, 8.0, 37500, 1L); // too high
+		assertEquals(Collections.singletonList("enter 1 2 5560 1000 1"), events);
+		assertTrue(detector.isInProximity(2, 1));
+		assertFalse(detector.isInProximity(1, 3));
+
+		events.clear();
+		detector.update(3, 50.05, 8.0, 36500, 2L);
+		detector.update(2, 50.0, 8.0, 34000, 3L); // descends
+		assertEquals(Arrays.asList("enter 1 3 0 500 2", "exit 1 2 3"), events);
+		assertEquals(1, detector.getPairCount());
+
+		events.clear();
+		detector.update(1, 40.0, 8.0, 36000, 4L); // position jump
+		assertEquals(Collections.singletonList("exit 1 3 4"), events);
+		assertEquals(0, detector.getPairCount());
+		assertEquals(2, detector.getEnterCount());
+	}
+
+	@Test
+	public void removedAircraft_shouldExitAllPairs() {
+		detector.update(1, 0.0, 179.99, 10000, 0L);
+		detector.update(2, 0.0, -179.99, 10000, 0L); // across the antimeridian
+		detector.update(3, 0.01, 179.99, 10000, 5000L);
+		assertEquals(3, detector.getPairCount());
+
+		assertEquals(2, detector.removeInactive(6000L, 2000L));
+		assertEquals(Arrays.asList("enter 1 2 2224 0 0", "enter 1 3 1112 0 5000", "enter 2 3 2486 0 5000"),
+				events.subList(0, 3));
+		assertEquals(new HashSet<>(Arrays.asList("exit 1 2 6000", "exit 1 3 6000", "exit 2 3 6000")),
+				new HashSet<>(events.subList(3, events.size())));
+		assertEquals(1, detector.size());
+		assertFalse(detector.remove(1, 7000L));
+	}
+
+	@Test
+	public void randomTraffic_shouldMatchBruteForce() {
+		Random random = new Random(42);
+		int n = 500;
+		double[][] targets = new double[n][];
+		for (int step = 0; step < 20000; ++step) {
+			int id = random.nextInt(n);
+			double[] t = targets[id] = new double[] {
+					50 + random.nextDouble(), 8 + random.nextDouble(), random.nextInt(20) * 500};
+			detector.update(id, t[0], t[1], t[2], step);
+		}
+
+		int pairs = 0;
+		for (int i = 0; i < n; ++i) {
+			for (int j = i + 1; j < n; ++j) {
+				if (targets[i] == null || targets[j] == null) continue;
+				boolean close = Math.abs(targets[i][2] - targets[j][2]) <= 1000 &&
+						Position.haversine(targets[i][0], targets[i][1], targets[j][0], targets[j][1]) <= 5 * 1852.0;
+				assertEquals(close, detector.isInProximity(i, j));
+				if (close) ++pairs;
+			}
+		}
+		assertTrue(pairs > 0);
+		assertEquals(pairs, detector.getPairCount());
+	}
+}
@@ -0,0 +1,88 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotEmitterTest {
+
+	private static final ModeSDownlinkMsg.QualifiedAddress.Type ICAO24 = ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24;
+
+	private final StateVectorStore store = new StateVectorStore();
+	private final SnapshotEmitter emitter = new SnapshotEmitter(store, 1000L);
+
+	private void move(int address, double lat, long timestamp) {
+		Position pos = new Position(10.0, lat, null);
+		pos.setReasonable(true);
+		store.updatePosition(address, ICAO24, pos, timestamp);
+	}
+
+	@Test
+	public void snapshots_shouldContainChangedAircraftOnly() {
+		for (int i = 0; i < 100; ++i)
+			move(i, 50.0, 100L);
+		assertFalse(emitter.update(500L));
+		assertNull(emitter.poll());
+
+		assertTrue(emitter.update(1000L));
+		Snapshot snapshot = emitter.poll();
+		assertEquals(1000L, snapshot.getTime());
+		assertEquals(100, snapshot.size());
+		assertTrue(snapshot.has(0, Snapshot.POSITION));
+		assertFalse(snapshot.has(0, Snapshot.CALLSIGN));
+		snapshot.release();
+		assertNull(emitter.poll());
+
+		// only one aircraft moves in the next interval
+		move(42, 51.0, 1500L);
+		assertFalse(emitter.update(1999L));
+		assertTrue(emitter.update(2100L));
+		snapshot = emitter.poll();
+		assertEquals(1, snapshot.size());
+		assertEquals(42, snapshot.getAddress(0));
+		assertEquals(51.0, snapshot.getLatitude(0), 0);
+		assertEquals(1500L, snapshot.getPositionTime(0));
+		snapshot.release();
+	}
+
+	@Test
+	public void slowReader_shouldDeferEmission() {
+		emitter.update(0L);
+		move(1, 50.0, 100L);
+		assertTrue(emitter.update(1000L));
+
+		// first snapshot has not been taken yet
+		move(2, 50.0, 1100L);
+		assertFalse(emitter.update(2000L));
+		assertEquals(1L, emitter.getDeferredCount());
+
+		Snapshot first = emitter.poll();
+		assertEquals(1, first.size());
+
+		// reader still holds the first snapshot while the second buffer is filled
+		move(3, 50.0, 2100L);
+		assertTrue(emitter.update(2200L));
+		Snapshot second = emitter.poll();
+		assertEquals(2, second.size());
+		assertEquals(1, first.getAddress(0));
+
+		// both buffers are in use
+		move(4, 50.0, 3100L);
+		assertFalse(emitter.update(3200L));
+		first.release();
+		assertTrue(emitter.update(3300L));
+		second.release();
+		assertEquals(4, emitter.poll().getAddress(0));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void doubleRelease_shouldFail() {
+		emitter.update(0L);
+		emitter.update(1000L);
+		Snapshot snapshot = emitter.poll();
+		snapshot.release();
+		snapshot.release();
+	}
+}
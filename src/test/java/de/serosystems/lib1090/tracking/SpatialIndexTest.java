@@ -0,0 +1,165 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg.QualifiedAddress;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+
+	private static final int AIRCRAFT = 5000;
+
+	private final Random random = new Random(42);
+	private final SpatialIndex index = new SpatialIndex(2.0);
+	private final double[] latitudes = new double[AIRCRAFT];
+	private final double[] longitudes = new double[AIRCRAFT];
+
+	{
+		for (int id = 0; id < AIRCRAFT; ++id)
+			move(id, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+	}
+
+	private void move(int id, double latitude, double longitude) {
+		latitudes[id] = latitude;
+		longitudes[id] = longitude;
+		index.update(id, latitude, longitude);
+	}
+
+	private Set<Integer> radius(double latitude, double longitude, double radius) {
+		Set<Integer> found = new HashSet<>();
+		int count = index.queryRadius(latitude, longitude, radius, (id, lat, lon) -> assertTrue(found.add(id)));
+		assertEquals(found.size(), count);
+		return found;
+	}
+
+	private Set<Integer> bruteForceRadius(double latitude, double longitude, double radius) {
+		Set<Integer> found = new HashSet<>();
+		for (int id = 0; id < AIRCRAFT; ++id)
+			if (latitudes[id] != 999 && Position.haversine(latitude, longitude, latitudes[id], longitudes[id]) <= radius)
+				found.add(id);
+		return found;
+	}
+
+	@Test
+	public void queryRadius_shouldMatchBruteForce() {
+		// including the antimeridian and the poles
+		double[][] centers = {{50, 8}, {0, 179.5}, {-10, -179.9}, {89, 0}, {-88.5, 120}, {60, 30}};
+		for (double[] center : centers)
+			for (double radius : new double[] {1e4, 2e5, 1e6})
+				assertEquals(bruteForceRadius(center[0], center[1], radius), radius(center[0], center[1], radius));
+	}
+
+	@Test
+	public void queryBox_shouldFindAircraftInside() {
+		Set<Integer> found = new HashSet<>();
+		index.queryBox(-20, 170, 20, -170, (id, lat, lon) -> found.add(id));
+
+		Set<Integer> expected = new HashSet<>();
+		for (int id = 0; id < AIRCRAFT; ++id)
+			if (latitudes[id] >= -20 && latitudes[id] <= 20 && (longitudes[id] >= 170 || longitudes[id] <= -170))
+				expected.add(id);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, found);
+	}
+
+	@Test
+	public void nearest_shouldMatchBruteForce() {
+		int k = 10;
+		int[] ids = new int[k];
+		double[] distances = new double[k];
+		for (int q = 0; q < 50; ++q) {
+			double lat = random.nextDouble() * 180 - 90, lon = random.nextDouble() * 360 - 180;
+			assertEquals(k, index.nearest(lat, lon, k, ids, distances));
+
+			double[] all = new double[AIRCRAFT];
+			for (int id = 0; id < AIRCRAFT; ++id)
+				all[id] = Position.haversine(lat, lon, latitudes[id], longitudes[id]);
+			Arrays.sort(all);
+			for (int i = 0; i < k; ++i) {
+				assertEquals(all[i], distances[i], 1e-6);
+				assertEquals(distances[i], Position.haversine(lat, lon, latitudes[ids[i]], longitudes[ids[i]]), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void movedAndRemovedAircraft_shouldBeUpdated() {
+		move(7, 50.0, 8.0);
+		assertTrue(radius(50.0, 8.0, 1.0).contains(7));
+
+		move(7, 50.0, 8.01); // same cell
+		move(7, -30.0, 25.0); // other cell
+		assertFalse(radius(50.0, 8.0, 1e3).contains(7));
+		assertTrue(radius(-30.0, 25.0, 1.0).contains(7));
+
+		assertTrue(index.remove(7));
+		assertFalse(index.remove(7));
+		assertFalse(index.contains(7));
+		assertEquals(AIRCRAFT - 1, index.size());
+		latitudes[7] = 999;
+		assertEquals(bruteForceRadius(-30.0, 25.0, 1e6), radius(-30.0, 25.0, 1e6));
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertTrue(radius(-30.0, 25.0, 1e6).isEmpty());
+	}
+
+	@Test
+	public void fineGridChurn_shouldMatchBruteForce() {
+		// many cells are emptied and occupied again, which exercises the cell table
+		SpatialIndex fine = new SpatialIndex(0.1);
+		int n = 3000;
+		double[] lat = new double[n], lon = new double[n];
+		boolean[] present = new boolean[n];
+		for (int step = 0; step < 50000; ++step) {
+			int id = random.nextInt(n);
+			if (present[id] && random.nextInt(10) == 0) {
+				assertTrue(fine.remove(id));
+				present[id] = false;
+			} else {
+				lat[id] = 50 + random.nextDouble() * 3;
+				lon[id] = 7 + random.nextDouble() * 3;
+				fine.update(id, lat[id], lon[id]);
+				present[id] = true;
+			}
+		}
+
+		for (int q = 0; q < 50; ++q) {
+			double qLat = 50 + random.nextDouble() * 3, qLon = 7 + random.nextDouble() * 3;
+			Set<Integer> found = new HashSet<>(), expected = new HashSet<>();
+			fine.queryRadius(qLat, qLon, 20000, (id, la, lo) -> found.add(id));
+			for (int id = 0; id < n; ++id)
+				if (present[id] && Position.haversine(qLat, qLon, lat[id], lon[id]) <= 20000) expected.add(id);
+			assertEquals(expected, found);
+		}
+
+		fine.clear();
+		assertEquals(0, fine.size());
+		assertEquals(0, fine.queryRadius(51.5, 8.5, 200000, (id, la, lo) -> fail()));
+	}
+
+	@Test
+	public void store_shouldMaintainIndex() {
+		StateVectorStore store = new StateVectorStore(4);
+		SpatialIndex storeIndex = new SpatialIndex();
+		store.setSpatialIndex(storeIndex);
+
+		Position position = new Position(8.0, 50.0, 10000.0);
+		position.setReasonable(true);
+		store.updatePosition(0x3c6444, QualifiedAddress.Type.ICAO24, position, 1000L);
+		store.updatePosition(0x3c6444, QualifiedAddress.Type.NON_ICAO, position, 1000L);
+		assertEquals(2, storeIndex.size());
+
+		List<StateVector> found = new ArrayList<>();
+		storeIndex.queryRadius(50.0, 8.0, 1.0, (id, lat, lon) -> found.add(store.getStateById(id)));
+		assertEquals(2, found.size());
+		assertTrue(found.contains(store.getState(0x3c6444)));
+		assertTrue(found.contains(store.getState(0x3c6444, QualifiedAddress.Type.NON_ICAO)));
+
+		store.removeInactive(2000L, 500L);
+		assertEquals(0, storeIndex.size());
+	}
+}
@@ -0,0 +1,148 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StateVectorStoreTest {
+
+	private static final Position RECEIVER = new Position(4.0, 52.0, 0.0);
+
+	private final StateVectorStore store = new StateVectorStore(4);
+	private final StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+
+	{
+		decoder.setStateVectorStore(store);
+	}
+
+	@Test
+	public void decoder_shouldUpdateStore() throws Exception {
+		decoder.decode("8d4840d6202cc371c32ce0576098", 1000L); // identification
+		decoder.decode("8d485020994409940838175b284f", 2000L); // velocity
+
+		StateVector klm = store.getState(0x4840d6);
+		assertEquals("KLM1023", klm.getCallsign());
+		assertEquals('A', klm.getCategorySet());
+		assertEquals(0, klm.getEmitterCategory());
+		assertEquals(1000L, klm.getCallsignTime());
+		assertFalse(klm.hasPosition());
+		assertEquals(StateVector.NEVER, klm.getVelocityTime());
+
+		StateVector sv = store.getState(0x485020);
+		assertEquals(159.2, sv.getGroundSpeed(), 0.1);
+		assertEquals(182.88, sv.getTrack(), 0.01);
+		assertEquals(-832, sv.getVerticalRate());
+		assertEquals(2000L, sv.getLastSeen());
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void positions_shouldBeStored() throws Exception {
+		// the decoder reports positions as reasonable after a few consistent ones
+		String[] frames = {"8d40621d58c382d690c8ac2863a7", "8d40621d58c386435cc412692ad6"};
+		ModeSDownlinkMsg msg = null;
+		Position pos = null;
+		for (int i = 0; i < 6; ++i) {
+			msg = decoder.decode(frames[i % 2], i * 5000L);
+			pos = decoder.extractPosition(msg.getAddress(), (PositionMsg) msg, RECEIVER);
+			assertEquals(pos.isReasonable(), store.getState(msg.getAddress()).hasPosition());
+		}
+
+		StateVector sv = store.getState(msg.getAddress());
+		assertEquals(38000, sv.getBarometricAltitude());
+		assertFalse(sv.isOnGround());
+		assertEquals(6L, sv.getMessageCount());
+		assertTrue(pos.isReasonable());
+		assertEquals(25000L, sv.getPositionTime());
+		assertEquals(pos.getLatitude(), sv.getLatitude(), 0);
+		assertEquals(pos.getLongitude(), sv.getLongitude(), 0);
+	}
+
+	@Test
+	public void squawk_shouldBeDecoded() throws Exception {
+		ModeSDownlinkMsg reply = decoder.decode("28001a1f2c1d77", 5L);
+		StateVector sv = store.getState(reply.getAddress());
+		assertEquals(5L, sv.getSquawkTime());
+		assertEquals(Integer.parseInt(((de.serosystems.lib1090.msgs.modes.IdentifyReply) reply).getIdentity()),
+				sv.getSquawk());
+	}
+
+	@Test
+	public void positions_shouldBePredicted() throws Exception {
+		// no position decoded yet
+		ModeSDownlinkMsg msg = decoder.decode("8d40621d58c382d690c8ac2863a7", 0L);
+		assertNull(decoder.predictPosition(msg.getAddress(), 0L));
+
+		Position pos = new Position(10.0, 50.0, null);
+		pos.setReasonable(true);
+		store.updatePosition(0x485020, ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24, pos, 1000L);
+		Position predicted = store.predictPosition(0x485020, 11000L);
+		assertEquals(10.0, predicted.getLongitude(), 0);
+		assertEquals(50.0, predicted.getLatitude(), 0);
+
+		// 159.2 kt to the south
+		decoder.decode("8d485020994409940838175b284f", 1500L);
+		predicted = store.predictPosition(0x485020, 11000L);
+		assertEquals(159.2 * 0.514444 * 10, pos.haversine(predicted), 1);
+		assertTrue(predicted.getLatitude() < 50.0);
+		assertTrue(predicted.getLongitude() < 10.0);
+
+		StateVector sv = store.getState(0x485020);
+		assertEquals(predicted.getLatitude(), sv.predictLatitude(11000L), 0);
+		assertEquals(50.0, sv.predictLatitude(1000L), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void prediction_shouldRequireStore() {
+		new StatefulModeSDecoder().predictPosition(new ModeSDownlinkMsg.QualifiedAddress(), 0L);
+	}
+
+	@Test
+	public void inactiveAircraft_shouldBeRemoved() {
+		Position pos = new Position(10.0, 50.0, null);
+		pos.setReasonable(true);
+		for (int i = 0; i < 1000; ++i)
+			store.updatePosition(i * 7919, ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24, pos, i);
+		assertEquals(1000, store.size());
+
+		assertEquals(500, store.removeInactive(999L, 499L));
+		assertEquals(500, store.size());
+		for (int i = 0; i < 1000; ++i) {
+			StateVector sv = store.getState(i * 7919);
+			if (i < 500) assertNull(sv);
+			else assertEquals(i, sv.getLastSeen());
+		}
+
+		List<StateVector> active = new ArrayList<>();
+		store.forEachActive(999L, 99L, active::add);
+		assertEquals(100, active.size());
+	}
+
+	@Test(timeout = 10000)
+	public void churn_shouldKeepLookupsConsistent() {
+		Position pos = new Position(10.0, 50.0, null);
+		pos.setReasonable(true);
+		for (int round = 0; round < 200; ++round) {
+			for (int i = 0; i < 100; ++i)
+				store.updatePosition((round * 100 + i) * 7919, ModeSDownlinkMsg.QualifiedAddress.Type.ICAO24, pos,
+						round * 100L + (i % 2) * 50);
+			// removes the previous round partly, so vectors are moved from the end into gaps
+			store.removeInactive(round * 100L + 50, 120L);
+		}
+
+		assertEquals(150, store.size());
+		for (int id = 0; id < 200 * 100; ++id) {
+			StateVector sv = store.getState(id * 7919);
+			boolean active = id / 100 == 199 || id / 100 == 198 && id % 2 == 1;
+			assertEquals(active, sv != null);
+			if (active) assertEquals(id * 7919, sv.getAddress());
+		}
+	}
+}
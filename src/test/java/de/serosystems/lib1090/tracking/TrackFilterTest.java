@@ -0,0 +1,134 @@
+package de.serosystems.lib1090.tracking;
+
+import de.serosystems.lib1090.Position;
+import de.serosystems.lib1090.StatefulModeSDecoder;
+import de.serosystems.lib1090.msgs.ModeSDownlinkMsg;
+import de.serosystems.lib1090.msgs.PositionMsg;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static de.serosystems.lib1090.tracking.TrackFilter.*;
+import static org.junit.Assert.*;
+
+public class TrackFilterTest {
+
+	// 250 m/s to the north-east
+	private static final double SPEED = 250.0, TRACK = 45.0;
+	private static final double METERS_PER_DEGREE = Math.toRadians(Position.EARTH_RADIUS);
+
+	private final TrackFilter filter = new TrackFilter();
+	private final Random random = new Random(42);
+	private final double[] result = new double[3];
+
+	private static double latitude(long time) {
+		return 50.0 + SPEED * Math.cos(Math.toRadians(TRACK)) * time / 1000.0 / METERS_PER_DEGREE;
+	}
+
+	private static double longitude(long time) {
+		return 8.0 + SPEED * Math.sin(Math.toRadians(TRACK)) * time / 1000.0 /
+				(METERS_PER_DEGREE * Math.cos(Math.toRadians(50.0)));
+	}
+
+	/**
+	 * Feeds noisy positions and velocities of a straight flight every second
+	 * @return the maximum error of the raw positions in meters
+	 */
+	private double fly(long from, long to) {
+		double maxError = 0;
+		for (long t = from; t <= to; t += 1000) {
+			double lat = latitude(t) + random.nextGaussian() * 50 / METERS_PER_DEGREE;
+			double lon = longitude(t) + random.nextGaussian() * 50 / (METERS_PER_DEGREE * Math.cos(Math.toRadians(50)));
+			maxError = Math.max(maxError, Position.haversine(lat, lon, latitude(t), longitude(t)));
+			assertTrue(filter.updatePosition(1, lat, lon, t));
+			filter.updateVelocity(1, SPEED / 0.514444 + random.nextGaussian(), TRACK + random.nextGaussian(), t + 500);
+			filter.updateAltitude(1, 10000 + t / 1000.0 * 20 + Math.round(random.nextGaussian()) * 25, t + 200);
+			filter.updateVerticalRate(1, 1200 + random.nextGaussian() * 64, t + 700);
+		}
+		return maxError;
+	}
+
+	@Test
+	public void straightFlight_shouldBeSmoothed() {
+		double rawError = fly(0, 120000);
+
+		assertTrue(filter.extrapolate(1, 120700, result));
+		double error = Position.haversine(result[LATITUDE], result[LONGITUDE], latitude(120700), longitude(120700));
+		assertTrue("Error " + error, error < 30 && error < rawError);
+		assertTrue(filter.getPositionUncertainty(1) < 50);
+		assertEquals(SPEED / 0.514444, filter.getGroundSpeed(1), 2);
+		assertEquals(TRACK, filter.getTrack(1), 1);
+		assertEquals(1200, filter.getVerticalRate(1), 50);
+		assertEquals(10000 + 120.7 * 20, result[ALTITUDE], 30);
+
+		// extrapolation
+		assertTrue(filter.extrapolate(1, 180700, result));
+		assertTrue(Position.haversine(result[LATITUDE], result[LONGITUDE], latitude(180700), longitude(180700)) < 300);
+		assertEquals(10000 + 180.7 * 20, result[ALTITUDE], 100);
+	}
+
+	@Test
+	public void outliers_shouldBeRejected() {
+		fly(0, 60000);
+		filter.setMaxRejections(2);
+
+		// position 20 km off and a wrong altitude
+		assertFalse(filter.updatePosition(1, latitude(61000) + 0.18, longitude(61000), 61000));
+		assertFalse(filter.updateAltitude(1, 30000, 61000));
+		assertEquals(2, filter.getRejectedCount());
+
+		assertTrue(filter.extrapolate(1, 61000, result));
+		assertTrue(Position.haversine(result[LATITUDE], result[LONGITUDE], latitude(61000), longitude(61000)) < 100);
+
+		// the track is restarted after too many rejected positions in a row
+		assertFalse(filter.updatePosition(1, 40.0, 8.0, 62000));
+		assertTrue(filter.updatePosition(1, 40.0, 8.0, 63000));
+		assertTrue(filter.extrapolate(1, 63000, result));
+		assertEquals(40.0, result[LATITUDE], 1e-9);
+
+		// old measurements are ignored
+		assertFalse(filter.updatePosition(1, 40.0, 8.0, 50000));
+	}
+
+	@Test
+	public void tracks_shouldBeRemoved() {
+		for (int id = 0; id < 1000; ++id)
+			filter.updatePosition(id, id / 100.0, -id / 100.0, 0L);
+		for (int id = 0; id < 1000; id += 2)
+			assertTrue(filter.remove(id));
+		assertFalse(filter.remove(0));
+		assertEquals(500, filter.size());
+
+		for (int id = 1; id < 1000; id += 2) {
+			assertTrue(filter.extrapolate(id, 0L, result));
+			assertEquals(id / 100.0, result[LATITUDE], 0);
+			assertTrue(Double.isNaN(result[ALTITUDE]));
+		}
+		assertFalse(filter.hasPosition(2));
+	}
+
+	@Test
+	public void store_shouldFeedFilter() throws Exception {
+		StatefulModeSDecoder decoder = new StatefulModeSDecoder();
+		StateVectorStore store = new StateVectorStore(4);
+		store.setTrackFilter(filter);
+		decoder.setStateVectorStore(store);
+
+		ModeSDownlinkMsg msg = decoder.decode("8d40621d58c382d690c8ac2863a7", 0L);
+		decoder.decode("8d485020994409940838175b284f", 0L); // velocity of another aircraft
+		assertEquals(2, filter.size());
+		assertEquals(159.2, filter.getGroundSpeed(0x485020), 0.1);
+
+		msg = decoder.decode("8d40621d58c386435cc412692ad6", 5000L);
+		Position position = decoder.extractPosition(msg.getAddress(), (PositionMsg) msg, new Position(4.0, 52.0, 0.0));
+
+		// not reasonable yet, but the filter has a position
+		assertFalse(store.getState(0x40621d).hasPosition());
+		assertTrue(filter.extrapolate(0x40621d, 5000L, result));
+		assertEquals(position.getLatitude(), result[LATITUDE], 1e-9);
+		assertEquals(38000, result[ALTITUDE], 0);
+
+		store.clear();
+		assertEquals(0, filter.size());
+	}
+}